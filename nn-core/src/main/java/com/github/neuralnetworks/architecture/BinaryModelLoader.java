@@ -0,0 +1,223 @@
+package com.github.neuralnetworks.architecture;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.github.neuralnetworks.tensor.Matrix;
+import com.github.neuralnetworks.tensor.Tensor;
+import com.github.neuralnetworks.tensor.TensorFactory;
+import com.github.neuralnetworks.util.Properties;
+import com.github.neuralnetworks.util.Util;
+
+/**
+ * Loads networks written by BinaryModelWriter.
+ * The file is memory mapped and each weight block is transferred to the weights array with a single bulk copy.
+ */
+public class BinaryModelLoader {
+
+    /**
+     * @param file
+     * @return new network with the topology, weights and properties (layer calculator) of the stored one
+     */
+    public static NeuralNetworkImpl load(File file) throws IOException {
+	try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+	    ByteBuffer header = header(channel);
+	    DataInputStream in = structure(channel, header);
+	    long dataOffset = header.getLong(16);
+
+	    NeuralNetworkImpl result = new NeuralNetworkImpl();
+	    List<Layer> layers = new ArrayList<>();
+	    for (int i = in.readInt(); i > 0; i--) {
+		Layer l = new Layer();
+		layers.add(l);
+		result.addLayer(l);
+	    }
+
+	    // the connections are created after the weight blocks are read
+	    int connectionsCount = in.readInt();
+	    List<int[]> descriptors = new ArrayList<>();
+	    List<int[]> tensorDescriptors = new ArrayList<>();
+	    for (int i = 0; i < connectionsCount; i++) {
+		int[] d = connectionDescriptor(in);
+		descriptors.add(d);
+		tensorDescriptors.add(d[0] != BinaryModelWriter.SUBSAMPLING_2D ? tensorDescriptor(in) : null);
+	    }
+
+	    List<float[]> blocks = new ArrayList<>();
+	    for (int i = in.readInt(); i > 0; i--) {
+		long offset = in.readLong();
+		float[] block = new float[in.readInt()];
+		read(channel, dataOffset + offset, block, 0, block.length);
+		blocks.add(block);
+	    }
+
+	    List<Connections> connections = new ArrayList<>();
+	    List<Tensor> tensors = new ArrayList<>();
+	    for (int i = 0; i < connectionsCount; i++) {
+		int[] d = descriptors.get(i);
+		int[] td = tensorDescriptors.get(i);
+		Layer input = layers.get(d[1]);
+		Layer output = layers.get(d[2]);
+		Tensor weights = td != null ? TensorFactory.tensor(blocks.get(td[0]), td[1], dimensions(td)) : null;
+		switch (d[0]) {
+		case BinaryModelWriter.FULLY_CONNECTED:
+		    connections.add(new FullyConnected(input, output, (Matrix) weights));
+		    break;
+		case BinaryModelWriter.CONV_2D:
+		    connections.add(new Conv2DConnection(input, output, d[3], d[4], weights, d[5]));
+		    break;
+		default:
+		    connections.add(new Subsampling2DConnection(input, output, d[3], d[4], d[5], d[6], d[7]));
+		}
+
+		if (weights != null) {
+		    tensors.add(weights);
+		}
+	    }
+
+	    byte[] properties = new byte[in.readInt()];
+	    in.readFully(properties);
+	    if (properties.length > 0) {
+		result.setProperties((Properties) Util.deserialize(properties, BinaryModelWriter.sharedObjects(result, layers, connections, tensors, blocks)));
+	    }
+
+	    return result;
+	}
+    }
+
+    /**
+     * Load only the weights of a stored network into an existing network with the same topology (for example DBN or StackedAutoencoder, which have additional structure)
+     * 
+     * @param file
+     * @param target
+     */
+    public static void loadWeights(File file, NeuralNetwork target) throws IOException {
+	try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+	    ByteBuffer header = header(channel);
+	    DataInputStream in = structure(channel, header);
+	    long dataOffset = header.getLong(16);
+
+	    List<Connections> connections = target.getConnections();
+	    if (in.readInt() != target.getLayers().size() || in.readInt() != connections.size()) {
+		throw new IllegalArgumentException("The stored network has different topology");
+	    }
+
+	    List<Tensor> tensors = new ArrayList<>();
+	    List<int[]> tensorDescriptors = new ArrayList<>();
+	    for (Connections c : connections) {
+		int[] d = connectionDescriptor(in);
+		int type = c instanceof FullyConnected ? BinaryModelWriter.FULLY_CONNECTED : c instanceof Conv2DConnection ? BinaryModelWriter.CONV_2D : BinaryModelWriter.SUBSAMPLING_2D;
+		if (d[0] != type) {
+		    throw new IllegalArgumentException("The stored network has different topology");
+		}
+
+		if (c instanceof WeightsConnections) {
+		    int[] td = tensorDescriptor(in);
+		    Tensor t = ((WeightsConnections) c).getWeights();
+		    if (!Arrays.equals(t.getDimensions(), dimensions(td)) || t.getEndIndex() - t.getStartIndex() + 1 != t.getSize()) {
+			throw new IllegalArgumentException("The stored weights have different dimensions");
+		    }
+
+		    tensors.add(t);
+		    tensorDescriptors.add(td);
+		}
+	    }
+
+	    int blocksCount = in.readInt();
+	    long[] blockOffsets = new long[blocksCount];
+	    for (int i = 0; i < blocksCount; i++) {
+		blockOffsets[i] = in.readLong();
+		in.readInt();
+	    }
+
+	    for (int i = 0; i < tensors.size(); i++) {
+		Tensor t = tensors.get(i);
+		int[] td = tensorDescriptors.get(i);
+		read(channel, dataOffset + blockOffsets[td[0]] + 4l * td[1], t.getElements(), t.getStartIndex(), t.getSize());
+	    }
+	}
+    }
+
+    private static ByteBuffer header(FileChannel channel) throws IOException {
+	if (channel.size() < BinaryModelWriter.HEADER_LENGTH) {
+	    throw new IllegalArgumentException("Not a binary model file");
+	}
+
+	ByteBuffer result = channel.map(FileChannel.MapMode.READ_ONLY, 0, BinaryModelWriter.HEADER_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+	if (result.getInt(0) != BinaryModelWriter.MAGIC) {
+	    throw new IllegalArgumentException("Not a binary model file");
+	}
+
+	int version = result.getInt(4);
+	if (version != BinaryModelWriter.VERSION) {
+	    throw new IllegalArgumentException("Unsupported binary model version " + version);
+	}
+
+	return result;
+    }
+
+    private static DataInputStream structure(FileChannel channel, ByteBuffer header) throws IOException {
+	byte[] structure = new byte[(int) header.getLong(8)];
+	channel.map(FileChannel.MapMode.READ_ONLY, BinaryModelWriter.HEADER_LENGTH, structure.length).get(structure);
+	return new DataInputStream(new ByteArrayInputStream(structure));
+    }
+
+    /**
+     * @return type, input layer, output layer and the type specific dimensions
+     */
+    private static int[] connectionDescriptor(DataInputStream in) throws IOException {
+	byte type = in.readByte();
+	int additional = type == BinaryModelWriter.FULLY_CONNECTED ? 0 : type == BinaryModelWriter.CONV_2D ? 3 : type == BinaryModelWriter.SUBSAMPLING_2D ? 5 : -1;
+	if (additional == -1) {
+	    throw new IllegalArgumentException("Unknown connection type " + type);
+	}
+
+	int[] result = new int[3 + additional];
+	result[0] = type;
+	for (int i = 1; i < result.length; i++) {
+	    result[i] = in.readInt();
+	}
+
+	return result;
+    }
+
+    /**
+     * @return block index, offset and dimensions
+     */
+    private static int[] tensorDescriptor(DataInputStream in) throws IOException {
+	int block = in.readInt();
+	int offset = in.readInt();
+	int[] result = new int[2 + in.readInt()];
+	result[0] = block;
+	result[1] = offset;
+	for (int i = 2; i < result.length; i++) {
+	    result[i] = in.readInt();
+	}
+
+	return result;
+    }
+
+    private static int[] dimensions(int[] tensorDescriptor) {
+	return Arrays.copyOfRange(tensorDescriptor, 2, tensorDescriptor.length);
+    }
+
+    /**
+     * Maps the region of the file and bulk copies it to the target array
+     */
+    private static void read(FileChannel channel, long position, float[] target, int offset, int length) throws IOException {
+	if (length > 0) {
+	    MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, position, 4l * length);
+	    mapped.order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer().get(target, offset, length);
+	}
+    }
+}
@@ -0,0 +1,197 @@
+package com.github.neuralnetworks.architecture;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.github.neuralnetworks.tensor.Tensor;
+import com.github.neuralnetworks.util.Util;
+
+/**
+ * Writes neural networks in a compact versioned binary format (read by BinaryModelLoader).
+ * Layout:
+ * header (HEADER_LENGTH bytes, little endian) - magic, version, structure length, data offset, data length
+ * structure (java.io.DataOutput) - layers count, connections (type, layers, dimensions, weights descriptor), weight blocks, serialized network properties (layer calculator and so on)
+ * data (little endian) - raw float weight blocks, each aligned to ALIGNMENT bytes, so that they can be memory mapped
+ */
+public class BinaryModelWriter {
+
+    public static final int MAGIC = 0x4E4E4D46;
+    public static final int VERSION = 1;
+    public static final int HEADER_LENGTH = 64;
+    public static final int ALIGNMENT = 64;
+
+    static final byte FULLY_CONNECTED = 1;
+    static final byte CONV_2D = 2;
+    static final byte SUBSAMPLING_2D = 3;
+
+    /**
+     * @param nn
+     * @param file
+     * @return number of bytes written
+     */
+    public static long write(NeuralNetworkImpl nn, File file) throws IOException {
+	List<Layer> layers = new ArrayList<>(nn.getLayers());
+	List<Connections> connections = nn.getConnections();
+	Map<Layer, Integer> layerIndexes = new IdentityHashMap<>();
+	for (int i = 0; i < layers.size(); i++) {
+	    layerIndexes.put(layers.get(i), i);
+	}
+
+	// weight blocks - tensors, that share the same elements array are written as a single block
+	List<float[]> blocks = new ArrayList<>();
+	Map<float[], Integer> blockIndexes = new IdentityHashMap<>();
+	List<Tensor> tensors = new ArrayList<>();
+	List<int[]> tensorLocations = new ArrayList<>();
+	for (Connections c : connections) {
+	    if (c instanceof WeightsConnections) {
+		Tensor t = ((WeightsConnections) c).getWeights();
+		float[] block = t.getElements();
+		int offset = t.getStartIndex();
+		if (t.getEndIndex() - offset + 1 != t.getSize()) {
+		    // not contiguous - copy to a dense block
+		    block = new float[t.getSize()];
+		    int i = 0;
+		    Tensor.TensorIterator it = t.iterator();
+		    while (it.hasNext()) {
+			block[i++] = t.getElements()[it.next()];
+		    }
+
+		    offset = 0;
+		}
+
+		Integer index = blockIndexes.get(block);
+		if (index == null) {
+		    blockIndexes.put(block, index = blocks.size());
+		    blocks.add(block);
+		}
+
+		tensors.add(t);
+		tensorLocations.add(new int[] { index, offset });
+	    }
+	}
+
+	long[] blockOffsets = new long[blocks.size()];
+	long dataLength = 0;
+	for (int i = 0; i < blocks.size(); i++) {
+	    blockOffsets[i] = dataLength;
+	    dataLength = align(dataLength + 4l * blocks.get(i).length);
+	}
+
+	// structure
+	ByteArrayOutputStream bos = new ByteArrayOutputStream();
+	DataOutputStream out = new DataOutputStream(bos);
+	out.writeInt(layers.size());
+	out.writeInt(connections.size());
+	for (int i = 0, t = 0; i < connections.size(); i++) {
+	    Connections c = connections.get(i);
+	    Integer input = layerIndexes.get(c.getInputLayer());
+	    Integer output = layerIndexes.get(c.getOutputLayer());
+	    if (c instanceof FullyConnected) {
+		out.writeByte(FULLY_CONNECTED);
+		out.writeInt(input);
+		out.writeInt(output);
+	    } else if (c instanceof Conv2DConnection) {
+		Conv2DConnection cc = (Conv2DConnection) c;
+		out.writeByte(CONV_2D);
+		out.writeInt(input);
+		out.writeInt(output);
+		out.writeInt(cc.getInputFeatureMapRows());
+		out.writeInt(cc.getInputFeatureMapColumns());
+		out.writeInt(cc.getStride());
+	    } else if (c instanceof Subsampling2DConnection) {
+		Subsampling2DConnection sc = (Subsampling2DConnection) c;
+		out.writeByte(SUBSAMPLING_2D);
+		out.writeInt(input);
+		out.writeInt(output);
+		out.writeInt(sc.getInputFeatureMapRows());
+		out.writeInt(sc.getInputFeatureMapColumns());
+		out.writeInt(sc.getSubsamplingRegionRows());
+		out.writeInt(sc.getSubsamplingRegionCols());
+		out.writeInt(sc.getFilters());
+	    } else {
+		throw new IllegalArgumentException("Unsupported connection type " + c.getClass().getName());
+	    }
+
+	    if (c instanceof WeightsConnections) {
+		int[] location = tensorLocations.get(t);
+		int[] dimensions = tensors.get(t++).getDimensions();
+		out.writeInt(location[0]);
+		out.writeInt(location[1]);
+		out.writeInt(dimensions.length);
+		for (int d : dimensions) {
+		    out.writeInt(d);
+		}
+	    }
+	}
+
+	out.writeInt(blocks.size());
+	for (int i = 0; i < blocks.size(); i++) {
+	    out.writeLong(blockOffsets[i]);
+	    out.writeInt(blocks.get(i).length);
+	}
+
+	byte[] properties = nn.getProperties() != null ? Util.serialize(nn.getProperties(), sharedObjects(nn, layers, connections, tensors, blocks)) : new byte[0];
+	out.writeInt(properties.length);
+	out.write(properties);
+	out.flush();
+
+	byte[] structure = bos.toByteArray();
+	long dataOffset = align(HEADER_LENGTH + structure.length);
+	long length = dataOffset + dataLength;
+
+	try (RandomAccessFile raf = new RandomAccessFile(file, "rw"); FileChannel channel = raf.getChannel()) {
+	    raf.setLength(length);
+
+	    ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+	    header.putInt(MAGIC);
+	    header.putInt(VERSION);
+	    header.putLong(structure.length);
+	    header.putLong(dataOffset);
+	    header.putLong(dataLength);
+	    header.rewind();
+	    channel.write(header, 0);
+	    channel.write(ByteBuffer.wrap(structure), HEADER_LENGTH);
+
+	    for (int i = 0; i < blocks.size(); i++) {
+		float[] block = blocks.get(i);
+		if (block.length > 0) {
+		    MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, dataOffset + blockOffsets[i], 4l * block.length);
+		    FloatBuffer fb = mapped.order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+		    fb.put(block);
+		    mapped.force();
+		}
+	    }
+	}
+
+	return length;
+    }
+
+    /**
+     * @return objects, that are stored in the binary format and are only referenced by the serialized properties
+     */
+    static List<Object> sharedObjects(NeuralNetwork nn, List<Layer> layers, List<Connections> connections, List<Tensor> tensors, List<float[]> blocks) {
+	List<Object> result = new ArrayList<>();
+	result.add(nn);
+	result.addAll(layers);
+	result.addAll(connections);
+	result.addAll(tensors);
+	result.addAll(blocks);
+	return result;
+    }
+
+    static long align(long position) {
+	return (position + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+    }
+}
@@ -26,7 +26,6 @@ import com.github.neuralnetworks.calculation.neuronfunctions.AparapiTanh;
 import com.github.neuralnetworks.calculation.neuronfunctions.AparapiWeightedSumConnectionCalculator;
 import com.github.neuralnetworks.calculation.neuronfunctions.ConnectionCalculatorConv;
 import com.github.neuralnetworks.calculation.neuronfunctions.ConstantConnectionCalculator;
-import com.github.neuralnetworks.calculation.neuronfunctions.MaxoutWinners;
 import com.github.neuralnetworks.util.Constants;
 import com.github.neuralnetworks.util.Properties;
 import com.github.neuralnetworks.util.Util;
@@ -350,10 +349,6 @@ public class NNFactory {
     public static NeuralNetworkImpl maxout(int[] layers, boolean addBias, ConnectionCalculator outputCC) {
 	NeuralNetworkImpl result = mlp(layers, addBias);
 	result.setLayerCalculator(lcMaxout(result, outputCC));
-	result.getConnections().stream().filter(c -> c instanceof FullyConnected).forEach(c -> {
-	    MaxoutWinners.getInstance().addConnections(c);
-	});
-
 	return result;
     }
 
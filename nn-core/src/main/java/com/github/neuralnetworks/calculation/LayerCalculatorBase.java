@@ -41,6 +41,7 @@ public class LayerCalculatorBase implements Serializable {
 			Tensor t = TensorFactory.tensor(c.target, chunk, valuesProvider);
 			float[] elements = t.getElements();
 			IntStream.range(t.getStartIndex(), t.getStartIndex() + t.getSize()).forEach(j -> elements[j] = 0);
+			beforeCalculate(chunk, valuesProvider, c.target);
 			cc.calculate(chunk, valuesProvider, c.target);
 		    }
 
@@ -52,6 +53,12 @@ public class LayerCalculatorBase implements Serializable {
 	}
     }
 
+    /**
+     * Called before the connections to the target layer are calculated
+     */
+    protected void beforeCalculate(List<Connections> connections, ValuesProvider valuesProvider, Layer targetLayer) {
+    }
+
     public void addConnectionCalculator(Layer layer, ConnectionCalculator calculator) {
 	calculators.put(layer, calculator);
     }
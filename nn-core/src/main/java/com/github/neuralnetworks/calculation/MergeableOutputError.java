@@ -0,0 +1,13 @@
+package com.github.neuralnetworks.calculation;
+
+/**
+ * Output error, which can be calculated in parts (for example by parallel testing of shards of the test data) and merged afterwards.
+ * Merging the parts in the order of the samples must give the same result as adding all the items to a single instance
+ */
+public interface MergeableOutputError extends OutputError {
+
+    /**
+     * Adds the items of the other output error (of the same type) to this one
+     */
+    public void merge(OutputError other);
+}
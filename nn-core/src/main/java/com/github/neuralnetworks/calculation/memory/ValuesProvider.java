@@ -121,6 +121,21 @@ public class ValuesProvider implements Serializable {
     	set.add(newTensor);
     }
 
+    /**
+     * Add an existing tensor (for example a view of a buffer, which is shared with other tensors)
+     * @param key
+     * @param tensor
+     */
+    public void add(Object key, Tensor tensor) {
+	List<Tensor> set = values.get(key);
+	if (set == null) {
+	    values.put(key, set = new UniqueList<Tensor>());
+	}
+
+	tensors.add(tensor);
+	set.add(tensor);
+    }
+
     public Set<Tensor> getTensors() {
         return tensors;
     }
@@ -16,7 +16,7 @@ public class AparapiAveragePooling2D implements ConnectionCalculator {
 
     private static final long serialVersionUID = 8165829315701496713L;
 
-    private AparapiAveragePooling2DCC cc;
+    private transient AparapiAveragePooling2DCC cc;
 
     @Override
     public void calculate(List<Connections> connections, ValuesProvider valuesProvider, Layer targetLayer) {
@@ -15,7 +15,7 @@ public class AparapiMaxPooling2D implements ConnectionCalculator {
 
     private static final long serialVersionUID = 8165829315701496713L;
 
-    private AparapiMaxPooling2DCC cc;
+    private transient AparapiMaxPooling2DCC cc;
 
     @Override
     public void calculate(List<Connections> connections, ValuesProvider valuesProvider, Layer targetLayer) {
@@ -15,9 +15,22 @@ public class AparapiMaxout extends ConnectionCalculatorFullyConnected {
 
     private static final long serialVersionUID = -6602713983386107132L;
 
+    /**
+     * Winners of the feedforward phase (not serialized, so that each copy of the calculator has it's own)
+     */
+    private transient MaxoutWinners maxoutWinners;
+
     @Override
     protected ConnectionCalculator createInputFunction(List<Connections> inputConnections, ValuesProvider valuesProvider, Layer targetLayer) {
-	return new AparapiMaxoutFunction(inputConnections, valuesProvider, targetLayer);
+	return new AparapiMaxoutFunction(inputConnections, valuesProvider, targetLayer, getMaxoutWinners());
+    }
+
+    public MaxoutWinners getMaxoutWinners() {
+	if (maxoutWinners == null) {
+	    maxoutWinners = new MaxoutWinners();
+	}
+
+	return maxoutWinners;
     }
 
     public static class AparapiMaxoutFunction extends AparapiFullyConnected {
@@ -27,11 +40,11 @@ public class AparapiMaxout extends ConnectionCalculatorFullyConnected {
 	private final int[] winnersStartPositions;
 	private final int[] maxoutWinners;
 
-	public AparapiMaxoutFunction(List<Connections> inputConnections, ValuesProvider valuesProvider, Layer targetLayer) {
+	public AparapiMaxoutFunction(List<Connections> inputConnections, ValuesProvider valuesProvider, Layer targetLayer, MaxoutWinners winners) {
 	    super(inputConnections, valuesProvider, targetLayer);
-	    MaxoutWinners.getInstance().setBatchSize(TensorFactory.batchSize(valuesProvider));
-	    winnersStartPositions = MaxoutWinners.getInstance().getStartPositions(inputConnections);
-	    maxoutWinners = MaxoutWinners.getInstance().getWinners();
+	    winners.setBatchSize(TensorFactory.batchSize(valuesProvider));
+	    winnersStartPositions = winners.getStartPositions(inputConnections);
+	    maxoutWinners = winners.getWinners();
 	}
 
 	@Override
@@ -1,12 +1,13 @@
 package com.github.neuralnetworks.calculation.neuronfunctions;
 
 import com.github.neuralnetworks.tensor.Tensor;
-import com.github.neuralnetworks.training.random.XORShiftKernel;
+import com.github.neuralnetworks.training.random.PhiloxKernel;
 
 /**
- * Random noise
+ * Random noise (dropout and corruption of the input of denoising autoencoders)
+ * Uses the counter based PhiloxKernel, so the state doesn't depend on the size of the tensor and the noise is reproducible for a given seed
  */
-public class AparapiNoise extends XORShiftKernel implements TensorFunction {
+public class AparapiNoise extends PhiloxKernel implements TensorFunction {
 
     private static final long serialVersionUID = 1L;
 
@@ -15,14 +16,19 @@ public class AparapiNoise extends XORShiftKernel implements TensorFunction {
     private float[] inputOutput;
     private final float corruptedValue;
 
-    public AparapiNoise(Tensor inputOutput, int maximumRange, float corruptionLevel, float corruptedValue) {
-	super(maximumRange);
+    public AparapiNoise(Tensor inputOutput, float corruptionLevel, float corruptedValue) {
+	super();
 	this.inputOutput = inputOutput.getElements();
 	this.startIndex = inputOutput.getStartIndex();
 	this.corruptionLevel = corruptionLevel;
 	this.corruptedValue = corruptedValue;
     }
 
+    public AparapiNoise(Tensor inputOutput, float corruptionLevel, float corruptedValue, long seed) {
+	this(inputOutput, corruptionLevel, corruptedValue);
+	setSeed(seed);
+    }
+
     @Override
     public void value(Tensor inputOutput) {
 	if (inputOutput.getElements() != this.inputOutput) {
@@ -34,12 +40,13 @@ public class AparapiNoise extends XORShiftKernel implements TensorFunction {
 	}
 
 	execute(inputOutput.getSize());
+	nextOffset();
     }
 
     @Override
     public void run() {
 	int id = getGlobalId();
-	if (random01() < corruptionLevel) {
+	if (random01(0) < corruptionLevel) {
 	    inputOutput[startIndex + id] = corruptedValue;
 	}
     }
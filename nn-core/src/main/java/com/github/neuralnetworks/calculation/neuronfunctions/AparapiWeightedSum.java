@@ -29,6 +29,11 @@ public class AparapiWeightedSum extends AparapiFullyConnected implements Connect
 
     @Override
     public void run() {
+	weightedSum();
+	after();
+    }
+
+    protected void weightedSum() {
 	int id = getGlobalId();
 
 	int inputStartPosition = 0, inputRowsStep = 0, inputColumnsStep = 0, weightStartPosition = 0, weightStep = 0, dim = 0;
@@ -54,8 +59,6 @@ public class AparapiWeightedSum extends AparapiFullyConnected implements Connect
 
 	    output[outputStartPosition + id * outputRowStep + i * outputColumnStep] = value;
 	}
-
-	after();
     }
 
     protected void after() {
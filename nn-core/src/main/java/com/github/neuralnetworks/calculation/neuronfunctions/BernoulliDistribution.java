@@ -1,45 +1,49 @@
 package com.github.neuralnetworks.calculation.neuronfunctions;
 
-import java.util.HashMap;
-import java.util.Map;
-
 import com.github.neuralnetworks.tensor.Tensor;
-import com.github.neuralnetworks.training.random.XORShiftKernel;
+import com.github.neuralnetworks.training.random.PhiloxKernel;
 import com.github.neuralnetworks.util.Environment;
 
 /**
  * Bernoulli distribution
+ * One counter based kernel (PhiloxKernel) is used for tensors of all sizes
  */
 public class BernoulliDistribution implements TensorFunction {
 
     private static final long serialVersionUID = 1L;
 
-    protected Map<Integer, BernoulliKernel> kernels = new HashMap<>();
+    protected BernoulliKernel kernel;
+
+    public BernoulliDistribution() {
+	super();
+	this.kernel = new BernoulliKernel();
+    }
+
+    public BernoulliDistribution(long seed) {
+	this();
+	kernel.setSeed(seed);
+    }
 
     @Override
     public void value(Tensor inputOutput) {
-	BernoulliKernel kernel = kernels.get(inputOutput.getElements().length);
-	if (kernel == null) {
-	    kernels.put(inputOutput.getElements().length, kernel = new BernoulliKernel(inputOutput.getElements().length));
-	}
-
 	kernel.values = inputOutput.getElements();
+	kernel.startIndex = inputOutput.getStartIndex();
 
-	Environment.getInstance().getExecutionStrategy().execute(kernel, inputOutput.getElements().length);
+	Environment.getInstance().getExecutionStrategy().execute(kernel, inputOutput.getSize());
+	kernel.nextOffset();
     }
 
-    private static class BernoulliKernel extends XORShiftKernel {
+    protected static class BernoulliKernel extends PhiloxKernel {
 
-	private float[] values;
+	private static final long serialVersionUID = 1L;
 
-	public BernoulliKernel(int maximumRange) {
-	    super(maximumRange);
-	}
+	private float[] values;
+	private int startIndex;
 
 	@Override
 	public void run() {
-	    int id = getGlobalId();
-	    if (values[id] > random01()) {
+	    int id = startIndex + getGlobalId();
+	    if (values[id] > random01(0)) {
 		values[id] = 1;
 	    } else {
 		values[id] = 0;
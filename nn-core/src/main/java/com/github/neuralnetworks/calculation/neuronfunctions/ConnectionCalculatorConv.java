@@ -19,7 +19,7 @@ public class ConnectionCalculatorConv implements ConnectionCalculator {
 
     private static final long serialVersionUID = -5405654469496055017L;
 
-    protected AparapiConv2D inputFunction;
+    protected transient AparapiConv2D inputFunction;
     protected Layer currentLayer;
     protected int miniBatchSize;
 
@@ -37,7 +37,10 @@ public class ConnectionCalculatorFullyConnected implements ConnectionCalculator,
 
     private static final long serialVersionUID = -5405654469496055017L;
 
-    protected Set<ConnectionCalculator> inputFunctions;
+    /**
+     * Kernels bound to specific values providers (not serialized)
+     */
+    protected transient Set<ConnectionCalculator> inputFunctions;
     protected int miniBatchSize;
 
     /**
@@ -54,11 +57,10 @@ public class ConnectionCalculatorFullyConnected implements ConnectionCalculator,
      * Dropout properties
      */
     protected float dropoutRate;
-    protected TensorFunction dropoutFunction;
+    protected transient TensorFunction dropoutFunction;
 
     public ConnectionCalculatorFullyConnected() {
 	super();
-	inputFunctions = new HashSet<>();
     }
 
     @Override
@@ -144,6 +146,10 @@ public class ConnectionCalculatorFullyConnected implements ConnectionCalculator,
     }
 
     public void setDropoutRate(float dropoutRate) {
+        if (dropoutRate != this.dropoutRate) {
+            dropoutFunction = null;
+        }
+
         this.dropoutRate = dropoutRate;
     }
 
@@ -178,14 +184,31 @@ public class ConnectionCalculatorFullyConnected implements ConnectionCalculator,
     }
 
     protected TensorFunction createDropoutFunction(List<Connections> inputConnections, ValuesProvider valuesProvider, Layer targetLayer) {
-	Tensor t = TensorFactory.tensor(targetLayer, inputConnections, valuesProvider);
-	return new AparapiNoise(t, t.getSize(), dropoutRate, 0);
+	return new InvertedDropout(dropoutRate);
+    }
+
+    /**
+     * @return the dropout function of the last calculation (null if there is no dropout)
+     */
+    public TensorFunction getDropoutFunction() {
+	return dropoutRate > 0 ? dropoutFunction : null;
+    }
+
+    /**
+     * @param dropoutFunction - used instead of the one of createDropoutFunction (for example by the trainers, which save its state)
+     */
+    public void setDropoutFunction(TensorFunction dropoutFunction) {
+	this.dropoutFunction = dropoutFunction;
     }
 
     private ConnectionCalculator getConnectionCalculator(List<Connections> connections, ValuesProvider valuesProvider, Layer targetLayer) {
+	if (inputFunctions == null) {
+	    inputFunctions = new HashSet<>();
+	}
+
 	ConnectionCalculator result = inputFunctions.stream().filter(c -> {
 	    return !(c instanceof AparapiFullyConnected) || ((AparapiFullyConnected) c).accept(connections, valuesProvider, targetLayer);
-	}).findFirst().orElse(createInputFunction(connections, valuesProvider, targetLayer));
+	}).findFirst().orElseGet(() -> createInputFunction(connections, valuesProvider, targetLayer));
 	inputFunctions.add(result);
 
 	return result;
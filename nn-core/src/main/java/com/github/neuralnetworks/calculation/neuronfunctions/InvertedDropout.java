@@ -0,0 +1,97 @@
+package com.github.neuralnetworks.calculation.neuronfunctions;
+
+import com.github.neuralnetworks.tensor.Tensor;
+import com.github.neuralnetworks.training.random.PhiloxKernel;
+
+/**
+ * Inverted dropout: each value is dropped (set to 0) with probability rate and the kept values are multiplied by 1 / (1 - rate) during the training, so the network needs no rescaling for inference.
+ * The kept values are stored in a bit packed mask (1 bit per value, bit i of the mask is the i-th element of the tensor starting from its start index), which is used by the backpropagation to zero the gradients of the dropped values.
+ * Each work item handles the 32 values of one word of the mask
+ */
+public class InvertedDropout extends PhiloxKernel implements TensorFunction {
+
+    private static final long serialVersionUID = 1L;
+
+    private final float rate;
+    private final float scale;
+    private float[] values;
+    private int startIndex;
+    private int size;
+    private int[] mask;
+
+    public InvertedDropout(float rate) {
+	super();
+
+	if (rate <= 0 || rate >= 1) {
+	    throw new IllegalArgumentException("The dropout rate must be between 0 and 1");
+	}
+
+	this.rate = rate;
+	this.scale = 1 / (1 - rate);
+	this.mask = new int[1];
+    }
+
+    public InvertedDropout(float rate, long seed) {
+	this(rate);
+	setSeed(seed);
+    }
+
+    @Override
+    public void value(Tensor inputOutput) {
+	values = inputOutput.getElements();
+	startIndex = inputOutput.getStartIndex();
+	size = inputOutput.getSize();
+
+	int words = (size + 31) / 32;
+	if (mask.length != words) {
+	    mask = new int[words];
+	}
+
+	execute(words);
+	nextOffset();
+    }
+
+    @Override
+    public void run() {
+	int word = getGlobalId();
+	int bits = 0;
+	for (int b = 0; b < 32; b++) {
+	    int i = word * 32 + b;
+	    if (i < size) {
+		if (random01(b) >= rate) {
+		    values[startIndex + i] = values[startIndex + i] * scale;
+		    bits |= 1 << b;
+		} else {
+		    values[startIndex + i] = 0;
+		}
+	    }
+	}
+
+	mask[word] = bits;
+    }
+
+    /**
+     * @return whether the value at the position (relative to the start index of the tensor) was kept by the last execution
+     */
+    public boolean isKept(int position) {
+	return ((mask[position >> 5] >>> (position & 31)) & 1) == 1;
+    }
+
+    public float getRate() {
+	return rate;
+    }
+
+    /**
+     * @return the multiplier of the kept values (1 / (1 - rate))
+     */
+    public float getScale() {
+	return scale;
+    }
+
+    /**
+     * @return the bit packed mask of the last execution
+     */
+    public int[] getMask() {
+	return mask;
+    }
+}
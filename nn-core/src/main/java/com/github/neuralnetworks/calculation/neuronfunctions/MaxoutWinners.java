@@ -1,7 +1,6 @@
 package com.github.neuralnetworks.calculation.neuronfunctions;
 
 import java.io.Serializable;
-import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -10,19 +9,18 @@ import java.util.stream.IntStream;
 import com.github.neuralnetworks.architecture.Connections;
 
 /**
- * Singleton that stores all maxout winners for the backpropagation phase
+ * Stores the maxout winners of the feedforward phase for the backpropagation phase
+ * Each maxout connection calculator has it's own instance (see AparapiMaxout.getMaxoutWinners()), so different networks and copies of the same calculator don't share the winners
  */
 public class MaxoutWinners implements Serializable {
 
     private static final long serialVersionUID = 1L;
 
-    private static MaxoutWinners singleton = new MaxoutWinners();
-
     private Map<Connections, Integer> startPositions;
     private int[] winners;
     private int batchSize;
 
-    private MaxoutWinners() {
+    public MaxoutWinners() {
 	startPositions = new HashMap<>();
 	winners = new int[0];
     }
@@ -34,8 +32,8 @@ public class MaxoutWinners implements Serializable {
     public void setBatchSize(int batchSize) {
 	if (batchSize != this.batchSize) {
 	    this.batchSize = batchSize;
+	    this.startPositions.clear();
 	    this.winners = new int[0];
-	    addConnections(startPositions.keySet().toArray(new Connections[0]));
 	}
     }
 
@@ -43,20 +41,27 @@ public class MaxoutWinners implements Serializable {
 	return winners;
     }
 
-    public void addConnections(Connections... connections) {
-	IntStream.range(0, connections.length).forEach(i -> {
-	    startPositions.put(connections[i], winners.length);
-	    winners = Arrays.copyOf(winners, winners.length + connections[i].getOutputUnitCount() * batchSize);
-	});
-    }
-
+    /**
+     * Space in the winners array is allocated for the connections, which are not yet part of it
+     * @return the start positions of the connections in the winners array
+     */
     public int[] getStartPositions(List<Connections> connections) {
+	int length = winners.length;
+	for (Connections c : connections) {
+	    if (!startPositions.containsKey(c)) {
+		startPositions.put(c, length);
+		length += c.getOutputUnitCount() * batchSize;
+	    }
+	}
+
+	if (length != winners.length) {
+	    int[] newWinners = new int[length];
+	    System.arraycopy(winners, 0, newWinners, 0, winners.length);
+	    winners = newWinners;
+	}
+
 	int[] result = new int[connections.size()];
 	IntStream.range(0, connections.size()).forEach(i -> result[i] = startPositions.get(connections.get(i)));
 	return result;
     }
-
-    public static MaxoutWinners getInstance() {
-	return singleton;
-    }
 }
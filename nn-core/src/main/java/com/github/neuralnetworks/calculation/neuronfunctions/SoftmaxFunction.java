@@ -12,7 +12,7 @@ public class SoftmaxFunction extends Kernel implements TensorFunction {
 
     private static final long serialVersionUID = 1L;
 
-    private float[] values;
+    private transient float[] values;
     private int startIndex;
     private int nextRowStep;
     private int nextColumnStep;
@@ -0,0 +1,256 @@
+package com.github.neuralnetworks.inference;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.github.neuralnetworks.tensor.Tensor;
+import com.github.neuralnetworks.tensor.TensorFactory;
+import com.github.neuralnetworks.training.TrainingInputDataImpl;
+import com.github.neuralnetworks.training.TrainingInputProvider;
+
+/**
+ * Offline scoring of all the samples of an input provider.
+ * The read (input provider), compute (forward propagation) and write (ScoringOutput) stages run in separate threads and are connected with bounded queues, so that I/O overlaps the calculations.
+ * The batches are recycled, so the memory usage doesn't depend on the number of records.
+ */
+public class BatchScoringPipeline {
+
+    private final Predictor predictor;
+    private final int computeThreads;
+    private final int queueCapacity;
+    private volatile Throwable failure;
+
+    /**
+     * @param predictor - provides the inference contexts (and the batch size)
+     * @param computeThreads - number of parallel forward propagations
+     * @param queueCapacity - number of batches, which can wait between two stages
+     */
+    public BatchScoringPipeline(Predictor predictor, int computeThreads, int queueCapacity) {
+	super();
+
+	if (computeThreads < 1 || queueCapacity < 1) {
+	    throw new IllegalArgumentException("computeThreads and queueCapacity must be positive");
+	}
+
+	this.predictor = predictor;
+	this.computeThreads = computeThreads;
+	this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * Scores all the samples of the input provider. The output is written from the calling thread and is closed at the end
+     * 
+     * @param input
+     * @param output
+     * @return statistics
+     */
+    public ScoringReport score(TrainingInputProvider input, ScoringOutput output) throws IOException {
+	failure = null;
+	long start = System.nanoTime();
+	int batchSize = predictor.getBatchSize();
+	int records = input.getInputSize();
+	int batches = (records + batchSize - 1) / batchSize;
+
+	BlockingQueue<Batch> free = new ArrayBlockingQueue<>(2 * queueCapacity + computeThreads);
+	BlockingQueue<Batch> read = new ArrayBlockingQueue<>(queueCapacity);
+	BlockingQueue<Batch> computed = new ArrayBlockingQueue<>(queueCapacity);
+
+	List<InferenceContext> contexts = new ArrayList<>();
+	try {
+	    for (int i = 0; i < computeThreads; i++) {
+		contexts.add(predictor.acquire());
+	    }
+
+	    InferenceContext first = contexts.get(0);
+	    for (int i = 0; i < 2 * queueCapacity + computeThreads; i++) {
+		free.add(new Batch(TensorFactory.tensor(first.getInput().getDimensions()), batchSize, first.getOutputSize()));
+	    }
+
+	    AtomicLong readTime = new AtomicLong(), readStall = new AtomicLong();
+	    AtomicLong computeTime = new AtomicLong(), computeStall = new AtomicLong();
+	    long writeTime = 0, writeStall = 0;
+
+	    List<Thread> threads = new ArrayList<>();
+
+	    // read
+	    threads.add(new Thread(() -> {
+		input.reset();
+		TrainingInputDataImpl data = new TrainingInputDataImpl();
+		for (int i = 0; i < batches && failure == null; i++) {
+		    long t = System.nanoTime();
+		    Batch b = take(free);
+		    long t1 = System.nanoTime();
+		    data.setInput(b.input);
+		    input.populateNext(data);
+		    b.sequence = i;
+		    b.count = Math.min(batchSize, records - i * batchSize);
+		    long t2 = System.nanoTime();
+		    put(read, b);
+		    readStall.addAndGet(t1 - t + System.nanoTime() - t2);
+		    readTime.addAndGet(t2 - t1);
+		}
+	    }, "scoring-read"));
+
+	    // compute
+	    int[] remaining = new int[] { batches };
+	    for (InferenceContext ctx : contexts) {
+		threads.add(new Thread(() -> {
+		    while (failure == null) {
+			long t = System.nanoTime();
+			Batch b;
+			synchronized (remaining) {
+			    if (remaining[0] == 0) {
+				break;
+			    }
+			    remaining[0]--;
+			}
+
+			b = take(read);
+			long t1 = System.nanoTime();
+			if (b == null) {
+			    break;
+			}
+
+			TensorFactory.copy(b.input, ctx.getInput());
+			ctx.propagate();
+			b.readOutput(ctx);
+			long t2 = System.nanoTime();
+			put(computed, b);
+			computeStall.addAndGet(t1 - t + System.nanoTime() - t2);
+			computeTime.addAndGet(t2 - t1);
+		    }
+		}, "scoring-compute-" + threads.size()));
+	    }
+
+	    threads.forEach(t -> {
+		t.setDaemon(true);
+		t.setUncaughtExceptionHandler((th, e) -> failure = e);
+		t.start();
+	    });
+
+	    // write (the batches may arrive out of order when there is more than one compute thread)
+	    Map<Integer, Batch> pending = new HashMap<>();
+	    try {
+		for (int next = 0; next < batches;) {
+		    Batch b = pending.remove(next);
+		    if (b == null) {
+			long t = System.nanoTime();
+			b = take(computed);
+			writeStall += System.nanoTime() - t;
+			if (b == null) {
+			    break;
+			}
+
+			if (b.sequence != next) {
+			    pending.put(b.sequence, b);
+			    continue;
+			}
+		    }
+
+		    long t = System.nanoTime();
+		    for (int i = 0; i < b.count; i++) {
+			output.write(b.outputs[i]);
+		    }
+		    writeTime += System.nanoTime() - t;
+
+		    next++;
+		    free.offer(b);
+		}
+	    } catch (IOException | RuntimeException e) {
+		failure = e;
+		throw e;
+	    } finally {
+		for (Thread t : threads) {
+		    try {
+			t.join();
+		    } catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		    }
+		}
+
+		output.close();
+	    }
+
+	    if (failure != null) {
+		throw new IllegalStateException("Scoring failed", failure);
+	    }
+
+	    return new ScoringReport(records, System.nanoTime() - start, readTime.get(), readStall.get(), computeTime.get(), computeStall.get(), writeTime, writeStall);
+	} finally {
+	    contexts.forEach(predictor::release);
+	}
+    }
+
+    public Predictor getPredictor() {
+	return predictor;
+    }
+
+    public int getComputeThreads() {
+	return computeThreads;
+    }
+
+    public int getQueueCapacity() {
+	return queueCapacity;
+    }
+
+    /**
+     * @return the next element or null, if the pipeline has failed
+     */
+    private Batch take(BlockingQueue<Batch> queue) {
+	try {
+	    Batch result = null;
+	    while (result == null && failure == null) {
+		result = queue.poll(100, TimeUnit.MILLISECONDS);
+	    }
+
+	    return result;
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	    throw new IllegalStateException(e);
+	}
+    }
+
+    private void put(BlockingQueue<Batch> queue, Batch batch) {
+	try {
+	    while (failure == null && !queue.offer(batch, 100, TimeUnit.MILLISECONDS));
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	    throw new IllegalStateException(e);
+	}
+    }
+
+    private static class Batch {
+
+	private final Tensor input;
+	private final float[][] outputs;
+	private int sequence;
+	private int count;
+
+	private Batch(Tensor input, int batchSize, int outputSize) {
+	    this.input = input;
+	    this.outputs = new float[batchSize][outputSize];
+	}
+
+	private void readOutput(InferenceContext ctx) {
+	    Tensor output = ctx.getOutput();
+	    float[] elements = output.getElements();
+	    int start = output.getStartIndex();
+	    int[] d = output.getDimensions();
+	    int columnStep = output.getDimensionElementsDistance(d.length - 1);
+	    int rowStep = output.getDimensionElementsDistance(d.length - 2);
+	    for (int i = 0; i < count; i++) {
+		float[] o = outputs[i];
+		for (int j = 0, id = start + i * columnStep; j < o.length; j++, id += rowStep) {
+		    o[j] = elements[id];
+		}
+	    }
+	}
+    }
+}
@@ -0,0 +1,49 @@
+package com.github.neuralnetworks.inference;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes the records using java.io.DataOutput. RAW - the output floats; ARGMAX - int index; TOP_K - k (int index, float value) pairs
+ */
+public class BinaryScoringOutput extends ScoringOutput {
+
+    private final DataOutputStream out;
+
+    public BinaryScoringOutput(File file, Mode mode, int k) throws IOException {
+	this(new FileOutputStream(file), mode, k);
+    }
+
+    public BinaryScoringOutput(OutputStream out, Mode mode, int k) {
+	super(mode, k);
+	this.out = new DataOutputStream(new BufferedOutputStream(out, 1 << 16));
+    }
+
+    @Override
+    protected void writeValues(float[] output) throws IOException {
+	for (float f : output) {
+	    out.writeFloat(f);
+	}
+    }
+
+    @Override
+    protected void writeIndexes(int[] indexes, float[] values, int count) throws IOException {
+	if (mode == Mode.ARGMAX) {
+	    out.writeInt(indexes[0]);
+	} else {
+	    for (int i = 0; i < count; i++) {
+		out.writeInt(indexes[i]);
+		out.writeFloat(values[i]);
+	    }
+	}
+    }
+
+    @Override
+    public void close() throws IOException {
+	out.close();
+    }
+}
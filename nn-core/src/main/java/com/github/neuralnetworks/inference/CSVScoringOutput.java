@@ -0,0 +1,63 @@
+package com.github.neuralnetworks.inference;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes one line per record. RAW - the comma separated outputs; ARGMAX - the index of the maximum output; TOP_K - comma separated index,value pairs
+ */
+public class CSVScoringOutput extends ScoringOutput {
+
+    private final Writer writer;
+    private final StringBuilder line;
+
+    public CSVScoringOutput(File file, Mode mode, int k) throws IOException {
+	this(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8), mode, k);
+    }
+
+    public CSVScoringOutput(Writer writer, Mode mode, int k) {
+	super(mode, k);
+	this.writer = writer instanceof BufferedWriter ? writer : new BufferedWriter(writer, 1 << 16);
+	this.line = new StringBuilder();
+    }
+
+    @Override
+    protected void writeValues(float[] output) throws IOException {
+	line.setLength(0);
+	for (int i = 0; i < output.length; i++) {
+	    if (i > 0) {
+		line.append(',');
+	    }
+	    line.append(output[i]);
+	}
+
+	writer.append(line).append('\n');
+    }
+
+    @Override
+    protected void writeIndexes(int[] indexes, float[] values, int count) throws IOException {
+	line.setLength(0);
+	if (mode == Mode.ARGMAX) {
+	    line.append(indexes[0]);
+	} else {
+	    for (int i = 0; i < count; i++) {
+		if (i > 0) {
+		    line.append(',');
+		}
+		line.append(indexes[i]).append(',').append(values[i]);
+	    }
+	}
+
+	writer.append(line).append('\n');
+    }
+
+    @Override
+    public void close() throws IOException {
+	writer.close();
+    }
+}
@@ -0,0 +1,166 @@
+package com.github.neuralnetworks.inference;
+
+import java.util.Set;
+
+import com.github.neuralnetworks.architecture.Layer;
+import com.github.neuralnetworks.architecture.NeuralNetwork;
+import com.github.neuralnetworks.calculation.ConnectionCalculator;
+import com.github.neuralnetworks.calculation.LayerCalculatorBase;
+import com.github.neuralnetworks.calculation.LayerCalculatorImpl;
+import com.github.neuralnetworks.calculation.memory.ValuesProvider;
+import com.github.neuralnetworks.tensor.Tensor;
+import com.github.neuralnetworks.tensor.TensorFactory;
+import com.github.neuralnetworks.util.UniqueList;
+import com.github.neuralnetworks.util.Util;
+
+/**
+ * Single threaded context for the feedforward calculation of a network.
+ * It has it's own activations and connection calculators (and therefore kernels), but shares the weights with the network.
+ * Different contexts of the same network can be used simultaneously from different threads.
+ */
+public class InferenceContext {
+
+    private final NeuralNetwork neuralNetwork;
+    private final LayerCalculatorImpl layerCalculator;
+    private final ValuesProvider results;
+    private final Set<Layer> calculatedLayers;
+    private final int batchSize;
+
+    /**
+     * input/output dense layout
+     */
+    private final Tensor input;
+    private final int inputStartIndex;
+    private final int inputRowStep;
+    private final int inputColumnStep;
+    private final int inputSize;
+    private final Tensor output;
+    private final int outputStartIndex;
+    private final int outputRowStep;
+    private final int outputColumnStep;
+    private final int outputSize;
+
+    /**
+     * @param neuralNetwork
+     * @param template - layer calculator, which connection calculators are copied
+     * @param batchSize
+     */
+    public InferenceContext(NeuralNetwork neuralNetwork, LayerCalculatorBase template, int batchSize, boolean useSharedMemory) {
+	super();
+	this.neuralNetwork = neuralNetwork;
+	this.batchSize = batchSize;
+	this.layerCalculator = copyCalculator(neuralNetwork, template);
+	this.results = TensorFactory.tensorProvider(neuralNetwork, batchSize, useSharedMemory);
+	this.calculatedLayers = new UniqueList<>();
+
+	this.input = results.get(neuralNetwork.getInputLayer());
+	int[] d = input.getDimensions();
+	this.inputStartIndex = input.getStartIndex();
+	this.inputColumnStep = input.getDimensionElementsDistance(d.length - 1);
+	this.inputRowStep = input.getDimensionElementsDistance(d.length - 2);
+	this.inputSize = input.getSize() / batchSize;
+
+	this.output = results.get(neuralNetwork.getOutputLayer());
+	d = output.getDimensions();
+	this.outputStartIndex = output.getStartIndex();
+	this.outputColumnStep = output.getDimensionElementsDistance(d.length - 1);
+	this.outputRowStep = output.getDimensionElementsDistance(d.length - 2);
+	this.outputSize = output.getSize() / batchSize;
+    }
+
+    /**
+     * Feedforward propagation of the current input
+     */
+    public void propagate() {
+	calculatedLayers.clear();
+	calculatedLayers.add(neuralNetwork.getInputLayer());
+	layerCalculator.calculate(neuralNetwork, neuralNetwork.getOutputLayer(), calculatedLayers, results);
+    }
+
+    /**
+     * Propagation of count samples (count &lt;= batchSize)
+     * 
+     * @param samples - each element is a single sample
+     * @param offset - position of the first sample
+     * @param count - number of samples
+     * @param outputs - network output for each sample
+     */
+    public void predict(float[][] samples, int offset, int count, float[][] outputs) {
+	if (count > batchSize) {
+	    throw new IllegalArgumentException("Sample count is larger than the batch size");
+	}
+
+	float[] in = input.getElements();
+	for (int i = 0; i < count; i++) {
+	    float[] s = samples[offset + i];
+	    if (s.length != inputSize) {
+		throw new IllegalArgumentException("Sample size doesn't match the input layer");
+	    }
+
+	    for (int j = 0, id = inputStartIndex + i * inputColumnStep; j < inputSize; j++, id += inputRowStep) {
+		in[id] = s[j];
+	    }
+	}
+
+	propagate();
+
+	float[] out = output.getElements();
+	for (int i = 0; i < count; i++) {
+	    float[] o = outputs[offset + i];
+	    if (o == null) {
+		o = outputs[offset + i] = new float[outputSize];
+	    }
+
+	    for (int j = 0, id = outputStartIndex + i * outputColumnStep; j < outputSize; j++, id += outputRowStep) {
+		o[j] = out[id];
+	    }
+	}
+    }
+
+    public NeuralNetwork getNeuralNetwork() {
+	return neuralNetwork;
+    }
+
+    public LayerCalculatorImpl getLayerCalculator() {
+	return layerCalculator;
+    }
+
+    public ValuesProvider getResults() {
+	return results;
+    }
+
+    public Tensor getInput() {
+	return input;
+    }
+
+    public Tensor getOutput() {
+	return output;
+    }
+
+    public int getBatchSize() {
+	return batchSize;
+    }
+
+    public int getInputSize() {
+	return inputSize;
+    }
+
+    public int getOutputSize() {
+	return outputSize;
+    }
+
+    /**
+     * @return copy of the connection calculators of the template, which share the network weights
+     */
+    private static LayerCalculatorImpl copyCalculator(NeuralNetwork neuralNetwork, LayerCalculatorBase template) {
+	LayerCalculatorImpl result = new LayerCalculatorImpl();
+	for (Layer l : neuralNetwork.getLayers()) {
+	    ConnectionCalculator cc = template.getConnectionCalculator(l);
+	    if (cc != null) {
+		result.addConnectionCalculator(l, Util.copy(cc, Util.networkObjects(neuralNetwork)));
+	    }
+	}
+
+	return result;
+    }
+}
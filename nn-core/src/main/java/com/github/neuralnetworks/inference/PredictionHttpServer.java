@@ -0,0 +1,112 @@
+package com.github.neuralnetworks.inference;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Minimal HTTP front end for a PredictionService (for local testing).
+ * POST /predict with comma separated input values returns the comma separated network output.
+ * GET /metrics returns the service statistics.
+ */
+public class PredictionHttpServer implements AutoCloseable {
+
+    private final PredictionService service;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    /**
+     * @param service
+     * @param port - 0 for any free port
+     * @param threads - number of threads handling http requests
+     */
+    public PredictionHttpServer(PredictionService service, int port, int threads) throws IOException {
+	super();
+	this.service = service;
+	this.executor = Executors.newFixedThreadPool(threads);
+	this.server = HttpServer.create(new InetSocketAddress("localhost", port), 0);
+	this.server.setExecutor(executor);
+	this.server.createContext("/predict", this::predict);
+	this.server.createContext("/metrics", this::metrics);
+	this.server.start();
+    }
+
+    public int getPort() {
+	return server.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+	server.stop(0);
+	executor.shutdown();
+    }
+
+    private void predict(HttpExchange exchange) throws IOException {
+	if (!"POST".equals(exchange.getRequestMethod())) {
+	    respond(exchange, 405, "POST required");
+	    return;
+	}
+
+	float[] sample;
+	try {
+	    String[] values = read(exchange.getRequestBody()).trim().split("[,\\s]+");
+	    sample = new float[values.length];
+	    for (int i = 0; i < values.length; i++) {
+		sample[i] = Float.parseFloat(values[i]);
+	    }
+	} catch (NumberFormatException e) {
+	    respond(exchange, 400, "Invalid input: " + e.getMessage());
+	    return;
+	}
+
+	try {
+	    float[] output = service.submit(sample).get();
+	    StringBuilder sb = new StringBuilder();
+	    for (int i = 0; i < output.length; i++) {
+		if (i > 0) {
+		    sb.append(',');
+		}
+		sb.append(output[i]);
+	    }
+
+	    respond(exchange, 200, sb.toString());
+	} catch (ExecutionException e) {
+	    respond(exchange, e.getCause() instanceof IllegalArgumentException ? 400 : 500, String.valueOf(e.getCause().getMessage()));
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	    respond(exchange, 503, "Interrupted");
+	}
+    }
+
+    private void metrics(HttpExchange exchange) throws IOException {
+	respond(exchange, 200, service.getMetrics().toString());
+    }
+
+    private static String read(InputStream in) throws IOException {
+	ByteArrayOutputStream out = new ByteArrayOutputStream();
+	byte[] buffer = new byte[4096];
+	for (int n; (n = in.read(buffer)) != -1;) {
+	    out.write(buffer, 0, n);
+	}
+
+	return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static void respond(HttpExchange exchange, int code, String body) throws IOException {
+	byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+	exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+	exchange.sendResponseHeaders(code, bytes.length);
+	try (OutputStream out = exchange.getResponseBody()) {
+	    out.write(bytes);
+	}
+    }
+}
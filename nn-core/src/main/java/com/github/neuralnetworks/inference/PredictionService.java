@@ -0,0 +1,184 @@
+package com.github.neuralnetworks.inference;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Dynamic micro-batching of single sample prediction requests.
+ * Requests are queued and each worker thread groups them into batches of up to batchSize samples.
+ * A batch is calculated either when it is full or when the oldest request in it has waited for maxWaitMicros.
+ */
+public class PredictionService implements AutoCloseable {
+
+    private final Predictor predictor;
+    private final long maxWaitNanos;
+    private final BlockingQueue<Request> queue;
+    private final List<Thread> workers;
+    private final PredictionServiceMetrics metrics;
+    private final int inputSize;
+    private volatile boolean running;
+
+    /**
+     * @param predictor - predictor.getBatchSize() is the maximum batch size
+     * @param maxWaitMicros - maximum time to wait for a batch to fill
+     * @param workers - number of worker threads (each with it's own inference context)
+     */
+    public PredictionService(Predictor predictor, long maxWaitMicros, int workers) {
+	super();
+
+	if (workers < 1) {
+	    throw new IllegalArgumentException("At least one worker is required");
+	}
+
+	this.predictor = predictor;
+	this.maxWaitNanos = TimeUnit.MICROSECONDS.toNanos(maxWaitMicros);
+	this.queue = new LinkedBlockingQueue<>();
+	this.metrics = new PredictionServiceMetrics(queue, predictor.getBatchSize());
+	this.workers = new ArrayList<>();
+	this.running = true;
+
+	predictor.prepare(workers);
+	InferenceContext ctx = predictor.acquire();
+	this.inputSize = ctx.getInputSize();
+	predictor.release(ctx);
+
+	for (int i = 0; i < workers; i++) {
+	    Thread t = new Thread(this::work, "prediction-service-" + i);
+	    t.setDaemon(true);
+	    this.workers.add(t);
+	    t.start();
+	}
+    }
+
+    /**
+     * @param sample
+     * @return future, which is completed with the network output for the sample
+     */
+    public CompletableFuture<float[]> submit(float[] sample) {
+	CompletableFuture<float[]> result = new CompletableFuture<>();
+	if (!running) {
+	    result.completeExceptionally(new IllegalStateException("Prediction service is closed"));
+	} else if (sample == null || sample.length != inputSize) {
+	    result.completeExceptionally(new IllegalArgumentException("Sample size doesn't match the input layer"));
+	} else {
+	    Request request = new Request(sample, result);
+	    queue.offer(request);
+
+	    // the service may have been closed (and the queue drained) after the check above
+	    if (!running && queue.remove(request)) {
+		result.completeExceptionally(new IllegalStateException("Prediction service is closed"));
+	    }
+	}
+
+	return result;
+    }
+
+    public PredictionServiceMetrics getMetrics() {
+	return metrics;
+    }
+
+    public Predictor getPredictor() {
+	return predictor;
+    }
+
+    /**
+     * Stops the workers. Pending requests are completed exceptionally
+     */
+    @Override
+    public void close() {
+	running = false;
+	workers.forEach(Thread::interrupt);
+	for (Thread t : workers) {
+	    try {
+		t.join();
+	    } catch (InterruptedException e) {
+		Thread.currentThread().interrupt();
+	    }
+	}
+
+	Request r;
+	while ((r = queue.poll()) != null) {
+	    r.future.completeExceptionally(new IllegalStateException("Prediction service is closed"));
+	}
+    }
+
+    private void work() {
+	InferenceContext context = predictor.acquire();
+	int batchSize = context.getBatchSize();
+	Request[] batch = new Request[batchSize];
+	float[][] samples = new float[batchSize][];
+	float[][] outputs = new float[batchSize][];
+	int count = 0;
+
+	try {
+	    while (running) {
+		// wait for the first request indefinitely, then until the deadline
+		Request first = queue.take();
+		batch[0] = first;
+		count = 1;
+		long deadline = first.created + maxWaitNanos;
+		while (count < batchSize) {
+		    long wait = deadline - System.nanoTime();
+		    Request r = wait > 0 ? queue.poll(wait, TimeUnit.NANOSECONDS) : queue.poll();
+		    if (r == null) {
+			break;
+		    }
+
+		    batch[count++] = r;
+		}
+
+		try {
+		    for (int i = 0; i < count; i++) {
+			samples[i] = batch[i].sample;
+			outputs[i] = null;
+		    }
+
+		    context.predict(samples, 0, count, outputs);
+
+		    long now = System.nanoTime();
+		    for (int i = 0; i < count; i++) {
+			metrics.request(now - batch[i].created);
+			batch[i].future.complete(outputs[i]);
+		    }
+		} catch (RuntimeException e) {
+		    for (int i = 0; i < count; i++) {
+			batch[i].future.completeExceptionally(e);
+		    }
+		}
+
+		metrics.batch(count);
+
+		for (int i = 0; i < count; i++) {
+		    batch[i] = null;
+		    samples[i] = null;
+		}
+
+		count = 0;
+	    }
+	} catch (InterruptedException e) {
+	    // closed while the batch was filling
+	    for (int i = 0; i < count; i++) {
+		batch[i].future.completeExceptionally(new IllegalStateException("Prediction service is closed"));
+	    }
+	} finally {
+	    predictor.release(context);
+	}
+    }
+
+    private static class Request {
+
+	private final float[] sample;
+	private final CompletableFuture<float[]> future;
+	private final long created;
+
+	private Request(float[] sample, CompletableFuture<float[]> future) {
+	    this.sample = sample;
+	    this.future = future;
+	    this.created = System.nanoTime();
+	}
+    }
+}
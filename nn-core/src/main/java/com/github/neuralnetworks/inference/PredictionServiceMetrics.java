@@ -0,0 +1,93 @@
+package com.github.neuralnetworks.inference;
+
+import java.util.Arrays;
+import java.util.Queue;
+
+/**
+ * Statistics of a PredictionService. Latencies are kept for the most recent requests only
+ */
+public class PredictionServiceMetrics {
+
+    private static final int LATENCY_WINDOW = 4096;
+
+    private final Queue<?> queue;
+    private final int batchSize;
+    private final long[] latencies;
+    private long requests;
+    private long batches;
+    private long batchedSamples;
+
+    PredictionServiceMetrics(Queue<?> queue, int batchSize) {
+	super();
+	this.queue = queue;
+	this.batchSize = batchSize;
+	this.latencies = new long[LATENCY_WINDOW];
+    }
+
+    synchronized void request(long latencyNanos) {
+	latencies[(int) (requests++ % LATENCY_WINDOW)] = latencyNanos;
+    }
+
+    synchronized void batch(int size) {
+	batches++;
+	batchedSamples += size;
+    }
+
+    /**
+     * @return number of requests waiting to be batched
+     */
+    public int getQueueDepth() {
+	return queue.size();
+    }
+
+    public synchronized long getRequests() {
+	return requests;
+    }
+
+    public synchronized long getBatches() {
+	return batches;
+    }
+
+    /**
+     * @return average batch size / maximum batch size
+     */
+    public synchronized float getBatchFillRatio() {
+	return batches == 0 ? 0 : (float) batchedSamples / (batches * batchSize);
+    }
+
+    /**
+     * @param percentile - between 0 and 100
+     * @return latency in microseconds (time from submission to completion)
+     */
+    public float getLatencyPercentile(float percentile) {
+	if (percentile < 0 || percentile > 100) {
+	    throw new IllegalArgumentException("Percentile must be between 0 and 100");
+	}
+
+	long[] sorted;
+	synchronized (this) {
+	    sorted = Arrays.copyOf(latencies, (int) Math.min(requests, LATENCY_WINDOW));
+	}
+
+	if (sorted.length == 0) {
+	    return 0;
+	}
+
+	Arrays.sort(sorted);
+	int index = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+	return sorted[Math.max(0, index)] / 1000f;
+    }
+
+    public float getLatencyP50() {
+	return getLatencyPercentile(50);
+    }
+
+    public float getLatencyP99() {
+	return getLatencyPercentile(99);
+    }
+
+    @Override
+    public String toString() {
+	return "queue depth: " + getQueueDepth() + "; requests: " + getRequests() + "; batches: " + getBatches() + "; batch fill ratio: " + getBatchFillRatio() + "; latency p50 (us): " + getLatencyP50() + "; latency p99 (us): " + getLatencyP99();
+    }
+}
@@ -0,0 +1,119 @@
+package com.github.neuralnetworks.inference;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import com.github.neuralnetworks.architecture.NeuralNetwork;
+import com.github.neuralnetworks.calculation.LayerCalculatorBase;
+import com.github.neuralnetworks.util.Environment;
+
+/**
+ * Thread safe predictions using a single network.
+ * The network weights are shared (and must not be modified during prediction). Each calling thread borrows an InferenceContext from a pool.
+ */
+public class Predictor {
+
+    private final NeuralNetwork neuralNetwork;
+    private final LayerCalculatorBase template;
+    private final int batchSize;
+    private final ConcurrentLinkedQueue<InferenceContext> contexts;
+
+    public Predictor(NeuralNetwork neuralNetwork, int batchSize) {
+	this(neuralNetwork, (LayerCalculatorBase) neuralNetwork.getLayerCalculator(), batchSize);
+    }
+
+    /**
+     * @param neuralNetwork
+     * @param template - the connection calculators of this layer calculator are copied for each context
+     * @param batchSize - maximum number of samples per calculation
+     */
+    public Predictor(NeuralNetwork neuralNetwork, LayerCalculatorBase template, int batchSize) {
+	super();
+
+	if (template == null) {
+	    throw new IllegalArgumentException("Layer calculator is required");
+	}
+
+	this.neuralNetwork = neuralNetwork;
+	this.template = template;
+	this.batchSize = batchSize;
+	this.contexts = new ConcurrentLinkedQueue<>();
+    }
+
+    /**
+     * @return context from the pool (or a new one, if the pool is empty). The context must be returned via release
+     */
+    public InferenceContext acquire() {
+	InferenceContext result = contexts.poll();
+	if (result == null) {
+	    result = createContext();
+	}
+
+	return result;
+    }
+
+    public void release(InferenceContext context) {
+	if (context.getNeuralNetwork() != neuralNetwork || context.getBatchSize() != batchSize) {
+	    throw new IllegalArgumentException("Context doesn't belong to this predictor");
+	}
+
+	contexts.offer(context);
+    }
+
+    /**
+     * Create contexts in advance
+     * @param count
+     */
+    public void prepare(int count) {
+	for (int i = contexts.size(); i < count; i++) {
+	    contexts.offer(createContext());
+	}
+    }
+
+    /**
+     * @param sample
+     * @return network output for single sample
+     */
+    public float[] predict(float[] sample) {
+	return predict(new float[][] { sample })[0];
+    }
+
+    /**
+     * @param samples
+     * @return network output for each sample. The samples are calculated in batches of batchSize
+     */
+    public float[][] predict(float[][] samples) {
+	float[][] result = new float[samples.length][];
+
+	InferenceContext context = acquire();
+	try {
+	    for (int i = 0; i < samples.length; i += batchSize) {
+		context.predict(samples, i, Math.min(batchSize, samples.length - i), result);
+	    }
+	} finally {
+	    release(context);
+	}
+
+	return result;
+    }
+
+    public NeuralNetwork getNeuralNetwork() {
+	return neuralNetwork;
+    }
+
+    public int getBatchSize() {
+	return batchSize;
+    }
+
+    /**
+     * @return number of idle contexts
+     */
+    public int getPoolSize() {
+	return contexts.size();
+    }
+
+    protected InferenceContext createContext() {
+	synchronized (template) {
+	    return new InferenceContext(neuralNetwork, template, batchSize, Environment.getInstance().getUseDataSharedMemory());
+	}
+    }
+}
@@ -0,0 +1,88 @@
+package com.github.neuralnetworks.inference;
+
+import java.io.IOException;
+
+/**
+ * Destination of the network outputs of BatchScoringPipeline. Each record is written either as is (RAW), as the index of the maximum value (ARGMAX) or as the indexes and values of the k largest values (TOP_K)
+ */
+public abstract class ScoringOutput implements AutoCloseable {
+
+    public static enum Mode {
+	RAW, ARGMAX, TOP_K
+    }
+
+    protected final Mode mode;
+    protected final int k;
+    private final int[] indexes;
+    private final float[] values;
+
+    /**
+     * @param mode
+     * @param k - number of values for TOP_K
+     */
+    public ScoringOutput(Mode mode, int k) {
+	super();
+
+	if (mode == Mode.TOP_K && k < 1) {
+	    throw new IllegalArgumentException("k must be positive");
+	}
+
+	this.mode = mode;
+	this.k = mode == Mode.TOP_K ? k : 1;
+	this.indexes = new int[this.k];
+	this.values = new float[this.k];
+    }
+
+    /**
+     * @param output - network output for single record
+     */
+    public void write(float[] output) throws IOException {
+	if (mode == Mode.RAW) {
+	    writeValues(output);
+	} else {
+	    int count = Math.min(k, output.length);
+	    topK(output, count);
+	    writeIndexes(indexes, values, count);
+	}
+    }
+
+    public Mode getMode() {
+	return mode;
+    }
+
+    public int getK() {
+	return k;
+    }
+
+    @Override
+    public abstract void close() throws IOException;
+
+    protected abstract void writeValues(float[] output) throws IOException;
+
+    /**
+     * @param indexes - indexes of the largest values in descending order
+     * @param values - the corresponding values
+     * @param count - number of valid elements
+     */
+    protected abstract void writeIndexes(int[] indexes, float[] values, int count) throws IOException;
+
+    /**
+     * Selects the count largest values (insertion into a sorted array of length count)
+     */
+    private void topK(float[] output, int count) {
+	int size = 0;
+	for (int i = 0; i < output.length; i++) {
+	    float v = output[i];
+	    if (size < count || v > values[size - 1]) {
+		int j = size < count ? size++ : size - 1;
+		for (; j > 0 && values[j - 1] < v; j--) {
+		    values[j] = values[j - 1];
+		    indexes[j] = indexes[j - 1];
+		}
+
+		values[j] = v;
+		indexes[j] = i;
+	    }
+	}
+    }
+}
@@ -0,0 +1,75 @@
+package com.github.neuralnetworks.inference;
+
+/**
+ * Statistics of BatchScoringPipeline. All times are in nanoseconds. Stall time is the time a stage spends waiting for the previous stage (empty queue) or for the next stage (full queue)
+ */
+public class ScoringReport {
+
+    private final int records;
+    private final long time;
+    private final long readTime;
+    private final long readStall;
+    private final long computeTime;
+    private final long computeStall;
+    private final long writeTime;
+    private final long writeStall;
+
+    public ScoringReport(int records, long time, long readTime, long readStall, long computeTime, long computeStall, long writeTime, long writeStall) {
+	super();
+	this.records = records;
+	this.time = time;
+	this.readTime = readTime;
+	this.readStall = readStall;
+	this.computeTime = computeTime;
+	this.computeStall = computeStall;
+	this.writeTime = writeTime;
+	this.writeStall = writeStall;
+    }
+
+    public int getRecords() {
+	return records;
+    }
+
+    public long getTime() {
+	return time;
+    }
+
+    public float getRecordsPerSecond() {
+	return time > 0 ? records * 1000000000f / time : 0;
+    }
+
+    public long getReadTime() {
+	return readTime;
+    }
+
+    public long getReadStall() {
+	return readStall;
+    }
+
+    /**
+     * @return sum for all the compute threads
+     */
+    public long getComputeTime() {
+	return computeTime;
+    }
+
+    /**
+     * @return sum for all the compute threads
+     */
+    public long getComputeStall() {
+	return computeStall;
+    }
+
+    public long getWriteTime() {
+	return writeTime;
+    }
+
+    public long getWriteStall() {
+	return writeStall;
+    }
+
+    @Override
+    public String toString() {
+	return "records: " + records + "; records/s: " + getRecordsPerSecond() + "; time (ms): " + time / 1000000 + "; read/stall (ms): " + readTime / 1000000 + "/" + readStall / 1000000 + "; compute/stall (ms): " + computeTime / 1000000 + "/" + computeStall / 1000000 + "; write/stall (ms): " + writeTime / 1000000 + "/" + writeStall / 1000000;
+    }
+}
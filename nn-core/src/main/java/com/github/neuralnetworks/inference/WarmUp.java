@@ -0,0 +1,138 @@
+package com.github.neuralnetworks.inference;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import com.github.neuralnetworks.architecture.Layer;
+import com.github.neuralnetworks.architecture.NeuralNetwork;
+import com.github.neuralnetworks.calculation.memory.ValuesProvider;
+import com.github.neuralnetworks.tensor.Tensor;
+import com.github.neuralnetworks.tensor.TensorFactory;
+import com.github.neuralnetworks.util.Environment;
+import com.github.neuralnetworks.util.KernelExecutionMonitor;
+import com.github.neuralnetworks.util.KernelExecutionStrategy;
+import com.github.neuralnetworks.util.UniqueList;
+
+/**
+ * Ahead of time preparation of the calculations of a network.
+ * All the connection calculators of the network are created and executed on synthetic data, so that kernel creation, Aparapi bytecode analysis/OpenCL compilation and JIT compilation happen before the first real request.
+ * Only the kernels executed by the warm-up are monitored: the monitor is the execution strategy of the warming up thread, the process-wide strategy of the Environment is not changed.
+ */
+public class WarmUp {
+
+    /**
+     * Number of forward passes for each batch size after the first one
+     */
+    public static final int DEFAULT_ITERATIONS = 10;
+
+    /**
+     * Warm up of the network layer calculator
+     * 
+     * @param nn
+     * @param batchSizes
+     * @return report
+     */
+    public static WarmUpReport warmUp(NeuralNetwork nn, int... batchSizes) {
+	return warmUp(nn, batchSizes, DEFAULT_ITERATIONS);
+    }
+
+    public static WarmUpReport warmUp(NeuralNetwork nn, int[] batchSizes, int iterations) {
+	if (nn.getLayerCalculator() == null) {
+	    throw new IllegalArgumentException("The network has no layer calculator");
+	}
+
+	if (batchSizes == null || batchSizes.length == 0) {
+	    throw new IllegalArgumentException("At least one batch size is required");
+	}
+
+	List<Pass> passes = new ArrayList<>();
+	for (int batchSize : batchSizes) {
+	    ValuesProvider vp = TensorFactory.tensorProvider(nn, batchSize, Environment.getInstance().getUseDataSharedMemory());
+	    Tensor input = vp.get(nn.getInputLayer());
+	    Layer output = nn.getOutputLayer();
+	    Random random = new Random(batchSize);
+	    passes.add(() -> {
+		input.forEach(i -> input.getElements()[i] = random.nextFloat());
+		Set<Layer> calculated = new UniqueList<>();
+		calculated.add(nn.getInputLayer());
+		nn.getLayerCalculator().calculate(nn, output, calculated, vp);
+	    });
+	}
+
+	return run(passes, batchSizes, iterations);
+    }
+
+    /**
+     * Warm up of the pooled inference contexts of a predictor
+     * 
+     * @param predictor
+     * @param contexts - number of contexts to create and warm up
+     * @return report
+     */
+    public static WarmUpReport warmUp(Predictor predictor, int contexts) {
+	return warmUp(predictor, contexts, DEFAULT_ITERATIONS);
+    }
+
+    public static WarmUpReport warmUp(Predictor predictor, int contexts, int iterations) {
+	List<InferenceContext> acquired = new ArrayList<>();
+	try {
+	    for (int i = 0; i < contexts; i++) {
+		acquired.add(predictor.acquire());
+	    }
+
+	    List<Pass> passes = new ArrayList<>();
+	    int[] batchSizes = new int[acquired.size()];
+	    for (int i = 0; i < acquired.size(); i++) {
+		InferenceContext ctx = acquired.get(i);
+		Random random = new Random(i);
+		Tensor input = ctx.getInput();
+		batchSizes[i] = ctx.getBatchSize();
+		passes.add(() -> {
+		    input.forEach(j -> input.getElements()[j] = random.nextFloat());
+		    ctx.propagate();
+		});
+	    }
+
+	    return run(passes, batchSizes, iterations);
+	} finally {
+	    acquired.forEach(predictor::release);
+	}
+    }
+
+    private static WarmUpReport run(List<Pass> passes, int[] batchSizes, int iterations) {
+	Environment env = Environment.getInstance();
+	KernelExecutionStrategy threadStrategy = env.getThreadExecutionStrategy();
+	KernelExecutionMonitor monitor = new KernelExecutionMonitor(env.getExecutionStrategy());
+	env.setThreadExecutionStrategy(monitor);
+
+	long[] firstPass = new long[passes.size()];
+	long[] steadyPass = new long[passes.size()];
+	try {
+	    for (int i = 0; i < passes.size(); i++) {
+		Pass p = passes.get(i);
+		long start = System.nanoTime();
+		p.run();
+		firstPass[i] = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		for (int j = 0; j < iterations; j++) {
+		    p.run();
+		}
+		steadyPass[i] = iterations > 0 ? (System.nanoTime() - start) / iterations : 0;
+	    }
+	} finally {
+	    env.setThreadExecutionStrategy(threadStrategy);
+	}
+
+	return new WarmUpReport(batchSizes, firstPass, steadyPass, monitor.getStatistics());
+    }
+
+    /**
+     * Single forward pass
+     */
+    private static interface Pass {
+	public void run();
+    }
+}
@@ -0,0 +1,78 @@
+package com.github.neuralnetworks.inference;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import com.github.neuralnetworks.util.KernelExecutionMonitor.KernelStatistics;
+
+/**
+ * Result of WarmUp - forward pass times for each batch size and statistics for each kernel
+ */
+public class WarmUpReport {
+
+    private final int[] batchSizes;
+    private final long[] firstPassTimes;
+    private final long[] steadyPassTimes;
+    private final List<KernelStatistics> kernels;
+
+    public WarmUpReport(int[] batchSizes, long[] firstPassTimes, long[] steadyPassTimes, List<KernelStatistics> kernels) {
+	super();
+	this.batchSizes = batchSizes;
+	this.firstPassTimes = firstPassTimes;
+	this.steadyPassTimes = steadyPassTimes;
+	this.kernels = kernels;
+    }
+
+    /**
+     * @return time of the very first forward pass in nanoseconds (including creation of the kernels)
+     */
+    public long getTimeToFirstPrediction() {
+	return firstPassTimes.length > 0 ? firstPassTimes[0] : 0;
+    }
+
+    public int[] getBatchSizes() {
+	return batchSizes;
+    }
+
+    /**
+     * @return nanoseconds of the first pass for each batch size
+     */
+    public long[] getFirstPassTimes() {
+	return firstPassTimes;
+    }
+
+    /**
+     * @return average nanoseconds of the passes after the first one for each batch size
+     */
+    public long[] getSteadyPassTimes() {
+	return steadyPassTimes;
+    }
+
+    public List<KernelStatistics> getKernels() {
+	return kernels;
+    }
+
+    /**
+     * @return kernels, which were executed in a different mode than the requested one
+     */
+    public List<KernelStatistics> getFallbacks() {
+	return kernels.stream().filter(k -> k.getFallbacks() > 0).collect(Collectors.toList());
+    }
+
+    @Override
+    public String toString() {
+	StringBuilder sb = new StringBuilder("Time to first prediction (ms): ").append(getTimeToFirstPrediction() / 1000000f);
+	for (int i = 0; i < batchSizes.length; i++) {
+	    sb.append("\nBatch size ").append(batchSizes[i]).append(": first pass (ms) ").append(firstPassTimes[i] / 1000000f).append(", warm pass (ms) ").append(steadyPassTimes[i] / 1000000f);
+	}
+
+	kernels.forEach(k -> sb.append("\n").append(k));
+
+	List<KernelStatistics> fallbacks = getFallbacks();
+	if (fallbacks.size() > 0) {
+	    sb.append("\nExecution mode fallbacks: ").append(fallbacks.stream().map(k -> k.getKernelClass().getSimpleName() + " " + k.getRequestedMode() + " -> " + k.getActualMode()).collect(Collectors.joining(", ")));
+	}
+
+	return sb.toString();
+    }
+}
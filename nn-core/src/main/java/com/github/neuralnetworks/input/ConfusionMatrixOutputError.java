@@ -0,0 +1,217 @@
+package com.github.neuralnetworks.input;
+
+import java.util.Arrays;
+
+import com.github.neuralnetworks.calculation.MergeableOutputError;
+import com.github.neuralnetworks.calculation.OutputError;
+import com.github.neuralnetworks.tensor.Matrix;
+import com.github.neuralnetworks.tensor.Tensor;
+
+/**
+ * Classification error of networks with one output neuron per class. The samples are counted in a confusion matrix (target x output class), so the memory doesn't depend on the number of samples.
+ * The class of a sample is the first row with the maximum value (the target is the first row with value 1). Samples with the same value for all outputs are errors.
+ * With label mapping the classes are matched by the confusion matrix (see mapping()), otherwise the output class must be the target class
+ */
+public class ConfusionMatrixOutputError implements MergeableOutputError {
+
+    private static final long serialVersionUID = 1L;
+
+    private final boolean mapLabels;
+
+    /**
+     * confusion[target * classes + output] is the number of samples of the target class with the output class
+     */
+    private int[] confusion;
+    private int classes;
+    private int nullCount;
+
+    /**
+     * the mapping calculated from the confusion matrix (invalidated by new samples)
+     */
+    private int[] mapping;
+
+    public ConfusionMatrixOutputError() {
+	this(false);
+    }
+
+    public ConfusionMatrixOutputError(boolean mapLabels) {
+	super();
+	this.mapLabels = mapLabels;
+	reset();
+    }
+
+    @Override
+    public void addItem(Tensor networkOutput, Tensor targetOutput) {
+	Matrix target = (Matrix) targetOutput;
+	Matrix actual = (Matrix) networkOutput;
+
+	if (!Arrays.equals(actual.getDimensions(), target.getDimensions())) {
+	    throw new IllegalArgumentException("Dimensions don't match");
+	}
+
+	if (confusion == null) {
+	    classes = target.getRows();
+	    confusion = new int[classes * classes];
+	} else if (target.getRows() != classes) {
+	    throw new IllegalArgumentException("Number of classes doesn't match");
+	}
+
+	// argmax of each column directly on the elements
+	float[] a = actual.getElements(), t = target.getElements();
+	int aStart = actual.getStartIndex(), aRow = actual.getRowElementsDistance(), aColumn = actual.getColumnElementsDistance();
+	int tStart = target.getStartIndex(), tRow = target.getRowElementsDistance(), tColumn = target.getColumnElementsDistance();
+	for (int i = 0, columns = target.getColumns(); i < columns; i++) {
+	    int ai = aStart + i * aColumn;
+	    float max = a[ai];
+	    int outputPos = 0;
+	    boolean hasDifferentValues = false;
+	    for (int j = 1; j < classes; j++) {
+		float v = a[ai + j * aRow];
+		hasDifferentValues |= v != a[ai];
+		if (v > max) {
+		    max = v;
+		    outputPos = j;
+		}
+	    }
+
+	    if (hasDifferentValues) {
+		int targetPos = 0;
+		int ti = tStart + i * tColumn;
+		for (int j = 0; j < classes; j++) {
+		    if (t[ti + j * tRow] == 1) {
+			targetPos = j;
+			break;
+		    }
+		}
+
+		confusion[targetPos * classes + outputPos]++;
+	    } else {
+		nullCount++;
+	    }
+	}
+
+	mapping = null;
+    }
+
+    @Override
+    public void merge(OutputError other) {
+	ConfusionMatrixOutputError o = (ConfusionMatrixOutputError) other;
+	if (o.confusion != null) {
+	    if (confusion == null) {
+		classes = o.classes;
+		confusion = new int[classes * classes];
+	    } else if (o.classes != classes) {
+		throw new IllegalArgumentException("Number of classes doesn't match");
+	    }
+
+	    for (int i = 0; i < confusion.length; i++) {
+		confusion[i] += o.confusion[i];
+	    }
+	}
+
+	nullCount += o.nullCount;
+	mapping = null;
+    }
+
+    @Override
+    public float getTotalNetworkError() {
+	return getTotalInputSize() > 0 ? ((float) getTotalErrorSamples()) / getTotalInputSize() : 0;
+    }
+
+    @Override
+    public int getTotalErrorSamples() {
+	int errorSamples = 0;
+	if (confusion != null) {
+	    int[] m = mapping();
+	    for (int target = 0; target < classes; target++) {
+		for (int output = 0; output < classes; output++) {
+		    if (m[output] != target) {
+			errorSamples += confusion[target * classes + output];
+		    }
+		}
+	    }
+	}
+
+	return nullCount + errorSamples;
+    }
+
+    @Override
+    public int getTotalInputSize() {
+	int result = nullCount;
+	if (confusion != null) {
+	    for (int c : confusion) {
+		result += c;
+	    }
+	}
+
+	return result;
+    }
+
+    /**
+     * The label mapping of MultipleNeuronsOutputError: for each target class the most frequent output class, which is not assigned yet (the first output class by default).
+     * A sample is correct, if the class assigned to its output class is the target class (-1 if none). Without label mapping this is the identity
+     */
+    private int[] mapping() {
+	if (mapping == null) {
+	    mapping = new int[classes];
+	    if (!mapLabels) {
+		for (int i = 0; i < classes; i++) {
+		    mapping[i] = i;
+		}
+	    } else {
+		Arrays.fill(mapping, -1);
+		boolean[] used = new boolean[classes];
+		for (int target = 0; target < classes; target++) {
+		    int row = target * classes, count = 0;
+		    for (int output = 0; output < classes; output++) {
+			count += confusion[row + output];
+		    }
+
+		    if (count > 0) {
+			int max = 0;
+			for (int output = 0; output < classes; output++) {
+			    if (confusion[row + output] > confusion[row + max] && !used[output]) {
+				max = output;
+			    }
+			}
+
+			mapping[target] = max;
+			used[max] = true;
+		    }
+		}
+	    }
+	}
+
+	return mapping;
+    }
+
+    @Override
+    public void reset() {
+	confusion = null;
+	classes = 0;
+	nullCount = 0;
+	mapping = null;
+    }
+
+    public boolean getMapLabels() {
+	return mapLabels;
+    }
+
+    /**
+     * @return number of samples of the target class with the output class
+     */
+    public int getCount(int target, int output) {
+	return confusion != null ? confusion[target * classes + output] : 0;
+    }
+
+    public int getClasses() {
+	return classes;
+    }
+
+    /**
+     * @return number of samples with the same value for all outputs
+     */
+    public int getNullCount() {
+	return nullCount;
+    }
+}
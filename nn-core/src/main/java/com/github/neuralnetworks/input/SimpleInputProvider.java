@@ -1,12 +1,15 @@
 package com.github.neuralnetworks.input;
 
+import java.io.Serializable;
+
+import com.github.neuralnetworks.training.RandomAccessInputProvider;
 import com.github.neuralnetworks.training.TrainingInputProviderImpl;
 
 /**
  * Simple input provider for testing purposes.
  * Training and target data are two dimensional float arrays
  */
-public class SimpleInputProvider extends TrainingInputProviderImpl {
+public class SimpleInputProvider extends TrainingInputProviderImpl implements RandomAccessInputProvider {
 
     private static final long serialVersionUID = 1L;
 
@@ -38,4 +41,33 @@ public class SimpleInputProvider extends TrainingInputProviderImpl {
     public float[] getNextTarget() {
 	return target[currentInput % target.length];
     }
+
+    /**
+     * The order of the samples is deterministic, so the state is the position (and the state of the random input modifiers)
+     */
+    @Override
+    public Serializable getState() {
+	return getPositionState();
+    }
+
+    @Override
+    public void setState(Serializable state) {
+	setPositionState((long[]) state);
+    }
+
+    @Override
+    public int getSampleIndex() {
+	return currentInput % input.length;
+    }
+
+    @Override
+    public void getInput(int index, float[] result) {
+	System.arraycopy(input[index], 0, result, 0, Math.min(result.length, input[index].length));
+    }
+
+    @Override
+    public void getTarget(int index, float[] result) {
+	float[] t = target[index % target.length];
+	System.arraycopy(t, 0, result, 0, Math.min(result.length, t.length));
+    }
 }
@@ -0,0 +1,149 @@
+package com.github.neuralnetworks.tensor;
+
+/**
+ * Floating point formats for reduced precision values.
+ * The values are still stored in float arrays, but are rounded (to nearest even) to the values representable in the format
+ */
+public enum Precision {
+
+    FLOAT32, BFLOAT16, FLOAT16;
+
+    /**
+     * largest finite FLOAT16 value
+     */
+    public static final float FLOAT16_MAX = 65504;
+
+    /**
+     * @return the value rounded to this precision. FLOAT16 values out of range become infinite
+     */
+    public float round(float value) {
+	switch (this) {
+	case BFLOAT16:
+	    return roundToBFloat16(value);
+	case FLOAT16:
+	    return halfToFloat(floatToHalf(value));
+	default:
+	    return value;
+	}
+    }
+
+    /**
+     * Rounds all the elements of the tensor
+     */
+    public void round(Tensor t) {
+	if (this == FLOAT32) {
+	    return;
+	}
+
+	float[] elements = t.getElements();
+	int start = t.getStartIndex();
+	if (t.getEndIndex() - start + 1 == t.getSize()) {
+	    for (int i = start; i < start + t.getSize(); i++) {
+		elements[i] = round(elements[i]);
+	    }
+	} else {
+	    t.forEach(i -> elements[i] = round(elements[i]));
+	}
+    }
+
+    /**
+     * @return whether all the elements of the tensor are finite
+     */
+    public static boolean isFinite(Tensor t) {
+	float[] elements = t.getElements();
+	int start = t.getStartIndex();
+	if (t.getEndIndex() - start + 1 == t.getSize()) {
+	    for (int i = start; i < start + t.getSize(); i++) {
+		if (Float.isNaN(elements[i]) || Float.isInfinite(elements[i])) {
+		    return false;
+		}
+	    }
+
+	    return true;
+	}
+
+	Tensor.TensorIterator it = t.iterator();
+	while (it.hasNext()) {
+	    float f = elements[it.next()];
+	    if (Float.isNaN(f) || Float.isInfinite(f)) {
+		return false;
+	    }
+	}
+
+	return true;
+    }
+
+    /**
+     * bfloat16 has the exponent of float and 7 bits mantissa - the lower 16 bits are rounded away
+     */
+    public static float roundToBFloat16(float value) {
+	if (Float.isNaN(value)) {
+	    return value;
+	}
+
+	int bits = Float.floatToRawIntBits(value);
+	bits += 0x7FFF + ((bits >>> 16) & 1);
+	return Float.intBitsToFloat(bits & 0xFFFF0000);
+    }
+
+    /**
+     * @return IEEE 754 half precision bits of the value
+     */
+    public static short floatToHalf(float value) {
+	int bits = Float.floatToRawIntBits(value);
+	int sign = (bits >>> 16) & 0x8000;
+	int abs = bits & 0x7FFFFFFF;
+
+	// infinity and NaN
+	if (abs >= 0x7F800000) {
+	    return (short) (sign | 0x7C00 | (abs > 0x7F800000 ? 0x200 : 0));
+	}
+
+	// overflow (65520 and above round to infinity)
+	if (abs >= 0x477FF000) {
+	    return (short) (sign | 0x7C00);
+	}
+
+	// subnormal (below 2^-14)
+	if (abs < 0x38800000) {
+	    int shift = 126 - (abs >>> 23);
+	    if (shift > 24) {
+		return (short) sign;
+	    }
+
+	    int mantissa = (abs & 0x7FFFFF) | 0x800000;
+	    int result = mantissa >>> shift, remainder = mantissa & ((1 << shift) - 1), half = 1 << (shift - 1);
+	    if (remainder > half || (remainder == half && (result & 1) != 0)) {
+		result++;
+	    }
+
+	    return (short) (sign | result);
+	}
+
+	// normal - round the mantissa and rebias the exponent from 127 to 15
+	abs += 0xFFF + ((abs >>> 13) & 1);
+	return (short) (sign | ((abs - 0x38000000) >>> 13));
+    }
+
+    /**
+     * @return the float value of IEEE 754 half precision bits
+     */
+    public static float halfToFloat(short half) {
+	int bits = half & 0xFFFF;
+	int sign = (bits & 0x8000) << 16;
+	int exponent = (bits >>> 10) & 0x1F;
+	int mantissa = bits & 0x3FF;
+
+	if (exponent == 0x1F) {
+	    return Float.intBitsToFloat(sign | 0x7F800000 | (mantissa << 13));
+	}
+
+	if (exponent == 0) {
+	    // zero and subnormal (mantissa * 2^-24)
+	    float result = mantissa * 5.9604645E-8f;
+	    return sign != 0 ? -result : result;
+	}
+
+	return Float.intBitsToFloat(sign | ((exponent + 112) << 23) | (mantissa << 13));
+    }
+}
@@ -5,8 +5,6 @@ import java.util.Arrays;
 import java.util.function.IntConsumer;
 import java.util.stream.IntStream;
 
-import com.github.neuralnetworks.util.Util;
-
 /**
  * N-dimensional tensor. For example 2-dim tensor is a matrix
  */
@@ -46,17 +44,11 @@ public class Tensor implements Serializable {
 
     protected int[] dimMultiplicators;
 
-    /**
-     * temporary array
-     */
-    protected int[] dimTmp;
-
     public Tensor(Tensor parent, int[][] dimensionsLimit) {
 	this.globalDimensions = parent.globalDimensions;
 	this.elements = parent.elements;
 	this.dimMultiplicators = parent.dimMultiplicators;
 	this.globalDimensionsLimit = dimensionsLimit;
-	this.dimTmp = new int[globalDimensions.length];
 
 	this.dimensions = new int[(int) IntStream.range(0, globalDimensions.length).filter(i -> dimensionsLimit[0][i] != dimensionsLimit[1][i]).count()];
 	for (int i = 0, j = 0; i < globalDimensions.length; i++) {
@@ -79,7 +71,6 @@ public class Tensor implements Serializable {
 	this.elements = elements;
 	this.globalDimensions = globalDimensions;
 	this.globalDimensionsLimit = globalDimensionsLimit;
-	this.dimTmp = new int[globalDimensions.length];
 
 	this.dimensions = new int[(int) IntStream.range(0, globalDimensions.length).filter(i -> globalDimensionsLimit[0][i] != globalDimensionsLimit[1][i] || globalDimensionsLimit[1][i] - globalDimensionsLimit[0][i] + 1 == globalDimensions[i]).count()];
 	for (int i = 0, j = 0; i < globalDimensions.length; i++) {
@@ -114,19 +105,19 @@ public class Tensor implements Serializable {
     }
  
     /**
-     * @return start index (in the elements array) for this tensor
+     * @return start index (in the elements array) for this tensor (safe to call from multiple threads)
      */
     public int getStartIndex() {
-	Util.fillArray(dimTmp, 0);
-	return getIndex(dimTmp);
+	return getIndex(new int[globalDimensions.length]);
     }
 
     /**
      * @return end index (in the elements array) for this tensor
      */
     public int getEndIndex() {
-	IntStream.range(0, globalDimensions.length).forEach(i -> dimTmp[i] = globalDimensionsLimit[1][i] - globalDimensionsLimit[0][i]);
-	return getIndex(dimTmp);
+	int[] d = new int[globalDimensions.length];
+	IntStream.range(0, d.length).forEach(i -> d[i] = globalDimensionsLimit[1][i] - globalDimensionsLimit[0][i]);
+	return getIndex(d);
     }
 
     /**
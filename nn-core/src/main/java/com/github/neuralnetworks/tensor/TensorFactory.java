@@ -204,6 +204,13 @@ public class TensorFactory {
 	    throw new IllegalArgumentException("Dimensions don't match");
 	}
 
+	// contiguous tensors
+	int srcStart = src.getStartIndex(), destStart = dest.getStartIndex();
+	if (src.getEndIndex() - srcStart + 1 == src.getSize() && dest.getEndIndex() - destStart + 1 == dest.getSize()) {
+	    System.arraycopy(src.getElements(), srcStart, dest.getElements(), destStart, src.getSize());
+	    return;
+	}
+
 	TensorIterator srcIt = src.iterator();
 	TensorIterator destIt = dest.iterator();
 	while (srcIt.hasNext() && destIt.hasNext()) {
@@ -211,7 +218,87 @@ public class TensorFactory {
 	}
     }
 
-    public static Tensor duplicate(Tensor src, float[] elements) {
+    /**
+     * Copies count mini batch samples (the last dimension) starting from srcOffset in src to destOffset in dest
+     * All other dimensions must match
+     */
+    public static void copyBatch(Tensor src, int srcOffset, Tensor dest, int destOffset, int count) {
+	int[] sd = src.getDimensions(), dd = dest.getDimensions();
+	int b = sd.length - 1;
+	if (sd.length != dd.length || !Arrays.equals(Arrays.copyOf(sd, b), Arrays.copyOf(dd, b))) {
+	    throw new IllegalArgumentException("Dimensions don't match");
+	}
+
+	if (srcOffset < 0 || destOffset < 0 || count < 0 || srcOffset + count > sd[b] || destOffset + count > dd[b]) {
+	    throw new IllegalArgumentException("Batch range out of bounds");
+	}
+
+	float[] se = src.getElements(), de = dest.getElements();
+	int srcStep = src.getDimensionElementsDistance(b), destStep = dest.getDimensionElementsDistance(b);
+	int srcStart = src.getStartIndex() + srcOffset * srcStep, destStart = dest.getStartIndex() + destOffset * destStep;
+	int units = b == 0 ? 1 : src.getSize() / sd[b];
+
+	// iterate over all positions of the non-batch dimensions
+	int[] position = new int[b];
+	for (int u = 0; u < units; u++) {
+	    int s = srcStart, d = destStart;
+	    for (int i = 0; i < b; i++) {
+		s += position[i] * src.getDimensionElementsDistance(i);
+		d += position[i] * dest.getDimensionElementsDistance(i);
+	    }
+
+	    if (srcStep == 1 && destStep == 1) {
+		System.arraycopy(se, s, de, d, count);
+	    } else {
+		for (int j = 0; j < count; j++) {
+		    de[d + j * destStep] = se[s + j * srcStep];
+		}
+	    }
+
+	    for (int i = b - 1; i >= 0 && ++position[i] == sd[i]; i--) {
+		position[i] = 0;
+	    }
+	}
+    }
+
+    /**
+     * Sets the values of one mini batch sample (position in the last dimension). The values are in the order of the remaining dimensions (the last one changes fastest)
+     */
+    public static void setSample(Tensor t, int sample, float[] values) {
+	int[] td = t.getDimensions();
+	int b = td.length - 1;
+	int units = b == 0 ? 1 : t.getSize() / td[b];
+	if (sample < 0 || sample >= td[b] || values.length > units) {
+	    throw new IllegalArgumentException("Sample out of bounds");
+	}
+
+	float[] te = t.getElements();
+	int start = t.getStartIndex() + sample * t.getDimensionElementsDistance(b);
+
+	// the innermost non-batch dimension is written with a fixed step
+	int inner = b == 0 ? 1 : td[b - 1], innerStep = b == 0 ? 0 : t.getDimensionElementsDistance(b - 1);
+	int[] position = new int[Math.max(b - 1, 0)];
+	for (int u = 0; u < values.length; u += inner) {
+	    int id = start;
+	    for (int i = 0; i < position.length; i++) {
+		id += position[i] * t.getDimensionElementsDistance(i);
+	    }
+
+	    for (int j = u, end = Math.min(u + inner, values.length); j < end; j++, id += innerStep) {
+		te[id] = values[j];
+	    }
+
+	    for (int i = position.length - 1; i >= 0 && ++position[i] == td[i]; i--) {
+		position[i] = 0;
+	    }
+	}
+    }
+
+    /**
+     * @return tensor of the same type and dimensions as src, which uses the elements array (a new array if null)
+     */
+    @SuppressWarnings("unchecked")
+    public static <T extends Tensor> T duplicate(T src, float[] elements) {
 	int[][] gdl = new int[src.globalDimensionsLimit.length][src.globalDimensionsLimit[0].length];
 	IntStream.range(0, gdl.length).forEach(i -> IntStream.range(0, gdl[i].length).forEach(j -> gdl[i][j] = src.globalDimensionsLimit[i][j]));
 
@@ -219,7 +306,11 @@ public class TensorFactory {
 	    elements = new float[src.elements.length];
 	}
 
-	return new Tensor(src.startOffset, elements, Arrays.copyOf(src.globalDimensions, src.globalDimensions.length), gdl);
+	if (src instanceof Matrix) {
+	    return (T) new Matrix(src.startOffset, elements, Arrays.copyOf(src.globalDimensions, src.globalDimensions.length), gdl);
+	}
+
+	return (T) new Tensor(src.startOffset, elements, Arrays.copyOf(src.globalDimensions, src.globalDimensions.length), gdl);
     }
 
     /**
@@ -287,7 +378,10 @@ public class TensorFactory {
 	return result;
     }
 
-    private static Map<Layer, Set<int[]>> getLayersDimensions(NeuralNetwork neuralNetwork, int miniBatchSize) {
+    /**
+     * @return the dimensions of the tensors of each layer of the network
+     */
+    public static Map<Layer, Set<int[]>> getLayersDimensions(NeuralNetwork neuralNetwork, int miniBatchSize) {
 	Map<Layer, Set<int[]>> result = new HashMap<>();
 
 	for (Connections c : neuralNetwork.getConnections()) {
@@ -1,14 +1,23 @@
 package com.github.neuralnetworks.training;
 
+import java.io.File;
+import java.util.Arrays;
 import java.util.Map;
+import java.util.Set;
 
+import com.github.neuralnetworks.architecture.Layer;
 import com.github.neuralnetworks.architecture.NeuralNetwork;
 import com.github.neuralnetworks.architecture.types.DNN;
+import com.github.neuralnetworks.calculation.memory.ValuesProvider;
 import com.github.neuralnetworks.events.TrainingEvent;
+import com.github.neuralnetworks.tensor.Tensor;
+import com.github.neuralnetworks.tensor.TensorFactory;
 import com.github.neuralnetworks.training.events.TrainingFinishedEvent;
 import com.github.neuralnetworks.training.events.TrainingStartedEvent;
 import com.github.neuralnetworks.util.Constants;
+import com.github.neuralnetworks.util.Environment;
 import com.github.neuralnetworks.util.Properties;
+import com.github.neuralnetworks.util.UniqueList;
 
 /**
  * Default implementation for deep network trainer
@@ -24,6 +33,7 @@ public class DNNLayerTrainer extends Trainer<DNN<? extends NeuralNetwork>> {
     /* (non-Javadoc)
      * @see com.github.neuralnetworks.training.Trainer#train()
      * Child netwokrs are trained in sequential order. Each network has it's own Trainer.
+     * With feature cache the input of each network is calculated once (from the cached input of the previous network) and is replayed in all the epochs
      */
     @Override
     public void train() {
@@ -31,23 +41,102 @@ public class DNNLayerTrainer extends Trainer<DNN<? extends NeuralNetwork>> {
 
 	DNN<?> dnn = getNeuralNetwork();
 
-	for (NeuralNetwork nn : dnn.getNeuralNetworks()) {
-	    DeepTrainerTrainingInputProvider inputProvider = new DeepTrainerTrainingInputProvider(getTrainingInputProvider(), dnn, nn, getTrainingBatchSize());
-	    inputProvider.reset();
-	    OneStepTrainer<?> trainer = getTrainers().get(nn);
-	    trainer.setTrainingInputProvider(inputProvider);
-	    trainer.train();
-
-	    triggerEvent(new LayerTrainingFinished(this, trainer));
+	FeatureCache cache = null;
+	NeuralNetwork previous = null;
+	try {
+	    for (NeuralNetwork nn : dnn.getNeuralNetworks()) {
+		DeepTrainerTrainingInputProvider inputProvider;
+		if (getFeatureCacheMemory() != null && previous != null) {
+		    FeatureCache next = cacheFeatures(dnn, previous, nn, cache);
+		    if (cache != null) {
+			cache.close();
+		    }
+
+		    cache = next;
+		    inputProvider = new DeepTrainerTrainingInputProvider(getTrainingInputProvider(), dnn, nn, cache);
+		} else {
+		    inputProvider = new DeepTrainerTrainingInputProvider(getTrainingInputProvider(), dnn, nn, getTrainingBatchSize());
+		}
+
+		inputProvider.reset();
+		OneStepTrainer<?> trainer = getTrainers().get(nn);
+		trainer.setTrainingInputProvider(inputProvider);
+		trainer.train();
+
+		triggerEvent(new LayerTrainingFinished(this, trainer));
+		previous = nn;
+	    }
+	} finally {
+	    if (cache != null) {
+		cache.close();
+	    }
 	}
 
 	triggerEvent(new TrainingFinishedEvent(this));
     }
 
+    /**
+     * Calculates the input of the network for all the training samples from the input of the previous network (the training input if previousCache is null)
+     */
+    protected FeatureCache cacheFeatures(DNN<?> dnn, NeuralNetwork previous, NeuralNetwork nn, FeatureCache previousCache) {
+	TrainingInputProvider ip = getTrainingInputProvider();
+	int samples = ip.getInputSize(), batchSize = getTrainingBatchSize();
+	ValuesProvider results = TensorFactory.tensorProvider(dnn, batchSize, Environment.getInstance().getUseDataSharedMemory());
+	Tensor input = results.get(previous.getInputLayer()), output = results.get(nn.getInputLayer());
+
+	int[] d = output.getDimensions();
+	FeatureCache result = new FeatureCache(Arrays.copyOf(d, d.length - 1), samples, getFeatureCacheMemory(), getFeatureCacheDirectory());
+
+	TrainingInputData data = new TrainingInputDataImpl(input);
+	Set<Layer> calculatedLayers = new UniqueList<>();
+	ip.reset();
+	for (int i = 0; i < samples; i += batchSize) {
+	    int count = Math.min(batchSize, samples - i);
+	    if (previousCache == null) {
+		ip.populateNext(data);
+	    } else {
+		previousCache.get(i, input, 0, count);
+	    }
+
+	    calculatedLayers.clear();
+	    calculatedLayers.add(previous.getInputLayer());
+	    dnn.getLayerCalculator().calculate(dnn, nn.getInputLayer(), calculatedLayers, results);
+	    result.put(i, output, 0, count);
+	}
+
+	result.flush();
+	return result;
+    }
+
     public Map<NeuralNetwork, OneStepTrainer<?>> getTrainers() {
 	return properties.getParameter(Constants.LAYER_TRAINERS);
     }
 
+    /**
+     * @return the memory budget of the feature cache in bytes (null if the features are not cached)
+     */
+    public Long getFeatureCacheMemory() {
+	return properties.getParameter(Constants.FEATURE_CACHE_MEMORY);
+    }
+
+    public File getFeatureCacheDirectory() {
+	return properties.getParameter(Constants.FEATURE_CACHE_DIRECTORY);
+    }
+
+    /**
+     * Enables the feature cache
+     * @param memoryBudget - the cached features above this size (in bytes) are spilled to a memory-mapped file
+     * @param directory - directory of the spill file (null for the default temporary directory)
+     */
+    public void setFeatureCache(long memoryBudget, File directory) {
+	if (memoryBudget < 0) {
+	    throw new IllegalArgumentException("memoryBudget can't be negative");
+	}
+
+	properties.setParameter(Constants.FEATURE_CACHE_MEMORY, memoryBudget);
+	properties.setParameter(Constants.FEATURE_CACHE_DIRECTORY, directory);
+    }
+
     @Override
     public Integer getTrainingBatchSize() {
 	return getTrainers().values().iterator().next().getTrainingBatchSize();
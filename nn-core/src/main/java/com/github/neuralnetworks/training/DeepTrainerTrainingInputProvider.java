@@ -24,6 +24,12 @@ public class DeepTrainerTrainingInputProvider extends TrainingInputProviderImpl
     private Set<Layer> calculatedLayers;
     private ValuesProvider layerResults;
 
+    /**
+     * the cached input of the current network (null if it is calculated for each batch)
+     */
+    private FeatureCache featureCache;
+    private int position;
+
     public DeepTrainerTrainingInputProvider(TrainingInputProvider inputProvider, DNN<?> dnn, NeuralNetwork currentNN, int batchSize) {
 	super();
 	this.inputProvider = inputProvider;
@@ -34,6 +40,39 @@ public class DeepTrainerTrainingInputProvider extends TrainingInputProviderImpl
 	this.inputDataBase = new TrainingInputDataImpl(layerResults.get(dnn.getInputLayer()));
     }
 
+    /**
+     * The input of the current network is read from the cache (the samples are in the order of the wrapped provider)
+     */
+    public DeepTrainerTrainingInputProvider(TrainingInputProvider inputProvider, DNN<?> dnn, NeuralNetwork currentNN, FeatureCache featureCache) {
+	super();
+	this.inputProvider = inputProvider;
+	this.dnn = dnn;
+	this.currentNN = currentNN;
+	this.featureCache = featureCache;
+    }
+
+    /**
+     * The first network receives the input of the wrapped provider directly. The input of the other networks is calculated in afterBatch, so the samples are not populated one by one
+     */
+    @Override
+    public void populateNext(TrainingInputData ti) {
+	if (featureCache != null) {
+	    // the batches wrap around the samples like the ones of the wrapped provider
+	    int batchSize = TrainingInputProvider.batchSize(ti);
+	    for (int i = 0; i < batchSize;) {
+		int count = Math.min(batchSize - i, featureCache.getSamples() - position);
+		featureCache.get(position, ti.getInput(), i, count);
+		position = (position + count) % featureCache.getSamples();
+		i += count;
+	    }
+	} else if (dnn.getFirstNeuralNetwork() == currentNN) {
+	    inputProvider.populateNext(ti);
+	} else {
+	    beforeBatch(ti);
+	    afterBatch(ti);
+	}
+    }
+
     @Override
     public void afterBatch(TrainingInputData ti) {
 	if (dnn.getFirstNeuralNetwork() != currentNN) {
@@ -63,6 +102,7 @@ public class DeepTrainerTrainingInputProvider extends TrainingInputProviderImpl
     @Override
     public void reset() {
 	inputProvider.reset();
+	position = 0;
     }
 
     public TrainingInputProvider getInputProvider() {
@@ -76,4 +116,8 @@ public class DeepTrainerTrainingInputProvider extends TrainingInputProviderImpl
     public NeuralNetwork getCurrentNN() {
         return currentNN;
     }
+
+    public FeatureCache getFeatureCache() {
+        return featureCache;
+    }
 }
@@ -0,0 +1,212 @@
+package com.github.neuralnetworks.training;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import com.github.neuralnetworks.tensor.Tensor;
+import com.github.neuralnetworks.tensor.TensorFactory;
+
+/**
+ * Values of a layer for all the samples of a training input provider (used by DNNLayerTrainer to cache the output of the already trained networks).
+ * The samples are stored in chunks - tensors with the dimensions of the layer and chunkSize samples in the last dimension.
+ * The chunks are kept in memory up to memoryBudget bytes. The rest are spilled to a memory-mapped temporary file and are accessed through a single chunk buffer
+ */
+public class FeatureCache implements AutoCloseable {
+
+    /**
+     * default number of values in a chunk
+     */
+    public static final int CHUNK_VALUES = 1 << 20;
+
+    private final int samples;
+    private final int chunkSize;
+    private final int chunkValues;
+
+    /**
+     * the in-memory chunks (null for the spilled ones)
+     */
+    private final Tensor[] chunks;
+
+    /**
+     * the regions of the spilled chunks in the file
+     */
+    private final FloatBuffer[] spilled;
+    private File file;
+
+    /**
+     * buffer for the spilled chunk, which is currently accessed
+     */
+    private Tensor buffer;
+    private int bufferChunk = -1;
+    private boolean dirty;
+
+    /**
+     * Chunks with CHUNK_VALUES values
+     */
+    public FeatureCache(int[] sampleDimensions, int samples, long memoryBudget, File directory) {
+	this(sampleDimensions, samples, Math.max(Math.min(CHUNK_VALUES / Math.max(size(sampleDimensions), 1), samples), 1), memoryBudget, directory);
+    }
+
+    /**
+     * @param sampleDimensions - dimensions of the layer values of one sample
+     * @param samples - number of samples
+     * @param chunkSize - number of samples in a chunk
+     * @param memoryBudget - maximum size of the in-memory chunks in bytes
+     * @param directory - directory for the spill file (null for the default temporary directory)
+     */
+    public FeatureCache(int[] sampleDimensions, int samples, int chunkSize, long memoryBudget, File directory) {
+	super();
+
+	if (samples < 1 || chunkSize < 1 || memoryBudget < 0) {
+	    throw new IllegalArgumentException("samples and chunkSize must be positive and memoryBudget can't be negative");
+	}
+
+	this.samples = samples;
+	this.chunkSize = chunkSize;
+	this.chunkValues = size(sampleDimensions) * chunkSize;
+
+	int[] dimensions = Arrays.copyOf(sampleDimensions, sampleDimensions.length + 1);
+	dimensions[sampleDimensions.length] = chunkSize;
+
+	int count = (samples + chunkSize - 1) / chunkSize;
+	int inMemory = (int) Math.min(memoryBudget / (chunkValues * 4L), count);
+	chunks = new Tensor[count];
+	spilled = new FloatBuffer[count];
+	for (int i = 0; i < inMemory; i++) {
+	    chunks[i] = TensorFactory.tensor(dimensions);
+	}
+
+	if (inMemory < count) {
+	    try {
+		file = File.createTempFile("features", ".bin", directory);
+		file.deleteOnExit();
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw"); FileChannel channel = raf.getChannel()) {
+		    for (int i = inMemory; i < count; i++) {
+			MappedByteBuffer b = channel.map(FileChannel.MapMode.READ_WRITE, (i - inMemory) * chunkValues * 4L, chunkValues * 4L);
+			spilled[i] = b.order(ByteOrder.nativeOrder()).asFloatBuffer();
+		    }
+		}
+	    } catch (IOException e) {
+		close();
+		throw new IllegalStateException("Can't create the spill file", e);
+	    }
+
+	    buffer = TensorFactory.tensor(dimensions);
+	}
+    }
+
+    /**
+     * Copies count samples from the batch (starting at batchOffset) to the cache (starting at sample)
+     */
+    public void put(int sample, Tensor batch, int batchOffset, int count) {
+	check(sample, count);
+	for (int done = 0; done < count;) {
+	    int c = (sample + done) / chunkSize, offset = (sample + done) % chunkSize, n = Math.min(count - done, chunkSize - offset);
+	    TensorFactory.copyBatch(batch, batchOffset + done, chunk(c), offset, n);
+	    if (chunks[c] == null) {
+		dirty = true;
+	    }
+
+	    done += n;
+	}
+    }
+
+    /**
+     * Copies count samples from the cache (starting at sample) to the batch (starting at batchOffset)
+     */
+    public void get(int sample, Tensor batch, int batchOffset, int count) {
+	check(sample, count);
+	for (int done = 0; done < count;) {
+	    int c = (sample + done) / chunkSize, offset = (sample + done) % chunkSize, n = Math.min(count - done, chunkSize - offset);
+	    TensorFactory.copyBatch(chunk(c), offset, batch, batchOffset + done, n);
+	    done += n;
+	}
+    }
+
+    /**
+     * Writes the modified chunk buffer to the file
+     */
+    public void flush() {
+	if (dirty) {
+	    FloatBuffer b = spilled[bufferChunk].duplicate();
+	    b.put(buffer.getElements(), 0, chunkValues);
+	    dirty = false;
+	}
+    }
+
+    @Override
+    public void close() {
+	Arrays.fill(chunks, null);
+	Arrays.fill(spilled, null);
+	buffer = null;
+	bufferChunk = -1;
+	dirty = false;
+
+	if (file != null) {
+	    try {
+		Files.deleteIfExists(file.toPath());
+	    } catch (IOException e) {
+		// the file is deleted on exit
+	    }
+
+	    file = null;
+	}
+    }
+
+    private Tensor chunk(int c) {
+	if (chunks[c] != null) {
+	    return chunks[c];
+	}
+
+	if (spilled[c] == null) {
+	    throw new IllegalStateException("The cache is closed");
+	}
+
+	if (bufferChunk != c) {
+	    flush();
+	    spilled[c].duplicate().get(buffer.getElements(), 0, chunkValues);
+	    bufferChunk = c;
+	}
+
+	return buffer;
+    }
+
+    private void check(int sample, int count) {
+	if (sample < 0 || count < 0 || sample + count > samples) {
+	    throw new IllegalArgumentException("Samples out of bounds");
+	}
+    }
+
+    private static int size(int[] dimensions) {
+	return Arrays.stream(dimensions).reduce(1, (a, b) -> a * b);
+    }
+
+    public int getSamples() {
+	return samples;
+    }
+
+    public int getChunkSize() {
+	return chunkSize;
+    }
+
+    /**
+     * @return size of the in-memory chunks in bytes
+     */
+    public long getMemorySize() {
+	return Arrays.stream(chunks).filter(c -> c != null).count() * chunkValues * 4L;
+    }
+
+    /**
+     * @return size of the spilled chunks in bytes
+     */
+    public long getSpilledSize() {
+	return Arrays.stream(spilled).filter(c -> c != null).count() * chunkValues * 4L;
+    }
+}
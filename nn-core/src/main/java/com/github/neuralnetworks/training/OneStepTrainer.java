@@ -1,14 +1,30 @@
 package com.github.neuralnetworks.training;
 
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.List;
+
+import com.github.neuralnetworks.architecture.Connections;
 import com.github.neuralnetworks.architecture.NeuralNetwork;
+import com.github.neuralnetworks.architecture.WeightsConnections;
+import com.github.neuralnetworks.tensor.Tensor;
 import com.github.neuralnetworks.training.events.EpochFinishedEvent;
 import com.github.neuralnetworks.training.events.MiniBatchFinishedEvent;
 import com.github.neuralnetworks.training.events.TrainingFinishedEvent;
 import com.github.neuralnetworks.training.events.TrainingStartedEvent;
+import com.github.neuralnetworks.training.random.PhiloxKernel;
+import com.github.neuralnetworks.training.random.RandomInitializer;
+import com.github.neuralnetworks.training.random.RandomInitializerImpl;
+import com.github.neuralnetworks.util.Constants;
 import com.github.neuralnetworks.util.Properties;
+import com.github.neuralnetworks.util.Util;
 
 /**
  * Base trainer for learning one input after another
+ * The gradients of getGradientAccumulationSteps() consecutive mini batches are summed before the weights are updated.
+ * This allows for large effective batch sizes, while the memory depends only on the training batch size
+ * If getPrefetchDepth() is positive the next batches are populated in a background thread (see TrainingInputPrefetcher) while the current batch is trained
+ * The training can be saved with checkpoint() after a mini batch and resumed with train(TrainingCheckpoint)
  *
  * @param <N>
  */
@@ -16,8 +32,40 @@ public abstract class OneStepTrainer<N extends NeuralNetwork> extends Trainer<N>
 
     private static final long serialVersionUID = 1L;
 
+    /**
+     * name of the random generator of the random initializer in the checkpoints
+     */
+    public static final String RANDOM_INITIALIZER = "randomInitializer";
+
     private boolean stopTraining;
 
+    /**
+     * number of mini batches since the last weights update
+     */
+    private int accumulatedBatches;
+
+    /**
+     * time spent waiting for the input during the last training (nanoseconds)
+     */
+    private long inputTime;
+
+    /**
+     * time spent in the calculations during the last training (nanoseconds)
+     */
+    private long computeTime;
+
+    /**
+     * number of learned training samples and index of the next mini batch (since the start of the training)
+     */
+    private int position;
+    private int nextBatch;
+
+    /**
+     * state of the input provider after the last learned mini batch, when the input is prefetched (the provider itself is ahead)
+     */
+    private transient TrainingInputPrefetcher prefetcher;
+    private transient Serializable inputState;
+
     public OneStepTrainer() {
 	super();
     }
@@ -28,39 +76,266 @@ public abstract class OneStepTrainer<N extends NeuralNetwork> extends Trainer<N>
 
     @Override
     public void train() {
+	train(null);
+    }
+
+    /**
+     * Resumes the training from a checkpoint (see checkpoint()). The weights, the optimizer state, the random generator of the random initializer and the seeds and offsets of the random kernels of the trainer (getRandomKernels(), e.g. dropout) are restored.
+     * The training input is moved to the position of the checkpoint: the saved state of the input provider is restored (see TrainingInputProvider.getState()).
+     * Without a saved state the sample order of a RandomAccessInputProvider is advanced without decoding the samples and other providers populate the learned batches again
+     * @param checkpoint - null starts a new training
+     */
+    public void train(TrainingCheckpoint checkpoint) {
 	triggerEvent(new TrainingStartedEvent(this));
 
 	stopTraining = false;
 
-	if (getRandomInitializer() != null) {
+	if (checkpoint != null) {
+	    restoreState(checkpoint);
+	} else if (getRandomInitializer() != null) {
 	    getRandomInitializer().initialize(getNeuralNetwork());
 	}
 
 	getTrainingInputProvider().reset();
+	accumulatedBatches = 0;
+	inputTime = computeTime = 0;
+	position = checkpoint != null ? checkpoint.getPosition() : 0;
+	nextBatch = checkpoint != null ? checkpoint.getBatch() : 0;
+	if (checkpoint != null) {
+	    seek(checkpoint);
+	}
+
+	int accumulationSteps = getGradientAccumulationSteps();
+	int total = getEpochs() * getTrainingInputProvider().getInputSize();
+	prefetcher = getPrefetchDepth() > 0 && position < total ? new TrainingInputPrefetcher(getTrainingInputProvider(), getInput(), getPrefetchDepth(), (total - position + getTrainingBatchSize() - 1) / getTrainingBatchSize()) : null;
+
+	try {
+	    for (int i = position, batch = nextBatch; i < total && !stopTraining; i += getTrainingBatchSize(), batch++) {
+		TrainingInputData input = getInput();
+		long t = System.nanoTime();
+		if (prefetcher != null) {
+		    inputState = prefetcher.next(input);
+		} else {
+		    getTrainingInputProvider().populateNext(input);
+		}
+
+		long t1 = System.nanoTime();
+		learnInput(batch);
 
-	for (int i = 0, batch = 0; i < getEpochs() * getTrainingInputProvider().getInputSize() && !stopTraining; i += getTrainingBatchSize(), batch++) {
-	    TrainingInputData input = getInput();
-	    getTrainingInputProvider().populateNext(input);
-	    learnInput(batch);
-	    triggerEvent(new MiniBatchFinishedEvent(this, input, null, batch));
+		if (++accumulatedBatches == accumulationSteps) {
+		    updateWeights();
+		    accumulatedBatches = 0;
+		}
 
-	    if (i % getTrainingInputProvider().getInputSize() == 0) {
-		triggerEvent(new EpochFinishedEvent(this, input, null, i / getTrainingInputProvider().getInputSize()));
+		inputTime += t1 - t;
+		computeTime += System.nanoTime() - t1;
+		position = i + getTrainingBatchSize();
+		nextBatch = batch + 1;
+
+		triggerEvent(new MiniBatchFinishedEvent(this, input, null, batch));
+
+		if (i % getTrainingInputProvider().getInputSize() == 0) {
+		    triggerEvent(new EpochFinishedEvent(this, input, null, i / getTrainingInputProvider().getInputSize()));
+		}
+	    }
+	} finally {
+	    if (prefetcher != null) {
+		prefetcher.close();
+		prefetcher = null;
+		inputState = null;
 	    }
 	}
 
+	// the last mini batches, which don't fill a whole accumulation group
+	if (accumulatedBatches > 0) {
+	    long t = System.nanoTime();
+	    updateWeights();
+	    accumulatedBatches = 0;
+	    computeTime += System.nanoTime() - t;
+	}
+
 	triggerEvent(new TrainingFinishedEvent(this));
     }
 
+    /**
+     * Snapshot of the training after the last learned mini batch. It can be taken only between weight updates (see hasAccumulatedGradients())
+     */
+    public TrainingCheckpoint checkpoint() {
+	if (hasAccumulatedGradients()) {
+	    throw new IllegalStateException("Checkpoints can't be taken while gradients are accumulated");
+	}
+
+	TrainingCheckpoint result = new TrainingCheckpoint(position, nextBatch);
+	saveState(result);
+	return result;
+    }
+
+    /**
+     * Moves the training input to the position of the checkpoint (the provider is already reset)
+     */
+    private void seek(TrainingCheckpoint checkpoint) {
+	TrainingInputProvider provider = getTrainingInputProvider();
+	if (checkpoint.getInputState() != null) {
+	    provider.setState(checkpoint.getInputState());
+	} else if (provider instanceof RandomAccessInputProvider) {
+	    ((RandomAccessInputProvider) provider).skip(nextBatch * getTrainingBatchSize());
+	} else {
+	    for (int i = 0; i < nextBatch; i++) {
+		provider.populateNext(getInput());
+	    }
+	}
+    }
+
+    /**
+     * Saves the weights of the network, the random generator of the random initializer, the state of the random kernels and the state of the input provider
+     */
+    protected void saveState(TrainingCheckpoint checkpoint) {
+	List<Connections> connections = getNeuralNetwork().getConnections();
+	float[][] weights = new float[connections.size()][];
+	for (int i = 0; i < weights.length; i++) {
+	    if (connections.get(i) instanceof WeightsConnections) {
+		Tensor w = ((WeightsConnections) connections.get(i)).getWeights();
+		float[] elements = w.getElements();
+		float[] copy = weights[i] = new float[w.getSize()];
+		int[] j = new int[1];
+		w.forEach(k -> copy[j[0]++] = elements[k]);
+	    }
+	}
+
+	checkpoint.setWeights(weights);
+
+	RandomInitializer ri = getRandomInitializer() != null ? getRandomInitializer().getRandomInitializer() : null;
+	if (ri instanceof RandomInitializerImpl && ((RandomInitializerImpl) ri).getRandom() != null) {
+	    checkpoint.getRandoms().put(RANDOM_INITIALIZER, Util.copy(((RandomInitializerImpl) ri).getRandom(), Collections.emptyList()));
+	}
+
+	List<PhiloxKernel> kernels = getRandomKernels();
+	long[] randomKernels = new long[2 * kernels.size()];
+	for (int i = 0; i < kernels.size(); i++) {
+	    randomKernels[2 * i] = kernels.get(i).getSeed();
+	    randomKernels[2 * i + 1] = kernels.get(i).getOffset();
+	}
+
+	checkpoint.setRandomKernels(randomKernels);
+	checkpoint.setInputState(prefetcher != null ? inputState : getTrainingInputProvider().getState());
+    }
+
+    /**
+     * Restores the state saved by saveState
+     */
+    protected void restoreState(TrainingCheckpoint checkpoint) {
+	List<Connections> connections = getNeuralNetwork().getConnections();
+	float[][] weights = checkpoint.getWeights();
+	if (weights.length != connections.size()) {
+	    throw new IllegalArgumentException("The checkpoint doesn't match the network");
+	}
+
+	for (int i = 0; i < weights.length; i++) {
+	    if (connections.get(i) instanceof WeightsConnections) {
+		Tensor w = ((WeightsConnections) connections.get(i)).getWeights();
+		if (weights[i] == null || weights[i].length != w.getSize()) {
+		    throw new IllegalArgumentException("The checkpoint doesn't match the network");
+		}
+
+		float[] elements = w.getElements(), copy = weights[i];
+		int[] j = new int[1];
+		w.forEach(k -> elements[k] = copy[j[0]++]);
+	    }
+	}
+
+	RandomInitializer ri = getRandomInitializer() != null ? getRandomInitializer().getRandomInitializer() : null;
+	if (ri instanceof RandomInitializerImpl && checkpoint.getRandoms().containsKey(RANDOM_INITIALIZER)) {
+	    ((RandomInitializerImpl) ri).setRandom(Util.copy(checkpoint.getRandoms().get(RANDOM_INITIALIZER), Collections.emptyList()));
+	}
+
+	List<PhiloxKernel> kernels = getRandomKernels();
+	long[] randomKernels = checkpoint.getRandomKernels();
+	if (randomKernels != null) {
+	    if (randomKernels.length != 2 * kernels.size()) {
+		throw new IllegalArgumentException("The checkpoint doesn't match the random kernels of the trainer");
+	    }
+
+	    for (int i = 0; i < kernels.size(); i++) {
+		kernels.get(i).setSeed(randomKernels[2 * i]);
+		kernels.get(i).setOffset(randomKernels[2 * i + 1]);
+	    }
+	}
+    }
+
+    /**
+     * @return the counter based random kernels of the trainer (e.g. dropout) in a fixed order. Their seeds and offsets are saved in the checkpoints
+     */
+    protected List<PhiloxKernel> getRandomKernels() {
+	return Collections.emptyList();
+    }
+
+    /**
+     * @return whether there are gradients of mini batches, which are not yet applied to the weights
+     */
+    public boolean hasAccumulatedGradients() {
+	return accumulatedBatches > 0;
+    }
+
     public void stopTraining() {
 	stopTraining = true;
     }
 
     /**
-     * Learning of one batch of examples
+     * Learning of one batch of examples - the gradients are added to the accumulated gradients
      */
     protected abstract void learnInput(int batch);
 
+    /**
+     * Applies the accumulated gradients to the weights (and clears them)
+     */
+    protected abstract void updateWeights();
+
+    /**
+     * @return number of mini batches, whose gradients are summed before each weights update
+     */
+    public int getGradientAccumulationSteps() {
+	Integer steps = properties.getParameter(Constants.GRADIENT_ACCUMULATION_STEPS);
+	return steps != null ? steps : 1;
+    }
+
+    public void setGradientAccumulationSteps(int steps) {
+	if (steps < 1) {
+	    throw new IllegalArgumentException("At least one step is required");
+	}
+
+	properties.setParameter(Constants.GRADIENT_ACCUMULATION_STEPS, steps);
+    }
+
+    /**
+     * @return number of batches, which are populated ahead in a background thread. 0 means that the input is populated synchronously
+     */
+    public int getPrefetchDepth() {
+	Integer depth = properties.getParameter(Constants.PREFETCH_DEPTH);
+	return depth != null ? depth : 0;
+    }
+
+    public void setPrefetchDepth(int depth) {
+	if (depth < 0) {
+	    throw new IllegalArgumentException("The prefetch depth can't be negative");
+	}
+
+	properties.setParameter(Constants.PREFETCH_DEPTH, depth);
+    }
+
+    /**
+     * @return time spent waiting for the input (populating it or waiting for the prefetching) during the last training in nanoseconds
+     */
+    public long getInputTime() {
+	return inputTime;
+    }
+
+    /**
+     * @return time spent in the calculations (gradients and weight updates) during the last training in nanoseconds
+     */
+    public long getComputeTime() {
+	return computeTime;
+    }
+
     /**
      * @return the input data to be populated
      */
@@ -0,0 +1,82 @@
+package com.github.neuralnetworks.training;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+import com.github.neuralnetworks.tensor.TensorFactory;
+
+/**
+ * Input provider with random access to the samples.
+ * The order of the samples is still determined sequentially (beforeSample/afterSample and getSampleIndex), but the samples are decoded in parallel directly into their columns of the input and target tensors.
+ * getInput and getTarget are called concurrently and must be thread safe
+ */
+public interface RandomAccessInputProvider extends TrainingInputProvider {
+
+    /**
+     * @return index of the current sample (called between beforeSample and afterSample)
+     */
+    int getSampleIndex();
+
+    /**
+     * Decodes the input of a sample
+     * @param index - the sample index
+     * @param input - the result (with the size of one sample of the input tensor)
+     */
+    void getInput(int index, float[] input);
+
+    /**
+     * Decodes the target of a sample
+     * @param index - the sample index
+     * @param target - the result (with the size of one sample of the target tensor)
+     */
+    void getTarget(int index, float[] target);
+
+    /**
+     * Advances the sample order without decoding the samples (the input modifiers are not applied)
+     * @param samples - number of skipped samples
+     */
+    public default void skip(int samples) {
+	for (int i = 0; i < samples; i++) {
+	    beforeSample();
+	    afterSample();
+	}
+    }
+
+    @Override
+    public default void populateNext(TrainingInputData ti) {
+	beforeBatch(ti);
+
+	int batchSize = TrainingInputProvider.batchSize(ti);
+	int[] indexes = new int[batchSize];
+	for (int i = 0; i < batchSize; i++) {
+	    beforeSample();
+	    indexes[i] = getSampleIndex();
+	    afterSample();
+	}
+
+	// each chunk of consecutive samples has its own buffers (a single chunk without parallelism)
+	int parallelism = ForkJoinPool.getCommonPoolParallelism();
+	int chunks = parallelism > 1 ? Math.min(batchSize, parallelism * 4) : Math.min(batchSize, 1);
+	IntStream.range(0, chunks).parallel().forEach(c -> {
+	    float[] input = ti.getInput() != null ? new float[ti.getInput().getSize() / batchSize] : null;
+	    float[] target = ti.getTarget() != null ? new float[ti.getTarget().getSize() / batchSize] : null;
+	    for (int i = c * batchSize / chunks, end = (c + 1) * batchSize / chunks; i < end; i++) {
+		if (input != null) {
+		    getInput(indexes[i], input);
+		    TensorFactory.setSample(ti.getInput(), i, input);
+		}
+
+		if (target != null) {
+		    getTarget(indexes[i], target);
+		    TensorFactory.setSample(ti.getTarget(), i, target);
+		}
+	    }
+	});
+
+	if (ti.getInput() != null && getInputModifiers() != null) {
+	    getInputModifiers().forEach(im -> im.value(ti.getInput()));
+	}
+
+	afterBatch(ti);
+    }
+}
@@ -0,0 +1,288 @@
+package com.github.neuralnetworks.training;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.github.neuralnetworks.architecture.Connections;
+import com.github.neuralnetworks.architecture.Layer;
+import com.github.neuralnetworks.architecture.NeuralNetwork;
+import com.github.neuralnetworks.architecture.WeightsConnections;
+import com.github.neuralnetworks.calculation.MergeableOutputError;
+import com.github.neuralnetworks.calculation.OutputError;
+import com.github.neuralnetworks.calculation.memory.ValuesProvider;
+import com.github.neuralnetworks.tensor.Tensor;
+import com.github.neuralnetworks.tensor.TensorFactory;
+import com.github.neuralnetworks.training.events.MiniBatchFinishedEvent;
+import com.github.neuralnetworks.training.events.TestingFinishedEvent;
+import com.github.neuralnetworks.training.events.TestingStartedEvent;
+import com.github.neuralnetworks.util.Environment;
+import com.github.neuralnetworks.util.UniqueList;
+import com.github.neuralnetworks.util.Util;
+
+/**
+ * Testing of the network of a trainer with the testing input provider (used by Trainer.test()).
+ * The values providers are created once for each batch size and are reused by the next tests. If the test batch size is 0, the batch is as large as possible with at most AUTO_BATCH_VALUES activation values.
+ * If the input provider is a RandomAccessInputProvider without input modifiers and the output error is a MergeableOutputError (or there is none), the samples are split in contiguous shards, which are tested in parallel by replicas of the network (the replicas share the weights of the network).
+ * The beforeBatch/afterBatch hooks of the input provider are called for each batch of the shards, one at a time
+ * The output errors of the shards are merged in the order of the samples, so the result is the same as of the serial testing. The MiniBatchFinishedEvents are triggered by the testing threads one at a time
+ */
+public class TestingEngine implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * maximum number of activation values of an automatically sized test batch
+     */
+    public static final int AUTO_BATCH_VALUES = 1 << 22;
+
+    /**
+     * key of the target tensor in the values providers
+     */
+    private static final String TARGET = "target";
+
+    private final Trainer<?> trainer;
+
+    /**
+     * the network (the first context) and its replicas
+     */
+    private transient List<Context> contexts;
+
+    public TestingEngine(Trainer<?> trainer) {
+	super();
+	this.trainer = trainer;
+    }
+
+    public void test() {
+	TrainingInputProvider ip = trainer.getTestingInputProvider();
+	NeuralNetwork n = trainer.getNeuralNetwork();
+
+	if (ip != null && n != null && n.getLayerCalculator() != null) {
+	    ip.reset();
+
+	    trainer.triggerEvent(new TestingStartedEvent(trainer));
+
+	    OutputError oe = trainer.getOutputError();
+	    if (oe != null) {
+		oe.reset();
+	    }
+
+	    int samples = ip.getInputSize();
+	    int workers = Math.max(Math.min(workers(ip, oe), samples), 1);
+	    int batchSize = batchSize(n, (samples + workers - 1) / workers);
+	    List<Context> contexts = contexts(n, workers);
+
+	    if (workers == 1) {
+		for (int i = 0; i < samples; i += batchSize) {
+		    TrainingInputData input = contexts.get(0).input(Math.min(batchSize, samples - i), oe != null);
+		    ip.populateNext(input);
+		    calculate(contexts.get(0), input, oe);
+		}
+	    } else {
+		testParallel((RandomAccessInputProvider) ip, oe, samples, workers, batchSize, contexts);
+	    }
+
+	    trainer.triggerEvent(new TestingFinishedEvent(trainer));
+	}
+    }
+
+    /**
+     * Each worker tests a shard of the samples with its own output error. The errors are merged in the order of the shards
+     */
+    private void testParallel(RandomAccessInputProvider ip, OutputError oe, int samples, int workers, int batchSize, List<Context> contexts) {
+	// the order of the samples is determined sequentially
+	int[] indexes = new int[samples];
+	for (int i = 0; i < samples; i++) {
+	    ip.beforeSample();
+	    indexes[i] = ip.getSampleIndex();
+	    ip.afterSample();
+	}
+
+	ExecutorService executor = Executors.newFixedThreadPool(workers, r -> {
+	    Thread t = new Thread(r, "testing-worker");
+	    t.setDaemon(true);
+	    return t;
+	});
+
+	try {
+	    List<Future<OutputError>> shards = new ArrayList<>();
+	    for (int w = 0; w < workers; w++) {
+		Context c = contexts.get(w);
+		int start = (int) ((long) samples * w / workers), end = (int) ((long) samples * (w + 1) / workers);
+		OutputError shardError = oe != null ? Util.copy(oe, new ArrayList<>()) : null;
+		shards.add(executor.submit(() -> {
+		    for (int i = start; i < end; i += batchSize) {
+			TrainingInputData input = c.input(Math.min(batchSize, end - i), shardError != null);
+			populate(ip, input, indexes, i);
+			calculate(c, input, shardError);
+		    }
+
+		    return shardError;
+		}));
+	    }
+
+	    for (Future<OutputError> f : shards) {
+		OutputError shardError = f.get();
+		if (oe != null) {
+		    ((MergeableOutputError) oe).merge(shardError);
+		}
+	    }
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	    throw new IllegalStateException(e);
+	} catch (ExecutionException e) {
+	    throw new IllegalStateException("Testing failed", e.getCause());
+	} finally {
+	    executor.shutdownNow();
+	}
+    }
+
+    /**
+     * Decodes the samples of the batch (starting at the position from in the sample order) directly in their columns
+     */
+    private static void populate(RandomAccessInputProvider ip, TrainingInputData input, int[] indexes, int from) {
+	synchronized (ip) {
+	    ip.beforeBatch(input);
+	}
+
+	int batchSize = TrainingInputProvider.batchSize(input);
+	float[] in = new float[input.getInput().getSize() / batchSize];
+	float[] target = input.getTarget() != null ? new float[input.getTarget().getSize() / batchSize] : null;
+	for (int i = 0; i < batchSize; i++) {
+	    ip.getInput(indexes[from + i], in);
+	    TensorFactory.setSample(input.getInput(), i, in);
+
+	    if (target != null) {
+		ip.getTarget(indexes[from + i], target);
+		TensorFactory.setSample(input.getTarget(), i, target);
+	    }
+	}
+
+	synchronized (ip) {
+	    ip.afterBatch(input);
+	}
+    }
+
+    private void calculate(Context c, TrainingInputData input, OutputError oe) {
+	NeuralNetwork n = c.neuralNetwork;
+	ValuesProvider results = c.results.get(TrainingInputProvider.batchSize(input));
+
+	c.calculatedLayers.clear();
+	c.calculatedLayers.add(n.getInputLayer());
+	n.getLayerCalculator().calculate(n, n.getOutputLayer(), c.calculatedLayers, results);
+
+	if (oe != null) {
+	    oe.addItem(results.get(n.getOutputLayer()), input.getTarget());
+	}
+
+	synchronized (this) {
+	    trainer.triggerEvent(new MiniBatchFinishedEvent(trainer, input, results, null));
+	}
+    }
+
+    /**
+     * @return number of parallel testing contexts (1 if the input provider or the output error don't support parallel testing or if the input modifiers would be shared by the testing threads)
+     */
+    private int workers(TrainingInputProvider ip, OutputError oe) {
+	if (!(ip instanceof RandomAccessInputProvider) || (ip.getInputModifiers() != null && !ip.getInputModifiers().isEmpty()) || (oe != null && !(oe instanceof MergeableOutputError))) {
+	    return 1;
+	}
+
+	return trainer.getTestWorkers();
+    }
+
+    /**
+     * @return the test batch size (chosen by the activation size of one sample, if not set), but not more than the samples of one context
+     */
+    private int batchSize(NeuralNetwork n, int samples) {
+	int result = trainer.getTestBatchSize();
+	if (result <= 0) {
+	    long values = TensorFactory.getLayersDimensions(n, 1).values().stream().flatMap(Set::stream).mapToLong(d -> Arrays.stream(d).asLongStream().reduce(1, (a, b) -> a * b)).sum();
+	    result = (int) Math.max(AUTO_BATCH_VALUES / Math.max(values, 1), 1);
+	}
+
+	return Math.max(Math.min(result, samples), 1);
+    }
+
+    /**
+     * The cached contexts are discarded if the network or its weights tensors are replaced
+     */
+    private List<Context> contexts(NeuralNetwork n, int count) {
+	List<Tensor> weights = new ArrayList<>();
+	for (Connections c : n.getConnections()) {
+	    if (c instanceof WeightsConnections) {
+		weights.add(((WeightsConnections) c).getWeights());
+	    }
+	}
+
+	if (contexts == null || !contexts.get(0).isFor(n, weights)) {
+	    contexts = new ArrayList<>();
+	    contexts.add(new Context(n, weights));
+	}
+
+	if (contexts.size() < count) {
+	    List<Object> shared = new ArrayList<>();
+	    weights.forEach(w -> {
+		shared.add(w);
+		shared.add(w.getElements());
+	    });
+
+	    while (contexts.size() < count) {
+		contexts.add(new Context(Util.copy(n, shared), weights));
+	    }
+	}
+
+	return contexts;
+    }
+
+    /**
+     * Network (or replica) with its values providers for each batch size
+     */
+    private static class Context {
+
+	private final NeuralNetwork neuralNetwork;
+	private final List<Tensor> weights;
+	private final float[][] weightsElements;
+	private final Map<Integer, ValuesProvider> results = new HashMap<>();
+	private final Set<Layer> calculatedLayers = new UniqueList<>();
+
+	private Context(NeuralNetwork neuralNetwork, List<Tensor> weights) {
+	    this.neuralNetwork = neuralNetwork;
+	    this.weights = weights;
+	    this.weightsElements = weights.stream().map(Tensor::getElements).toArray(float[][]::new);
+	}
+
+	private boolean isFor(NeuralNetwork n, List<Tensor> weights) {
+	    if (neuralNetwork != n || this.weights.size() != weights.size()) {
+		return false;
+	    }
+
+	    for (int i = 0; i < weights.size(); i++) {
+		if (this.weights.get(i) != weights.get(i) || weightsElements[i] != weights.get(i).getElements()) {
+		    return false;
+		}
+	    }
+
+	    return true;
+	}
+
+	private TrainingInputData input(int batchSize, boolean target) {
+	    ValuesProvider vp = results.get(batchSize);
+	    if (vp == null) {
+		vp = TensorFactory.tensorProvider(neuralNetwork, batchSize, Environment.getInstance().getUseDataSharedMemory());
+		vp.add(TARGET, vp.get(neuralNetwork.getOutputLayer()).getDimensions());
+		results.put(batchSize, vp);
+	    }
+
+	    return new TrainingInputDataImpl(vp.get(neuralNetwork.getInputLayer()), target ? vp.get(TARGET) : null);
+	}
+    }
+}
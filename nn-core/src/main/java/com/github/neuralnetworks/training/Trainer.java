@@ -3,18 +3,12 @@ package com.github.neuralnetworks.training;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Set;
 
-import com.github.neuralnetworks.architecture.Layer;
+import com.amd.aparapi.Kernel.EXECUTION_MODE;
 import com.github.neuralnetworks.architecture.NeuralNetwork;
 import com.github.neuralnetworks.calculation.OutputError;
-import com.github.neuralnetworks.calculation.memory.ValuesProvider;
 import com.github.neuralnetworks.events.TrainingEvent;
 import com.github.neuralnetworks.events.TrainingEventListener;
-import com.github.neuralnetworks.tensor.TensorFactory;
-import com.github.neuralnetworks.training.events.MiniBatchFinishedEvent;
-import com.github.neuralnetworks.training.events.TestingFinishedEvent;
-import com.github.neuralnetworks.training.events.TestingStartedEvent;
 import com.github.neuralnetworks.training.random.NNRandomInitializer;
 import com.github.neuralnetworks.util.Constants;
 import com.github.neuralnetworks.util.Environment;
@@ -38,6 +32,11 @@ public abstract class Trainer<N extends NeuralNetwork> implements Serializable {
      */
     protected List<TrainingEventListener> listeners;
 
+    /**
+     * Testing engine with the cached testing contexts
+     */
+    private transient TestingEngine testingEngine;
+
     public Trainer() {
 	super();
     }
@@ -54,41 +53,14 @@ public abstract class Trainer<N extends NeuralNetwork> implements Serializable {
 
     /**
      * The network is tested via the testing input provider and the training error is aggregated for each example.
+     * The test is done by the TestingEngine of the trainer (in parallel, if the input provider and the output error allow it)
      */
     public void test() {
-	TrainingInputProvider ip = getTestingInputProvider();
-	N n = getNeuralNetwork();
-
-	if (ip != null && n != null && n.getLayerCalculator() != null) {
-	    ip.reset();
-
-	    triggerEvent(new TestingStartedEvent(this));
-
-	    Set<Layer> calculatedLayers = new UniqueList<>();
-	    ValuesProvider results = TensorFactory.tensorProvider(n, getTestBatchSize(), Environment.getInstance().getUseDataSharedMemory());
-
-	    OutputError oe = getOutputError();
-	    if (oe != null) {
-		oe.reset();
-		results.add(oe, results.get(n.getOutputLayer()).getDimensions());
-	    }
-
-	    TrainingInputData input = new TrainingInputDataImpl(results.get(n.getInputLayer()), results.get(oe));
-	    for (int i = 0; i < ip.getInputSize(); i += getTestBatchSize()) {
-		ip.populateNext(input);
-		calculatedLayers.clear();
-		calculatedLayers.add(n.getInputLayer());
-		n.getLayerCalculator().calculate(n, n.getOutputLayer(), calculatedLayers, results);
-		
-		if (oe != null) {
-		    oe.addItem(results.get(n.getOutputLayer()), input.getTarget());
-		}
-		
-		triggerEvent(new MiniBatchFinishedEvent(this, input, results, null));
-	    }
-	    
-	    triggerEvent(new TestingFinishedEvent(this));
+	if (testingEngine == null) {
+	    testingEngine = new TestingEngine(this);
 	}
+
+	testingEngine.test();
     }
 
     public Properties getProperties() {
@@ -147,6 +119,9 @@ public abstract class Trainer<N extends NeuralNetwork> implements Serializable {
 	properties.setParameter(Constants.TRAINING_BATCH_SIZE, batchSize);
     }
     
+    /**
+     * @return the test batch size (1 if not set, 0 - the batch size is chosen automatically)
+     */
     public Integer getTestBatchSize() {
 	return properties.getParameter(Constants.TEST_BATCH_SIZE) != null ? properties.getParameter(Constants.TEST_BATCH_SIZE) : 1;
     }
@@ -154,6 +129,25 @@ public abstract class Trainer<N extends NeuralNetwork> implements Serializable {
     public void setTestBatchSize(int batchSize) {
 	properties.setParameter(Constants.TEST_BATCH_SIZE, batchSize);
     }
+
+    /**
+     * @return the number of parallel testing contexts (by default the number of processors in SEQ execution mode and 1 otherwise)
+     */
+    public Integer getTestWorkers() {
+	if (properties.getParameter(Constants.TEST_WORKERS) != null) {
+	    return properties.getParameter(Constants.TEST_WORKERS);
+	}
+
+	return Environment.getInstance().getExecutionStrategy().getExecutionMode(1) == EXECUTION_MODE.SEQ ? Runtime.getRuntime().availableProcessors() : 1;
+    }
+
+    public void setTestWorkers(int workers) {
+	if (workers < 1) {
+	    throw new IllegalArgumentException("At least one testing worker is required");
+	}
+
+	properties.setParameter(Constants.TEST_WORKERS, workers);
+    }
     
     public Integer getEpochs() {
 	return properties.getParameter(Constants.EPOCHS) != null ? properties.getParameter(Constants.EPOCHS) : 1;
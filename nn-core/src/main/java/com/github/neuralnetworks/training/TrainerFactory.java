@@ -56,7 +56,10 @@ import com.github.neuralnetworks.training.backpropagation.BackPropagationTrainer
 import com.github.neuralnetworks.training.backpropagation.BackpropagationAveragePooling2D;
 import com.github.neuralnetworks.training.backpropagation.BackpropagationMaxPooling2D;
 import com.github.neuralnetworks.training.backpropagation.BackpropagationMaxout;
+import com.github.neuralnetworks.training.backpropagation.DataParallelBackPropagationTrainer;
+import com.github.neuralnetworks.training.backpropagation.HogwildBackPropagationTrainer;
 import com.github.neuralnetworks.training.backpropagation.MSEDerivative;
+import com.github.neuralnetworks.training.optimizers.MomentumOptimizer;
 import com.github.neuralnetworks.training.random.NNRandomInitializer;
 import com.github.neuralnetworks.training.rbm.AparapiCDTrainer;
 import com.github.neuralnetworks.training.rbm.DBNTrainer;
@@ -89,6 +92,34 @@ public class TrainerFactory {
 	return new BackPropagationTrainer<NeuralNetwork>(p);
     }
 
+    /**
+     * Synchronous data parallel backpropagation trainer - each mini batch is split between the workers
+     * 
+     * @param workers - number of worker threads (each of them has a replica of the network)
+     * @return
+     */
+    public static DataParallelBackPropagationTrainer<?> dataParallelBackPropagation(NeuralNetworkImpl nn, TrainingInputProvider trainingSet, TrainingInputProvider testingSet, OutputError error, NNRandomInitializer rand, float learningRate, float momentum, float l1weightDecay, float l2weightDecay, int trainingBatchSize, int testBatchSize, int epochs, int workers) {
+	Properties p = backpropProperties(nn, trainingSet, testingSet, error, rand, learningRate, momentum, l1weightDecay, l2weightDecay, 0F, trainingBatchSize, testBatchSize, epochs);
+	p.setParameter(Constants.BACKPROPAGATION, bplc(nn, p));
+	p.setParameter(Constants.WORKERS, workers);
+
+	return new DataParallelBackPropagationTrainer<NeuralNetwork>(p);
+    }
+
+    /**
+     * Asynchronous (Hogwild style) backpropagation trainer - the workers update the shared weights without locking
+     * 
+     * @param workers - number of worker threads (each of them has a replica of the network, which shares the weights)
+     * @return
+     */
+    public static HogwildBackPropagationTrainer<?> hogwildBackPropagation(NeuralNetworkImpl nn, TrainingInputProvider trainingSet, TrainingInputProvider testingSet, OutputError error, NNRandomInitializer rand, float learningRate, float momentum, float l1weightDecay, float l2weightDecay, float dropoutRate, int trainingBatchSize, int testBatchSize, int epochs, int workers) {
+	Properties p = backpropProperties(nn, trainingSet, testingSet, error, rand, learningRate, momentum, l1weightDecay, l2weightDecay, dropoutRate, trainingBatchSize, testBatchSize, epochs);
+	p.setParameter(Constants.BACKPROPAGATION, bplc(nn, p));
+	p.setParameter(Constants.WORKERS, workers);
+
+	return new HogwildBackPropagationTrainer<NeuralNetwork>(p);
+    }
+
     private static BackPropagationLayerCalculatorImpl bplc(NeuralNetworkImpl nn, Properties p) {
 	BackPropagationLayerCalculatorImpl blc = new BackPropagationLayerCalculatorImpl();
 	LayerCalculatorImpl lc = (LayerCalculatorImpl) nn.getLayerCalculator();
@@ -186,12 +217,9 @@ public class TrainerFactory {
 	p.setParameter(Constants.NEURAL_NETWORK, nn);
 	p.setParameter(Constants.TRAINING_INPUT_PROVIDER, trainingSet);
 	p.setParameter(Constants.TESTING_INPUT_PROVIDER, testingSet);
-	p.setParameter(Constants.LEARNING_RATE, learningRate);
-	p.setParameter(Constants.MOMENTUM, momentum);
-	p.setParameter(Constants.L1_WEIGHT_DECAY, l1weightDecay);
-	p.setParameter(Constants.L2_WEIGHT_DECAY, l2weightDecay);
+	p.setParameter(Constants.OPTIMIZER, new MomentumOptimizer(learningRate, momentum, l1weightDecay, l2weightDecay));
+	p.setParameter(Constants.GRADIENTS, gradients(nn));
 	p.setParameter(Constants.OUTPUT_ERROR_DERIVATIVE, new MSEDerivative());
-	p.setParameter(Constants.WEIGHT_UDPATES, weightUpdates(nn));
 	p.setParameter(Constants.OUTPUT_ERROR, error);
 	p.setParameter(Constants.RANDOM_INITIALIZER, rand);
 	p.setParameter(Constants.TRAINING_BATCH_SIZE, trainingBatchSize);
@@ -233,10 +261,10 @@ public class TrainerFactory {
 	p.setParameter(Constants.NEURAL_NETWORK, rbm);
 	p.setParameter(Constants.TRAINING_INPUT_PROVIDER, trainingSet);
 	p.setParameter(Constants.TESTING_INPUT_PROVIDER, testingSet);
-	p.setParameter(Constants.LEARNING_RATE, learningRate);
-	p.setParameter(Constants.MOMENTUM, momentum);
+	p.setParameter(Constants.OPTIMIZER, new MomentumOptimizer(learningRate, momentum, 0, 0));
 	p.setParameter(Constants.L1_WEIGHT_DECAY, l1weightDecay);
 	p.setParameter(Constants.L2_WEIGHT_DECAY, l2weightDecay);
+	p.setParameter(Constants.GRADIENTS, gradients(rbm));
 	p.setParameter(Constants.GIBBS_SAMPLING_COUNT, gibbsSampling);
 	p.setParameter(Constants.OUTPUT_ERROR, error);
 	p.setParameter(Constants.RANDOM_INITIALIZER, rand);
@@ -258,15 +286,15 @@ public class TrainerFactory {
 
     /**
      * @param nn
-     * @return Weight update tensors
+     * @return Gradient tensors for the connections of the network (with the same layout as the weights; they share one array if the weights do)
      */
-    public static Map<Connections, Tensor> weightUpdates(NeuralNetworkImpl nn) {
+    public static Map<Connections, Tensor> gradients(NeuralNetworkImpl nn) {
 	Map<Connections, Tensor> result = new HashMap<>();
 
 	ConnectionFactory cf = nn.getProperties().getParameter(Constants.CONNECTION_FACTORY);
 
-	List<Connections> connections = cf.getConnections().stream().filter(c -> c instanceof WeightsConnections).collect(Collectors.toList());
-	float[] elements = cf.useSharedWeights() ? new float[((WeightsConnections) connections.get(0)).getWeights().getElements().length] : null;
+	List<Connections> connections = nn.getConnections().stream().filter(c -> c instanceof WeightsConnections).collect(Collectors.toList());
+	float[] elements = cf != null && cf.useSharedWeights() && connections.size() > 0 ? new float[((WeightsConnections) connections.get(0)).getWeights().getElements().length] : null;
 	IntStream.range(0, connections.size()).forEach(i -> result.put(connections.get(i), TensorFactory.duplicate(((WeightsConnections) connections.get(i)).getWeights(), elements)));
 
 	return result;
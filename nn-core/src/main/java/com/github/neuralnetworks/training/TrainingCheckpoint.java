@@ -0,0 +1,110 @@
+package com.github.neuralnetworks.training;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Snapshot of a training at a mini batch boundary: the position in the training input, the state of the input provider, the weights of the network, the optimizer state and the random generators of the trainer.
+ * It is created with OneStepTrainer.checkpoint() and the training is resumed with OneStepTrainer.train(TrainingCheckpoint)
+ */
+public class TrainingCheckpoint implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * number of training samples (since the start of the training), which are already learned
+     */
+    private final int position;
+
+    /**
+     * index of the next mini batch
+     */
+    private final int batch;
+
+    /**
+     * weights of the WeightsConnections of the network in the order of getConnections()
+     */
+    private float[][] weights;
+
+    /**
+     * number of optimizer updates
+     */
+    private int optimizerStep;
+
+    /**
+     * optimizer state - one array per state variable (see Optimizer.getState())
+     */
+    private float[][] optimizerState;
+
+    /**
+     * copies of the random generators of the trainer by name
+     */
+    private Map<String, Random> randoms = new HashMap<>();
+
+    /**
+     * seed and offset of each random kernel of the trainer (see OneStepTrainer.getRandomKernels())
+     */
+    private long[] randomKernels;
+
+    /**
+     * state of the training input provider (see TrainingInputProvider.getState()) or null
+     */
+    private Serializable inputState;
+
+    public TrainingCheckpoint(int position, int batch) {
+	super();
+	this.position = position;
+	this.batch = batch;
+    }
+
+    public int getPosition() {
+	return position;
+    }
+
+    public int getBatch() {
+	return batch;
+    }
+
+    public float[][] getWeights() {
+	return weights;
+    }
+
+    public void setWeights(float[][] weights) {
+	this.weights = weights;
+    }
+
+    public int getOptimizerStep() {
+	return optimizerStep;
+    }
+
+    public float[][] getOptimizerState() {
+	return optimizerState;
+    }
+
+    public void setOptimizerState(int optimizerStep, float[][] optimizerState) {
+	this.optimizerStep = optimizerStep;
+	this.optimizerState = optimizerState;
+    }
+
+    public Map<String, Random> getRandoms() {
+	return randoms;
+    }
+
+    public long[] getRandomKernels() {
+	return randomKernels;
+    }
+
+    public void setRandomKernels(long[] randomKernels) {
+	this.randomKernels = randomKernels;
+    }
+
+    public Serializable getInputState() {
+	return inputState;
+    }
+
+    public void setInputState(Serializable inputState) {
+	this.inputState = inputState;
+    }
+}
@@ -0,0 +1,147 @@
+package com.github.neuralnetworks.training;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import com.github.neuralnetworks.tensor.Tensor;
+import com.github.neuralnetworks.tensor.TensorFactory;
+
+/**
+ * Populates the training batches in a background thread, while the previous batches are being trained.
+ * Up to depth batches are populated ahead in separate buffers. next() copies the oldest one into the input of the trainer and recycles the buffer.
+ * The input provider must not be used by other threads until the prefetcher is closed.
+ * The state of the provider (TrainingInputProvider.getState()) after each batch is returned with the batch, because the provider itself is ahead of the trained batches
+ */
+public class TrainingInputPrefetcher implements AutoCloseable {
+
+    private final BlockingQueue<TrainingInputData> free;
+    private final BlockingQueue<TrainingInputData> ready;
+    private final Map<TrainingInputData, Serializable> states;
+    private final Thread thread;
+    private volatile boolean closed;
+    private volatile Throwable failure;
+
+    /**
+     * time spent in populateNext in the background thread (nanoseconds)
+     */
+    private volatile long populateTime;
+
+    /**
+     * @param provider - the input provider (already reset)
+     * @param template - the buffers have the dimensions of its input and target
+     * @param depth - number of batches, which are populated ahead
+     * @param batches - total number of batches
+     */
+    public TrainingInputPrefetcher(TrainingInputProvider provider, TrainingInputData template, int depth, int batches) {
+	super();
+
+	if (depth < 1) {
+	    throw new IllegalArgumentException("depth must be positive");
+	}
+
+	free = new ArrayBlockingQueue<>(depth);
+	ready = new ArrayBlockingQueue<>(depth);
+	states = Collections.synchronizedMap(new IdentityHashMap<>());
+	for (int i = 0; i < depth; i++) {
+	    free.add(new TrainingInputDataImpl(buffer(template.getInput()), buffer(template.getTarget())));
+	}
+
+	thread = new Thread(() -> {
+	    for (int i = 0; i < batches && !closed; i++) {
+		TrainingInputData b = take(free);
+		if (b == null) {
+		    break;
+		}
+
+		long t = System.nanoTime();
+		provider.populateNext(b);
+		states.put(b, provider.getState());
+		populateTime += System.nanoTime() - t;
+
+		put(ready, b);
+	    }
+	}, "training-input-prefetch");
+	thread.setDaemon(true);
+	thread.setUncaughtExceptionHandler((th, e) -> failure = e);
+	thread.start();
+    }
+
+    /**
+     * Waits for the next batch and copies it into the target
+     * @return the state of the input provider after the batch was populated
+     */
+    public Serializable next(TrainingInputData target) {
+	TrainingInputData b = take(ready);
+	if (b == null) {
+	    throw new IllegalStateException("Input prefetching failed", failure);
+	}
+
+	if (target.getInput() != null) {
+	    TensorFactory.copy(b.getInput(), target.getInput());
+	}
+
+	if (target.getTarget() != null) {
+	    TensorFactory.copy(b.getTarget(), target.getTarget());
+	}
+
+	Serializable result = states.remove(b);
+	free.offer(b);
+
+	return result;
+    }
+
+    /**
+     * @return time spent populating the batches in the background (nanoseconds)
+     */
+    public long getPopulateTime() {
+	return populateTime;
+    }
+
+    /**
+     * Stops the background thread
+     */
+    @Override
+    public void close() {
+	closed = true;
+	try {
+	    thread.join();
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	}
+    }
+
+    private static Tensor buffer(Tensor t) {
+	return t != null ? TensorFactory.tensor(t.getDimensions()) : null;
+    }
+
+    /**
+     * @return the next element or null, if the prefetching is stopped
+     */
+    private TrainingInputData take(BlockingQueue<TrainingInputData> queue) {
+	try {
+	    TrainingInputData result = null;
+	    while (result == null && !closed && failure == null && (queue == free || thread.isAlive() || !queue.isEmpty())) {
+		result = queue.poll(100, TimeUnit.MILLISECONDS);
+	    }
+
+	    return result;
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	    throw new IllegalStateException(e);
+	}
+    }
+
+    private void put(BlockingQueue<TrainingInputData> queue, TrainingInputData data) {
+	try {
+	    while (!closed && !queue.offer(data, 100, TimeUnit.MILLISECONDS));
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	    throw new IllegalStateException(e);
+	}
+    }
+}
@@ -2,10 +2,10 @@ package com.github.neuralnetworks.training;
 
 import java.io.Serializable;
 import java.util.List;
-import java.util.stream.IntStream;
 
 import com.github.neuralnetworks.calculation.neuronfunctions.TensorFunction;
-import com.github.neuralnetworks.tensor.Tensor.TensorIterator;
+import com.github.neuralnetworks.tensor.Tensor;
+import com.github.neuralnetworks.tensor.TensorFactory;
 
 /**
  * Input provider for training data
@@ -31,66 +31,65 @@ public interface TrainingInputProvider extends Serializable {
     void beforeSample();
 
     public default void populateNext(TrainingInputData ti) {
-	beforeBatch(ti);
-
-	// batch size
-	int batchSize = 0;
-	if (ti.getInput() != null && ti.getTarget() != null && ti.getInput().getDimensions()[ti.getInput().getDimensions().length - 1] != ti.getInput().getDimensions()[ti.getInput().getDimensions().length - 1]) {
-	    throw new IllegalArgumentException("Input and target batch size don't match");
-	}
+	populateSequentially(this, ti);
+    }
 
-	if (ti.getInput() != null) {
-	    batchSize = ti.getInput().getDimensions()[ti.getInput().getDimensions().length - 1];
-	} else if (ti.getTarget() != null) {
-	    batchSize = ti.getTarget().getDimensions()[ti.getTarget().getDimensions().length - 1];
-	}
+    /**
+     * Snapshot of the position in the input, which is saved in the training checkpoints (for example the counter and the random generator of a shuffled sample order)
+     * @return null if the provider has no snapshots (the position is then restored by advancing the input again)
+     */
+    public default Serializable getState() {
+	return null;
+    }
 
-	int[] inputDims = null;
-	int[][] inputLimits = null;
-	int[] targetDims = null;
-	int[][] targetLimits = null;
+    /**
+     * Restores a snapshot of getState() (after reset())
+     */
+    public default void setState(Serializable state) {
+	throw new IllegalArgumentException("The input provider has no state");
+    }
 
-	if (ti.getInput() != null) {
-	    inputDims = ti.getInput().getDimensions();
-	    inputLimits = new int[2][inputDims.length];
-	    for (int i = 0; i < inputDims.length - 1; i++) {
-		inputLimits[1][i] = inputDims[i] - 1;
-	    }
-	}
+    /**
+     * Populates the next mini batch one sample after another
+     */
+    public static void populateSequentially(TrainingInputProvider p, TrainingInputData ti) {
+	p.beforeBatch(ti);
 
-	if (ti.getTarget() != null) {
-	    targetDims = ti.getTarget().getDimensions();
-	    targetLimits = new int[2][targetDims.length];
-	    for (int i = 0; i < targetDims.length - 1; i++) {
-		targetLimits[1][i] = targetDims[i] - 1;
-	    }
-	}
-
-	// data population
+	int batchSize = batchSize(ti);
 	for (int i = 0; i < batchSize; i++) {
-	    beforeSample();
+	    p.beforeSample();
 
 	    if (ti.getInput() != null) {
-		inputLimits[0][inputDims.length - 1] = inputLimits[1][inputDims.length - 1] = i;
-		TensorIterator inputIt = ti.getInput().iterator(inputLimits);
-		float[] inputEl = getNextInput();
-		IntStream.range(0, inputEl.length).forEach(j -> ti.getInput().getElements()[inputIt.next()] = inputEl[j]);
+		TensorFactory.setSample(ti.getInput(), i, p.getNextInput());
 	    }
 
 	    if (ti.getTarget() != null) {
-		targetLimits[0][targetDims.length - 1] = targetLimits[1][targetDims.length - 1] = i;
-		TensorIterator targetIt = ti.getTarget().iterator(targetLimits);
-		float[] targetEl = getNextTarget();
-		IntStream.range(0, targetEl.length).forEach(j -> ti.getTarget().getElements()[targetIt.next()] = targetEl[j]);
+		TensorFactory.setSample(ti.getTarget(), i, p.getNextTarget());
 	    }
 
-	    afterSample();
+	    p.afterSample();
+	}
+
+	if (ti.getInput() != null && p.getInputModifiers() != null) {
+	    p.getInputModifiers().forEach(im -> im.value(ti.getInput()));
+	}
+
+	p.afterBatch(ti);
+    }
+
+    /**
+     * @return the mini batch size of the input data (the last dimension)
+     */
+    public static int batchSize(TrainingInputData ti) {
+	Tensor input = ti.getInput(), target = ti.getTarget();
+	if (input != null && target != null && input.getDimensions()[input.getDimensions().length - 1] != target.getDimensions()[target.getDimensions().length - 1]) {
+	    throw new IllegalArgumentException("Input and target batch size don't match");
 	}
 
-	if (ti.getInput() != null && getInputModifiers() != null) {
-	    getInputModifiers().forEach(im -> im.value(ti.getInput()));
+	if (input != null) {
+	    return input.getDimensions()[input.getDimensions().length - 1];
 	}
 
-	afterBatch(ti);
+	return target != null ? target.getDimensions()[target.getDimensions().length - 1] : 0;
     }
 }
@@ -5,6 +5,7 @@ import java.util.List;
 
 import com.github.neuralnetworks.calculation.neuronfunctions.TensorFunction;
 import com.github.neuralnetworks.input.InputConverter;
+import com.github.neuralnetworks.training.random.PhiloxKernel;
 
 public abstract class TrainingInputProviderImpl implements TrainingInputProvider {
 
@@ -82,4 +83,45 @@ public abstract class TrainingInputProviderImpl implements TrainingInputProvider
     public void reset() {
 	currentInput = 0;
     }
+
+    /**
+     * Subclasses with a deterministic sample order can use it as their state (see getState())
+     * @return the counter and the seed and the offset of each input modifier, which is a PhiloxKernel (noise)
+     */
+    protected long[] getPositionState() {
+	List<PhiloxKernel> kernels = randomModifiers();
+	long[] result = new long[1 + 2 * kernels.size()];
+	result[0] = currentInput;
+	for (int i = 0; i < kernels.size(); i++) {
+	    result[1 + 2 * i] = kernels.get(i).getSeed();
+	    result[2 + 2 * i] = kernels.get(i).getOffset();
+	}
+
+	return result;
+    }
+
+    /**
+     * Restores the state of getPositionState()
+     */
+    protected void setPositionState(long[] state) {
+	List<PhiloxKernel> kernels = randomModifiers();
+	if (state.length != 1 + 2 * kernels.size()) {
+	    throw new IllegalArgumentException("The state doesn't match the input modifiers");
+	}
+
+	currentInput = (int) state[0];
+	for (int i = 0; i < kernels.size(); i++) {
+	    kernels.get(i).setSeed(state[1 + 2 * i]);
+	    kernels.get(i).setOffset(state[2 + 2 * i]);
+	}
+    }
+
+    private List<PhiloxKernel> randomModifiers() {
+	List<PhiloxKernel> result = new ArrayList<>();
+	if (inputModifiers != null) {
+	    inputModifiers.stream().filter(m -> m instanceof PhiloxKernel).forEach(m -> result.add((PhiloxKernel) m));
+	}
+
+	return result;
+    }
 }
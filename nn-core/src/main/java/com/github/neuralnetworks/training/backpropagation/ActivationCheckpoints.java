@@ -0,0 +1,265 @@
+package com.github.neuralnetworks.training.backpropagation;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.github.neuralnetworks.architecture.Connections;
+import com.github.neuralnetworks.architecture.Layer;
+import com.github.neuralnetworks.architecture.NeuralNetwork;
+import com.github.neuralnetworks.calculation.LayerOrderStrategy.ConnectionCandidate;
+import com.github.neuralnetworks.calculation.TargetLayerOrderStrategy;
+import com.github.neuralnetworks.calculation.memory.ValuesProvider;
+import com.github.neuralnetworks.tensor.TensorFactory;
+import com.github.neuralnetworks.util.UniqueList;
+import com.github.neuralnetworks.util.Util;
+
+/**
+ * Activation checkpointing (gradient checkpointing) for backpropagation of layer chains (for example deep convolutional networks).
+ * Only the activations of the checkpoint layers (and the bias layers) are kept for the whole backward pass. The layers between two consecutive checkpoints form a segment.
+ * All the segments share one buffer, which holds the largest segment, so the forward pass keeps only the activations of the last segment.
+ * During the backward pass each segment is recomputed from the checkpoint below it, before its connections are backpropagated.
+ * The input and the output layers are always checkpoints. Dropout is not supported, because the recomputed activations must match the original ones
+ */
+public class ActivationCheckpoints implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final NeuralNetwork neuralNetwork;
+    private final Set<Layer> checkpoints;
+    private final ValuesProvider activations;
+
+    /**
+     * the layers of each segment in the forward order
+     */
+    private final List<List<Layer>> segments;
+
+    /**
+     * the checkpoints before each segment in the forward order - the segment is recomputed from them
+     */
+    private final List<Set<Layer>> segmentInputs;
+
+    /**
+     * number of non bias layers calculated in the forward pass
+     */
+    private final int layers;
+    private final long fullSize;
+    private final long storedSize;
+
+    /**
+     * the segment, whose activations are in the buffer (-1 if none)
+     */
+    private int currentSegment = -1;
+    private long forwardLayers;
+    private long recomputedLayers;
+
+    /**
+     * Checkpoints every sqrt(n) layers, where n is the number of calculated layers
+     */
+    public ActivationCheckpoints(NeuralNetwork neuralNetwork, int miniBatchSize) {
+	this(neuralNetwork, miniBatchSize, null);
+    }
+
+    /**
+     * @param checkpoints - the layers, whose activations are kept (null for checkpoints every sqrt(n) layers)
+     */
+    public ActivationCheckpoints(NeuralNetwork neuralNetwork, int miniBatchSize, Collection<Layer> checkpoints) {
+	super();
+	this.neuralNetwork = neuralNetwork;
+
+	// forward order of the calculated layers
+	Set<Layer> calculated = new UniqueList<>();
+	calculated.add(neuralNetwork.getInputLayer());
+	List<Layer> order = new ArrayList<>();
+	order.add(neuralNetwork.getInputLayer());
+	for (ConnectionCandidate cc : new TargetLayerOrderStrategy(neuralNetwork, neuralNetwork.getOutputLayer(), calculated).order()) {
+	    if (!order.contains(cc.target)) {
+		order.add(cc.target);
+	    }
+	}
+
+	layers = order.size() - 1;
+
+	this.checkpoints = new HashSet<>();
+	if (checkpoints != null) {
+	    this.checkpoints.addAll(checkpoints);
+	} else {
+	    int step = (int) Math.ceil(Math.sqrt(layers));
+	    for (int i = step; i < order.size(); i += step) {
+		this.checkpoints.add(order.get(i));
+	    }
+	}
+
+	this.checkpoints.add(neuralNetwork.getInputLayer());
+	this.checkpoints.add(neuralNetwork.getOutputLayer());
+
+	if (!order.containsAll(this.checkpoints)) {
+	    throw new IllegalArgumentException("The checkpoints must be calculated layers of the network");
+	}
+
+	segments = new ArrayList<>();
+	segmentInputs = new ArrayList<>();
+	List<Layer> segment = new ArrayList<>();
+	Set<Layer> segmentInput = new UniqueList<>();
+	for (Layer l : order) {
+	    if (this.checkpoints.contains(l)) {
+		if (segment.size() > 0) {
+		    segments.add(segment);
+		    segmentInputs.add(new UniqueList<>(segmentInput));
+		    segment = new ArrayList<>();
+		}
+
+		segmentInput.add(l);
+	    } else {
+		segment.add(l);
+	    }
+	}
+
+	// the checkpoints and the bias layers have their own tensors, the segments share one buffer
+	// like in TensorFactory.tensorProvider the tensors of a layer with the same size share their elements
+	Map<Layer, Set<int[]>> dims = TensorFactory.getLayersDimensions(neuralNetwork, miniBatchSize);
+	activations = new ValuesProvider(false);
+	long full = 0, stored = 0;
+	for (Map.Entry<Layer, Set<int[]>> e : dims.entrySet()) {
+	    full += size(e.getValue());
+	    if (!order.contains(e.getKey()) || this.checkpoints.contains(e.getKey())) {
+		e.getValue().forEach(d -> activations.add(e.getKey(), true, d));
+		stored += size(e.getValue());
+	    }
+	}
+
+	int bufferSize = segments.stream().mapToInt(s -> s.stream().mapToInt(l -> size(dims.get(l))).sum()).max().orElse(0);
+	float[] buffer = new float[bufferSize];
+	for (List<Layer> s : segments) {
+	    int offset = 0;
+	    for (Layer l : s) {
+		Map<Integer, Integer> offsets = new HashMap<>();
+		for (int[] d : dims.get(l)) {
+		    Integer o = offsets.get(size(d));
+		    if (o == null) {
+			offsets.put(size(d), o = offset);
+			offset += size(d);
+		    }
+
+		    activations.add(l, TensorFactory.tensor(buffer, o, d));
+		}
+	    }
+	}
+
+	fullSize = full;
+	storedSize = stored + bufferSize;
+    }
+
+    /**
+     * Called after the forward pass - the buffer has the activations of the last segment
+     */
+    public void forwardFinished() {
+	currentSegment = segments.size() - 1;
+	forwardLayers += layers;
+    }
+
+    /**
+     * Recomputes the segment of the layers of the connections, if its activations are not in the buffer
+     */
+    public void ensureCalculated(List<Connections> connections) {
+	int segment = -1;
+	for (Connections c : connections) {
+	    for (Layer l : Arrays.asList(c.getInputLayer(), c.getOutputLayer())) {
+		if (!Util.isBias(l) && !checkpoints.contains(l)) {
+		    int s = segmentOf(l);
+		    if (segment != -1 && s != segment) {
+			throw new IllegalStateException("The connections span more than one segment");
+		    }
+
+		    segment = s;
+		}
+	    }
+	}
+
+	if (segment != -1 && segment != currentSegment) {
+	    List<Layer> s = segments.get(segment);
+	    Set<Layer> calculated = new UniqueList<>(segmentInputs.get(segment));
+	    neuralNetwork.getLayerCalculator().calculate(neuralNetwork, s.get(s.size() - 1), calculated, activations);
+	    currentSegment = segment;
+	    recomputedLayers += s.size();
+	}
+    }
+
+    private int segmentOf(Layer layer) {
+	for (int i = 0; i < segments.size(); i++) {
+	    if (segments.get(i).contains(layer)) {
+		return i;
+	    }
+	}
+
+	throw new IllegalArgumentException("The layer is not part of a segment");
+    }
+
+    /**
+     * @return number of elements of the tensors of a layer (tensors with the same size share their elements)
+     */
+    private static int size(Set<int[]> dimensions) {
+	return dimensions.stream().mapToInt(d -> size(d)).distinct().sum();
+    }
+
+    private static int size(int[] dimensions) {
+	return Arrays.stream(dimensions).reduce(1, (a, b) -> a * b);
+    }
+
+    /**
+     * @return the activations provider with the shared segment buffer
+     */
+    public ValuesProvider getActivations() {
+	return activations;
+    }
+
+    public Set<Layer> getCheckpoints() {
+	return checkpoints;
+    }
+
+    /**
+     * @return number of segments between the checkpoints
+     */
+    public int getSegmentCount() {
+	return segments.size();
+    }
+
+    /**
+     * @return number of activation values without checkpointing
+     */
+    public long getFullSize() {
+	return fullSize;
+    }
+
+    /**
+     * @return number of stored activation values (checkpoints, bias layers and the segment buffer)
+     */
+    public long getStoredSize() {
+	return storedSize;
+    }
+
+    /**
+     * @return number of layers calculated in the forward passes so far
+     */
+    public long getForwardLayers() {
+	return forwardLayers;
+    }
+
+    /**
+     * @return number of layers recalculated in the backward passes so far
+     */
+    public long getRecomputedLayers() {
+	return recomputedLayers;
+    }
+
+    @Override
+    public String toString() {
+	return "activations (MB) - stored: " + storedSize * 4 / (1024f * 1024) + "; without checkpoints: " + fullSize * 4 / (1024f * 1024) + "; layer calculations - forward: " + forwardLayers + "; recomputed: " + recomputedLayers + " (" + (forwardLayers > 0 ? recomputedLayers * 100 / forwardLayers : 0) + "% extra)";
+    }
+}
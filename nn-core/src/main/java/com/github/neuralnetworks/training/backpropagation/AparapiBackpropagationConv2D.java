@@ -1,7 +1,9 @@
 package com.github.neuralnetworks.training.backpropagation;
 
+import java.io.Serializable;
 import java.util.List;
 
+import com.amd.aparapi.Kernel;
 import com.github.neuralnetworks.architecture.Connections;
 import com.github.neuralnetworks.architecture.Conv2DConnection;
 import com.github.neuralnetworks.architecture.Layer;
@@ -9,59 +11,57 @@ import com.github.neuralnetworks.calculation.memory.ValuesProvider;
 import com.github.neuralnetworks.calculation.neuronfunctions.AparapiConv2D;
 import com.github.neuralnetworks.tensor.Tensor;
 import com.github.neuralnetworks.tensor.TensorFactory;
+import com.github.neuralnetworks.util.Environment;
+import com.github.neuralnetworks.util.KernelExecutionStrategy;
 import com.github.neuralnetworks.util.Util;
 
 /**
  * BackPropagation base function for convolutional layers
+ * Adds the gradients of the weights (summed over the mini batch) to the gradients tensor. The weights are updated by the Optimizer of the trainer
+ * The calculation has three passes, each of which writes only to its own locations, so it is race free in all the execution modes:
+ * the derivative (this kernel, one work item per output position), the errors of the target layer (Conv2DInputErrors, one work item per input position, gathered from the output positions it contributes to)
+ * and the gradients (Conv2DWeightGradients, one work item per weight). Each pass is a separate kernel with a fixed range.
+ * The values are summed in the same order as a sequential scatter, so the results are identical for all the execution modes
  */
 public class AparapiBackpropagationConv2D extends AparapiConv2D implements BackPropagationConnectionCalculator {
 
     private static final long serialVersionUID = -345286029645674230L;
 
     /**
-     * Activation of the output layer from the feedforward phase
+     * gradients
      */
-    protected float[] ffActivation;
-    protected final int activationStartIndex;
-    protected final int activationFeatureMapRowsDistance;
-    protected final int activationFeatureMapColumnsDistance;
+    protected final float[] gradients;
 
     /**
-     * weight updates and momentum
+     * activations from the feedforward phase
      */
-    protected final Tensor weightUpdatesTensor;
-    protected final float[] weightUpdates;
-    protected final float[] weightUpdatesMomentum;
+    protected ValuesProvider activations;
 
     /**
-     * BP parameters
+     * the errors of the target layer and the gradients of the weights
      */
-    protected float learningRate;
-    protected float momentum;
-    protected float l1weightDecay;
-    protected float l2weightDecay;
+    protected final Conv2DInputErrors inputErrors;
+    protected final Conv2DWeightGradients weightGradients;
 
     /**
-     * activations from the feedforward phase
+     * whether the gradients of the weights (false for frozen connections) and the errors of the target layer are calculated
      */
-    protected ValuesProvider activations;
+    protected boolean calculateGradients = true;
+    protected boolean calculateErrors = true;
 
-    public AparapiBackpropagationConv2D(Conv2DConnection c, ValuesProvider valuesProvider, ValuesProvider activations, Tensor weightUpdates, Layer targetLayer) {
+    public AparapiBackpropagationConv2D(Conv2DConnection c, ValuesProvider valuesProvider, ValuesProvider activations, Tensor gradients, Layer targetLayer) {
 	super(c, valuesProvider, targetLayer);
 
-	if (c.getWeights().getSize() != weightUpdates.getSize()) {
-	    throw new IllegalArgumentException("weights and weightUpdates must have the same size");
+	if (c.getWeights().getSize() != gradients.getSize()) {
+	    throw new IllegalArgumentException("weights and gradients must have the same size");
 	}
 
-	Tensor t = TensorFactory.tensor(targetLayer, c, activations);
-	this.ffActivation = t.getElements();
-	this.activationStartIndex = t.getStartIndex();
-	this.activationFeatureMapRowsDistance = t.getDimensionElementsDistance(1);
-	this.activationFeatureMapColumnsDistance = t.getDimensionElementsDistance(2);
+	this.gradients = gradients.getElements();
 
-	this.weightUpdatesTensor = weightUpdates;
-	this.weightUpdates = weightUpdates.getElements();
-	this.weightUpdatesMomentum = new float[weightUpdates.getSize()];
+	Tensor input = TensorFactory.tensor(targetLayer == c.getOutputLayer() ? Util.getOppositeLayer(c, targetLayer) : targetLayer, c, valuesProvider);
+	Tensor output = TensorFactory.tensor(targetLayer == c.getOutputLayer() ? targetLayer : Util.getOppositeLayer(c, targetLayer), c, valuesProvider);
+	this.inputErrors = new Conv2DInputErrors(c, input, output);
+	this.weightGradients = new Conv2DWeightGradients(c, TensorFactory.tensor(targetLayer, c, activations), output, gradients);
     }
 
     @Override
@@ -74,46 +74,30 @@ public class AparapiBackpropagationConv2D extends AparapiConv2D implements BackP
 	    }
 	}
 
-	if (c != null) {
-	    weightUpdatesTensor.forEach(i -> weightUpdates[i] = 0);
+	if (c != null && (calculateGradients || calculateErrors)) {
+	    KernelExecutionStrategy es = Environment.getInstance().getExecutionStrategy();
+	    es.execute(this, c.getOutputFilters() * outputFeatureMapLength);
 
-	    // currently works only as a feedforward (including bp)
-	    if (targetLayer == c.getOutputLayer()) {
-		super.calculate(c, valuesProvider, targetLayer);
-	    } else {
-		super.calculate(c, valuesProvider, Util.getOppositeLayer(c, targetLayer));
+	    if (calculateErrors) {
+		es.execute(inputErrors, inputErrors.range);
 	    }
 
-	    updateWeights();
-	}
-    }
-
-    @Override
-    protected void conv(int weightsStartId, int inputStartId, int outputStartId) {
-	float activationDerivative = 0;
-	int activationStartId = activationStartIndex + ((getGlobalId() % outputFeatureMapLength) / outputColumns) * activationFeatureMapRowsDistance * stride + (getGlobalId() % outputColumns) * activationFeatureMapColumnsDistance * stride;
-
-	for (int i = 0; i < miniBatchSize; i++) {
-	    activationDerivative = activationFunctionDerivative(output[outputStartId + i * outputMiniBatchDistance]);
-	    output[outputStartId + i * outputMiniBatchDistance] = activationDerivative;
-
-	    for (int j = 0; j < featureMapWeights; j++) {
-		weightUpdates[weightsStartId + j] += activationDerivative * ffActivation[activationStartId + featureMapOffsets[i * featureMapWeights + j]];
-		input[inputStartId + featureMapOffsets[i * featureMapWeights + j]] += activationDerivative * weights[weightsStartId + j];
+	    if (calculateGradients) {
+		es.execute(weightGradients, weightGradients.range);
 	    }
 	}
     }
 
     /**
-     * Weight updates after the backpropagation
+     * the derivative of the output position of the work item (for all the samples)
      */
-    protected void updateWeights() {
-	float weightUpdate = 0;
-	for (int i = weightsStartIndex, j = 0, size = weightUpdatesTensor.getSize(); j < size; j++, i++) {
-	    weightUpdate = learningRate * weightUpdates[i] + momentum * weightUpdatesMomentum[j] - l1weightDecay * Math.abs(weights[i]) - l2weightDecay * weights[i] * weights[i] / 2;
-	    weights[i] += weightUpdate;
-	    weightUpdatesMomentum[j] = weightUpdates[i];
-	    weightUpdates[i] = weightUpdate;
+    @Override
+    public void run() {
+	int id = getGlobalId();
+	int outputId = outputStartIndex + (id / outputFeatureMapLength) * outputFeatureMapsDistance + ((id % outputFeatureMapLength) / outputColumns) * outputFeatureMapRowsDistance + (id % outputColumns) * outputFeatureMapColumnsDistance;
+
+	for (int i = 0; i < miniBatchSize; i++) {
+	    output[outputId + i * outputMiniBatchDistance] = activationFunctionDerivative(output[outputId + i * outputMiniBatchDistance]);
 	}
     }
 
@@ -128,52 +112,232 @@ public class AparapiBackpropagationConv2D extends AparapiConv2D implements BackP
     }
 
     @Override
-    public float getLearningRate() {
-        return learningRate;
+    public ValuesProvider getActivations() {
+        return activations;
     }
 
     @Override
-    public void setLearningRate(float learningRate) {
-        this.learningRate = learningRate;
+    public void setActivations(ValuesProvider activations) {
+        this.activations = activations;
     }
 
-    @Override
-    public float getMomentum() {
-        return momentum;
+    public boolean getCalculateGradients() {
+	return calculateGradients;
     }
 
     @Override
-    public void setMomentum(float momentum) {
-        this.momentum = momentum;
+    public void setCalculateGradients(boolean calculateGradients) {
+	this.calculateGradients = calculateGradients;
     }
 
-    @Override
-    public float getL1weightDecay() {
-        return l1weightDecay;
+    public boolean getCalculateErrors() {
+	return calculateErrors;
     }
 
     @Override
-    public void setL1weightDecay(float weightDecay) {
-	this.l1weightDecay = weightDecay;
-    }
-    
-    @Override
-    public float getL2weightDecay() {
-	return l2weightDecay;
-    }
-    
-    @Override
-    public void setL2weightDecay(float weightDecay) {
-	this.l2weightDecay = weightDecay;
+    public void setCalculateErrors(boolean calculateErrors) {
+	this.calculateErrors = calculateErrors;
     }
 
-    @Override
-    public ValuesProvider getActivations() {
-        return activations;
+    /**
+     * The error of each input position (for all the samples) is the sum over the output positions, whose receptive field contains it
+     */
+    public static class Conv2DInputErrors extends Kernel implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * number of work items (input positions)
+	 */
+	protected final int range;
+
+	protected final float[] input;
+	protected final int inputStartIndex;
+	protected final int inputFeatureMapsDistance;
+	protected final int inputFeatureMapRowsDistance;
+	protected final int inputFeatureMapColumnsDistance;
+	protected final int inputMiniBatchDistance;
+	protected final int inputColumns;
+	protected final int inputFeatureMapLength;
+
+	protected final float[] output;
+	protected final int outputStartIndex;
+	protected final int outputFeatureMapsDistance;
+	protected final int outputFeatureMapRowsDistance;
+	protected final int outputFeatureMapColumnsDistance;
+	protected final int outputMiniBatchDistance;
+	protected final int outputRows;
+	protected final int outputColumns;
+	protected final int outputFilters;
+
+	protected final float[] weights;
+	protected final int weightsStartIndex;
+	protected final int featureMapWeights;
+	protected final int kernelRows;
+	protected final int kernelColumns;
+	protected final int stride;
+	protected final int miniBatchSize;
+
+	public Conv2DInputErrors(Conv2DConnection c, Tensor input, Tensor output) {
+	    super();
+
+	    this.input = input.getElements();
+	    this.inputStartIndex = input.getStartIndex();
+	    this.inputFeatureMapsDistance = input.getDimensionElementsDistance(0);
+	    this.inputFeatureMapRowsDistance = input.getDimensionElementsDistance(1);
+	    this.inputFeatureMapColumnsDistance = input.getDimensionElementsDistance(2);
+	    this.inputMiniBatchDistance = input.getDimensionElementsDistance(3);
+	    this.inputColumns = input.getDimensions()[2];
+	    this.inputFeatureMapLength = input.getDimensions()[1] * inputColumns;
+
+	    this.output = output.getElements();
+	    this.outputStartIndex = output.getStartIndex();
+	    this.outputFeatureMapsDistance = output.getDimensionElementsDistance(0);
+	    this.outputFeatureMapRowsDistance = output.getDimensionElementsDistance(1);
+	    this.outputFeatureMapColumnsDistance = output.getDimensionElementsDistance(2);
+	    this.outputMiniBatchDistance = output.getDimensionElementsDistance(3);
+	    this.outputRows = output.getDimensions()[1];
+	    this.outputColumns = output.getDimensions()[2];
+	    this.outputFilters = c.getOutputFilters();
+
+	    this.weights = c.getWeights().getElements();
+	    this.weightsStartIndex = c.getWeights().getStartIndex();
+	    this.featureMapWeights = c.getKernelColumns() * c.getKernelRows() * c.getInputFilters();
+	    this.kernelRows = c.getKernelRows();
+	    this.kernelColumns = c.getKernelColumns();
+	    this.stride = c.getStride();
+	    this.miniBatchSize = input.getDimensions()[3];
+	    this.range = c.getInputFilters() * inputFeatureMapLength;
+	}
+
+	@Override
+	public void run() {
+	    int id = getGlobalId();
+	    int filter = id / inputFeatureMapLength;
+	    int row = (id % inputFeatureMapLength) / inputColumns;
+	    int column = id % inputColumns;
+	    int inputId = inputStartIndex + filter * inputFeatureMapsDistance + row * inputFeatureMapRowsDistance + column * inputFeatureMapColumnsDistance;
+
+	    // output rows and columns, whose kernels contain the position
+	    int fromRow = row - kernelRows + 1, fromColumn = column - kernelColumns + 1;
+	    fromRow = fromRow > 0 ? (fromRow + stride - 1) / stride : 0;
+	    fromColumn = fromColumn > 0 ? (fromColumn + stride - 1) / stride : 0;
+	    int toRow = min(row / stride, outputRows - 1), toColumn = min(column / stride, outputColumns - 1);
+
+	    float value = 0;
+	    int outputId = 0, weightId = 0;
+	    for (int i = 0; i < miniBatchSize; i++) {
+		value = input[inputId + i * inputMiniBatchDistance];
+		for (int f = 0; f < outputFilters; f++) {
+		    for (int r = fromRow; r <= toRow; r++) {
+			for (int c = fromColumn; c <= toColumn; c++) {
+			    outputId = outputStartIndex + f * outputFeatureMapsDistance + r * outputFeatureMapRowsDistance + c * outputFeatureMapColumnsDistance + i * outputMiniBatchDistance;
+			    weightId = weightsStartIndex + f * featureMapWeights + (filter * kernelRows + row - r * stride) * kernelColumns + column - c * stride;
+			    value += output[outputId] * weights[weightId];
+			}
+		    }
+		}
+
+		input[inputId + i * inputMiniBatchDistance] = value;
+	    }
+	}
     }
 
-    @Override
-    public void setActivations(ValuesProvider activations) {
-        this.activations = activations;
+    /**
+     * The gradient of each weight is the sum over the output positions and the samples (one work item per weight)
+     */
+    public static class Conv2DWeightGradients extends Kernel implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * number of work items (weights)
+	 */
+	protected final int range;
+
+	/**
+	 * activation of the target layer from the feedforward phase
+	 */
+	protected final float[] ffActivation;
+	protected final int activationStartIndex;
+	protected final int activationFeatureMapRowsDistance;
+	protected final int activationFeatureMapColumnsDistance;
+
+	protected final float[] output;
+	protected final int outputStartIndex;
+	protected final int outputFeatureMapsDistance;
+	protected final int outputFeatureMapRowsDistance;
+	protected final int outputFeatureMapColumnsDistance;
+	protected final int outputMiniBatchDistance;
+	protected final int outputRows;
+	protected final int outputColumns;
+
+	protected final float[] gradients;
+	protected final int gradientsStartIndex;
+	protected final int featureMapWeights;
+	protected final int stride;
+	protected final int miniBatchSize;
+
+	/**
+	 * activation offset of each weight and sample in respect to the receptive field start
+	 */
+	@Constant
+	protected final int[] featureMapOffsets;
+
+	public Conv2DWeightGradients(Conv2DConnection c, Tensor activation, Tensor output, Tensor gradients) {
+	    super();
+
+	    this.ffActivation = activation.getElements();
+	    this.activationStartIndex = activation.getStartIndex();
+	    this.activationFeatureMapRowsDistance = activation.getDimensionElementsDistance(1);
+	    this.activationFeatureMapColumnsDistance = activation.getDimensionElementsDistance(2);
+
+	    this.output = output.getElements();
+	    this.outputStartIndex = output.getStartIndex();
+	    this.outputFeatureMapsDistance = output.getDimensionElementsDistance(0);
+	    this.outputFeatureMapRowsDistance = output.getDimensionElementsDistance(1);
+	    this.outputFeatureMapColumnsDistance = output.getDimensionElementsDistance(2);
+	    this.outputMiniBatchDistance = output.getDimensionElementsDistance(3);
+	    this.outputRows = output.getDimensions()[1];
+	    this.outputColumns = output.getDimensions()[2];
+
+	    this.gradients = gradients.getElements();
+	    this.gradientsStartIndex = gradients.getStartIndex();
+	    this.featureMapWeights = c.getKernelColumns() * c.getKernelRows() * c.getInputFilters();
+	    this.stride = c.getStride();
+	    this.miniBatchSize = output.getDimensions()[3];
+	    this.range = c.getOutputFilters() * featureMapWeights;
+
+	    this.featureMapOffsets = new int[featureMapWeights * miniBatchSize];
+	    for (int m = 0, offset = 0; m < miniBatchSize; m++) {
+		for (int i = 0; i < c.getInputFilters(); i++) {
+		    for (int j = 0; j < c.getKernelRows(); j++) {
+			for (int k = 0; k < c.getKernelColumns(); k++) {
+			    featureMapOffsets[offset++] = i * activation.getDimensionElementsDistance(0) + j * activationFeatureMapRowsDistance + k * activationFeatureMapColumnsDistance + m * activation.getDimensionElementsDistance(3);
+			}
+		    }
+		}
+	    }
+	}
+
+	@Override
+	public void run() {
+	    int id = getGlobalId();
+	    int filter = id / featureMapWeights;
+	    int j = id % featureMapWeights;
+
+	    float gradient = gradients[gradientsStartIndex + id];
+	    int outputId = 0;
+	    for (int r = 0; r < outputRows; r++) {
+		for (int c = 0; c < outputColumns; c++) {
+		    outputId = outputStartIndex + filter * outputFeatureMapsDistance + r * outputFeatureMapRowsDistance + c * outputFeatureMapColumnsDistance;
+		    for (int i = 0; i < miniBatchSize; i++) {
+			gradient += output[outputId + i * outputMiniBatchDistance] * ffActivation[activationStartIndex + r * activationFeatureMapRowsDistance * stride + c * activationFeatureMapColumnsDistance * stride + featureMapOffsets[i * featureMapWeights + j]];
+		    }
+		}
+	    }
+
+	    gradients[gradientsStartIndex + id] = gradient;
+	}
     }
 }
@@ -6,13 +6,16 @@ import com.github.neuralnetworks.architecture.Connections;
 import com.github.neuralnetworks.architecture.Layer;
 import com.github.neuralnetworks.calculation.memory.ValuesProvider;
 import com.github.neuralnetworks.calculation.neuronfunctions.AparapiWeightedSum;
+import com.github.neuralnetworks.calculation.neuronfunctions.InvertedDropout;
 import com.github.neuralnetworks.tensor.Matrix;
 import com.github.neuralnetworks.tensor.Tensor;
 import com.github.neuralnetworks.tensor.TensorFactory;
 
 /**
- * Aparapi Backpropagation base weighted sum Supports learning rate, momentum
- * and weight decay
+ * Aparapi Backpropagation base weighted sum
+ * Adds the gradients of the weights (summed over the mini batch) to the gradients tensor. The weights are updated by the Optimizer of the trainer
+ * If the target layer has inverted dropout (see setDropout) the derivative is calculated from the unscaled activations and the errors of the dropped values are set to 0 with the dropout mask
+ * The gradients (for frozen connections) and the errors of the target layer (if no trainable connection needs them) can be skipped (see BackPropagationLayerCalculatorImpl)
  */
 public class AparapiBackpropagationFullyConnected extends AparapiWeightedSum implements BackPropagationConnectionCalculator {
 
@@ -28,16 +31,33 @@ public class AparapiBackpropagationFullyConnected extends AparapiWeightedSum imp
     protected final int activationColumnStep;
 
     /**
-     * Weight updates array
+     * Gradients array
      */
-    protected final float[] weightUpdates;
+    protected final float[] gradients;
 
-    protected float learningRate;
-    protected final float momentum;
-    protected final float l1weightDecay;
-    protected final float l2weightDecay;
+    /**
+     * multiplier of the feedforward activations in the derivatives (1 - dropout rate, because the kept activations are scaled by the inverted dropout)
+     */
+    protected float activationScale = 1;
+
+    /**
+     * bit packed mask of the kept activations of the inverted dropout
+     */
+    protected int[] dropoutMask = new int[1];
+    protected float dropoutScale;
+    protected int hasDropout;
+
+    /**
+     * whether the gradients of the weights are calculated (0 for frozen connections)
+     */
+    protected int calculateGradients = 1;
+
+    /**
+     * whether the errors of the target layer are calculated
+     */
+    protected int calculateErrors = 1;
 
-    public AparapiBackpropagationFullyConnected(List<Connections> inputConnections, ValuesProvider valuesProvider, ValuesProvider activations, List<Tensor> weightUpdates, Layer targetLayer, float learningRate, float momentum, float l1weightDecay, float l2weightDecay) {
+    public AparapiBackpropagationFullyConnected(List<Connections> inputConnections, ValuesProvider valuesProvider, ValuesProvider activations, List<Tensor> gradients, Layer targetLayer) {
 	super(inputConnections, valuesProvider, targetLayer);
 
 	Matrix m = TensorFactory.tensor(targetLayer, inputConnections, activations);
@@ -46,19 +66,41 @@ public class AparapiBackpropagationFullyConnected extends AparapiWeightedSum imp
 	this.activationRowStep = m.getRowElementsDistance();
 	this.activationColumnStep = m.getColumnElementsDistance();
 
-	this.learningRate = momentum;
-	this.momentum = momentum;
-	this.l1weightDecay = l1weightDecay;
-	this.l2weightDecay = l2weightDecay;
-	this.weightUpdates = weightUpdates.get(0).getElements();
+	this.gradients = gradients.get(0).getElements();
+    }
+
+    @Override
+    public void run() {
+	if (calculateErrors == 1) {
+	    weightedSum();
+	}
+
+	after();
     }
 
     @Override
     protected void after() {
+	if (calculateGradients == 1) {
+	    calcGradients();
+	}
+
+	if (calculateErrors == 1) {
+	    calcDerivative();
+
+	    if (hasDropout == 1) {
+		applyDropoutMask();
+	    }
+	}
+    }
+
+    /**
+     * adds the gradients of the weights of the current unit
+     */
+    protected void calcGradients() {
 	int id = getGlobalId();
 
-	int inputStartPosition = 0, inputRowsStep = 0, inputColumnsStep = 0, weightStartPosition = 0, weightStep = 0, dim = 0, weightIndex = 0;
-	float weight = 0, weightUpdate = 0, lr = learningRate;
+	int inputStartPosition = 0, inputRowsStep = 0, inputColumnsStep = 0, weightStartPosition = 0, weightStep = 0, dim = 0;
+	float gradient = 0;
 
 	// each input example
 	for (int k = 0; k < series; k++) {
@@ -71,63 +113,69 @@ public class AparapiBackpropagationFullyConnected extends AparapiWeightedSum imp
 	    dim = weightsSize[k];
 
 	    for (int j = 0; j < dim; j++) {
-		weightUpdate = 0;
+		gradient = 0;
 		for (int i = 0; i < miniBatchSize; i++) {
-		    weightUpdate += input[inputStartPosition + j * inputRowsStep + i * inputColumnsStep] * ffActivation[activationStartPosition + id * activationRowStep + i * activationColumnStep];
+		    gradient += input[inputStartPosition + j * inputRowsStep + i * inputColumnsStep] * ffActivation[activationStartPosition + id * activationRowStep + i * activationColumnStep];
 		}
 
-		weightIndex = weightStartPosition + j * weightStep;
-		weight = weights[weightIndex];
-		weightUpdate = lr * weightUpdate + momentum * weightUpdates[weightIndex] - l1weightDecay * abs(weight) - l2weightDecay * weight * weight / 2;
-		weights[weightIndex] += weightUpdate;
-		weightUpdates[weightIndex] = weightUpdate;
+		gradients[weightStartPosition + j * weightStep] += gradient;
 	    }
 	}
-
-	calcDerivative();
     }
 
     /**
-     * calculate derivative after weights update
+     * the errors of the kept values are multiplied by the dropout scale, the others are set to 0
      */
-    protected void calcDerivative() {
-    }
-
-    @Override
-    public float getLearningRate() {
-	return learningRate;
-    }
-
-    @Override
-    public void setLearningRate(float learningRate) {
-	this.learningRate = learningRate;
+    protected void applyDropoutMask() {
+	int end = outputStartPosition + getGlobalId() * outputRowStep + miniBatchSize * outputColumnStep;
+	int outputId = outputStartPosition + getGlobalId() * outputRowStep;
+	int position = getGlobalId() * activationRowStep;
+	for (; outputId < end; outputId += outputColumnStep, position += activationColumnStep) {
+	    if (((dropoutMask[position >> 5] >>> (position & 31)) & 1) == 1) {
+		output[outputId] = output[outputId] * dropoutScale;
+	    } else {
+		output[outputId] = 0;
+	    }
+	}
     }
 
-    @Override
-    public float getMomentum() {
-	return momentum;
+    /**
+     * @param dropout - the inverted dropout of the feedforward phase of the target layer (null for none)
+     */
+    public void setDropout(InvertedDropout dropout) {
+	if (dropout != null) {
+	    dropoutMask = dropout.getMask();
+	    dropoutScale = dropout.getScale();
+	    activationScale = 1 - dropout.getRate();
+	    hasDropout = 1;
+	} else {
+	    activationScale = 1;
+	    hasDropout = 0;
+	}
     }
 
-    @Override
-    public void setMomentum(float momentum) {
+    public boolean getCalculateGradients() {
+	return calculateGradients == 1;
     }
 
     @Override
-    public float getL1weightDecay() {
-	return l1weightDecay;
+    public void setCalculateGradients(boolean calculateGradients) {
+	this.calculateGradients = calculateGradients ? 1 : 0;
     }
 
-    @Override
-    public void setL1weightDecay(float weightDecay) {
+    public boolean getCalculateErrors() {
+	return calculateErrors == 1;
     }
 
     @Override
-    public float getL2weightDecay() {
-	return l2weightDecay;
+    public void setCalculateErrors(boolean calculateErrors) {
+	this.calculateErrors = calculateErrors ? 1 : 0;
     }
 
-    @Override
-    public void setL2weightDecay(float l2weightDecay) {
+    /**
+     * calculate derivative after the gradients
+     */
+    protected void calcDerivative() {
     }
 
     @Override
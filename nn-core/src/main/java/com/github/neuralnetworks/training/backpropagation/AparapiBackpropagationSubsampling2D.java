@@ -1,9 +1,13 @@
 package com.github.neuralnetworks.training.backpropagation;
 
+import java.util.List;
+
+import com.github.neuralnetworks.architecture.Connections;
 import com.github.neuralnetworks.architecture.Layer;
 import com.github.neuralnetworks.architecture.Subsampling2DConnection;
 import com.github.neuralnetworks.calculation.memory.ValuesProvider;
 import com.github.neuralnetworks.calculation.neuronfunctions.AparapiSubsampling2D;
+import com.github.neuralnetworks.tensor.Tensor;
 import com.github.neuralnetworks.tensor.TensorFactory;
 
 /**
@@ -18,63 +22,52 @@ public class AparapiBackpropagationSubsampling2D extends AparapiSubsampling2D im
      */
     protected float[] ffActivation;
 
-    public AparapiBackpropagationSubsampling2D(Subsampling2DConnection c, ValuesProvider valuesProvider, ValuesProvider activations, Layer targetLayer) {
-	super(c, valuesProvider, targetLayer);
-	ffActivation = TensorFactory.tensor(c.getInputLayer(), c, activations).getElements();
-    }
-
-    @Override
-    public float getLearningRate() {
-	// UNUSED
-	return 0;
-    }
-
-    @Override
-    public void setLearningRate(float learningRate) {
-	// UNUSED
-    }
+    /**
+     * position of the activations relative to the input (the two tensors may start at different indexes)
+     */
+    protected final int ffActivationOffset;
 
-    @Override
-    public float getMomentum() {
-	// UNUSED
-	return 0;
-    }
+    /**
+     * whether the errors of the target layer are calculated
+     */
+    protected boolean calculateErrors = true;
 
-    @Override
-    public void setMomentum(float momentum) {
-	// UNUSED
+    public AparapiBackpropagationSubsampling2D(Subsampling2DConnection c, ValuesProvider valuesProvider, ValuesProvider activations, Layer targetLayer) {
+	super(c, valuesProvider, targetLayer);
+	Tensor t = TensorFactory.tensor(c.getInputLayer(), c, activations);
+	ffActivation = t.getElements();
+	ffActivationOffset = t.getStartIndex() - inputStartIndex;
     }
 
     @Override
-    public float getL1weightDecay() {
-	// UNUSED
-	return 0;
+    public void calculate(List<Connections> connections, ValuesProvider valuesProvider, Layer targetLayer) {
+	if (calculateErrors) {
+	    super.calculate(connections, valuesProvider, targetLayer);
+	}
     }
 
     @Override
-    public void setL1weightDecay(float weightDecay) {
+    public ValuesProvider getActivations() {
 	// UNUSED
+	return null;
     }
 
     @Override
-    public float getL2weightDecay() {
+    public void setActivations(ValuesProvider activations) {
 	// UNUSED
-	return 0;
     }
 
     @Override
-    public void setL2weightDecay(float l2weightDecay) {
-	// UNUSED
+    public void setCalculateGradients(boolean calculateGradients) {
+	// no weights
     }
 
-    @Override
-    public ValuesProvider getActivations() {
-	// UNUSED
-	return null;
+    public boolean getCalculateErrors() {
+	return calculateErrors;
     }
 
     @Override
-    public void setActivations(ValuesProvider activations) {
-	// UNUSED
+    public void setCalculateErrors(boolean calculateErrors) {
+	this.calculateErrors = calculateErrors;
     }
 }
@@ -1,5 +1,8 @@
 package com.github.neuralnetworks.training.backpropagation;
 
+import java.io.Serializable;
+import java.util.Random;
+
 import com.github.neuralnetworks.architecture.types.Autoencoder;
 import com.github.neuralnetworks.calculation.neuronfunctions.AparapiNoise;
 import com.github.neuralnetworks.tensor.Tensor;
@@ -40,6 +43,12 @@ public class BackPropagationAutoencoder extends BackPropagationTrainer<Autoencod
 	private AparapiNoise noise;
 	private Tensor noiseTensor;
 
+	/**
+	 * seed and offset of the noise (it is created with the first sample)
+	 */
+	private long noiseSeed = new Random().nextLong();
+	private long noiseOffset;
+
 	public AutoencoderTrainingInputrovider(TrainingInputProvider base, Float corruptionRate) {
 	    super();
 	    this.base = base;
@@ -62,7 +71,8 @@ public class BackPropagationAutoencoder extends BackPropagationTrainer<Autoencod
 	    if (corruptionRate != null && corruptionRate > 0) {
 		if (noise == null) {
 		    noiseTensor = TensorFactory.tensor(base.getNextInput().length);
-		    noise = new AparapiNoise(noiseTensor, base.getNextInput().length, corruptionRate, 0);
+		    noise = new AparapiNoise(noiseTensor, corruptionRate, 0, noiseSeed);
+		    noise.setOffset(noiseOffset);
 		}
 
 		System.arraycopy(result, 0, noiseTensor.getElements(), 0, result.length);
@@ -102,5 +112,31 @@ public class BackPropagationAutoencoder extends BackPropagationTrainer<Autoencod
 	    super.reset();
 	    base.reset();
 	}
+
+	/**
+	 * The state of the base provider and of the noise
+	 */
+	@Override
+	public Serializable getState() {
+	    Serializable baseState = base.getState();
+	    if (baseState == null) {
+		return null;
+	    }
+
+	    return new Serializable[] { getPositionState(), baseState, noise != null ? noise.getSeed() : noiseSeed, noise != null ? noise.getOffset() : noiseOffset };
+	}
+
+	@Override
+	public void setState(Serializable state) {
+	    Serializable[] s = (Serializable[]) state;
+	    setPositionState((long[]) s[0]);
+	    base.setState(s[1]);
+	    noiseSeed = (Long) s[2];
+	    noiseOffset = (Long) s[3];
+	    if (noise != null) {
+		noise.setSeed(noiseSeed);
+		noise.setOffset(noiseOffset);
+	    }
+	}
     }
 }
@@ -5,23 +5,17 @@ import com.github.neuralnetworks.calculation.memory.ValuesProvider;
 
 public interface BackPropagationConnectionCalculator extends ConnectionCalculator {
 
-    public float getLearningRate();
-
-    public void setLearningRate(float learningRate);
-
-    public float getMomentum();
-
-    public void setMomentum(float momentum);
-
-    public float getL1weightDecay();
-
-    public void setL1weightDecay(float l1weightDecay);
-    
-    public float getL2weightDecay();
-    
-    public void setL2weightDecay(float l2weightDecay);
-
     public ValuesProvider getActivations();
 
     public void setActivations(ValuesProvider activations);
+
+    /**
+     * @param calculateGradients - whether the gradients of the weights are calculated (false if all the connections are frozen)
+     */
+    public void setCalculateGradients(boolean calculateGradients);
+
+    /**
+     * @param calculateErrors - whether the errors of the target layer are calculated (false if no trainable connection needs them)
+     */
+    public void setCalculateErrors(boolean calculateErrors);
 }
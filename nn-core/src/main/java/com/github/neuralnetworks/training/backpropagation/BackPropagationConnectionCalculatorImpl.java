@@ -1,6 +1,7 @@
 package com.github.neuralnetworks.training.backpropagation;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -11,7 +12,11 @@ import java.util.stream.Collectors;
 import com.github.neuralnetworks.architecture.Connections;
 import com.github.neuralnetworks.architecture.Layer;
 import com.github.neuralnetworks.architecture.NeuralNetwork;
+import com.github.neuralnetworks.calculation.ConnectionCalculator;
+import com.github.neuralnetworks.calculation.LayerCalculatorImpl;
 import com.github.neuralnetworks.calculation.memory.ValuesProvider;
+import com.github.neuralnetworks.calculation.neuronfunctions.ConnectionCalculatorFullyConnected;
+import com.github.neuralnetworks.calculation.neuronfunctions.InvertedDropout;
 import com.github.neuralnetworks.tensor.Tensor;
 import com.github.neuralnetworks.tensor.TensorFactory;
 import com.github.neuralnetworks.training.backpropagation.BackpropagationMaxout.AparapiBackpropMaxout;
@@ -21,7 +26,7 @@ import com.github.neuralnetworks.util.Util;
 
 /**
  * Connection calculator for the backpropagation phase of the algorithm
- * The difference with the regular ConnectionCalculatorImpl is that forwardBackprop's and backwardBackprop's properties (learing rate, momentum, weight decay) are updated before each propagation
+ * The calculators write the gradients of the weights to the tensors in Constants.GRADIENTS. The weights are updated by the Optimizer of the trainer
  */
 public abstract class BackPropagationConnectionCalculatorImpl implements BackPropagationConnectionCalculator {
 
@@ -34,6 +39,22 @@ public abstract class BackPropagationConnectionCalculatorImpl implements BackPro
     protected Layer currentLayer;
     protected int miniBatchSize;
 
+    /**
+     * connections, whose gradients are not calculated
+     */
+    protected Set<Connections> frozenConnections = Collections.emptySet();
+
+    /**
+     * layers, whose errors are calculated (null means all)
+     */
+    protected Set<Layer> errorLayers;
+
+    /**
+     * whether the gradients and the errors are calculated at all (set by the layer calculator)
+     */
+    protected boolean calculateGradients = true;
+    protected boolean calculateErrors = true;
+
     public BackPropagationConnectionCalculatorImpl(Properties properties) {
 	this.properties = properties;
 	this.connectionCalculators = new HashMap<>();
@@ -66,10 +87,13 @@ public abstract class BackPropagationConnectionCalculatorImpl implements BackPro
 	    }
 
 	    if (chunkCalc.size() > 0) {
-		bc.setLearningRate(getLearningRate());
-		bc.setMomentum(getMomentum());
-		bc.setL1weightDecay(getL1weightDecay());
 		bc.setActivations(getActivations());
+		bc.setCalculateGradients(calculateGradients && !chunkCalc.stream().allMatch(frozenConnections::contains));
+		bc.setCalculateErrors(calculateErrors && (errorLayers == null || errorLayers.contains(target)));
+		if (bc instanceof AparapiBackpropagationFullyConnected) {
+		    ((AparapiBackpropagationFullyConnected) bc).setDropout(getDropout(target));
+		}
+
 		bc.calculate(chunkCalc, valuesProvider, target);
 	    }
 	}
@@ -77,52 +101,53 @@ public abstract class BackPropagationConnectionCalculatorImpl implements BackPro
 
     protected abstract void addBackpropFunction(List<Connections> inputConnections, Map<Connections, BackPropagationConnectionCalculator> connectionCalculators, ValuesProvider valuesProvider, ValuesProvider activations, Layer targetLayer);
 
-    public int getMiniBatchSize() {
-	return miniBatchSize;
-    }
+    /**
+     * @return the inverted dropout of the feedforward phase of the layer or null
+     */
+    protected InvertedDropout getDropout(Layer layer) {
+	NeuralNetwork nn = getNeuralNetwork();
+	if (nn != null && nn.getLayerCalculator() instanceof LayerCalculatorImpl) {
+	    ConnectionCalculator cc = ((LayerCalculatorImpl) nn.getLayerCalculator()).getConnectionCalculator(layer);
+	    if (cc instanceof ConnectionCalculatorFullyConnected && ((ConnectionCalculatorFullyConnected) cc).getDropoutFunction() instanceof InvertedDropout) {
+		return (InvertedDropout) ((ConnectionCalculatorFullyConnected) cc).getDropoutFunction();
+	    }
+	}
 
-    public NeuralNetwork getNeuralNetwork() {
-	return properties.getParameter(Constants.NEURAL_NETWORK);
+	return null;
     }
 
-    @Override
-    public float getLearningRate() {
-	return properties.getParameter(Constants.LEARNING_RATE);
+    public Set<Connections> getFrozenConnections() {
+	return frozenConnections;
     }
 
-    @Override
-    public void setLearningRate(float learningRate) {
-	properties.setParameter(Constants.LEARNING_RATE, learningRate);
+    public void setFrozenConnections(Set<Connections> frozenConnections) {
+	this.frozenConnections = frozenConnections;
     }
 
-    @Override
-    public float getMomentum() {
-	return properties.getParameter(Constants.MOMENTUM);
+    public Set<Layer> getErrorLayers() {
+	return errorLayers;
     }
 
-    @Override
-    public void setMomentum(float momentum) {
-	properties.setParameter(Constants.MOMENTUM, momentum);
+    public void setErrorLayers(Set<Layer> errorLayers) {
+	this.errorLayers = errorLayers;
     }
 
     @Override
-    public float getL1weightDecay() {
-	return properties.getParameter(Constants.L1_WEIGHT_DECAY);
+    public void setCalculateGradients(boolean calculateGradients) {
+	this.calculateGradients = calculateGradients;
     }
 
     @Override
-    public void setL1weightDecay(float weightDecay) {
-	properties.setParameter(Constants.L1_WEIGHT_DECAY, weightDecay);
+    public void setCalculateErrors(boolean calculateErrors) {
+	this.calculateErrors = calculateErrors;
     }
-    
-    @Override
-    public float getL2weightDecay() {
-	return properties.getParameter(Constants.L2_WEIGHT_DECAY);
+
+    public int getMiniBatchSize() {
+	return miniBatchSize;
     }
 
-    @Override
-    public void setL2weightDecay(float weightDecay) {
-	properties.setParameter(Constants.L2_WEIGHT_DECAY, weightDecay);
+    public NeuralNetwork getNeuralNetwork() {
+	return properties.getParameter(Constants.NEURAL_NETWORK);
     }
 
     @Override
@@ -135,7 +160,7 @@ public abstract class BackPropagationConnectionCalculatorImpl implements BackPro
 	this.activations = activations;
     }
 
-    protected Map<Connections, Tensor> getWeightUpdates() {
-	return properties.getParameter(Constants.WEIGHT_UDPATES);
+    protected Map<Connections, Tensor> getGradients() {
+	return properties.getParameter(Constants.GRADIENTS);
     }
 }
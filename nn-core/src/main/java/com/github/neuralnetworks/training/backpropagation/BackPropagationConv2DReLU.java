@@ -33,7 +33,7 @@ public class BackPropagationConv2DReLU extends BackPropagationConnectionCalculat
 	}
 
 	if (con != null) {
-	    connectionCalculators.put(con, new AparapiBackpropConv2DReLU(con, valuesProvider, activations, getWeightUpdates().get(con), targetLayer));
+	    connectionCalculators.put(con, new AparapiBackpropConv2DReLU(con, valuesProvider, activations, getGradients().get(con), targetLayer));
 	}
     }
 
@@ -41,8 +41,8 @@ public class BackPropagationConv2DReLU extends BackPropagationConnectionCalculat
 
 	private static final long serialVersionUID = -3580345016542506932L;
 
-	public AparapiBackpropConv2DReLU(Conv2DConnection c, ValuesProvider valuesProvider, ValuesProvider activations, Tensor weightUpdates, Layer targetLayer) {
-	    super(c, valuesProvider, activations, weightUpdates, targetLayer);
+	public AparapiBackpropConv2DReLU(Conv2DConnection c, ValuesProvider valuesProvider, ValuesProvider activations, Tensor gradients, Layer targetLayer) {
+	    super(c, valuesProvider, activations, gradients, targetLayer);
 	}
 
 	@Override
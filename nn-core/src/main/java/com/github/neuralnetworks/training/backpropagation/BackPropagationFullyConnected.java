@@ -25,9 +25,9 @@ public class BackPropagationFullyConnected extends BackPropagationConnectionCalc
     protected void addBackpropFunction(List<Connections> inputConnections, Map<Connections, BackPropagationConnectionCalculator> connectionCalculators, ValuesProvider valuesProvider, ValuesProvider activations, Layer targetLayer) {
 	for (Connections c : inputConnections) {
 	    if (Util.isBias(c.getInputLayer()) && targetLayer != c.getInputLayer()) {
-		connectionCalculators.put(c, new AparapiBackpropagationFullyConnected(Arrays.asList(c), valuesProvider, activations, Arrays.asList(getWeightUpdates().get(c)), c.getInputLayer(), getLearningRate(), getMomentum(), getL1weightDecay(), getL2weightDecay()));
+		connectionCalculators.put(c, new AparapiBackpropagationFullyConnected(Arrays.asList(c), valuesProvider, activations, Arrays.asList(getGradients().get(c)), c.getInputLayer()));
 	    } else {
-		connectionCalculators.put(c, new AparapiBackpropagationFullyConnected(Arrays.asList(c), valuesProvider, activations, Arrays.asList(getWeightUpdates().get(c)), targetLayer, getLearningRate(), getMomentum(), getL1weightDecay(), getL2weightDecay()));
+		connectionCalculators.put(c, new AparapiBackpropagationFullyConnected(Arrays.asList(c), valuesProvider, activations, Arrays.asList(getGradients().get(c)), targetLayer));
 	    }
 	}
     }
@@ -1,8 +1,11 @@
 package com.github.neuralnetworks.training.backpropagation;
 
+import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.stream.Collectors;
 
+import com.github.neuralnetworks.architecture.Connections;
 import com.github.neuralnetworks.architecture.Layer;
 import com.github.neuralnetworks.architecture.NeuralNetwork;
 import com.github.neuralnetworks.calculation.BreadthFirstOrderStrategy;
@@ -10,9 +13,12 @@ import com.github.neuralnetworks.calculation.ConnectionCalculator;
 import com.github.neuralnetworks.calculation.LayerCalculatorBase;
 import com.github.neuralnetworks.calculation.LayerOrderStrategy.ConnectionCandidate;
 import com.github.neuralnetworks.calculation.memory.ValuesProvider;
+import com.github.neuralnetworks.util.Util;
 
 /**
  * Aparapi implementation of the backpropagation algorithm
+ * The backward pass is pruned: the errors are calculated only for the layers, which have a trainable connection further from the output (so never for the input and the bias layers).
+ * The gradients of the frozen connections are not calculated and the connections, which are frozen and don't lead to a trainable connection, are skipped altogether
  */
 public class BackPropagationLayerCalculatorImpl extends LayerCalculatorBase implements BackPropagationLayerCalculator {
 
@@ -20,6 +26,21 @@ public class BackPropagationLayerCalculatorImpl extends LayerCalculatorBase impl
 
     private ValuesProvider activations;
 
+    /**
+     * if set, the missing activations are recomputed before each layer is backpropagated
+     */
+    private ActivationCheckpoints activationCheckpoints;
+
+    /**
+     * connections, whose weights are not trained
+     */
+    private Set<Connections> frozenConnections = new HashSet<>();
+
+    /**
+     * layers, whose errors are calculated in the current backward pass
+     */
+    private Set<Layer> errorLayers = new HashSet<>();
+
     public BackPropagationLayerCalculatorImpl() {
 	super();
     }
@@ -28,11 +49,44 @@ public class BackPropagationLayerCalculatorImpl extends LayerCalculatorBase impl
     public void backpropagate(NeuralNetwork nn, Set<Layer> calculatedLayers, ValuesProvider activations, ValuesProvider results) {
 	this.activations = activations;
 
-	List<ConnectionCandidate> connections = new BreadthFirstOrderStrategy(nn, nn.getOutputLayer()).order();
+	List<ConnectionCandidate> connections = plan(new BreadthFirstOrderStrategy(nn, nn.getOutputLayer()).order());
 
 	calculate(results, connections, nn);
     }
 
+    /**
+     * Finds the layers, whose errors are needed by a trainable connection, and removes the connections, which calculate neither gradients nor needed errors
+     * @return the connections of the backward pass
+     */
+    protected List<ConnectionCandidate> plan(List<ConnectionCandidate> connections) {
+	errorLayers.clear();
+	for (boolean changed = true; changed;) {
+	    changed = false;
+	    for (ConnectionCandidate c : connections) {
+		Layer source = Util.getOppositeLayer(c.connection, c.target);
+		if (!errorLayers.contains(source) && (!frozenConnections.contains(c.connection) || errorLayers.contains(c.target))) {
+		    errorLayers.add(source);
+		    changed = true;
+		}
+	    }
+	}
+
+	return connections.stream().filter(c -> !frozenConnections.contains(c.connection) || errorLayers.contains(c.target)).collect(Collectors.toList());
+    }
+
+    @Override
+    protected void beforeCalculate(List<Connections> connections, ValuesProvider valuesProvider, Layer targetLayer) {
+	if (activationCheckpoints != null) {
+	    activationCheckpoints.ensureCalculated(connections);
+	}
+
+	ConnectionCalculator cc = getConnectionCalculator(targetLayer);
+	if (cc instanceof BackPropagationConnectionCalculator) {
+	    ((BackPropagationConnectionCalculator) cc).setCalculateGradients(!frozenConnections.containsAll(connections));
+	    ((BackPropagationConnectionCalculator) cc).setCalculateErrors(errorLayers.contains(targetLayer));
+	}
+    }
+
     @Override
     public ConnectionCalculator getConnectionCalculator(Layer layer) {
 	ConnectionCalculator cc = super.getConnectionCalculator(layer);
@@ -40,6 +94,45 @@ public class BackPropagationLayerCalculatorImpl extends LayerCalculatorBase impl
 	    ((BackPropagationConnectionCalculator) cc).setActivations(activations);
 	}
 
+	if (cc instanceof BackPropagationConnectionCalculatorImpl) {
+	    ((BackPropagationConnectionCalculatorImpl) cc).setFrozenConnections(frozenConnections);
+	    ((BackPropagationConnectionCalculatorImpl) cc).setErrorLayers(errorLayers);
+	}
+
 	return cc;
     }
-}
\ No newline at end of file
+
+    public boolean isFrozen(Connections connections) {
+	return frozenConnections.contains(connections);
+    }
+
+    /**
+     * @param frozen - whether the weights of the connections are excluded from the training
+     */
+    public void setFrozen(Connections connections, boolean frozen) {
+	if (frozen) {
+	    frozenConnections.add(connections);
+	} else {
+	    frozenConnections.remove(connections);
+	}
+    }
+
+    public Set<Connections> getFrozenConnections() {
+	return frozenConnections;
+    }
+
+    /**
+     * @return the layers, whose errors were calculated by the last backward pass
+     */
+    public Set<Layer> getErrorLayers() {
+	return errorLayers;
+    }
+
+    public ActivationCheckpoints getActivationCheckpoints() {
+	return activationCheckpoints;
+    }
+
+    public void setActivationCheckpoints(ActivationCheckpoints activationCheckpoints) {
+	this.activationCheckpoints = activationCheckpoints;
+    }
+}
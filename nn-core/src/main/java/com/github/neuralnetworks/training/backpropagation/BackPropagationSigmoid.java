@@ -26,17 +26,17 @@ public class BackPropagationSigmoid extends BackPropagationConnectionCalculatorI
     protected void addBackpropFunction(List<Connections> inputConnections, Map<Connections, BackPropagationConnectionCalculator> connectionCalculators, ValuesProvider valuesProvider, ValuesProvider activations, Layer targetLayer) {
 	for (Connections c : inputConnections) {
 	    if (Util.isBias(c.getInputLayer()) && targetLayer != c.getInputLayer()) {
-		connectionCalculators.put(c, new AparapiBackpropSigmoid(Arrays.asList(c), valuesProvider, activations, Arrays.asList(getWeightUpdates().get(c)), c.getInputLayer(), getLearningRate(), getMomentum(), getL1weightDecay(), getL2weightDecay()));
+		connectionCalculators.put(c, new AparapiBackpropSigmoid(Arrays.asList(c), valuesProvider, activations, Arrays.asList(getGradients().get(c)), c.getInputLayer()));
 	    } else {
-		connectionCalculators.put(c, new AparapiBackpropSigmoid(Arrays.asList(c), valuesProvider, activations, Arrays.asList(getWeightUpdates().get(c)), targetLayer, getLearningRate(), getMomentum(), getL1weightDecay(), getL2weightDecay()));
+		connectionCalculators.put(c, new AparapiBackpropSigmoid(Arrays.asList(c), valuesProvider, activations, Arrays.asList(getGradients().get(c)), targetLayer));
 	    }
 	}
     }
 
     public static class AparapiBackpropSigmoid extends AparapiBackpropagationFullyConnected {
 
-	public AparapiBackpropSigmoid(List<Connections> inputConnections, ValuesProvider valuesProvider, ValuesProvider activations, List<Tensor> weightUpdates, Layer targetLayer, float learningRate, float momentum, float l1weightDecay, float l2weightDecay) {
-	    super(inputConnections, valuesProvider, activations, weightUpdates, targetLayer, learningRate, momentum, l1weightDecay, l2weightDecay);
+	public AparapiBackpropSigmoid(List<Connections> inputConnections, ValuesProvider valuesProvider, ValuesProvider activations, List<Tensor> gradients, Layer targetLayer) {
+	    super(inputConnections, valuesProvider, activations, gradients, targetLayer);
 	}
 
 	private static final long serialVersionUID = -3580345016542506932L;
@@ -48,7 +48,7 @@ public class BackPropagationSigmoid extends BackPropagationConnectionCalculatorI
 	    int outputId = outputStartPosition + getGlobalId() * outputRowStep;
 	    int activationId = activationStartPosition + getGlobalId() * activationRowStep;
 	    for (; outputId < end; outputId += outputColumnStep, activationId += activationColumnStep) {
-		activation = ffActivation[activationId];
+		activation = ffActivation[activationId] * activationScale;
 		output[outputId] = output[outputId] * activation * (1 - activation);
 	    }
 	}
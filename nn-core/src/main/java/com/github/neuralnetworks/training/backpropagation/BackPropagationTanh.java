@@ -26,9 +26,9 @@ public class BackPropagationTanh extends BackPropagationConnectionCalculatorImpl
     protected void addBackpropFunction(List<Connections> inputConnections, Map<Connections, BackPropagationConnectionCalculator> connectionCalculators, ValuesProvider valuesProvider, ValuesProvider activations, Layer targetLayer) {
 	for (Connections c : inputConnections) {
 	    if (Util.isBias(c.getInputLayer()) && targetLayer != c.getInputLayer()) {
-		connectionCalculators.put(c, new AparapiBackpropTanh(Arrays.asList(c), valuesProvider, activations, Arrays.asList(getWeightUpdates().get(c)), c.getInputLayer(), getLearningRate(), getMomentum(), getL1weightDecay(), getL2weightDecay()));
+		connectionCalculators.put(c, new AparapiBackpropTanh(Arrays.asList(c), valuesProvider, activations, Arrays.asList(getGradients().get(c)), c.getInputLayer()));
 	    } else {
-		connectionCalculators.put(c, new AparapiBackpropTanh(Arrays.asList(c), valuesProvider, activations, Arrays.asList(getWeightUpdates().get(c)), targetLayer, getLearningRate(), getMomentum(), getL1weightDecay(), getL2weightDecay()));
+		connectionCalculators.put(c, new AparapiBackpropTanh(Arrays.asList(c), valuesProvider, activations, Arrays.asList(getGradients().get(c)), targetLayer));
 	    }
 	}
     }
@@ -37,8 +37,8 @@ public class BackPropagationTanh extends BackPropagationConnectionCalculatorImpl
 
 	private static final long serialVersionUID = -3580345016542506932L;
 
-	public AparapiBackpropTanh(List<Connections> inputConnections, ValuesProvider valuesProvider, ValuesProvider activations, List<Tensor> weightUpdates, Layer targetLayer, float learningRate, float momentum, float l1weightDecay, float l2weightDecay) {
-	    super(inputConnections, valuesProvider, activations, weightUpdates, targetLayer, learningRate, momentum, l1weightDecay, l2weightDecay);
+	public AparapiBackpropTanh(List<Connections> inputConnections, ValuesProvider valuesProvider, ValuesProvider activations, List<Tensor> gradients, Layer targetLayer) {
+	    super(inputConnections, valuesProvider, activations, gradients, targetLayer);
 	}
 
 	@Override
@@ -50,7 +50,7 @@ public class BackPropagationTanh extends BackPropagationConnectionCalculatorImpl
 	    int activationId = activationStartPosition + getGlobalId() * activationRowStep;
 	    for (; outputId < end; outputId += outputColumnStep, activationId += activationColumnStep) {
 		error = output[outputId];
-		activation = ffActivation[activationId];
+		activation = ffActivation[activationId] * activationScale;
 		output[outputId] = error * (1 - activation * activation);
 	    }
 	}
@@ -1,20 +1,33 @@
 package com.github.neuralnetworks.training.backpropagation;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
+import com.github.neuralnetworks.architecture.Connections;
 import com.github.neuralnetworks.architecture.FullyConnected;
 import com.github.neuralnetworks.architecture.Layer;
 import com.github.neuralnetworks.architecture.NeuralNetwork;
+import com.github.neuralnetworks.calculation.ConnectionCalculator;
+import com.github.neuralnetworks.calculation.LayerCalculatorBase;
 import com.github.neuralnetworks.calculation.LayerCalculatorImpl;
 import com.github.neuralnetworks.calculation.memory.ValuesProvider;
 import com.github.neuralnetworks.calculation.neuronfunctions.ConnectionCalculatorFullyConnected;
+import com.github.neuralnetworks.calculation.neuronfunctions.InvertedDropout;
 import com.github.neuralnetworks.events.TrainingEvent;
 import com.github.neuralnetworks.events.TrainingEventListener;
+import com.github.neuralnetworks.tensor.Tensor;
 import com.github.neuralnetworks.tensor.TensorFactory;
 import com.github.neuralnetworks.training.OneStepTrainer;
+import com.github.neuralnetworks.training.TrainingCheckpoint;
 import com.github.neuralnetworks.training.TrainingInputData;
 import com.github.neuralnetworks.training.TrainingInputDataImpl;
 import com.github.neuralnetworks.training.events.TrainingFinishedEvent;
+import com.github.neuralnetworks.training.events.TrainingStartedEvent;
+import com.github.neuralnetworks.training.optimizers.Optimizer;
+import com.github.neuralnetworks.training.random.PhiloxKernel;
 import com.github.neuralnetworks.util.Constants;
 import com.github.neuralnetworks.util.Environment;
 import com.github.neuralnetworks.util.Properties;
@@ -27,6 +40,10 @@ import com.github.neuralnetworks.util.Util;
  * BackPropagationLayerCalculator for the backpropagation phase
  * OutputErrorDerivative for calculating the derivative of the output error
  * This allows for various implementations of these calculators to be used (for example via GPU or other)
+ * The backpropagation phase computes the gradients (Constants.GRADIENTS) and the Optimizer (Constants.OPTIMIZER) updates the weights
+ * With MixedPrecision (Constants.MIXED_PRECISION) the values are rounded to reduced precision and the optimizer updates float32 master weights
+ * With ActivationCheckpoints (Constants.ACTIVATION_CHECKPOINTS) only part of the activations are stored and the rest are recomputed during the backpropagation
+ * Frozen connections (see setFrozen()) are not trained, which allows fine-tuning of only part of the network
  */
 public class BackPropagationTrainer<N extends NeuralNetwork> extends OneStepTrainer<N> implements TrainingEventListener {
 
@@ -36,6 +53,11 @@ public class BackPropagationTrainer<N extends NeuralNetwork> extends OneStepTrai
     protected ValuesProvider backpropagation;
     protected TrainingInputData input;
 
+    /**
+     * gradients of the connections, which are not frozen (null if there are no frozen connections)
+     */
+    protected Map<Connections, Tensor> trainableGradients;
+
     public BackPropagationTrainer(Properties properties) {
 	super(properties);
 	NeuralNetwork nn = getNeuralNetwork();
@@ -46,36 +68,113 @@ public class BackPropagationTrainer<N extends NeuralNetwork> extends OneStepTrai
 	float dropoutRate = properties.getParameter(Constants.DROPOUT_RATE);
 
 	if (dropoutRate > 0) {
-	    LayerCalculatorImpl lc = (LayerCalculatorImpl) nn.getLayerCalculator();
-	    nn.getConnections().stream().filter(c -> c instanceof FullyConnected && c.getInputLayer() != nn.getInputLayer() && !Util.isBias(c.getInputLayer())).forEach(c -> {
-		ConnectionCalculatorFullyConnected cc = (ConnectionCalculatorFullyConnected) lc.getConnectionCalculator(c.getOutputLayer());
-		cc.setDropoutRate(dropoutRate);
-	    });
+	    setDropoutRate(dropoutRate);
+	    addEventListener(this);
+	}
 
+	if (getMixedPrecision() != null) {
 	    addEventListener(this);
 	}
+
+	if (getActivationCheckpoints() != null) {
+	    initActivationCheckpoints();
+	}
+    }
+
+    /**
+     * The activations are replaced with the ones of the checkpoints
+     */
+    protected void initActivationCheckpoints() {
+	ActivationCheckpoints ac = getActivationCheckpoints();
+	if (!(getBPLayerCalculator() instanceof BackPropagationLayerCalculatorImpl)) {
+	    throw new IllegalArgumentException("Activation checkpoints require BackPropagationLayerCalculatorImpl");
+	}
+
+	float dropoutRate = properties.getParameter(Constants.DROPOUT_RATE);
+	if (dropoutRate > 0) {
+	    throw new IllegalArgumentException("Activation checkpoints can't be used with dropout");
+	}
+
+	OutputErrorDerivative d = getProperties().getParameter(Constants.OUTPUT_ERROR_DERIVATIVE);
+	ac.getActivations().add(d, activations.get(d).getDimensions());
+	activations = ac.getActivations();
+	input = null;
+	((BackPropagationLayerCalculatorImpl) getBPLayerCalculator()).setActivationCheckpoints(ac);
     }
 
     /* (non-Javadoc)
      * @see com.github.neuralnetworks.training.OneStepTrainer#learnInput(com.github.neuralnetworks.training.TrainingInputData)
      * The training example is propagated forward through the network (via the LayerCalculator lc) and the results are stored.
-     * After that the error is backpropagated (via BackPropagationLayerCalculator blc).
+     * After that the error is backpropagated (via BackPropagationLayerCalculator blc) and the gradients are added to the gradients tensors.
      */
     @Override
     protected void learnInput(int batch) {
-	// forward
 	NeuralNetwork nn = getNeuralNetwork();
+	MixedPrecision mp = getMixedPrecision();
+	if (mp != null) {
+	    // after the random initialization of the weights
+	    mp.start(getOptimizer(), nn, getGradients(), (LayerCalculatorBase) nn.getLayerCalculator(), (LayerCalculatorBase) getBPLayerCalculator());
+	    mp.getPrecision().round(activations.get(nn.getInputLayer()));
+	}
+
+	// forward
 	Set<Layer> calculatedLayers = new UniqueList<Layer>();
 	calculatedLayers.add(nn.getInputLayer());
 	nn.getLayerCalculator().calculate(nn, nn.getOutputLayer(), calculatedLayers, activations);
+	if (getActivationCheckpoints() != null) {
+	    getActivationCheckpoints().forwardFinished();
+	}
 
 	// backward
 	OutputErrorDerivative d = getProperties().getParameter(Constants.OUTPUT_ERROR_DERIVATIVE);
 	d.getOutputErrorDerivative(activations.get(nn.getOutputLayer()), activations.get(d), backpropagation.get(nn.getOutputLayer()));
+	if (mp != null) {
+	    mp.scaleLoss(backpropagation.get(nn.getOutputLayer()));
+	}
+
 	calculatedLayers.clear();
 	calculatedLayers.add(nn.getOutputLayer());
 	BackPropagationLayerCalculator blc = getBPLayerCalculator();
 	blc.backpropagate(nn, calculatedLayers, activations, backpropagation);
+
+	if (mp != null) {
+	    mp.roundGradients(getGradients());
+	}
+    }
+
+    @Override
+    protected void updateWeights() {
+	if (getMixedPrecision() != null) {
+	    getMixedPrecision().update(getOptimizer());
+	} else {
+	    getOptimizer().update(getNeuralNetwork(), getTrainableGradients());
+	}
+    }
+
+    /**
+     * The optimizer state is saved in addition to the weights
+     */
+    @Override
+    protected void saveState(TrainingCheckpoint checkpoint) {
+	if (getMixedPrecision() != null && getMixedPrecision().isStarted()) {
+	    throw new IllegalStateException("Checkpoints are not supported with mixed precision");
+	}
+
+	super.saveState(checkpoint);
+
+	float[][] state = getOptimizer().getState();
+	if (state != null) {
+	    checkpoint.setOptimizerState(getOptimizer().getStep(), state);
+	}
+    }
+
+    @Override
+    protected void restoreState(TrainingCheckpoint checkpoint) {
+	super.restoreState(checkpoint);
+
+	if (checkpoint.getOptimizerState() != null) {
+	    getOptimizer().setState(getNeuralNetwork(), getTrainableGradients(), checkpoint.getOptimizerStep(), checkpoint.getOptimizerState());
+	}
     }
 
     @Override
@@ -89,23 +188,62 @@ public class BackPropagationTrainer<N extends NeuralNetwork> extends OneStepTrai
 
     @Override
     public void handleEvent(TrainingEvent event) {
-	if (event instanceof TrainingFinishedEvent) {
+	if (event instanceof TrainingStartedEvent) {
+	    float dropoutRate = properties.getParameter(Constants.DROPOUT_RATE);
+	    if (dropoutRate > 0) {
+		setDropoutRate(dropoutRate);
+	    }
+	} else if (event instanceof TrainingFinishedEvent) {
+	    if (getMixedPrecision() != null) {
+		getMixedPrecision().finish();
+	    }
+
 	    float dropoutRate = properties.getParameter(Constants.DROPOUT_RATE);
 
+	    // the dropout is inverted (the activations are scaled during the training), so the weights are used for inference as they are
 	    if (dropoutRate > 0) {
-		NeuralNetwork nn = getNeuralNetwork();
-
-		LayerCalculatorImpl lc = (LayerCalculatorImpl) nn.getLayerCalculator();
-		nn.getConnections().stream().filter(c -> c instanceof FullyConnected && c.getInputLayer() != nn.getInputLayer() && !Util.isBias(c.getInputLayer())).forEach(c -> {
-		    ConnectionCalculatorFullyConnected cc = (ConnectionCalculatorFullyConnected) lc.getConnectionCalculator(c.getOutputLayer());
-		    cc.setDropoutRate(0);
-		    FullyConnected fc = (FullyConnected) c;
-		    fc.getWeights().forEach(i -> fc.getWeights().getElements()[i] = fc.getWeights().getElements()[i] * (1 - dropoutRate));
-		});
+		setDropoutRate(0);
 	    }
 	}
     }
 
+    /**
+     * Dropout is applied to the hidden layers only - the activations of every layer, which is the input of a fully connected connection (excluding the network input and the bias layers).
+     * The output layer never has dropout, because its activations are the predictions, on which the loss is computed
+     */
+    private void setDropoutRate(float dropoutRate) {
+	NeuralNetwork nn = getNeuralNetwork();
+	LayerCalculatorImpl lc = (LayerCalculatorImpl) nn.getLayerCalculator();
+	nn.getConnections().stream().filter(c -> c instanceof FullyConnected && c.getInputLayer() != nn.getInputLayer() && c.getInputLayer() != nn.getOutputLayer() && !Util.isBias(c.getInputLayer())).forEach(c -> {
+	    ConnectionCalculator cc = lc.getConnectionCalculator(c.getInputLayer());
+	    if (!(cc instanceof ConnectionCalculatorFullyConnected)) {
+		throw new IllegalArgumentException("Dropout is supported only for fully connected layers");
+	    }
+
+	    // the dropout kernel is created here, so that its state can be restored from a checkpoint before the first mini batch
+	    ConnectionCalculatorFullyConnected fc = (ConnectionCalculatorFullyConnected) cc;
+	    fc.setDropoutRate(dropoutRate);
+	    if (dropoutRate > 0 && fc.getDropoutFunction() == null) {
+		fc.setDropoutFunction(new InvertedDropout(dropoutRate));
+	    }
+	});
+    }
+
+    /**
+     * The dropout kernels of the hidden layers
+     */
+    @Override
+    protected List<PhiloxKernel> getRandomKernels() {
+	List<PhiloxKernel> result = new ArrayList<>();
+	NeuralNetwork nn = getNeuralNetwork();
+	if (nn.getLayerCalculator() instanceof LayerCalculatorImpl) {
+	    LayerCalculatorImpl lc = (LayerCalculatorImpl) nn.getLayerCalculator();
+	    nn.getLayers().stream().map(lc::getConnectionCalculator).filter(cc -> cc instanceof ConnectionCalculatorFullyConnected).map(cc -> ((ConnectionCalculatorFullyConnected) cc).getDropoutFunction()).filter(f -> f instanceof PhiloxKernel).distinct().forEach(f -> result.add((PhiloxKernel) f));
+	}
+
+	return result;
+    }
+
     public BackPropagationLayerCalculator getBPLayerCalculator() {
 	return getProperties().getParameter(Constants.BACKPROPAGATION);
     }
@@ -113,4 +251,80 @@ public class BackPropagationTrainer<N extends NeuralNetwork> extends OneStepTrai
     public void setBPLayerCalculator(BackPropagationLayerCalculator bplc) {
 	getProperties().setParameter(Constants.BACKPROPAGATION, bplc);
     }
+
+    public Optimizer getOptimizer() {
+	return getProperties().getParameter(Constants.OPTIMIZER);
+    }
+
+    public void setOptimizer(Optimizer optimizer) {
+	getProperties().setParameter(Constants.OPTIMIZER, optimizer);
+    }
+
+    public MixedPrecision getMixedPrecision() {
+	return getProperties().getParameter(Constants.MIXED_PRECISION);
+    }
+
+    public void setMixedPrecision(MixedPrecision mixedPrecision) {
+	getProperties().setParameter(Constants.MIXED_PRECISION, mixedPrecision);
+	if (mixedPrecision != null) {
+	    addEventListener(this);
+	}
+    }
+
+    public Map<Connections, Tensor> getGradients() {
+	return getProperties().getParameter(Constants.GRADIENTS);
+    }
+
+    /**
+     * @return the gradients, which are applied by the optimizer
+     */
+    public Map<Connections, Tensor> getTrainableGradients() {
+	return trainableGradients != null ? trainableGradients : getGradients();
+    }
+
+    public boolean isFrozen(Connections connections) {
+	return getBPLayerCalculator() instanceof BackPropagationLayerCalculatorImpl && ((BackPropagationLayerCalculatorImpl) getBPLayerCalculator()).isFrozen(connections);
+    }
+
+    /**
+     * The gradients of frozen connections are not calculated and the optimizer doesn't update their weights. The backpropagation stops where no trainable connection remains.
+     * Changing the frozen connections resets the state of the optimizer
+     * @param frozen - whether the weights of the connections are excluded from the training
+     */
+    public void setFrozen(Connections connections, boolean frozen) {
+	if (!(getBPLayerCalculator() instanceof BackPropagationLayerCalculatorImpl)) {
+	    throw new IllegalArgumentException("Frozen connections require BackPropagationLayerCalculatorImpl");
+	}
+
+	if (getMixedPrecision() != null) {
+	    throw new IllegalArgumentException("Frozen connections can't be used with mixed precision");
+	}
+
+	BackPropagationLayerCalculatorImpl bplc = (BackPropagationLayerCalculatorImpl) getBPLayerCalculator();
+	bplc.setFrozen(connections, frozen);
+
+	// a calculator, which is shared with trainable connections, still accumulates the gradients of the frozen ones
+	Tensor g = getGradients().get(connections);
+	if (!frozen && g != null) {
+	    g.forEach(i -> g.getElements()[i] = 0);
+	}
+
+	if (bplc.getFrozenConnections().isEmpty()) {
+	    trainableGradients = null;
+	} else {
+	    trainableGradients = new HashMap<>(getGradients());
+	    trainableGradients.keySet().removeAll(bplc.getFrozenConnections());
+	}
+    }
+
+    public ActivationCheckpoints getActivationCheckpoints() {
+	return getProperties().getParameter(Constants.ACTIVATION_CHECKPOINTS);
+    }
+
+    public void setActivationCheckpoints(ActivationCheckpoints activationCheckpoints) {
+	getProperties().setParameter(Constants.ACTIVATION_CHECKPOINTS, activationCheckpoints);
+	if (activationCheckpoints != null) {
+	    initActivationCheckpoints();
+	}
+    }
 }
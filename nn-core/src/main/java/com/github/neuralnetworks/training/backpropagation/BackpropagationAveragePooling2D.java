@@ -16,6 +16,7 @@ public class BackpropagationAveragePooling2D implements BackPropagationConnectio
 
     private BackPropagationConnectionCalculator cc;
     protected ValuesProvider activations;
+    protected boolean calculateErrors = true;
 
     @Override
     public void calculate(List<Connections> connections, ValuesProvider valuesProvider, Layer targetLayer) {
@@ -23,57 +24,28 @@ public class BackpropagationAveragePooling2D implements BackPropagationConnectio
 	    cc = new BackpropagationAveragePooling2DCC((Subsampling2DConnection) connections.get(0), valuesProvider, activations, targetLayer);
 	}
 
+	cc.setCalculateErrors(calculateErrors);
 	cc.calculate(connections, valuesProvider, targetLayer);
     }
 
     @Override
-    public float getLearningRate() {
-	return cc.getLearningRate();
-    }
-
-    @Override
-    public void setLearningRate(float learningRate) {
-	cc.setLearningRate(learningRate);
-    }
-
-    @Override
-    public float getMomentum() {
-	return cc.getMomentum();
-    }
-
-    @Override
-    public void setMomentum(float momentum) {
-	cc.setMomentum(momentum);
-    }
-
-    @Override
-    public float getL1weightDecay() {
-	return cc.getL1weightDecay();
-    }
-
-    @Override
-    public void setL1weightDecay(float weightDecay) {
-	cc.setL1weightDecay(weightDecay);
-    }
-
-    @Override
-    public float getL2weightDecay() {
-	return cc.getL2weightDecay();
+    public ValuesProvider getActivations() {
+	return cc != null ? cc.getActivations() : activations;
     }
 
     @Override
-    public void setL2weightDecay(float l2weightDecay) {
-	cc.setL2weightDecay(l2weightDecay);
+    public void setActivations(ValuesProvider activations) {
+	this.activations = activations;
     }
 
     @Override
-    public ValuesProvider getActivations() {
-	return cc != null ? cc.getActivations() : activations;
+    public void setCalculateGradients(boolean calculateGradients) {
+	// no weights
     }
 
     @Override
-    public void setActivations(ValuesProvider activations) {
-	this.activations = activations;
+    public void setCalculateErrors(boolean calculateErrors) {
+	this.calculateErrors = calculateErrors;
     }
 
     public class BackpropagationAveragePooling2DCC extends AparapiBackpropagationSubsampling2D {
@@ -16,6 +16,7 @@ public class BackpropagationMaxPooling2D implements BackPropagationConnectionCal
 
     private BackPropagationConnectionCalculator cc;
     protected ValuesProvider activations;
+    protected boolean calculateErrors = true;
 
     @Override
     public void calculate(List<Connections> connections, ValuesProvider valuesProvider, Layer targetLayer) {
@@ -23,56 +24,28 @@ public class BackpropagationMaxPooling2D implements BackPropagationConnectionCal
 	    cc = new BackpropagationMaxPooling2DCC((Subsampling2DConnection) connections.get(0), valuesProvider, activations, targetLayer);
 	}
 
+	cc.setCalculateErrors(calculateErrors);
 	cc.calculate(connections, valuesProvider, targetLayer);
     }
 
     @Override
-    public float getLearningRate() {
-	return cc.getLearningRate();
-    }
-
-    @Override
-    public void setLearningRate(float learningRate) {
-	cc.setLearningRate(learningRate);
-    }
-
-    @Override
-    public float getMomentum() {
-	return cc.getMomentum();
-    }
-
-    @Override
-    public void setMomentum(float momentum) {
-	cc.setMomentum(momentum);
-    }
-
-    @Override
-    public float getL1weightDecay() {
-	return cc.getL1weightDecay();
-    }
-
-    @Override
-    public void setL1weightDecay(float weightDecay) {
-	cc.setL1weightDecay(weightDecay);
+    public ValuesProvider getActivations() {
+	return cc != null ? cc.getActivations() : activations;
     }
 
     @Override
-    public float getL2weightDecay() {
-	return cc.getL2weightDecay();
+    public void setActivations(ValuesProvider activations) {
+	this.activations = activations;
     }
 
     @Override
-    public void setL2weightDecay(float l2weightDecay) {
-	cc.setL2weightDecay(l2weightDecay);
-    }
-    @Override
-    public ValuesProvider getActivations() {
-	return cc != null ? cc.getActivations() : activations;
+    public void setCalculateGradients(boolean calculateGradients) {
+	// no weights
     }
 
     @Override
-    public void setActivations(ValuesProvider activations) {
-	this.activations = activations;
+    public void setCalculateErrors(boolean calculateErrors) {
+	this.calculateErrors = calculateErrors;
     }
 
     public static class BackpropagationMaxPooling2DCC extends AparapiBackpropagationSubsampling2D {
@@ -86,16 +59,16 @@ public class BackpropagationMaxPooling2D implements BackPropagationConnectionCal
 	@Override
 	protected void pool(int inputStartIndex, int outputStartIndex) {
 	    int maxId = 0;
-	    int ffActivationId = 0;
+	    int inputId = 0;
 	    float max = 0;
 
 	    for (int i = 0; i < miniBatchSize; i++) {
-		max = ffActivation[inputStartIndex + featureMapOffsets[i * regionLength]];
+		max = ffActivation[ffActivationOffset + inputStartIndex + featureMapOffsets[i * regionLength]];
 		for (int j = 1; j < regionLength; j++) {
-		    ffActivationId = inputStartIndex + featureMapOffsets[i * regionLength + j];
-		    float v = ffActivation[ffActivationId];
+		    inputId = inputStartIndex + featureMapOffsets[i * regionLength + j];
+		    float v = ffActivation[ffActivationOffset + inputId];
 		    if (v > max) {
-			maxId = ffActivationId;
+			maxId = inputId;
 			max = v;
 		    }
 		}
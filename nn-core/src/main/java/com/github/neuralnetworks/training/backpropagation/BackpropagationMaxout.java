@@ -6,8 +6,12 @@ import java.util.Map;
 
 import com.github.neuralnetworks.architecture.Connections;
 import com.github.neuralnetworks.architecture.Layer;
+import com.github.neuralnetworks.architecture.NeuralNetwork;
+import com.github.neuralnetworks.calculation.ConnectionCalculator;
+import com.github.neuralnetworks.calculation.LayerCalculatorImpl;
 import com.github.neuralnetworks.calculation.memory.ValuesProvider;
 import com.github.neuralnetworks.calculation.neuronfunctions.AparapiFullyConnected;
+import com.github.neuralnetworks.calculation.neuronfunctions.AparapiMaxout;
 import com.github.neuralnetworks.calculation.neuronfunctions.MaxoutWinners;
 import com.github.neuralnetworks.tensor.Matrix;
 import com.github.neuralnetworks.tensor.Tensor;
@@ -25,10 +29,25 @@ public class BackpropagationMaxout extends BackPropagationConnectionCalculatorIm
     @Override
     protected void addBackpropFunction(List<Connections> inputConnections, Map<Connections, BackPropagationConnectionCalculator> connectionCalculators, ValuesProvider valuesProvider, ValuesProvider activations, Layer targetLayer) {
 	for (Connections c : inputConnections) {
-	    connectionCalculators.put(c, new AparapiBackpropMaxout(c, valuesProvider, activations, Arrays.asList(getWeightUpdates().get(c)), getLearningRate(), getMomentum(), getL1weightDecay(), getL2weightDecay()));
+	    connectionCalculators.put(c, new AparapiBackpropMaxout(c, valuesProvider, activations, Arrays.asList(getGradients().get(c)), getMaxoutWinners(c.getOutputLayer())));
 	}
     }
 
+    /**
+     * @return the winners of the feedforward phase of the layer
+     */
+    protected MaxoutWinners getMaxoutWinners(Layer layer) {
+	NeuralNetwork nn = getNeuralNetwork();
+	if (nn != null && nn.getLayerCalculator() instanceof LayerCalculatorImpl) {
+	    ConnectionCalculator cc = ((LayerCalculatorImpl) nn.getLayerCalculator()).getConnectionCalculator(layer);
+	    if (cc instanceof AparapiMaxout) {
+		return ((AparapiMaxout) cc).getMaxoutWinners();
+	    }
+	}
+
+	throw new IllegalStateException("The layer has no maxout feedforward calculator");
+    }
+
     @Override
     public void calculate(List<Connections> connections, ValuesProvider valuesProvider, Layer targetLayer) {
 	targetLayer = connections.get(0).getOutputLayer();
@@ -55,19 +74,20 @@ public class BackpropagationMaxout extends BackPropagationConnectionCalculatorIm
 	protected final int activationColumnStep;
 
 	/**
-	 * Weight updates array
+	 * Gradients
 	 */
-	protected final float[] weightUpdates;
-
-	protected float learningRate;
-	protected final float momentum;
-	protected final float l1weightDecay;
-	protected final float l2weightDecay;
+	protected final float[] gradients;
 
 	private final int[] winnersStartPositions;
 	private final int[] maxoutWinners;
 
-	public AparapiBackpropMaxout(Connections inputConnection, ValuesProvider valuesProvider, ValuesProvider activations, List<Tensor> weightUpdates, float learningRate, float momentum, float l1weightDecay, float l2weightDecay) {
+	/**
+	 * whether the gradients of the weights (0 for frozen connections) and the errors of the target layer are calculated
+	 */
+	protected int calculateGradients = 1;
+	protected int calculateErrors = 1;
+
+	public AparapiBackpropMaxout(Connections inputConnection, ValuesProvider valuesProvider, ValuesProvider activations, List<Tensor> gradients, MaxoutWinners winners) {
 	    super(Arrays.asList(new Connections[] {inputConnection}), valuesProvider, inputConnection.getOutputLayer());
 
 	    Matrix m = TensorFactory.tensor(inputConnection.getInputLayer(), inputConnection, activations);
@@ -76,85 +96,58 @@ public class BackpropagationMaxout extends BackPropagationConnectionCalculatorIm
 	    this.activationRowStep = m.getRowElementsDistance();
 	    this.activationColumnStep = m.getColumnElementsDistance();
 
-	    this.learningRate = momentum;
-	    this.momentum = momentum;
-	    this.l1weightDecay = l1weightDecay;
-	    this.l2weightDecay = l2weightDecay;
-	    this.weightUpdates = weightUpdates.get(0).getElements();
+	    this.gradients = gradients.get(0).getElements();
 
-	    this.winnersStartPositions = MaxoutWinners.getInstance().getStartPositions(Arrays.asList(new Connections[] {inputConnection}));
-	    this.maxoutWinners = MaxoutWinners.getInstance().getWinners();
+	    this.winnersStartPositions = winners.getStartPositions(Arrays.asList(new Connections[] {inputConnection}));
+	    this.maxoutWinners = winners.getWinners();
 	}
 
 	@Override
 	public void run() {
 	    int id = getGlobalId();
 
-	    int maxoutId = 0, weightId = 0;
-	    float weight = 0, weightUpdate = 0;
+	    int maxoutId = 0;
 
 	    // each input example
 	    for (int i = 0; i < miniBatchSize; i++) {
 		// each connection (of the combined connections)
 		for (int k = 0; k < series; k++) {
 		    maxoutId = maxoutWinners[winnersStartPositions[k] + id * miniBatchSize + i];
-		    weightId = weightStartPositions[k] + weightsInitialStep[k] * id + maxoutId * weightsStep[k];
-		    weight = weights[weightId];
-
-		    weightUpdate += output[outputStartPosition + id * outputRowStep + i * outputColumnStep] * ffActivation[activationStartPosition + maxoutId * activationRowStep + i * activationColumnStep];
-		    weightUpdate = learningRate * weightUpdate + momentum * weightUpdates[weightId] - l1weightDecay * abs(weight) - l2weightDecay * weight * weight / 2;
-		    weights[weightId] += weightUpdate;
-		    weightUpdates[weightId] = weightUpdate;
+		    if (calculateGradients == 1) {
+			gradients[weightStartPositions[k] + weightsInitialStep[k] * id + maxoutId * weightsStep[k]] += output[outputStartPosition + id * outputRowStep + i * outputColumnStep] * ffActivation[activationStartPosition + maxoutId * activationRowStep + i * activationColumnStep];
+		    }
 
-		    input[activationStartPosition + maxoutId * activationRowStep + i * activationColumnStep] += output[outputStartPosition + id * outputRowStep + i * outputColumnStep];
+		    if (calculateErrors == 1) {
+			input[activationStartPosition + maxoutId * activationRowStep + i * activationColumnStep] += output[outputStartPosition + id * outputRowStep + i * outputColumnStep];
+		    }
 		}
 	    }
 	}
 
 	@Override
-	public float getLearningRate() {
-	    return learningRate;
-	}
-
-	@Override
-	public void setLearningRate(float learningRate) {
-	    this.learningRate = learningRate;
-	}
-
-	@Override
-	public float getMomentum() {
-	    return momentum;
-	}
-
-	@Override
-	public void setMomentum(float momentum) {
-	}
-
-	@Override
-	public float getL1weightDecay() {
-	    return l1weightDecay;
-	}
-
-	@Override
-	public void setL1weightDecay(float weightDecay) {
+	public ValuesProvider getActivations() {
+	    return null;
 	}
 
 	@Override
-	public float getL2weightDecay() {
-	    return l2weightDecay;
+	public void setActivations(ValuesProvider activations) {
 	}
 
 	@Override
-	public void setL2weightDecay(float l2weightDecay) {
+	public void calculate(List<Connections> connections, ValuesProvider valuesProvider, Layer targetLayer) {
+	    if (calculateGradients == 1 || calculateErrors == 1) {
+		super.calculate(connections, valuesProvider, targetLayer);
+	    }
 	}
 
 	@Override
-	public ValuesProvider getActivations() {
-	    return null;
+	public void setCalculateGradients(boolean calculateGradients) {
+	    this.calculateGradients = calculateGradients ? 1 : 0;
 	}
 
 	@Override
-	public void setActivations(ValuesProvider activations) {
+	public void setCalculateErrors(boolean calculateErrors) {
+	    this.calculateErrors = calculateErrors ? 1 : 0;
 	}
     }
 }
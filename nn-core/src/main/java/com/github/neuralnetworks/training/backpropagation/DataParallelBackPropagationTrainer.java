@@ -0,0 +1,286 @@
+package com.github.neuralnetworks.training.backpropagation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.IntConsumer;
+import java.util.stream.Collectors;
+
+import com.github.neuralnetworks.architecture.Connections;
+import com.github.neuralnetworks.architecture.NeuralNetwork;
+import com.github.neuralnetworks.architecture.NeuralNetworkImpl;
+import com.github.neuralnetworks.architecture.WeightsConnections;
+import com.github.neuralnetworks.tensor.Tensor;
+import com.github.neuralnetworks.tensor.TensorFactory;
+import com.github.neuralnetworks.training.TrainerFactory;
+import com.github.neuralnetworks.training.TrainingCheckpoint;
+import com.github.neuralnetworks.training.TrainingInputData;
+import com.github.neuralnetworks.training.optimizers.Optimizer;
+import com.github.neuralnetworks.training.optimizers.WeightArena;
+import com.github.neuralnetworks.util.Constants;
+import com.github.neuralnetworks.util.Properties;
+import com.github.neuralnetworks.util.Util;
+
+/**
+ * Synchronous data parallel backpropagation
+ * Each mini batch is split into shards (one per worker). Every worker has a replica of the network with it's own ValuesProvider and calculators, which computes the gradient of its shard.
+ * The gradients are summed via tree reduction into the gradients of the trainer and a single update is applied to the network by the optimizer.
+ * Because the gradients are summed over the samples the result is equivalent to BackPropagationTrainer with the same mini batch size (up to floating point summation order).
+ * The replicas share the weights of the network (they only read them while computing the gradients).
+ * Dropout, maxout, frozen connections, mixed precision and activation checkpoints are not supported.
+ */
+public class DataParallelBackPropagationTrainer<N extends NeuralNetwork> extends BackPropagationTrainer<N> {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Network connections with weights (in the same order for the network and all replicas)
+     */
+    private final List<WeightsConnections> connections;
+
+    /**
+     * Replica trainers, which compute the gradients
+     */
+    private final List<BackPropagationTrainer<?>> workers;
+
+    /**
+     * Mini batch offset for each worker (the last element is the mini batch size)
+     */
+    private final int[] shardOffsets;
+
+    /**
+     * Start indexes and sizes of the gradients for each connection (calculated once, because the tensors are shared between threads)
+     */
+    private final int[] sizes;
+    private final int[][] gradientsStart;
+
+    /**
+     * Gradients elements of each worker replica for each connection
+     */
+    private final float[][][] gradients;
+
+    /**
+     * Gradients of the network for each connection
+     */
+    private final float[][] masterGradients;
+    private final int[] masterGradientsStart;
+
+    /**
+     * Start position of each connection in the combined weights of the network (the same as in the WeightArena)
+     */
+    private final int[] positions;
+
+    private transient ExecutorService executor;
+
+    public DataParallelBackPropagationTrainer(Properties properties) {
+	super(properties);
+
+	if (properties.<Float> getParameter(Constants.DROPOUT_RATE) > 0) {
+	    throw new IllegalArgumentException("Dropout is not supported by the data parallel trainer");
+	}
+
+	if (getMixedPrecision() != null) {
+	    throw new IllegalArgumentException("Mixed precision is not supported by the data parallel trainer");
+	}
+
+	if (getActivationCheckpoints() != null) {
+	    throw new IllegalArgumentException("Activation checkpoints are not supported by the data parallel trainer");
+	}
+
+	Integer w = properties.getParameter(Constants.WORKERS);
+	int batchSize = getTrainingBatchSize();
+	int n = Math.min(w != null ? w : Runtime.getRuntime().availableProcessors(), batchSize);
+	if (n < 1) {
+	    throw new IllegalArgumentException("At least one worker is required");
+	}
+
+	NeuralNetworkImpl nn = (NeuralNetworkImpl) getNeuralNetwork();
+	connections = weightsConnections(nn);
+	Map<Connections, Tensor> g = getGradients();
+
+	int c = connections.size();
+	sizes = new int[c];
+	masterGradients = new float[c][];
+	masterGradientsStart = new int[c];
+	positions = new int[c + 1];
+	for (int i = 0; i < c; i++) {
+	    Tensor weights = connections.get(i).getWeights();
+	    sizes[i] = weights.getSize();
+	    masterGradients[i] = g.get(connections.get(i)).getElements();
+	    masterGradientsStart[i] = g.get(connections.get(i)).getStartIndex();
+	    positions[i + 1] = positions[i] + sizes[i];
+	}
+
+	shardOffsets = new int[n + 1];
+	for (int i = 0; i < n; i++) {
+	    shardOffsets[i + 1] = shardOffsets[i] + batchSize / n + (i < batchSize % n ? 1 : 0);
+	}
+
+	// the weights are shared with the replicas
+	List<Object> shared = new ArrayList<>();
+	connections.forEach(wc -> {
+	    shared.add(wc.getWeights());
+	    shared.add(wc.getWeights().getElements());
+	});
+
+	// each worker computes only the gradient of its shard
+	workers = new ArrayList<>();
+	gradientsStart = new int[n][c];
+	gradients = new float[n][c][];
+	for (int i = 0; i < n; i++) {
+	    NeuralNetworkImpl replica = Util.copy(nn, shared);
+	    BackPropagationTrainer<?> t = TrainerFactory.backPropagation(replica, null, null, null, null, 1f, 0f, 0f, 0f, 0f, shardOffsets[i + 1] - shardOffsets[i], 1, 1);
+	    workers.add(t);
+
+	    List<WeightsConnections> rc = weightsConnections(replica);
+	    Map<Connections, Tensor> rg = t.getGradients();
+	    for (int j = 0; j < c; j++) {
+		gradients[i][j] = rg.get(rc.get(j)).getElements();
+		gradientsStart[i][j] = rg.get(rc.get(j)).getStartIndex();
+	    }
+	}
+    }
+
+    @Override
+    public void train(TrainingCheckpoint checkpoint) {
+	try {
+	    super.train(checkpoint);
+	} finally {
+	    if (executor != null) {
+		executor.shutdownNow();
+		executor = null;
+	    }
+	}
+    }
+
+    @Override
+    public void setFrozen(Connections connections, boolean frozen) {
+	throw new IllegalArgumentException("Frozen connections are not supported by the data parallel trainer");
+    }
+
+    @Override
+    public void setMixedPrecision(MixedPrecision mixedPrecision) {
+	if (mixedPrecision != null) {
+	    throw new IllegalArgumentException("Mixed precision is not supported by the data parallel trainer");
+	}
+
+	super.setMixedPrecision(mixedPrecision);
+    }
+
+    @Override
+    public void setActivationCheckpoints(ActivationCheckpoints activationCheckpoints) {
+	if (activationCheckpoints != null) {
+	    throw new IllegalArgumentException("Activation checkpoints are not supported by the data parallel trainer");
+	}
+
+	super.setActivationCheckpoints(activationCheckpoints);
+    }
+
+    @Override
+    protected void learnInput(int batch) {
+	if (executor == null) {
+	    executor = Executors.newFixedThreadPool(workers.size(), r -> {
+		Thread t = new Thread(r, "data-parallel-worker");
+		t.setDaemon(true);
+		return t;
+	    });
+	}
+
+	TrainingInputData input = getInput();
+
+	// gradients of each shard
+	parallel(i -> {
+	    BackPropagationTrainer<?> t = workers.get(i);
+	    TrainingInputData shard = t.getInput();
+	    int count = shardOffsets[i + 1] - shardOffsets[i];
+	    TensorFactory.copyBatch(input.getInput(), shardOffsets[i], shard.getInput(), 0, count);
+	    TensorFactory.copyBatch(input.getTarget(), shardOffsets[i], shard.getTarget(), 0, count);
+
+	    t.learnInput(batch);
+	});
+
+	// reduction - each thread is responsible for a range of the weights
+	int total = positions[positions.length - 1], n = workers.size();
+	parallel(r -> {
+	    int from = (int) ((long) total * r / n), to = (int) ((long) total * (r + 1) / n);
+	    for (int j = 0; j < sizes.length; j++) {
+		int start = Math.max(from, positions[j]) - positions[j], end = Math.min(to, positions[j + 1]) - positions[j];
+		if (start < end) {
+		    reduce(j, start, end);
+		}
+	    }
+	});
+    }
+
+    @Override
+    protected void updateWeights() {
+	Optimizer optimizer = getOptimizer();
+	WeightArena arena = optimizer.getArena(getNeuralNetwork(), getGradients());
+	optimizer.nextStep();
+	int total = arena.getSize(), n = workers.size();
+
+	parallel(r -> optimizer.update(arena, (int) ((long) total * r / n), (int) ((long) total * (r + 1) / n)));
+    }
+
+    /**
+     * Tree reduction of the gradients of connection j in the range [start, end). The sum is added to the gradients of the trainer and the worker gradients are cleared
+     */
+    private void reduce(int j, int start, int end) {
+	int n = workers.size();
+	for (int s = 1; s < n; s <<= 1) {
+	    for (int i = 0; i + s < n; i += 2 * s) {
+		float[] dest = gradients[i][j], src = gradients[i + s][j];
+		int d = gradientsStart[i][j], o = gradientsStart[i + s][j];
+		for (int k = start; k < end; k++) {
+		    dest[d + k] += src[o + k];
+		    src[o + k] = 0;
+		}
+	    }
+	}
+
+	float[] sum = gradients[0][j], master = masterGradients[j];
+	int d = masterGradientsStart[j], o = gradientsStart[0][j];
+	for (int k = start; k < end; k++) {
+	    master[d + k] += sum[o + k];
+	    sum[o + k] = 0;
+	}
+    }
+
+    /**
+     * Executes the task for each worker index in parallel and waits for all of them to finish
+     */
+    private void parallel(IntConsumer task) {
+	List<Future<?>> futures = new ArrayList<>();
+	for (int i = 0; i < workers.size(); i++) {
+	    int index = i;
+	    futures.add(executor.submit(() -> task.accept(index)));
+	}
+
+	try {
+	    for (Future<?> f : futures) {
+		f.get();
+	    }
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	    throw new IllegalStateException(e);
+	} catch (ExecutionException e) {
+	    if (e.getCause() instanceof RuntimeException) {
+		throw (RuntimeException) e.getCause();
+	    }
+
+	    throw new IllegalStateException(e.getCause());
+	}
+    }
+
+    public int getWorkers() {
+	return workers.size();
+    }
+
+    private static List<WeightsConnections> weightsConnections(NeuralNetworkImpl nn) {
+	return nn.getConnections().stream().filter(c -> c instanceof WeightsConnections).map(c -> (WeightsConnections) c).collect(Collectors.toList());
+    }
+}
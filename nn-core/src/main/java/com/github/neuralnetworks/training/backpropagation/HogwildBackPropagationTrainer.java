@@ -0,0 +1,338 @@
+package com.github.neuralnetworks.training.backpropagation;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import com.github.neuralnetworks.architecture.ConnectionFactory;
+import com.github.neuralnetworks.architecture.Connections;
+import com.github.neuralnetworks.architecture.NeuralNetwork;
+import com.github.neuralnetworks.architecture.NeuralNetworkImpl;
+import com.github.neuralnetworks.architecture.WeightsConnections;
+import com.github.neuralnetworks.tensor.Tensor;
+import com.github.neuralnetworks.training.TrainerFactory;
+import com.github.neuralnetworks.training.TrainingCheckpoint;
+import com.github.neuralnetworks.training.TrainingInputData;
+import com.github.neuralnetworks.training.TrainingInputProvider;
+import com.github.neuralnetworks.training.events.EpochFinishedEvent;
+import com.github.neuralnetworks.training.events.MiniBatchFinishedEvent;
+import com.github.neuralnetworks.training.events.TrainingFinishedEvent;
+import com.github.neuralnetworks.training.events.TrainingStartedEvent;
+import com.github.neuralnetworks.training.optimizers.Optimizer;
+import com.github.neuralnetworks.util.Constants;
+import com.github.neuralnetworks.util.Properties;
+import com.github.neuralnetworks.util.Util;
+
+/**
+ * Asynchronous (Hogwild style) backpropagation
+ * Several worker threads pull mini batches from the shared training input provider. Each worker has a replica of the network with private activations,
+ * but the replica references the weights of the network, so the weight updates are applied directly to the shared weights without any locking.
+ * Contention heavy connections can be striped (see setStripes): the worker computes the update on a private copy of the weights and then adds it to the shared weights one stripe at a time, while holding the stripe lock.
+ * Each worker has a copy of the optimizer of the trainer, so the optimizer state (momentum, etc.) is kept per worker.
+ */
+public class HogwildBackPropagationTrainer<N extends NeuralNetwork> extends BackPropagationTrainer<N> {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Replica trainers, created on the first training
+     */
+    private transient List<Worker> workers;
+
+    private transient volatile boolean stopped;
+    private transient volatile Throwable failure;
+
+    public HogwildBackPropagationTrainer(Properties properties) {
+	super(properties);
+    }
+
+    /**
+     * Checkpoints are not supported, because the workers learn the batches in arbitrary order
+     */
+    @Override
+    public void train(TrainingCheckpoint checkpoint) {
+	if (checkpoint != null) {
+	    throw new IllegalArgumentException("Hogwild training can't be resumed from a checkpoint");
+	}
+
+	train();
+    }
+
+    @Override
+    public TrainingCheckpoint checkpoint() {
+	throw new IllegalStateException("Hogwild training doesn't support checkpoints");
+    }
+
+    @Override
+    public void train() {
+	triggerEvent(new TrainingStartedEvent(this));
+
+	stopped = false;
+	failure = null;
+
+	if (getRandomInitializer() != null) {
+	    getRandomInitializer().initialize(getNeuralNetwork());
+	}
+
+	if (workers == null) {
+	    workers = createWorkers();
+	}
+
+	TrainingInputProvider provider = getTrainingInputProvider();
+	provider.reset();
+
+	int total = getEpochs() * provider.getInputSize(), batchSize = getTrainingBatchSize(), accumulationSteps = getGradientAccumulationSteps();
+	int[] next = new int[1];
+
+	List<Thread> threads = new ArrayList<>();
+	for (Worker w : workers) {
+	    threads.add(new Thread(() -> {
+		TrainingInputData input = w.trainer.getInput();
+		while (!stopped && failure == null) {
+		    int batch;
+		    synchronized (provider) {
+			if (next[0] * batchSize >= total) {
+			    break;
+			}
+
+			batch = next[0]++;
+			provider.populateNext(input);
+		    }
+
+		    w.learn(batch, accumulationSteps);
+
+		    synchronized (this) {
+			triggerEvent(new MiniBatchFinishedEvent(this, input, null, batch));
+
+			if (batch * batchSize % provider.getInputSize() == 0) {
+			    triggerEvent(new EpochFinishedEvent(this, input, null, batch * batchSize / provider.getInputSize()));
+			}
+		    }
+		}
+
+		w.flush();
+	    }, "hogwild-worker-" + threads.size()));
+	}
+
+	threads.forEach(t -> {
+	    t.setDaemon(true);
+	    t.setUncaughtExceptionHandler((th, e) -> failure = e);
+	    t.start();
+	});
+
+	for (Thread t : threads) {
+	    try {
+		t.join();
+	    } catch (InterruptedException e) {
+		stopped = true;
+		Thread.currentThread().interrupt();
+	    }
+	}
+
+	if (failure != null) {
+	    throw new IllegalStateException("Training failed", failure);
+	}
+
+	triggerEvent(new TrainingFinishedEvent(this));
+    }
+
+    @Override
+    public void stopTraining() {
+	super.stopTraining();
+	stopped = true;
+    }
+
+    @Override
+    public void setFrozen(Connections connections, boolean frozen) {
+	throw new IllegalArgumentException("Frozen connections are not supported by the hogwild trainer");
+    }
+
+    @Override
+    public void setOptimizer(Optimizer optimizer) {
+	super.setOptimizer(optimizer);
+	workers = null;
+    }
+
+    /**
+     * The weights of the connection are split into stripes. The update of each stripe is applied while holding the lock of the stripe
+     * @param stripes - number of stripes (0 for lock-free updates)
+     */
+    public void setStripes(Connections connection, int stripes) {
+	if (!(connection instanceof WeightsConnections) || !getNeuralNetwork().getConnections().contains(connection)) {
+	    throw new IllegalArgumentException("Only connections with weights within the network can be striped");
+	}
+
+	if (stripes < 0) {
+	    throw new IllegalArgumentException("Stripes must not be negative");
+	}
+
+	getStripes().put(connection, stripes);
+	workers = null;
+    }
+
+    public Map<Connections, Integer> getStripes() {
+	Map<Connections, Integer> stripes = properties.getParameter(Constants.STRIPES);
+	if (stripes == null) {
+	    properties.setParameter(Constants.STRIPES, stripes = new HashMap<>());
+	}
+
+	return stripes;
+    }
+
+    public int getWorkers() {
+	Integer workers = properties.getParameter(Constants.WORKERS);
+	return workers != null ? workers : Runtime.getRuntime().availableProcessors();
+    }
+
+    private List<Worker> createWorkers() {
+	NeuralNetworkImpl nn = (NeuralNetworkImpl) getNeuralNetwork();
+	List<WeightsConnections> connections = weightsConnections(nn);
+	Map<Connections, Integer> stripes = getStripes().entrySet().stream().filter(e -> e.getValue() > 0).collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+
+	ConnectionFactory cf = nn.getProperties().getParameter(Constants.CONNECTION_FACTORY);
+	if (stripes.size() > 0 && cf != null && cf.useSharedWeights()) {
+	    throw new IllegalArgumentException("Striping is not supported when the weights share memory");
+	}
+
+	// the weights of the striped connections are not shared
+	List<Object> shared = new ArrayList<>();
+	connections.stream().filter(c -> !stripes.containsKey(c)).forEach(c -> {
+	    shared.add(c.getWeights());
+	    shared.add(c.getWeights().getElements());
+	});
+
+	List<Stripes> striped = new ArrayList<>();
+	connections.stream().filter(stripes::containsKey).forEach(c -> striped.add(new Stripes(c.getWeights(), stripes.get(c))));
+
+	List<Worker> result = new ArrayList<>();
+	for (int i = 0; i < getWorkers(); i++) {
+	    NeuralNetworkImpl replica = Util.copy(nn, shared);
+	    BackPropagationTrainer<?> t = TrainerFactory.backPropagation(replica, null, null, null, null, 0f, 0f, 0f, 0f, properties.getParameter(Constants.DROPOUT_RATE), getTrainingBatchSize(), 1, 1);
+	    t.setOptimizer(getOptimizer().copy());
+
+	    List<WeightsConnections> rc = weightsConnections(replica);
+	    List<Tensor> privateWeights = new ArrayList<>();
+	    for (int j = 0; j < connections.size(); j++) {
+		if (stripes.containsKey(connections.get(j))) {
+		    privateWeights.add(rc.get(j).getWeights());
+		}
+	    }
+
+	    result.add(new Worker(t, striped, privateWeights));
+	}
+
+	return result;
+    }
+
+    private static List<WeightsConnections> weightsConnections(NeuralNetworkImpl nn) {
+	return nn.getConnections().stream().filter(c -> c instanceof WeightsConnections).map(c -> (WeightsConnections) c).collect(Collectors.toList());
+    }
+
+    /**
+     * Lock striping for the weights of one connection
+     */
+    private static class Stripes {
+
+	private final float[] weights;
+	private final int start;
+	private final int size;
+	private final Object[] locks;
+
+	private Stripes(Tensor weights, int stripes) {
+	    this.weights = weights.getElements();
+	    this.start = weights.getStartIndex();
+	    this.size = weights.getSize();
+	    this.locks = new Object[Math.min(stripes, size)];
+	    for (int i = 0; i < locks.length; i++) {
+		locks[i] = new Object();
+	    }
+	}
+
+	/**
+	 * copy of the shared weights (without locking) to the private weights and the snapshot
+	 */
+	private void read(Tensor target, float[] snapshot) {
+	    System.arraycopy(weights, start, snapshot, 0, size);
+	    System.arraycopy(snapshot, 0, target.getElements(), target.getStartIndex(), size);
+	}
+
+	/**
+	 * adds the difference between the updated private weights and the snapshot to the shared weights
+	 */
+	private void add(Tensor updated, float[] snapshot) {
+	    float[] u = updated.getElements();
+	    int us = updated.getStartIndex();
+	    for (int s = 0; s < locks.length; s++) {
+		int from = (int) ((long) size * s / locks.length), to = (int) ((long) size * (s + 1) / locks.length);
+		synchronized (locks[s]) {
+		    for (int i = from; i < to; i++) {
+			weights[start + i] += u[us + i] - snapshot[i];
+		    }
+		}
+	    }
+	}
+    }
+
+    private static class Worker {
+
+	private final BackPropagationTrainer<?> trainer;
+	private final List<Stripes> stripes;
+	private final List<Tensor> privateWeights;
+
+	/**
+	 * private weights before the update
+	 */
+	private final float[][] snapshots;
+
+	/**
+	 * mini batches since the last update
+	 */
+	private int accumulatedBatches;
+
+	private Worker(BackPropagationTrainer<?> trainer, List<Stripes> stripes, List<Tensor> privateWeights) {
+	    this.trainer = trainer;
+	    this.stripes = stripes;
+	    this.privateWeights = privateWeights;
+	    this.snapshots = new float[stripes.size()][];
+	    for (int i = 0; i < snapshots.length; i++) {
+		snapshots[i] = new float[stripes.get(i).size];
+	    }
+	}
+
+	private void learn(int batch, int accumulationSteps) {
+	    for (int i = 0; i < stripes.size(); i++) {
+		stripes.get(i).read(privateWeights.get(i), snapshots[i]);
+	    }
+
+	    trainer.learnInput(batch);
+
+	    if (++accumulatedBatches == accumulationSteps) {
+		update();
+	    }
+	}
+
+	/**
+	 * applies the remaining accumulated gradients
+	 */
+	private void flush() {
+	    if (accumulatedBatches > 0) {
+		for (int i = 0; i < stripes.size(); i++) {
+		    stripes.get(i).read(privateWeights.get(i), snapshots[i]);
+		}
+
+		update();
+	    }
+	}
+
+	private void update() {
+	    trainer.updateWeights();
+	    accumulatedBatches = 0;
+
+	    for (int i = 0; i < stripes.size(); i++) {
+		stripes.get(i).add(privateWeights.get(i), snapshots[i]);
+	    }
+	}
+    }
+}
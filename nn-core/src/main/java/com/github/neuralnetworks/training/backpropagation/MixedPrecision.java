@@ -0,0 +1,221 @@
+package com.github.neuralnetworks.training.backpropagation;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Map;
+
+import com.github.neuralnetworks.architecture.Connections;
+import com.github.neuralnetworks.architecture.NeuralNetwork;
+import com.github.neuralnetworks.calculation.LayerCalculatorBase;
+import com.github.neuralnetworks.events.PropagationEvent;
+import com.github.neuralnetworks.events.PropagationEventListener;
+import com.github.neuralnetworks.tensor.Precision;
+import com.github.neuralnetworks.tensor.Tensor;
+import com.github.neuralnetworks.training.optimizers.Optimizer;
+import com.github.neuralnetworks.training.optimizers.WeightArena;
+import com.github.neuralnetworks.training.optimizers.WeightArena.Segment;
+
+/**
+ * Mixed precision training for BackPropagationTrainer. The values are kept in float arrays, but are rounded to the reduced precision:
+ * the activations and the backpropagated errors of each layer when they are calculated, the gradients after each mini batch and the weights used in the calculations.
+ * The optimizer updates float32 master weights and the network weights are refreshed as rounded copies of them. The master weights are restored in the network at the end of the training.
+ * FLOAT16 uses dynamic loss scaling: the output error derivative is multiplied by the loss scale and the gradients are divided by it before the update.
+ * Updates with overflow (infinite or NaN gradients) are skipped and the scale is halved. The scale is doubled after growthInterval updates without overflow
+ */
+public class MixedPrecision implements PropagationEventListener, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Precision precision;
+    private final boolean dynamicScaling;
+    private final int growthInterval;
+    private float lossScale;
+    private int goodSteps;
+    private int skippedSteps;
+
+    /**
+     * float32 weights in the order of the arena
+     */
+    private transient float[] master;
+    private transient WeightArena arena;
+    private transient LayerCalculatorBase[] calculators;
+
+    /**
+     * Dynamic loss scaling for FLOAT16 (initial scale 2^16, growth every 2000 updates), no scaling for BFLOAT16 (it has the range of float)
+     */
+    public MixedPrecision(Precision precision) {
+	this(precision, precision == Precision.FLOAT16 ? 65536 : 1, precision == Precision.FLOAT16 ? 2000 : 0);
+    }
+
+    /**
+     * @param initialLossScale - the output error derivative is multiplied by it
+     * @param growthInterval - number of updates without overflow, after which the scale is doubled. 0 means static loss scale
+     */
+    public MixedPrecision(Precision precision, float initialLossScale, int growthInterval) {
+	super();
+
+	if (initialLossScale <= 0 || growthInterval < 0) {
+	    throw new IllegalArgumentException("The loss scale must be positive and the growth interval can't be negative");
+	}
+
+	this.precision = precision;
+	this.lossScale = initialLossScale;
+	this.growthInterval = growthInterval;
+	this.dynamicScaling = growthInterval > 0;
+    }
+
+    /**
+     * Keeps the current weights as master weights, rounds the network weights and starts rounding the layer values of the calculators. Does nothing if already started
+     */
+    public void start(Optimizer optimizer, NeuralNetwork nn, Map<Connections, Tensor> gradients, LayerCalculatorBase... calculators) {
+	if (master != null) {
+	    return;
+	}
+
+	arena = optimizer.getArena(nn, gradients);
+	master = new float[arena.getSize()];
+	for (Segment s : arena.getSegments()) {
+	    System.arraycopy(s.getWeights(), s.getWeightsStart(), master, s.getPosition(), s.getSize());
+	    round(s.getWeights(), s.getWeightsStart(), s.getSize());
+	}
+
+	this.calculators = calculators;
+	Arrays.stream(calculators).forEach(lc -> lc.addEventListener(this));
+    }
+
+    /**
+     * Restores the master weights in the network and stops rounding the layer values
+     */
+    public void finish() {
+	if (master == null) {
+	    return;
+	}
+
+	for (Segment s : arena.getSegments()) {
+	    System.arraycopy(master, s.getPosition(), s.getWeights(), s.getWeightsStart(), s.getSize());
+	}
+
+	Arrays.stream(calculators).forEach(lc -> lc.removeEventListener(this));
+	master = null;
+	arena = null;
+	calculators = null;
+    }
+
+    /**
+     * The values of each calculated layer are rounded
+     */
+    @Override
+    public void handleEvent(PropagationEvent event) {
+	Tensor t = event.getResults().get(event.getLayer());
+	if (t != null) {
+	    precision.round(t);
+	}
+    }
+
+    /**
+     * Multiplies the output error derivative by the loss scale and rounds it
+     */
+    public void scaleLoss(Tensor outputErrorDerivative) {
+	if (lossScale != 1) {
+	    float[] elements = outputErrorDerivative.getElements();
+	    float scale = lossScale;
+	    outputErrorDerivative.forEach(i -> elements[i] *= scale);
+	}
+
+	precision.round(outputErrorDerivative);
+    }
+
+    /**
+     * Rounds the (accumulated) gradients
+     */
+    public void roundGradients(Map<Connections, Tensor> gradients) {
+	gradients.values().forEach(precision::round);
+    }
+
+    /**
+     * Updates the master weights with the unscaled gradients and refreshes the rounded network weights. The gradients are cleared
+     * @return false if the update was skipped because of overflow
+     */
+    public boolean update(Optimizer optimizer) {
+	if (master == null) {
+	    throw new IllegalStateException("Mixed precision training is not started");
+	}
+
+	boolean finite = true;
+	for (Segment s : arena.getSegments()) {
+	    float[] g = s.getGradients();
+	    for (int i = s.getGradientsStart(); i < s.getGradientsStart() + s.getSize() && finite; i++) {
+		finite = !Float.isNaN(g[i]) && !Float.isInfinite(g[i]);
+	    }
+	}
+
+	if (!finite) {
+	    arena.getSegments().forEach(s -> Arrays.fill(s.getGradients(), s.getGradientsStart(), s.getGradientsStart() + s.getSize(), 0));
+	    skippedSteps++;
+	    goodSteps = 0;
+	    if (dynamicScaling) {
+		lossScale = Math.max(lossScale / 2, 1);
+	    }
+
+	    return false;
+	}
+
+	float unscale = 1 / lossScale;
+	for (Segment s : arena.getSegments()) {
+	    System.arraycopy(master, s.getPosition(), s.getWeights(), s.getWeightsStart(), s.getSize());
+	    if (unscale != 1) {
+		float[] g = s.getGradients();
+		for (int i = s.getGradientsStart(); i < s.getGradientsStart() + s.getSize(); i++) {
+		    g[i] *= unscale;
+		}
+	    }
+	}
+
+	optimizer.nextStep();
+	optimizer.update(arena, 0, arena.getSize());
+
+	for (Segment s : arena.getSegments()) {
+	    System.arraycopy(s.getWeights(), s.getWeightsStart(), master, s.getPosition(), s.getSize());
+	    round(s.getWeights(), s.getWeightsStart(), s.getSize());
+	}
+
+	if (dynamicScaling && ++goodSteps == growthInterval) {
+	    lossScale *= 2;
+	    goodSteps = 0;
+	}
+
+	return true;
+    }
+
+    private void round(float[] values, int start, int length) {
+	for (int i = start; i < start + length; i++) {
+	    values[i] = precision.round(values[i]);
+	}
+    }
+
+    public Precision getPrecision() {
+	return precision;
+    }
+
+    public float getLossScale() {
+	return lossScale;
+    }
+
+    public int getGrowthInterval() {
+	return growthInterval;
+    }
+
+    /**
+     * @return number of updates skipped because of overflow
+     */
+    public int getSkippedSteps() {
+	return skippedSteps;
+    }
+
+    /**
+     * @return whether the training is in progress (the network has the rounded weights)
+     */
+    public boolean isStarted() {
+	return master != null;
+    }
+}
@@ -0,0 +1,406 @@
+package com.github.neuralnetworks.training.events;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import com.github.neuralnetworks.events.TrainingEvent;
+import com.github.neuralnetworks.events.TrainingEventListener;
+import com.github.neuralnetworks.training.OneStepTrainer;
+import com.github.neuralnetworks.training.TrainingCheckpoint;
+
+/**
+ * Takes a checkpoint of a OneStepTrainer every interval mini batches and writes it in the directory.
+ * The checkpoint is copied in memory at the mini batch boundary and is written to disk in a background thread, so the training is not blocked.
+ * If the previous checkpoint is still being written the new one is postponed to the next mini batch.
+ * Only the last keep checkpoints are kept (and the full checkpoints, which they depend on).
+ * With incremental writing only every fullInterval-th checkpoint is full. The others contain only the blocks of the weights and the optimizer state, which differ from the last full checkpoint.
+ * Every training run has it's own file names (the run number is part of the name) and the first checkpoint of a run is always full.
+ * The training is resumed with trainer.train(CheckpointListener.latest(directory))
+ */
+public class CheckpointListener implements TrainingEventListener, AutoCloseable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final String PREFIX = "checkpoint-";
+    private static final String SUFFIX = ".bin";
+
+    private final File directory;
+    private final int interval;
+    private final int keep;
+
+    /**
+     * every fullInterval-th checkpoint is full (1 means that all the checkpoints are full)
+     */
+    private int fullInterval = 1;
+
+    /**
+     * number of floats in a block of the incremental checkpoints
+     */
+    private int blockSize = 4096;
+
+    private transient ExecutorService executor;
+    private transient Future<?> pending;
+    private transient volatile Throwable failure;
+
+    /**
+     * the last full checkpoint, which is the base of the incremental ones (used only by the writer thread)
+     */
+    private transient TrainingCheckpoint base;
+    private transient String baseName;
+
+    /**
+     * number of the current training run (newer runs have larger numbers)
+     */
+    private int run = -1;
+    private int batches;
+    private volatile int written;
+    private int postponed;
+
+    /**
+     * @param directory - where the checkpoints are written
+     * @param interval - number of mini batches between the checkpoints
+     * @param keep - number of kept checkpoints
+     */
+    public CheckpointListener(File directory, int interval, int keep) {
+	super();
+
+	if (interval < 1 || keep < 1) {
+	    throw new IllegalArgumentException("interval and keep must be positive");
+	}
+
+	if (!directory.isDirectory() && !directory.mkdirs()) {
+	    throw new IllegalArgumentException("Can't create directory " + directory);
+	}
+
+	this.directory = directory;
+	this.interval = interval;
+	this.keep = keep;
+    }
+
+    @Override
+    public void handleEvent(TrainingEvent event) {
+	if (failure != null) {
+	    Throwable t = failure;
+	    failure = null;
+	    throw new IllegalStateException("Writing checkpoint failed", t);
+	}
+
+	if (event instanceof MiniBatchFinishedEvent && event.getSource() instanceof OneStepTrainer) {
+	    OneStepTrainer<?> t = (OneStepTrainer<?>) event.getSource();
+	    if (++batches >= interval && !t.hasAccumulatedGradients()) {
+		if (pending != null && !pending.isDone()) {
+		    postponed++;
+		} else {
+		    TrainingCheckpoint c = t.checkpoint();
+		    String name = String.format("%s%06d-%010d%s", PREFIX, run(), c.getBatch(), SUFFIX);
+		    batches = 0;
+		    pending = executor().submit(() -> {
+			try {
+			    write(c, name);
+			} catch (Throwable e) {
+			    failure = e;
+			}
+		    });
+		}
+	    }
+	} else if (event instanceof TrainingStartedEvent) {
+	    reset();
+	} else if (event instanceof TrainingFinishedEvent) {
+	    close();
+	}
+    }
+
+    /**
+     * A new training run starts - the checkpoints of the previous runs are neither overwritten nor used as base
+     */
+    private void reset() {
+	flush();
+	base = null;
+	baseName = null;
+	batches = 0;
+	written = 0;
+	postponed = 0;
+	run = -1;
+	run();
+    }
+
+    /**
+     * @return the number of the current run, which follows the runs of the checkpoints in the directory
+     */
+    private int run() {
+	if (run < 0) {
+	    run = 0;
+	    for (File f : checkpoints(directory)) {
+		String n = f.getName().substring(PREFIX.length());
+		int i = n.indexOf('-');
+		if (i > 0) {
+		    try {
+			run = Math.max(run, Integer.parseInt(n.substring(0, i)) + 1);
+		    } catch (NumberFormatException e) {
+			// not written by this listener
+		    }
+		}
+	    }
+	}
+
+	return run;
+    }
+
+    /**
+     * Waits for the checkpoint, which is being written
+     */
+    public void flush() {
+	if (pending != null) {
+	    try {
+		pending.get();
+	    } catch (Exception e) {
+		throw new IllegalStateException(e);
+	    }
+
+	    pending = null;
+	}
+
+	if (failure != null) {
+	    Throwable t = failure;
+	    failure = null;
+	    throw new IllegalStateException("Writing checkpoint failed", t);
+	}
+    }
+
+    @Override
+    public void close() {
+	try {
+	    flush();
+	} finally {
+	    if (executor != null) {
+		executor.shutdown();
+		try {
+		    executor.awaitTermination(1, TimeUnit.MINUTES);
+		} catch (InterruptedException e) {
+		    Thread.currentThread().interrupt();
+		}
+
+		executor = null;
+	    }
+	}
+    }
+
+    private ExecutorService executor() {
+	if (executor == null) {
+	    executor = Executors.newSingleThreadExecutor(r -> {
+		Thread t = new Thread(r, "training-checkpoint");
+		t.setDaemon(true);
+		return t;
+	    });
+	}
+
+	return executor;
+    }
+
+    /**
+     * Writes the checkpoint to a temporary file, which is renamed when complete, and removes the old checkpoints
+     */
+    private void write(TrainingCheckpoint c, String name) throws IOException {
+	boolean full = base == null || written % fullInterval == 0;
+
+	File tmp = new File(directory, name + ".tmp");
+	try (ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp.toPath())))) {
+	    out.writeObject(full ? null : baseName);
+	    out.writeInt(blockSize);
+
+	    float[][] weights = c.getWeights(), state = c.getOptimizerState();
+	    c.setWeights(null);
+	    c.setOptimizerState(c.getOptimizerStep(), null);
+	    out.writeObject(c);
+	    writeArrays(out, weights, full ? null : base.getWeights());
+	    writeArrays(out, state, full ? null : base.getOptimizerState());
+	    c.setWeights(weights);
+	    c.setOptimizerState(c.getOptimizerStep(), state);
+	}
+
+	Files.move(tmp.toPath(), new File(directory, name).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+	if (full) {
+	    base = c;
+	    baseName = name;
+	}
+
+	written++;
+	removeOld();
+    }
+
+    /**
+     * The blocks, which are equal to the ones of the base, are not written
+     */
+    private void writeArrays(ObjectOutputStream out, float[][] arrays, float[][] base) throws IOException {
+	out.writeInt(arrays != null ? arrays.length : -1);
+	if (arrays != null) {
+	    for (int i = 0; i < arrays.length; i++) {
+		float[] a = arrays[i], b = base != null && i < base.length ? base[i] : null;
+		out.writeInt(a != null ? a.length : -1);
+		for (int start = 0; a != null && start < a.length; start += blockSize) {
+		    int end = Math.min(start + blockSize, a.length);
+		    boolean changed = b == null || b.length != a.length || !Arrays.equals(Arrays.copyOfRange(a, start, end), Arrays.copyOfRange(b, start, end));
+		    out.writeBoolean(changed);
+		    if (changed) {
+			out.writeObject(Arrays.copyOfRange(a, start, end));
+		    }
+		}
+	    }
+	}
+    }
+
+    private static float[][] readArrays(ObjectInputStream in, int blockSize, float[][] base) throws IOException, ClassNotFoundException {
+	int length = in.readInt();
+	if (length < 0) {
+	    return null;
+	}
+
+	float[][] result = new float[length][];
+	for (int i = 0; i < length; i++) {
+	    int l = in.readInt();
+	    if (l >= 0) {
+		result[i] = new float[l];
+		for (int start = 0; start < l; start += blockSize) {
+		    if (in.readBoolean()) {
+			float[] block = (float[]) in.readObject();
+			System.arraycopy(block, 0, result[i], start, block.length);
+		    } else {
+			System.arraycopy(base[i], start, result[i], start, Math.min(blockSize, l - start));
+		    }
+		}
+	    }
+	}
+
+	return result;
+    }
+
+    /**
+     * Removes all but the last keep checkpoints (and their bases)
+     */
+    private void removeOld() throws IOException {
+	File[] files = checkpoints(directory);
+	Set<String> needed = new HashSet<>();
+	for (int i = Math.max(files.length - keep, 0); i < files.length; i++) {
+	    needed.add(files[i].getName());
+	    String b = baseName(files[i]);
+	    if (b != null) {
+		needed.add(b);
+	    }
+	}
+
+	for (File f : files) {
+	    if (!needed.contains(f.getName())) {
+		Files.deleteIfExists(f.toPath());
+	    }
+	}
+    }
+
+    private static String baseName(File file) throws IOException {
+	try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(Files.newInputStream(file.toPath())))) {
+	    return (String) in.readObject();
+	} catch (ClassNotFoundException e) {
+	    throw new IOException(e);
+	}
+    }
+
+    /**
+     * @return the checkpoint files in the directory from the oldest to the newest
+     */
+    public static File[] checkpoints(File directory) {
+	File[] result = directory.listFiles((d, n) -> n.startsWith(PREFIX) && n.endsWith(SUFFIX));
+	if (result == null) {
+	    return new File[0];
+	}
+
+	Arrays.sort(result, (a, b) -> a.getName().compareTo(b.getName()));
+	return result;
+    }
+
+    /**
+     * @return the newest checkpoint in the directory or null if there are none
+     */
+    public static TrainingCheckpoint latest(File directory) {
+	File[] files = checkpoints(directory);
+	return files.length > 0 ? load(files[files.length - 1]) : null;
+    }
+
+    /**
+     * Reads a checkpoint (the missing blocks of the incremental checkpoints are read from their base)
+     */
+    public static TrainingCheckpoint load(File file) {
+	try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(Files.newInputStream(file.toPath())))) {
+	    String baseName = (String) in.readObject();
+	    int blockSize = in.readInt();
+	    TrainingCheckpoint base = baseName != null ? load(new File(file.getParentFile(), baseName)) : null;
+
+	    TrainingCheckpoint result = (TrainingCheckpoint) in.readObject();
+	    result.setWeights(readArrays(in, blockSize, base != null ? base.getWeights() : null));
+	    result.setOptimizerState(result.getOptimizerStep(), readArrays(in, blockSize, base != null ? base.getOptimizerState() : null));
+	    return result;
+	} catch (IOException | ClassNotFoundException e) {
+	    throw new IllegalArgumentException("Can't read checkpoint " + file, e);
+	}
+    }
+
+    public File getDirectory() {
+	return directory;
+    }
+
+    public int getInterval() {
+	return interval;
+    }
+
+    public int getKeep() {
+	return keep;
+    }
+
+    public int getFullInterval() {
+	return fullInterval;
+    }
+
+    public int getBlockSize() {
+	return blockSize;
+    }
+
+    /**
+     * Enables incremental checkpoints
+     * @param fullInterval - every fullInterval-th checkpoint is full
+     * @param blockSize - number of floats in a block
+     */
+    public void setIncremental(int fullInterval, int blockSize) {
+	if (fullInterval < 1 || blockSize < 1) {
+	    throw new IllegalArgumentException("fullInterval and blockSize must be positive");
+	}
+
+	this.fullInterval = fullInterval;
+	this.blockSize = blockSize;
+    }
+
+    /**
+     * @return number of written checkpoints in the current run
+     */
+    public int getWritten() {
+	return written;
+    }
+
+    /**
+     * @return number of times a checkpoint was postponed, because the previous one was still being written
+     */
+    public int getPostponed() {
+	return postponed;
+    }
+}
@@ -1,13 +1,23 @@
 package com.github.neuralnetworks.training.events;
 
+import java.util.Collections;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
+import com.github.neuralnetworks.architecture.Connections;
 import com.github.neuralnetworks.architecture.Layer;
 import com.github.neuralnetworks.architecture.NeuralNetwork;
+import com.github.neuralnetworks.architecture.WeightsConnections;
 import com.github.neuralnetworks.calculation.OutputError;
 import com.github.neuralnetworks.calculation.memory.ValuesProvider;
 import com.github.neuralnetworks.events.TrainingEvent;
 import com.github.neuralnetworks.events.TrainingEventListener;
+import com.github.neuralnetworks.tensor.Tensor;
 import com.github.neuralnetworks.tensor.TensorFactory;
 import com.github.neuralnetworks.training.OneStepTrainer;
 import com.github.neuralnetworks.training.TrainingInputData;
@@ -15,9 +25,13 @@ import com.github.neuralnetworks.training.TrainingInputDataImpl;
 import com.github.neuralnetworks.training.TrainingInputProvider;
 import com.github.neuralnetworks.util.Environment;
 import com.github.neuralnetworks.util.UniqueList;
+import com.github.neuralnetworks.util.Util;
 
 /**
  * Listener for early stopping of the training
+ * In asynchronous mode the weights are copied to a snapshot of the network (created once) and the snapshot is validated in a background thread, while the training continues.
+ * The stop decision is applied when the result arrives, unless it is more than maxStaleness mini batches old. A validation is skipped if the previous one is still running.
+ * The validation can be limited to the first validationSamples samples of the input provider - the time of each validation is reported together with the estimated time for all the samples
  */
 public class EarlyStoppingListener implements TrainingEventListener {
 
@@ -40,6 +54,33 @@ public class EarlyStoppingListener implements TrainingEventListener {
 
     private boolean isTraining;
 
+    /**
+     * whether the validation is done in a background thread
+     */
+    private boolean asynchronous;
+
+    /**
+     * results of asynchronous validations, which are more than maxStaleness mini batches old when they arrive, are discarded
+     */
+    private int maxStaleness = Integer.MAX_VALUE;
+
+    /**
+     * number of validated samples (0 means all)
+     */
+    private int validationSamples;
+
+    private transient NeuralNetwork snapshot;
+    private transient ExecutorService executor;
+    private transient Future<Float> pending;
+    private transient int pendingBatch;
+
+    private float lastError = Float.NaN;
+    private volatile long lastValidationTime;
+    private volatile int lastValidatedSamples;
+    private volatile int validations;
+    private int skippedValidations;
+    private int discardedResults;
+
     public EarlyStoppingListener(TrainingInputProvider inputProvider, int validationFrequency, float acceptanceError) {
 	super();
 	this.validationFrequency = validationFrequency;
@@ -53,44 +94,226 @@ public class EarlyStoppingListener implements TrainingEventListener {
 	    isTraining = true;
 	} else if (event instanceof TrainingFinishedEvent) {
 	    isTraining = false;
+	    finishAsynchronous();
 	} else if (event instanceof MiniBatchFinishedEvent && isTraining) {
 	    MiniBatchFinishedEvent mbe = (MiniBatchFinishedEvent) event;
+	    OneStepTrainer<?> t = (OneStepTrainer<?>) event.getSource();
+	    if (asynchronous && pending != null && pending.isDone()) {
+		applyResult(t, mbe.getBatchCount());
+	    }
+
 	    if (mbe.getBatchCount() % validationFrequency == 0) {
-		OneStepTrainer<?> t = (OneStepTrainer<?>) event.getSource();
 		NeuralNetwork n = t.getNeuralNetwork();
 
 		if (n.getLayerCalculator() != null) {
-		    OutputError outputError = t.getOutputError();
-		    outputError.reset();
-		    inputProvider.reset();
+		    if (!asynchronous) {
+			float e = validate(n, t.getOutputError(), mbe.getResults());
+			stop(t, e, mbe.getBatchCount());
+		    } else if (pending != null) {
+			skippedValidations++;
+		    } else {
+			if (snapshot == null) {
+			    snapshot = Util.copy(n, Collections.emptyList());
+			}
 
-		    ValuesProvider vp = mbe.getResults();
-		    if (vp == null) {
-			vp = TensorFactory.tensorProvider(n, 1, Environment.getInstance().getUseDataSharedMemory());
-		    }
-		    if (vp.get(outputError) == null) {
-			vp.add(outputError, vp.get(n.getOutputLayer()).getDimensions());
+			copyWeights(n, snapshot);
+			OutputError oe = Util.copy(t.getOutputError(), Collections.emptyList());
+			pendingBatch = mbe.getBatchCount();
+			pending = executor().submit(() -> validate(snapshot, oe, null));
 		    }
-		    TrainingInputData input = new TrainingInputDataImpl(vp.get(n.getInputLayer()), vp.get(outputError));
+		}
+	    }
+	}
+    }
 
-		    Set<Layer> calculatedLayers = new UniqueList<>();
-		    for (int i = 0; i < inputProvider.getInputSize(); i++) {
-			inputProvider.populateNext(input);
-			calculatedLayers.clear();
-			calculatedLayers.add(n.getInputLayer());
+    /**
+     * @return the output error of the network on the validation data
+     */
+    private float validate(NeuralNetwork n, OutputError outputError, ValuesProvider results) {
+	long start = System.nanoTime();
+	outputError.reset();
+	inputProvider.reset();
 
-			n.getLayerCalculator().calculate(n, n.getOutputLayer(), calculatedLayers, vp);
+	ValuesProvider vp = results;
+	if (vp == null) {
+	    vp = TensorFactory.tensorProvider(n, 1, Environment.getInstance().getUseDataSharedMemory());
+	}
+	if (vp.get(outputError) == null) {
+	    vp.add(outputError, vp.get(n.getOutputLayer()).getDimensions());
+	}
+	TrainingInputData input = new TrainingInputDataImpl(vp.get(n.getInputLayer()), vp.get(outputError));
 
-			outputError.addItem(vp.get(n.getOutputLayer()), input.getTarget());
-		    }
+	int samples = validationSamples > 0 ? Math.min(validationSamples, inputProvider.getInputSize()) : inputProvider.getInputSize();
+	Set<Layer> calculatedLayers = new UniqueList<>();
+	for (int i = 0; i < samples; i++) {
+	    inputProvider.populateNext(input);
+	    calculatedLayers.clear();
+	    calculatedLayers.add(n.getInputLayer());
 
-		    float e = outputError.getTotalNetworkError();
-		    if (e <= acceptanceError) {
-			System.out.println("Stopping at error " + e + " (" + (e * 100) + "%) for " + mbe.getBatchCount() + " minibatches");
-			t.stopTraining();
-		    }
+	    n.getLayerCalculator().calculate(n, n.getOutputLayer(), calculatedLayers, vp);
+
+	    outputError.addItem(vp.get(n.getOutputLayer()), input.getTarget());
+	}
+
+	lastValidationTime = System.nanoTime() - start;
+	lastValidatedSamples = samples;
+	validations++;
+
+	return outputError.getTotalNetworkError();
+    }
+
+    private void stop(OneStepTrainer<?> t, float e, int batchCount) {
+	lastError = e;
+	if (e <= acceptanceError) {
+	    System.out.println("Stopping at error " + e + " (" + (e * 100) + "%) for " + batchCount + " minibatches; validation " + lastValidationTime / 1000000 + "ms for " + lastValidatedSamples + " samples (" + getEstimatedFullValidationTime() / 1000000 + "ms for all)");
+	    t.stopTraining();
+	}
+    }
+
+    /**
+     * Applies the result of the finished asynchronous validation, unless it's stale
+     */
+    private void applyResult(OneStepTrainer<?> t, int batchCount) {
+	float e = result();
+	if (batchCount - pendingBatch > maxStaleness) {
+	    discardedResults++;
+	} else {
+	    stop(t, e, pendingBatch);
+	}
+    }
+
+    private float result() {
+	try {
+	    return pending.get();
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	    throw new IllegalStateException(e);
+	} catch (ExecutionException e) {
+	    throw new IllegalStateException("Validation failed", e.getCause());
+	} finally {
+	    pending = null;
+	}
+    }
+
+    /**
+     * The validation, which is still running at the end of the training, is discarded
+     */
+    private void finishAsynchronous() {
+	if (pending != null) {
+	    result();
+	    discardedResults++;
+	}
+
+	if (executor != null) {
+	    executor.shutdown();
+	    try {
+		executor.awaitTermination(1, TimeUnit.MINUTES);
+	    } catch (InterruptedException e) {
+		Thread.currentThread().interrupt();
+	    }
+
+	    executor = null;
+	}
+    }
+
+    private ExecutorService executor() {
+	if (executor == null) {
+	    executor = Executors.newSingleThreadExecutor(r -> {
+		Thread t = new Thread(r, "early-stopping-validation");
+		t.setDaemon(true);
+		return t;
+	    });
+	}
+
+	return executor;
+    }
+
+    private static void copyWeights(NeuralNetwork from, NeuralNetwork to) {
+	List<Connections> fc = from.getConnections(), tc = to.getConnections();
+	for (int i = 0; i < fc.size(); i++) {
+	    if (fc.get(i) instanceof WeightsConnections) {
+		Tensor src = ((WeightsConnections) fc.get(i)).getWeights(), dst = ((WeightsConnections) tc.get(i)).getWeights();
+		if (src.getEndIndex() - src.getStartIndex() + 1 == src.getSize() && dst.getEndIndex() - dst.getStartIndex() + 1 == dst.getSize()) {
+		    System.arraycopy(src.getElements(), src.getStartIndex(), dst.getElements(), dst.getStartIndex(), src.getSize());
+		} else {
+		    TensorFactory.copy(src, dst);
 		}
 	    }
 	}
     }
+
+    public boolean isAsynchronous() {
+	return asynchronous;
+    }
+
+    public void setAsynchronous(boolean asynchronous) {
+	this.asynchronous = asynchronous;
+    }
+
+    public int getMaxStaleness() {
+	return maxStaleness;
+    }
+
+    public void setMaxStaleness(int maxStaleness) {
+	if (maxStaleness < 0) {
+	    throw new IllegalArgumentException("maxStaleness can't be negative");
+	}
+
+	this.maxStaleness = maxStaleness;
+    }
+
+    public int getValidationSamples() {
+	return validationSamples;
+    }
+
+    public void setValidationSamples(int validationSamples) {
+	if (validationSamples < 0) {
+	    throw new IllegalArgumentException("validationSamples can't be negative");
+	}
+
+	this.validationSamples = validationSamples;
+    }
+
+    /**
+     * @return the error of the last applied validation
+     */
+    public float getLastError() {
+	return lastError;
+    }
+
+    /**
+     * @return duration of the last validation in nanoseconds
+     */
+    public long getLastValidationTime() {
+	return lastValidationTime;
+    }
+
+    public int getLastValidatedSamples() {
+	return lastValidatedSamples;
+    }
+
+    /**
+     * @return the time of the last validation extrapolated to all the samples of the input provider in nanoseconds
+     */
+    public long getEstimatedFullValidationTime() {
+	return lastValidatedSamples > 0 ? lastValidationTime * inputProvider.getInputSize() / lastValidatedSamples : 0;
+    }
+
+    public int getValidations() {
+	return validations;
+    }
+
+    /**
+     * @return number of asynchronous validations, which were skipped, because the previous one was still running
+     */
+    public int getSkippedValidations() {
+	return skippedValidations;
+    }
+
+    /**
+     * @return number of asynchronous results, which were discarded as stale
+     */
+    public int getDiscardedResults() {
+	return discardedResults;
+    }
 }
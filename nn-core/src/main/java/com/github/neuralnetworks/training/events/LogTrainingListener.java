@@ -4,6 +4,7 @@ import com.github.neuralnetworks.calculation.OutputError;
 import com.github.neuralnetworks.events.TrainingEvent;
 import com.github.neuralnetworks.events.TrainingEventListener;
 import com.github.neuralnetworks.tensor.Matrix;
+import com.github.neuralnetworks.training.OneStepTrainer;
 import com.github.neuralnetworks.training.Trainer;
 
 /**
@@ -66,6 +67,10 @@ public class LogTrainingListener implements TrainingEventListener {
 	    StringBuilder sb = new StringBuilder();
 	    sb.append(((finishTime - startTime) / 1000f) + " s  total time" + s);
 	    sb.append((miniBatchTotalTime / (miniBatches * 1000f)) + " s  per minibatch of " + miniBatches + " batches" + s);
+	    if (event instanceof TrainingFinishedEvent && event.getSource() instanceof OneStepTrainer) {
+		OneStepTrainer<?> t = (OneStepTrainer<?>) event.getSource();
+		sb.append((t.getInputTime() / 1000000000f) + " s  waiting for input, " + (t.getComputeTime() / 1000000000f) + " s  computing" + s);
+	    }
 	    if (event instanceof TestingFinishedEvent) {
 		Trainer<?> t = (Trainer<?>) event.getSource();
 		OutputError oe = t.getOutputError();
@@ -0,0 +1,42 @@
+package com.github.neuralnetworks.training.optimizers;
+
+/**
+ * Adagrad - the learning rate of each weight is divided by the root of the sum of its squared gradients
+ */
+public class AdagradOptimizer extends Optimizer {
+
+    private static final long serialVersionUID = 1L;
+
+    protected final float epsilon;
+
+    public AdagradOptimizer(float learningRate, float l1weightDecay, float l2weightDecay) {
+	this(learningRate, l1weightDecay, l2weightDecay, 1e-8f);
+    }
+
+    public AdagradOptimizer(float learningRate, float l1weightDecay, float l2weightDecay, float epsilon) {
+	super(learningRate, l1weightDecay, l2weightDecay);
+	this.epsilon = epsilon;
+    }
+
+    @Override
+    protected void update(float[] weights, int weightsStart, float[] gradients, int gradientsStart, float[][] state, int stateStart, int length) {
+	float[] squares = state[0];
+	float lr = learningRate, eps = epsilon, g = 0, s = 0, weight = 0;
+	for (int i = 0; i < length; i++) {
+	    g = gradients[gradientsStart + i];
+	    s = squares[stateStart + i] + g * g;
+	    squares[stateStart + i] = s;
+	    weight = weights[weightsStart + i];
+	    weights[weightsStart + i] = weight + lr * g / ((float) Math.sqrt(s) + eps) + decay(weight);
+	}
+    }
+
+    @Override
+    protected int getStateCount() {
+	return 1;
+    }
+
+    public float getEpsilon() {
+	return epsilon;
+    }
+}
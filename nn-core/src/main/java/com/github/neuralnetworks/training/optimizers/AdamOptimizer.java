@@ -0,0 +1,64 @@
+package com.github.neuralnetworks.training.optimizers;
+
+/**
+ * Adam - moving averages of the gradients and the squared gradients with bias correction
+ */
+public class AdamOptimizer extends Optimizer {
+
+    private static final long serialVersionUID = 1L;
+
+    protected final float beta1;
+    protected final float beta2;
+    protected final float epsilon;
+
+    public AdamOptimizer(float learningRate, float l1weightDecay, float l2weightDecay) {
+	this(learningRate, l1weightDecay, l2weightDecay, 0.9f, 0.999f, 1e-8f);
+    }
+
+    public AdamOptimizer(float learningRate, float l1weightDecay, float l2weightDecay, float beta1, float beta2, float epsilon) {
+	super(learningRate, l1weightDecay, l2weightDecay);
+	if (beta1 < 0 || beta1 >= 1 || beta2 < 0 || beta2 >= 1) {
+	    throw new IllegalArgumentException("beta1 and beta2 must be in [0, 1)");
+	}
+
+	this.beta1 = beta1;
+	this.beta2 = beta2;
+	this.epsilon = epsilon;
+    }
+
+    @Override
+    protected void update(float[] weights, int weightsStart, float[] gradients, int gradientsStart, float[][] state, int stateStart, int length) {
+	float[] m = state[0], v = state[1];
+	float b1 = beta1, b2 = beta2, eps = epsilon, g = 0, mi = 0, vi = 0, weight = 0;
+
+	// bias correction is folded into the step size
+	float lr = (float) (learningRate * Math.sqrt(1 - Math.pow(b2, step)) / (1 - Math.pow(b1, step)));
+
+	for (int i = 0; i < length; i++) {
+	    g = gradients[gradientsStart + i];
+	    mi = b1 * m[stateStart + i] + (1 - b1) * g;
+	    vi = b2 * v[stateStart + i] + (1 - b2) * g * g;
+	    m[stateStart + i] = mi;
+	    v[stateStart + i] = vi;
+	    weight = weights[weightsStart + i];
+	    weights[weightsStart + i] = weight + lr * mi / ((float) Math.sqrt(vi) + eps) + decay(weight);
+	}
+    }
+
+    @Override
+    protected int getStateCount() {
+	return 2;
+    }
+
+    public float getBeta1() {
+	return beta1;
+    }
+
+    public float getBeta2() {
+	return beta2;
+    }
+
+    public float getEpsilon() {
+	return epsilon;
+    }
+}
@@ -0,0 +1,38 @@
+package com.github.neuralnetworks.training.optimizers;
+
+/**
+ * Stochastic gradient descent with momentum (plain SGD if the momentum is 0)
+ * update = learningRate * gradient + momentum * previousUpdate + decay
+ */
+public class MomentumOptimizer extends Optimizer {
+
+    private static final long serialVersionUID = 1L;
+
+    protected final float momentum;
+
+    public MomentumOptimizer(float learningRate, float momentum, float l1weightDecay, float l2weightDecay) {
+	super(learningRate, l1weightDecay, l2weightDecay);
+	this.momentum = momentum;
+    }
+
+    @Override
+    protected void update(float[] weights, int weightsStart, float[] gradients, int gradientsStart, float[][] state, int stateStart, int length) {
+	float[] velocity = state[0];
+	float lr = learningRate, m = momentum, l1 = l1weightDecay, l2 = l2weightDecay, weight = 0, update = 0;
+	for (int i = 0; i < length; i++) {
+	    weight = weights[weightsStart + i];
+	    update = lr * gradients[gradientsStart + i] + m * velocity[stateStart + i] - l1 * Math.abs(weight) - l2 * weight * weight / 2;
+	    weights[weightsStart + i] = weight + update;
+	    velocity[stateStart + i] = update;
+	}
+    }
+
+    @Override
+    protected int getStateCount() {
+	return 1;
+    }
+
+    public float getMomentum() {
+	return momentum;
+    }
+}
@@ -0,0 +1,40 @@
+package com.github.neuralnetworks.training.optimizers;
+
+/**
+ * Nesterov accelerated gradient (in the form, which uses the gradient at the current weights)
+ * velocity = momentum * velocity + learningRate * gradient
+ * update = momentum * velocity + learningRate * gradient + decay
+ */
+public class NesterovOptimizer extends Optimizer {
+
+    private static final long serialVersionUID = 1L;
+
+    protected final float momentum;
+
+    public NesterovOptimizer(float learningRate, float momentum, float l1weightDecay, float l2weightDecay) {
+	super(learningRate, l1weightDecay, l2weightDecay);
+	this.momentum = momentum;
+    }
+
+    @Override
+    protected void update(float[] weights, int weightsStart, float[] gradients, int gradientsStart, float[][] state, int stateStart, int length) {
+	float[] velocity = state[0];
+	float lr = learningRate, m = momentum, g = 0, v = 0, weight = 0;
+	for (int i = 0; i < length; i++) {
+	    g = lr * gradients[gradientsStart + i];
+	    v = m * velocity[stateStart + i] + g;
+	    velocity[stateStart + i] = v;
+	    weight = weights[weightsStart + i];
+	    weights[weightsStart + i] = weight + m * v + g + decay(weight);
+	}
+    }
+
+    @Override
+    protected int getStateCount() {
+	return 1;
+    }
+
+    public float getMomentum() {
+	return momentum;
+    }
+}
@@ -0,0 +1,167 @@
+package com.github.neuralnetworks.training.optimizers;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Map;
+
+import com.github.neuralnetworks.architecture.Connections;
+import com.github.neuralnetworks.architecture.NeuralNetwork;
+import com.github.neuralnetworks.tensor.Tensor;
+import com.github.neuralnetworks.training.optimizers.WeightArena.Segment;
+
+/**
+ * Base class for the weight update rules
+ * The trainers accumulate the gradients (summed over the mini batch) in dedicated tensors and the optimizer applies them to all the weights of the network in a single pass over the WeightArena. The applied gradients are cleared.
+ * The gradients point in the direction of the update (they are added to the weights). Weight decay is -l1weightDecay * |w| - l2weightDecay * w * w / 2 for each weight.
+ * The optimizer state (velocity, squared gradients, etc.) is kept per arena, so each trainer should have its own optimizer (see copy())
+ */
+public abstract class Optimizer implements Serializable, Cloneable {
+
+    private static final long serialVersionUID = 1L;
+
+    protected final float learningRate;
+    protected final float l1weightDecay;
+    protected final float l2weightDecay;
+
+    /**
+     * number of updates so far
+     */
+    protected int step;
+
+    private transient WeightArena arena;
+
+    public Optimizer(float learningRate, float l1weightDecay, float l2weightDecay) {
+	super();
+	this.learningRate = learningRate;
+	this.l1weightDecay = l1weightDecay;
+	this.l2weightDecay = l2weightDecay;
+    }
+
+    /**
+     * Updates all the weights of the network, which have gradients
+     */
+    public void update(NeuralNetwork neuralNetwork, Map<Connections, Tensor> gradients) {
+	WeightArena a = getArena(neuralNetwork, gradients);
+	nextStep();
+	update(a, 0, a.getSize());
+    }
+
+    /**
+     * @return the arena for the network and gradients. The state of the optimizer is allocated here, so that the ranges of the arena can be updated concurrently
+     */
+    public WeightArena getArena(NeuralNetwork neuralNetwork, Map<Connections, Tensor> gradients) {
+	if (arena == null || !arena.matches(neuralNetwork, gradients)) {
+	    arena = new WeightArena(neuralNetwork, gradients);
+	    arena.getSegments().forEach(s -> s.getState(getStateCount()));
+	}
+
+	return arena;
+    }
+
+    /**
+     * Must be called once before each update of the arena
+     */
+    public void nextStep() {
+	step++;
+    }
+
+    /**
+     * Updates the weights in the range [from, to) of the arena and clears the gradients. Different ranges can be updated in parallel
+     */
+    public void update(WeightArena arena, int from, int to) {
+	for (Segment s : arena.getSegments()) {
+	    int start = Math.max(from, s.getPosition()) - s.getPosition(), end = Math.min(to, s.getPosition() + s.getSize()) - s.getPosition();
+	    if (start < end) {
+		update(s.getWeights(), s.getWeightsStart() + start, s.getGradients(), s.getGradientsStart() + start, s.getState(getStateCount()), start, end - start);
+		Arrays.fill(s.getGradients(), s.getGradientsStart() + start, s.getGradientsStart() + end, 0);
+	    }
+	}
+    }
+
+    /**
+     * Updates a contiguous range of weights
+     * @param state - state arrays of the segment, stateStart is the position of the first weight within them
+     */
+    protected abstract void update(float[] weights, int weightsStart, float[] gradients, int gradientsStart, float[][] state, int stateStart, int length);
+
+    /**
+     * @return number of state variables per weight
+     */
+    protected abstract int getStateCount();
+
+    /**
+     * @return the weight decay for the weight
+     */
+    protected float decay(float weight) {
+	return -l1weightDecay * Math.abs(weight) - l2weightDecay * weight * weight / 2;
+    }
+
+    /**
+     * @return copy of the state of the last arena (one array per state variable in the order of the arena) or null if there is no arena yet
+     */
+    public float[][] getState() {
+	if (arena == null) {
+	    return null;
+	}
+
+	float[][] result = new float[getStateCount()][arena.getSize()];
+	for (Segment s : arena.getSegments()) {
+	    float[][] state = s.getState(getStateCount());
+	    for (int i = 0; i < result.length; i++) {
+		System.arraycopy(state[i], 0, result[i], s.getPosition(), s.getSize());
+	    }
+	}
+
+	return result;
+    }
+
+    /**
+     * Restores the state (see getState()) into the arena of the network and gradients
+     * @param step - number of updates so far
+     */
+    public void setState(NeuralNetwork neuralNetwork, Map<Connections, Tensor> gradients, int step, float[][] state) {
+	WeightArena a = getArena(neuralNetwork, gradients);
+	if (state.length != getStateCount() || Arrays.stream(state).anyMatch(st -> st.length != a.getSize())) {
+	    throw new IllegalArgumentException("The state doesn't match the arena");
+	}
+
+	for (Segment s : a.getSegments()) {
+	    float[][] target = s.getState(getStateCount());
+	    for (int i = 0; i < state.length; i++) {
+		System.arraycopy(state[i], s.getPosition(), target[i], 0, s.getSize());
+	    }
+	}
+
+	this.step = step;
+    }
+
+    /**
+     * @return optimizer with the same parameters and empty state
+     */
+    public Optimizer copy() {
+	try {
+	    Optimizer result = (Optimizer) super.clone();
+	    result.arena = null;
+	    result.step = 0;
+	    return result;
+	} catch (CloneNotSupportedException e) {
+	    throw new IllegalStateException(e);
+	}
+    }
+
+    public float getLearningRate() {
+	return learningRate;
+    }
+
+    public float getL1weightDecay() {
+	return l1weightDecay;
+    }
+
+    public float getL2weightDecay() {
+	return l2weightDecay;
+    }
+
+    public int getStep() {
+	return step;
+    }
+}
@@ -0,0 +1,55 @@
+package com.github.neuralnetworks.training.optimizers;
+
+/**
+ * RMSProp - the learning rate of each weight is divided by the root of the moving average of its squared gradients
+ */
+public class RMSPropOptimizer extends Optimizer {
+
+    private static final long serialVersionUID = 1L;
+
+    protected final float decayRate;
+    protected final float epsilon;
+
+    public RMSPropOptimizer(float learningRate, float l1weightDecay, float l2weightDecay) {
+	this(learningRate, l1weightDecay, l2weightDecay, 0.9f, 1e-8f);
+    }
+
+    /**
+     * @param decayRate - decay of the moving average of the squared gradients
+     */
+    public RMSPropOptimizer(float learningRate, float l1weightDecay, float l2weightDecay, float decayRate, float epsilon) {
+	super(learningRate, l1weightDecay, l2weightDecay);
+	if (decayRate < 0 || decayRate >= 1) {
+	    throw new IllegalArgumentException("decayRate must be in [0, 1)");
+	}
+
+	this.decayRate = decayRate;
+	this.epsilon = epsilon;
+    }
+
+    @Override
+    protected void update(float[] weights, int weightsStart, float[] gradients, int gradientsStart, float[][] state, int stateStart, int length) {
+	float[] squares = state[0];
+	float lr = learningRate, rho = decayRate, eps = epsilon, g = 0, s = 0, weight = 0;
+	for (int i = 0; i < length; i++) {
+	    g = gradients[gradientsStart + i];
+	    s = rho * squares[stateStart + i] + (1 - rho) * g * g;
+	    squares[stateStart + i] = s;
+	    weight = weights[weightsStart + i];
+	    weights[weightsStart + i] = weight + lr * g / ((float) Math.sqrt(s) + eps) + decay(weight);
+	}
+    }
+
+    @Override
+    protected int getStateCount() {
+	return 1;
+    }
+
+    public float getDecayRate() {
+	return decayRate;
+    }
+
+    public float getEpsilon() {
+	return epsilon;
+    }
+}
@@ -0,0 +1,137 @@
+package com.github.neuralnetworks.training.optimizers;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import com.github.neuralnetworks.architecture.Connections;
+import com.github.neuralnetworks.architecture.NeuralNetwork;
+import com.github.neuralnetworks.architecture.WeightsConnections;
+import com.github.neuralnetworks.tensor.Tensor;
+
+/**
+ * All weights of a network (and their gradients) viewed as a single contiguous range
+ * Connections, whose weights and gradients are adjacent in the same arrays (for example when the weights share memory), are merged into a single segment, so that the optimizer updates them in one pass.
+ * The positions in the arena follow the order of the connections in the network.
+ */
+public class WeightArena {
+
+    private final NeuralNetwork neuralNetwork;
+    private final Map<Connections, Tensor> gradients;
+    private final List<Segment> segments;
+    private final int size;
+
+    public WeightArena(NeuralNetwork neuralNetwork, Map<Connections, Tensor> gradients) {
+	this.neuralNetwork = neuralNetwork;
+	this.gradients = gradients;
+
+	List<Segment> segments = new ArrayList<>();
+	Segment last = null;
+	int position = 0;
+	for (Connections c : neuralNetwork.getConnections()) {
+	    if (c instanceof WeightsConnections && gradients.containsKey(c)) {
+		Tensor w = ((WeightsConnections) c).getWeights();
+		Tensor g = gradients.get(c);
+		if (w.getSize() != g.getSize()) {
+		    throw new IllegalArgumentException("Weights and gradients must have the same size");
+		}
+
+		if (last != null && last.weights == w.getElements() && last.gradients == g.getElements() && last.weightsStart + last.size == w.getStartIndex() && last.gradientsStart + last.size == g.getStartIndex()) {
+		    last.size += w.getSize();
+		} else {
+		    segments.add(last = new Segment(position, w.getElements(), w.getStartIndex(), g.getElements(), g.getStartIndex(), w.getSize()));
+		}
+
+		position += w.getSize();
+	    }
+	}
+
+	this.segments = Collections.unmodifiableList(segments);
+	this.size = position;
+    }
+
+    /**
+     * @return true if the arena is built for this network and gradients
+     */
+    public boolean matches(NeuralNetwork neuralNetwork, Map<Connections, Tensor> gradients) {
+	return this.neuralNetwork == neuralNetwork && this.gradients == gradients;
+    }
+
+    public List<Segment> getSegments() {
+	return segments;
+    }
+
+    /**
+     * @return total number of weights
+     */
+    public int getSize() {
+	return size;
+    }
+
+    /**
+     * Contiguous range of weights and the corresponding gradients
+     */
+    public static class Segment {
+
+	private final int position;
+	private final float[] weights;
+	private final int weightsStart;
+	private final float[] gradients;
+	private final int gradientsStart;
+	private int size;
+
+	/**
+	 * optimizer state (for example velocity) - one array of size elements for each state variable
+	 */
+	private float[][] state;
+
+	private Segment(int position, float[] weights, int weightsStart, float[] gradients, int gradientsStart, int size) {
+	    this.position = position;
+	    this.weights = weights;
+	    this.weightsStart = weightsStart;
+	    this.gradients = gradients;
+	    this.gradientsStart = gradientsStart;
+	    this.size = size;
+	}
+
+	/**
+	 * @return start position of the segment in the arena
+	 */
+	public int getPosition() {
+	    return position;
+	}
+
+	public float[] getWeights() {
+	    return weights;
+	}
+
+	public int getWeightsStart() {
+	    return weightsStart;
+	}
+
+	public float[] getGradients() {
+	    return gradients;
+	}
+
+	public int getGradientsStart() {
+	    return gradientsStart;
+	}
+
+	public int getSize() {
+	    return size;
+	}
+
+	/**
+	 * @param count - number of state variables per weight
+	 * @return the state arrays (allocated on the first call)
+	 */
+	public float[][] getState(int count) {
+	    if (state == null || state.length != count) {
+		state = new float[count][size];
+	    }
+
+	    return state;
+	}
+    }
+}
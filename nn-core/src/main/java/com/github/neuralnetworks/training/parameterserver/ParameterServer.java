@@ -0,0 +1,275 @@
+package com.github.neuralnetworks.training.parameterserver;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.github.neuralnetworks.architecture.NeuralNetwork;
+import com.github.neuralnetworks.tensor.Tensor;
+
+/**
+ * Parameter server - holds the master weights of all WeightsConnections of the network
+ * Worker processes (see ParameterServerClient) pull the weights and push deltas over a loopback TCP connection.
+ * The staleness is bounded (stale synchronous parallel): a pull blocks while the clock (number of pushes) of the worker is more than maxStaleness ahead of the slowest active worker.
+ */
+public class ParameterServer implements AutoCloseable {
+
+    private final NeuralNetwork neuralNetwork;
+    private final List<Tensor> weights;
+    private final int size;
+    private final int maxStaleness;
+    private final ServerSocket serverSocket;
+    private final List<Socket> sockets = new ArrayList<>();
+    private final Map<Integer, Integer> clocks = new HashMap<>();
+    private final long start = System.nanoTime();
+
+    private long version;
+    private int nextWorkerId;
+
+    /**
+     * statistics
+     */
+    private long pulls;
+    private long pushes;
+    private long bytesReceived;
+    private long bytesSent;
+    private long stalenessSum;
+    private long maxObservedStaleness;
+    private long waitTime;
+
+    private volatile boolean closed;
+
+    /**
+     * @param port - 0 for any free port
+     * @param maxStaleness - maximum number of pushes the fastest worker can be ahead of the slowest one
+     */
+    public ParameterServer(NeuralNetwork neuralNetwork, int port, int maxStaleness) throws IOException {
+	if (maxStaleness < 0) {
+	    throw new IllegalArgumentException("maxStaleness must not be negative");
+	}
+
+	this.neuralNetwork = neuralNetwork;
+	this.weights = ParameterServerProtocol.weights(neuralNetwork);
+	this.size = ParameterServerProtocol.size(weights);
+	this.maxStaleness = maxStaleness;
+	this.serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+
+	Thread t = new Thread(this::accept, "parameter-server");
+	t.setDaemon(true);
+	t.start();
+    }
+
+    private void accept() {
+	while (!closed) {
+	    try {
+		Socket s = serverSocket.accept();
+		s.setTcpNoDelay(true);
+		synchronized (sockets) {
+		    sockets.add(s);
+		}
+
+		Thread t = new Thread(() -> serve(s), "parameter-server-" + s.getPort());
+		t.setDaemon(true);
+		t.start();
+	    } catch (IOException e) {
+		if (!closed) {
+		    throw new IllegalStateException(e);
+		}
+	    }
+	}
+    }
+
+    private void serve(Socket s) {
+	Integer workerId = null;
+	ParameterServerProtocol.CountingInputStream cin = null;
+	ParameterServerProtocol.CountingOutputStream cout = null;
+	try (DataInputStream in = new DataInputStream(new BufferedInputStream(cin = new ParameterServerProtocol.CountingInputStream(s.getInputStream())));
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(cout = new ParameterServerProtocol.CountingOutputStream(s.getOutputStream())))) {
+	    float[] buffer = new float[size];
+	    boolean compress = false;
+
+	    for (byte type; (type = in.readByte()) != ParameterServerProtocol.BYE;) {
+		if (type == ParameterServerProtocol.HELLO) {
+		    int count = in.readInt();
+		    compress = in.readBoolean();
+		    if (count != size) {
+			out.writeByte(ParameterServerProtocol.ERROR);
+			out.writeUTF("Number of weights doesn't match: " + count + " instead of " + size);
+			out.flush();
+			break;
+		    }
+
+		    workerId = register();
+		    out.writeByte(ParameterServerProtocol.OK);
+		    out.writeInt(workerId);
+		} else if (type == ParameterServerProtocol.PULL) {
+		    long v = pull(workerId, buffer);
+		    out.writeByte(ParameterServerProtocol.OK);
+		    out.writeLong(v);
+		    ParameterServerProtocol.writePayload(out, buffer, compress);
+		} else if (type == ParameterServerProtocol.PUSH) {
+		    long base = in.readLong();
+		    float[] deltas = ParameterServerProtocol.readPayload(in);
+		    if (deltas.length != size) {
+			throw new IOException("Wrong number of deltas " + deltas.length);
+		    }
+
+		    long v = push(workerId, base, deltas);
+		    out.writeByte(ParameterServerProtocol.OK);
+		    out.writeLong(v);
+		} else {
+		    throw new IOException("Unknown message " + type);
+		}
+
+		out.flush();
+
+		synchronized (this) {
+		    bytesReceived += cin.getCount();
+		    bytesSent += cout.getCount();
+		}
+		cin.clear();
+		cout.clear();
+	    }
+	} catch (EOFException e) {
+	    // the worker disconnected
+	} catch (IOException e) {
+	    if (!closed) {
+		throw new IllegalStateException(e);
+	    }
+	} finally {
+	    if (workerId != null) {
+		unregister(workerId);
+	    }
+
+	    synchronized (sockets) {
+		sockets.remove(s);
+	    }
+	}
+    }
+
+    private synchronized int register() {
+	int id = nextWorkerId++;
+
+	// a new worker starts at the clock of the slowest one
+	clocks.put(id, clocks.values().stream().mapToInt(Integer::intValue).min().orElse(0));
+	return id;
+    }
+
+    private synchronized void unregister(int workerId) {
+	clocks.remove(workerId);
+	notifyAll();
+    }
+
+    private synchronized long pull(Integer workerId, float[] target) throws IOException {
+	if (workerId == null) {
+	    throw new IOException("HELLO expected");
+	}
+
+	long t = System.nanoTime();
+	while (!closed && clocks.get(workerId) - clocks.values().stream().mapToInt(Integer::intValue).min().getAsInt() > maxStaleness) {
+	    try {
+		wait();
+	    } catch (InterruptedException e) {
+		Thread.currentThread().interrupt();
+		throw new IOException(e);
+	    }
+	}
+	waitTime += System.nanoTime() - t;
+
+	ParameterServerProtocol.read(weights, target);
+	pulls++;
+	return version;
+    }
+
+    private synchronized long push(Integer workerId, long base, float[] deltas) throws IOException {
+	if (workerId == null) {
+	    throw new IOException("HELLO expected");
+	}
+
+	int position = 0;
+	for (Tensor w : weights) {
+	    float[] elements = w.getElements();
+	    for (int i = w.getStartIndex(), end = i + w.getSize(); i < end; i++) {
+		elements[i] += deltas[position++];
+	    }
+	}
+
+	long staleness = version - base;
+	stalenessSum += staleness;
+	maxObservedStaleness = Math.max(maxObservedStaleness, staleness);
+	pushes++;
+	version++;
+
+	clocks.put(workerId, clocks.get(workerId) + 1);
+	notifyAll();
+
+	return version;
+    }
+
+    /**
+     * Blocks until the number of pushes reaches the value or the timeout expires
+     * @return true if the number was reached
+     */
+    public synchronized boolean awaitPushes(long count, long timeoutMillis) throws InterruptedException {
+	long deadline = System.currentTimeMillis() + timeoutMillis;
+	while (pushes < count) {
+	    long remaining = deadline - System.currentTimeMillis();
+	    if (remaining <= 0) {
+		return false;
+	    }
+	    wait(remaining);
+	}
+
+	return true;
+    }
+
+    /**
+     * Thread safe copy of the server weights to the target network
+     */
+    public synchronized void copyWeights(NeuralNetwork target) {
+	float[] values = new float[size];
+	ParameterServerProtocol.read(weights, values);
+	ParameterServerProtocol.write(values, ParameterServerProtocol.weights(target));
+    }
+
+    public synchronized ParameterServerReport getReport() {
+	return new ParameterServerReport(System.nanoTime() - start, pulls, pushes, bytesReceived, bytesSent, (pulls + pushes) * size * 4, pushes > 0 ? (float) stalenessSum / pushes : 0, maxObservedStaleness, waitTime, clocks.size());
+    }
+
+    public NeuralNetwork getNeuralNetwork() {
+	return neuralNetwork;
+    }
+
+    public int getPort() {
+	return serverSocket.getLocalPort();
+    }
+
+    public int getMaxStaleness() {
+	return maxStaleness;
+    }
+
+    @Override
+    public void close() throws IOException {
+	closed = true;
+	synchronized (this) {
+	    notifyAll();
+	}
+
+	serverSocket.close();
+	synchronized (sockets) {
+	    for (Socket s : sockets) {
+		s.close();
+	    }
+	}
+    }
+}
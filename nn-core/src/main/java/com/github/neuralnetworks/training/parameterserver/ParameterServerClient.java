@@ -0,0 +1,179 @@
+package com.github.neuralnetworks.training.parameterserver;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.List;
+
+import com.github.neuralnetworks.architecture.NeuralNetwork;
+import com.github.neuralnetworks.events.TrainingEvent;
+import com.github.neuralnetworks.events.TrainingEventListener;
+import com.github.neuralnetworks.tensor.Tensor;
+import com.github.neuralnetworks.training.Trainer;
+import com.github.neuralnetworks.training.events.MiniBatchFinishedEvent;
+import com.github.neuralnetworks.training.events.TrainingFinishedEvent;
+import com.github.neuralnetworks.training.events.TrainingStartedEvent;
+
+/**
+ * Worker side of the parameter server training
+ * It is added as a listener to an existing trainer, which trains a local copy of the network on the worker's shard of the data.
+ * The weights are pulled when the training starts. After every pushInterval mini batches the difference between the local weights and the last pulled weights is pushed (as a single, optionally compressed, payload) and the weights are pulled again.
+ * The trainer must not have a random initializer, because the weights come from the server.
+ */
+public class ParameterServerClient implements TrainingEventListener, AutoCloseable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final transient List<Tensor> weights;
+    private final transient Socket socket;
+    private final transient DataInputStream in;
+    private final transient DataOutputStream out;
+    private final int pushInterval;
+    private final boolean compress;
+    private final int workerId;
+
+    /**
+     * the last pulled weights
+     */
+    private final float[] pulled;
+    private final float[] buffer;
+    private long version;
+    private int batches;
+    private long pushes;
+    private long waitTime;
+
+    /**
+     * @param port - port of the server on the loopback interface
+     * @param neuralNetwork - local network, which has the same structure as the network of the server
+     * @param pushInterval - number of mini batches between two pushes
+     * @param compress - whether to compress the payloads
+     */
+    public ParameterServerClient(int port, NeuralNetwork neuralNetwork, int pushInterval, boolean compress) throws IOException {
+	if (pushInterval < 1) {
+	    throw new IllegalArgumentException("pushInterval must be positive");
+	}
+
+	this.weights = ParameterServerProtocol.weights(neuralNetwork);
+	this.pushInterval = pushInterval;
+	this.compress = compress;
+	this.pulled = new float[ParameterServerProtocol.size(weights)];
+	this.buffer = new float[pulled.length];
+
+	this.socket = new Socket(InetAddress.getLoopbackAddress(), port);
+	socket.setTcpNoDelay(true);
+	this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+	this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+
+	out.writeByte(ParameterServerProtocol.HELLO);
+	out.writeInt(pulled.length);
+	out.writeBoolean(compress);
+	out.flush();
+	checkResponse();
+	this.workerId = in.readInt();
+    }
+
+    @Override
+    public void handleEvent(TrainingEvent event) {
+	try {
+	    if (event instanceof TrainingStartedEvent) {
+		if (((Trainer<?>) event.getSource()).getRandomInitializer() != null) {
+		    throw new IllegalArgumentException("The weights of the worker are initialized by the server");
+		}
+
+		pull();
+	    } else if (event instanceof MiniBatchFinishedEvent) {
+		if (++batches % pushInterval == 0) {
+		    push();
+		    pull();
+		}
+	    } else if (event instanceof TrainingFinishedEvent) {
+		if (batches % pushInterval != 0) {
+		    push();
+		}
+	    }
+	} catch (IOException e) {
+	    throw new IllegalStateException(e);
+	}
+    }
+
+    /**
+     * Replaces the local weights with the weights of the server. Blocks while this worker is too far ahead of the others
+     */
+    public void pull() throws IOException {
+	long t = System.nanoTime();
+	out.writeByte(ParameterServerProtocol.PULL);
+	out.flush();
+	checkResponse();
+	version = in.readLong();
+	float[] values = ParameterServerProtocol.readPayload(in);
+	if (values.length != pulled.length) {
+	    throw new IOException("Wrong number of weights " + values.length);
+	}
+
+	System.arraycopy(values, 0, pulled, 0, values.length);
+	ParameterServerProtocol.write(values, weights);
+	waitTime += System.nanoTime() - t;
+    }
+
+    /**
+     * Sends the local changes since the last pull to the server
+     */
+    public void push() throws IOException {
+	long t = System.nanoTime();
+	ParameterServerProtocol.read(weights, buffer);
+	for (int i = 0; i < buffer.length; i++) {
+	    buffer[i] -= pulled[i];
+	}
+
+	out.writeByte(ParameterServerProtocol.PUSH);
+	out.writeLong(version);
+	ParameterServerProtocol.writePayload(out, buffer, compress);
+	out.flush();
+	checkResponse();
+	in.readLong();
+
+	// the pushed changes are now part of the server weights
+	ParameterServerProtocol.read(weights, pulled);
+	pushes++;
+	waitTime += System.nanoTime() - t;
+    }
+
+    private void checkResponse() throws IOException {
+	if (in.readByte() != ParameterServerProtocol.OK) {
+	    throw new IllegalArgumentException(in.readUTF());
+	}
+    }
+
+    public int getWorkerId() {
+	return workerId;
+    }
+
+    public long getPushes() {
+	return pushes;
+    }
+
+    /**
+     * @return time spent communicating with the server (in nanoseconds)
+     */
+    public long getWaitTime() {
+	return waitTime;
+    }
+
+    public int getPushInterval() {
+	return pushInterval;
+    }
+
+    @Override
+    public void close() throws IOException {
+	try {
+	    out.writeByte(ParameterServerProtocol.BYE);
+	    out.flush();
+	} finally {
+	    socket.close();
+	}
+    }
+}
@@ -0,0 +1,240 @@
+package com.github.neuralnetworks.training.parameterserver;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import com.github.neuralnetworks.architecture.NeuralNetwork;
+import com.github.neuralnetworks.architecture.WeightsConnections;
+import com.github.neuralnetworks.tensor.Tensor;
+
+/**
+ * Wire format of the parameter server
+ * Each request starts with a message type byte. The weights (or deltas) of all WeightsConnections of the network are sent as a single payload:
+ * compressed flag (byte), number of floats (int), number of bytes (int) and the bytes (big endian floats, optionally deflated)
+ * Before the compression the bytes are shuffled (first the most significant bytes of all floats, then the second bytes and so on). This groups the similar sign/exponent bytes together and improves the compression ratio
+ */
+class ParameterServerProtocol {
+
+    /**
+     * client: HELLO, number of weights; server: worker id
+     */
+    static final byte HELLO = 1;
+
+    /**
+     * client: PULL (the server keeps the clock of each worker); server: version, weights payload
+     */
+    static final byte PULL = 2;
+
+    /**
+     * client: PUSH, base version, deltas payload; server: version
+     */
+    static final byte PUSH = 3;
+
+    /**
+     * client: BYE
+     */
+    static final byte BYE = 4;
+
+    /**
+     * server: error message (instead of the regular response)
+     */
+    static final byte ERROR = -1;
+    static final byte OK = 0;
+
+    private ParameterServerProtocol() {
+    }
+
+    /**
+     * Writes the values
+     */
+    static void writePayload(DataOutputStream out, float[] values, boolean compress) throws IOException {
+	ByteBuffer buffer = ByteBuffer.allocate(values.length * 4);
+	buffer.asFloatBuffer().put(values);
+	byte[] bytes = buffer.array();
+	int length = bytes.length;
+
+	if (compress) {
+	    Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+	    deflater.setInput(shuffle(bytes));
+	    deflater.finish();
+	    byte[] compressed = new byte[bytes.length + bytes.length / 1000 + 64];
+	    length = 0;
+	    while (!deflater.finished()) {
+		if (length == compressed.length) {
+		    compressed = Arrays.copyOf(compressed, compressed.length * 2);
+		}
+		length += deflater.deflate(compressed, length, compressed.length - length);
+	    }
+	    deflater.end();
+	    bytes = compressed;
+	}
+
+	out.writeBoolean(compress);
+	out.writeInt(values.length);
+	out.writeInt(length);
+	out.write(bytes, 0, length);
+    }
+
+    static float[] readPayload(DataInputStream in) throws IOException {
+	boolean compressed = in.readBoolean();
+	int count = in.readInt();
+	byte[] bytes = new byte[in.readInt()];
+	in.readFully(bytes);
+
+	if (compressed) {
+	    Inflater inflater = new Inflater();
+	    inflater.setInput(bytes);
+	    byte[] raw = new byte[count * 4];
+	    try {
+		for (int length = 0; length < raw.length;) {
+		    int n = inflater.inflate(raw, length, raw.length - length);
+		    if (n == 0 && (inflater.finished() || inflater.needsInput())) {
+			throw new IOException("Truncated payload");
+		    }
+		    length += n;
+		}
+	    } catch (DataFormatException e) {
+		throw new IOException(e);
+	    } finally {
+		inflater.end();
+	    }
+	    bytes = unshuffle(raw);
+	}
+
+	float[] result = new float[count];
+	ByteBuffer.wrap(bytes).asFloatBuffer().get(result);
+	return result;
+    }
+
+    private static byte[] shuffle(byte[] bytes) {
+	byte[] result = new byte[bytes.length];
+	int count = bytes.length / 4;
+	for (int i = 0; i < count; i++) {
+	    for (int b = 0; b < 4; b++) {
+		result[b * count + i] = bytes[i * 4 + b];
+	    }
+	}
+
+	return result;
+    }
+
+    private static byte[] unshuffle(byte[] bytes) {
+	byte[] result = new byte[bytes.length];
+	int count = bytes.length / 4;
+	for (int i = 0; i < count; i++) {
+	    for (int b = 0; b < 4; b++) {
+		result[i * 4 + b] = bytes[b * count + i];
+	    }
+	}
+
+	return result;
+    }
+
+    /**
+     * Counts the bytes, which were read
+     */
+    static class CountingInputStream extends FilterInputStream {
+
+	private long count;
+
+	CountingInputStream(InputStream in) {
+	    super(in);
+	}
+
+	@Override
+	public int read() throws IOException {
+	    int b = super.read();
+	    count += b >= 0 ? 1 : 0;
+	    return b;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+	    int n = super.read(b, off, len);
+	    count += Math.max(n, 0);
+	    return n;
+	}
+
+	long getCount() {
+	    return count;
+	}
+
+	void clear() {
+	    count = 0;
+	}
+    }
+
+    /**
+     * Counts the bytes, which were written
+     */
+    static class CountingOutputStream extends FilterOutputStream {
+
+	private long count;
+
+	CountingOutputStream(OutputStream out) {
+	    super(out);
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+	    out.write(b);
+	    count++;
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+	    out.write(b, off, len);
+	    count += len;
+	}
+
+	long getCount() {
+	    return count;
+	}
+
+	void clear() {
+	    count = 0;
+	}
+    }
+
+    static List<Tensor> weights(NeuralNetwork nn) {
+	return nn.getConnections().stream().filter(c -> c instanceof WeightsConnections).map(c -> ((WeightsConnections) c).getWeights()).collect(Collectors.toList());
+    }
+
+    static int size(List<Tensor> weights) {
+	return weights.stream().mapToInt(Tensor::getSize).sum();
+    }
+
+    /**
+     * Copies the weights to a single array
+     */
+    static void read(List<Tensor> weights, float[] target) {
+	int position = 0;
+	for (Tensor t : weights) {
+	    System.arraycopy(t.getElements(), t.getStartIndex(), target, position, t.getSize());
+	    position += t.getSize();
+	}
+    }
+
+    /**
+     * Copies the single array to the weights
+     */
+    static void write(float[] source, List<Tensor> weights) {
+	int position = 0;
+	for (Tensor t : weights) {
+	    System.arraycopy(source, position, t.getElements(), t.getStartIndex(), t.getSize());
+	    position += t.getSize();
+	}
+    }
+}
@@ -0,0 +1,94 @@
+package com.github.neuralnetworks.training.parameterserver;
+
+/**
+ * Statistics of ParameterServer. All times are in nanoseconds. Staleness is the number of updates from other workers, which were applied between the pull and the push of a worker
+ */
+public class ParameterServerReport {
+
+    private final long time;
+    private final long pulls;
+    private final long pushes;
+    private final long bytesReceived;
+    private final long bytesSent;
+    private final long payloadBytes;
+    private final float averageStaleness;
+    private final long maxStaleness;
+    private final long waitTime;
+    private final int activeWorkers;
+
+    public ParameterServerReport(long time, long pulls, long pushes, long bytesReceived, long bytesSent, long payloadBytes, float averageStaleness, long maxStaleness, long waitTime, int activeWorkers) {
+	super();
+	this.time = time;
+	this.pulls = pulls;
+	this.pushes = pushes;
+	this.bytesReceived = bytesReceived;
+	this.bytesSent = bytesSent;
+	this.payloadBytes = payloadBytes;
+	this.averageStaleness = averageStaleness;
+	this.maxStaleness = maxStaleness;
+	this.waitTime = waitTime;
+	this.activeWorkers = activeWorkers;
+    }
+
+    public long getTime() {
+	return time;
+    }
+
+    public long getPulls() {
+	return pulls;
+    }
+
+    public long getPushes() {
+	return pushes;
+    }
+
+    public float getPushesPerSecond() {
+	return time > 0 ? pushes * 1000000000f / time : 0;
+    }
+
+    public long getBytesReceived() {
+	return bytesReceived;
+    }
+
+    public long getBytesSent() {
+	return bytesSent;
+    }
+
+    /**
+     * @return size of the weights and deltas before compression
+     */
+    public long getPayloadBytes() {
+	return payloadBytes;
+    }
+
+    /**
+     * @return transferred bytes / payload bytes
+     */
+    public float getCompressionRatio() {
+	return payloadBytes > 0 ? (float) (bytesReceived + bytesSent) / payloadBytes : 1;
+    }
+
+    public float getAverageStaleness() {
+	return averageStaleness;
+    }
+
+    public long getMaxStaleness() {
+	return maxStaleness;
+    }
+
+    /**
+     * @return time the pulls were blocked because of the staleness bound (sum for all workers)
+     */
+    public long getWaitTime() {
+	return waitTime;
+    }
+
+    public int getActiveWorkers() {
+	return activeWorkers;
+    }
+
+    @Override
+    public String toString() {
+	return "pulls: " + pulls + "; pushes: " + pushes + "; pushes/s: " + getPushesPerSecond() + "; received/sent (KB): " + bytesReceived / 1024 + "/" + bytesSent / 1024 + "; compression ratio: " + getCompressionRatio() + "; staleness avg/max: " + averageStaleness + "/" + maxStaleness + "; wait (ms): " + waitTime / 1000000;
+    }
+}
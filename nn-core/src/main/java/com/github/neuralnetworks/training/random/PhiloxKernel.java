@@ -0,0 +1,118 @@
+package com.github.neuralnetworks.training.random;
+
+import java.io.Serializable;
+import java.util.Random;
+
+import com.amd.aparapi.Kernel;
+
+/**
+ * Kernel with the counter based Philox4x32-10 generator (Salmon et al., "Parallel random numbers: as easy as 1, 2, 3")
+ * There is no state per work item - each number is a function of the seed (the key), the offset, the global id of the work item and the index of the draw within the work item.
+ * This means that the results don't depend on the number of threads and any number can be computed without the previous ones (skip ahead is setOffset()).
+ * The kernels should use a new offset for each execution (see nextOffset())
+ */
+public abstract class PhiloxKernel extends Kernel implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final int M0 = 0xD2511F53;
+    private static final int M1 = 0xCD9E8D57;
+    private static final int W0 = 0x9E3779B9;
+    private static final int W1 = 0xBB67AE85;
+
+    private int key0;
+    private int key1;
+    private int offset0;
+    private int offset1;
+
+    /**
+     * Random seed
+     */
+    public PhiloxKernel() {
+	this(new Random().nextLong());
+    }
+
+    public PhiloxKernel(long seed) {
+	super();
+	setSeed(seed);
+    }
+
+    /**
+     * @return the draw-th pseudo random int of the work item
+     */
+    public int random(int draw) {
+	return philox(getGlobalId(), draw >>> 2, offset0, offset1, key0, key1, draw & 3);
+    }
+
+    /**
+     * @return the draw-th pseudo random float of the work item from the range [0, 1)
+     */
+    public float random01(int draw) {
+	return (random(draw) >>> 8) * (1f / (1 << 24));
+    }
+
+    /**
+     * Box-Muller transform of the draws 2 * draw and 2 * draw + 1
+     * @return normally distributed value with mean 0 and standard deviation 1
+     */
+    public float randomGaussian(int draw) {
+	float u1 = 1 - random01(2 * draw), u2 = random01(2 * draw + 1);
+	return sqrt(-2 * log(u1)) * cos(2 * (float) Math.PI * u2);
+    }
+
+    /**
+     * Philox4x32 with 10 rounds
+     * @return the lane-th word of the result for the counter (c0, c1, c2, c3) and the key (k0, k1)
+     */
+    public static int philox(int c0, int c1, int c2, int c3, int k0, int k1, int lane) {
+	for (int i = 0; i < 10; i++) {
+	    long p0 = (M0 & 0xFFFFFFFFL) * (c0 & 0xFFFFFFFFL), p1 = (M1 & 0xFFFFFFFFL) * (c2 & 0xFFFFFFFFL);
+	    int hi0 = (int) (p0 >>> 32), lo0 = (int) p0, hi1 = (int) (p1 >>> 32), lo1 = (int) p1;
+	    c0 = hi1 ^ c1 ^ k0;
+	    c1 = lo1;
+	    c2 = hi0 ^ c3 ^ k1;
+	    c3 = lo0;
+	    k0 += W0;
+	    k1 += W1;
+	}
+
+	int result = c3;
+	if (lane == 0) {
+	    result = c0;
+	} else if (lane == 1) {
+	    result = c1;
+	} else if (lane == 2) {
+	    result = c2;
+	}
+
+	return result;
+    }
+
+    public long getSeed() {
+	return ((long) key1 << 32) | (key0 & 0xFFFFFFFFL);
+    }
+
+    public void setSeed(long seed) {
+	this.key0 = (int) seed;
+	this.key1 = (int) (seed >>> 32);
+    }
+
+    public long getOffset() {
+	return ((long) offset1 << 32) | (offset0 & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Skip ahead - the numbers of the executions before the offset are not computed
+     */
+    public void setOffset(long offset) {
+	this.offset0 = (int) offset;
+	this.offset1 = (int) (offset >>> 32);
+    }
+
+    /**
+     * Advances the offset, so that the next execution uses new numbers
+     */
+    public void nextOffset() {
+	setOffset(getOffset() + 1);
+    }
+}
@@ -1,31 +1,38 @@
 package com.github.neuralnetworks.training.rbm;
 
+import java.util.Map;
+
+import com.github.neuralnetworks.architecture.Connections;
 import com.github.neuralnetworks.architecture.types.RBM;
 import com.github.neuralnetworks.calculation.RBMLayerCalculator;
+import com.github.neuralnetworks.tensor.Matrix;
+import com.github.neuralnetworks.tensor.Tensor;
+import com.github.neuralnetworks.training.optimizers.Optimizer;
 import com.github.neuralnetworks.util.Constants;
 import com.github.neuralnetworks.util.Environment;
 import com.github.neuralnetworks.util.Properties;
 
 /**
  * Base class for Aparapi Contrastive Divergence
- * Supports learning rate, momentum and weight decay
+ * The kernels compute the gradients (Constants.GRADIENTS) and the Optimizer (Constants.OPTIMIZER) updates the weights
+ * The weight decay (Constants.L1_WEIGHT_DECAY, Constants.L2_WEIGHT_DECAY) is added to the gradients of the weights between the visible and the hidden layer (not the biases), so it's scaled by the learning rate
  */
 public class AparapiCDTrainer extends CDTrainerBase {
 
     private static final long serialVersionUID = 1L;
 
     /**
-     * weights update kernel for the connections between the visible and the hidden layer
+     * gradients kernel for the connections between the visible and the hidden layer
      */
     private CDWeightUpdatesKernel weightUpdatesKernel;
 
     /**
-     * weights update kernel for visible bias connections
+     * gradients kernel for visible bias connections
      */
     private CDBiasUpdatesKernel visibleBiasUpdatesKernel;
 
     /**
-     * weights update kernel for the hidden bias connections
+     * gradients kernel for the hidden bias connections
      */
     private CDBiasUpdatesKernel hiddenBiasUpdatesKernel;
 
@@ -34,46 +41,62 @@ public class AparapiCDTrainer extends CDTrainerBase {
     }
 
     /* (non-Javadoc)
-     * @see com.github.neuralnetworks.training.rbm.CDTrainerBase#updateWeights(com.github.neuralnetworks.architecture.Matrix, com.github.neuralnetworks.architecture.Matrix, com.github.neuralnetworks.architecture.Matrix, com.github.neuralnetworks.architecture.Matrix)
-     * before each update the kernel update parameters are refreshed
+     * @see com.github.neuralnetworks.training.rbm.CDTrainerBase#computeGradients()
+     * the kernels add the gradients of the mini batch to the gradients tensors
      */
     @Override
-    protected void updateWeights() {
+    protected void computeGradients() {
 	RBM rbm = getNeuralNetwork();
+	Map<Connections, Tensor> gradients = getGradients();
 
 	RBMLayerCalculator lc = getLayerCalculator();
 	int mbs = lc.getPositivePhaseVisible().getDimensions()[lc.getPositivePhaseVisible().getDimensions().length - 1];
 
-	if (weightUpdatesKernel == null || weightUpdatesKernel.getMiniBatchSize() != mbs) {
-	    weightUpdatesKernel = new CDWeightUpdatesKernel(lc.getPositivePhaseVisible(), lc.getPositivePhaseHidden(), lc.getNegativePhaseVisible(), lc.getNegativePhaseHidden(), rbm.getMainConnections().getWeights(), getLearningRate(), getMomentum(), getl1weightDecay(), getl2weightDecay());
+	Matrix negVisible = getNegativePhaseVisible(), negHidden = getNegativePhaseHidden();
+	int negColumns = getNegativePhaseColumns();
+
+	if (weightUpdatesKernel == null || weightUpdatesKernel.getMiniBatchSize() != mbs || weightUpdatesKernel.getNegPhaseVisible() != negVisible.getElements() || weightUpdatesKernel.getNegativeColumns() != negColumns) {
+	    weightUpdatesKernel = new CDWeightUpdatesKernel(lc.getPositivePhaseVisible(), lc.getPositivePhaseHidden(), negVisible, negHidden, (Matrix) gradients.get(rbm.getMainConnections()), negColumns);
 	}
-	Environment.getInstance().getExecutionStrategy().execute(weightUpdatesKernel, rbm.getMainConnections().getWeights().getRows());
+	Environment.getInstance().getExecutionStrategy().execute(weightUpdatesKernel, weightUpdatesKernel.getRange());
 
-	// update visible bias
+	// visible bias
 	if (rbm.getVisibleBiasConnections() != null) {
-	    if (visibleBiasUpdatesKernel == null || visibleBiasUpdatesKernel.getMiniBatchSize() != mbs) {
-		visibleBiasUpdatesKernel = new CDBiasUpdatesKernel(rbm.getVisibleBiasConnections().getWeights(), lc.getPositivePhaseVisible(), lc.getNegativePhaseVisible(), getLearningRate(), getMomentum());
+	    if (visibleBiasUpdatesKernel == null || visibleBiasUpdatesKernel.getMiniBatchSize() != mbs || visibleBiasUpdatesKernel.getNegPhase() != negVisible.getElements() || visibleBiasUpdatesKernel.getNegativeColumns() != negColumns) {
+		visibleBiasUpdatesKernel = new CDBiasUpdatesKernel((Matrix) gradients.get(rbm.getVisibleBiasConnections()), lc.getPositivePhaseVisible(), negVisible, negColumns);
 	    }
 
 	    Environment.getInstance().getExecutionStrategy().execute(visibleBiasUpdatesKernel, rbm.getVisibleBiasConnections().getWeights().getSize());
 	}
 
-	// update hidden bias
+	// hidden bias
 	if (rbm.getHiddenBiasConnections() != null) {
-	    if (hiddenBiasUpdatesKernel == null || hiddenBiasUpdatesKernel.getMiniBatchSize() != mbs) {
-		hiddenBiasUpdatesKernel = new CDBiasUpdatesKernel(rbm.getHiddenBiasConnections().getWeights(), lc.getPositivePhaseHidden(), lc.getNegativePhaseHidden(), getLearningRate(), getMomentum());
+	    if (hiddenBiasUpdatesKernel == null || hiddenBiasUpdatesKernel.getMiniBatchSize() != mbs || hiddenBiasUpdatesKernel.getNegPhase() != negHidden.getElements() || hiddenBiasUpdatesKernel.getNegativeColumns() != negColumns) {
+		hiddenBiasUpdatesKernel = new CDBiasUpdatesKernel((Matrix) gradients.get(rbm.getHiddenBiasConnections()), lc.getPositivePhaseHidden(), negHidden, negColumns);
 	    }
 
 	    Environment.getInstance().getExecutionStrategy().execute(hiddenBiasUpdatesKernel, rbm.getHiddenBiasConnections().getWeights().getSize());
 	}
     }
 
-    protected float getLearningRate() {
-	return properties.getParameter(Constants.LEARNING_RATE);
-    }
+    @Override
+    protected void updateWeights() {
+	RBM rbm = getNeuralNetwork();
+	Map<Connections, Tensor> gradients = getGradients();
+
+	float l1 = getl1weightDecay(), l2 = getl2weightDecay();
+	if (l1 != 0 || l2 != 0) {
+	    Matrix w = rbm.getMainConnections().getWeights(), g = (Matrix) gradients.get(rbm.getMainConnections());
+	    float[] we = w.getElements(), ge = g.getElements();
+	    for (int i = 0; i < w.getRows(); i++) {
+		for (int j = 0; j < w.getColumns(); j++) {
+		    float weight = we[w.getStartIndex() + i * w.getRowElementsDistance() + j * w.getColumnElementsDistance()];
+		    ge[g.getStartIndex() + i * g.getRowElementsDistance() + j * g.getColumnElementsDistance()] -= l1 * Math.abs(weight) + l2 * weight * weight / 2;
+		}
+	    }
+	}
 
-    protected float getMomentum() {
-	return (float) (properties.getParameter(Constants.MOMENTUM) != null ? properties.getParameter(Constants.MOMENTUM) : 0f);
+	getOptimizer().update(rbm, gradients);
     }
 
     protected float getl1weightDecay() {
@@ -83,4 +106,16 @@ public class AparapiCDTrainer extends CDTrainerBase {
     protected float getl2weightDecay() {
 	return (float) (properties.getParameter(Constants.L2_WEIGHT_DECAY) != null ? properties.getParameter(Constants.L2_WEIGHT_DECAY) : 0f);
     }
+
+    public Optimizer getOptimizer() {
+	return properties.getParameter(Constants.OPTIMIZER);
+    }
+
+    public void setOptimizer(Optimizer optimizer) {
+	properties.setParameter(Constants.OPTIMIZER, optimizer);
+    }
+
+    public Map<Connections, Tensor> getGradients() {
+	return properties.getParameter(Constants.GRADIENTS);
+    }
 }
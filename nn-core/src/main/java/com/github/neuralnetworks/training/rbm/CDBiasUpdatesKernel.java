@@ -6,23 +6,19 @@ import com.amd.aparapi.Kernel;
 import com.github.neuralnetworks.tensor.Matrix;
 
 /**
- * Aparapi kernerl for update of bias updates
+ * Aparapi kernel for the gradients of the bias weights (added to the gradients matrix)
+ * The negative phase can have a different number of columns than the mini batch (persistent chains). Then the negative statistics are scaled by miniBatchSize / negativeColumns
  */
 public class CDBiasUpdatesKernel extends Kernel implements Serializable {
 
     private static final long serialVersionUID = 1L;
 
     /**
-     * bias weights
+     * bias gradients
      */
-    private final float[] biasWeights;
-    private final int weightsStartIndex;
-    private final int weightsRowStep;
-
-    /**
-     * weight updates
-     */
-    private final float[] biasUpdates;
+    private final float[] biasGradients;
+    private final int gradientsStartIndex;
+    private final int gradientsRowStep;
 
     /**
      * positive phase
@@ -40,11 +36,18 @@ public class CDBiasUpdatesKernel extends Kernel implements Serializable {
     private final int negPhaseRowStep;
     private final int negPhaseColumnStep;
 
-    private float learningRate;
-    private final float momentum;
     private final int miniBatchSize;
+    private final int negativeColumns;
+    private final float negativeScale;
+
+    public CDBiasUpdatesKernel(Matrix biasGradients, Matrix posPhase, Matrix negPhase) {
+	this(biasGradients, posPhase, negPhase, posPhase.getColumns());
+    }
 
-    public CDBiasUpdatesKernel(Matrix hiddenBiasWeights, Matrix posPhase, Matrix negPhase, float learningRate, float momentum) {
+    /**
+     * @param negativeColumns - number of columns of the negative phase matrix, which are used
+     */
+    public CDBiasUpdatesKernel(Matrix biasGradients, Matrix posPhase, Matrix negPhase, int negativeColumns) {
 	super();
 	this.posPhase = posPhase.getElements();
 	this.posPhaseStartIndex = posPhase.getStartIndex();
@@ -56,36 +59,41 @@ public class CDBiasUpdatesKernel extends Kernel implements Serializable {
 	this.negPhaseRowStep = negPhase.getRowElementsDistance();
 	this.negPhaseColumnStep = negPhase.getColumnElementsDistance();
 
-	this.biasWeights = hiddenBiasWeights.getElements();
-	this.weightsStartIndex = hiddenBiasWeights.getStartIndex();
-	this.weightsRowStep = hiddenBiasWeights.getRowElementsDistance();
-	this.biasUpdates = new float[hiddenBiasWeights.getSize()];
-
-	this.learningRate = learningRate;
-	this.momentum = momentum;
+	this.biasGradients = biasGradients.getElements();
+	this.gradientsStartIndex = biasGradients.getStartIndex();
+	this.gradientsRowStep = biasGradients.getRowElementsDistance();
 	this.miniBatchSize = posPhase.getColumns();
+	this.negativeColumns = negativeColumns;
+	this.negativeScale = (float) miniBatchSize / negativeColumns;
     }
 
     @Override
     public void run() {
 	int id = getGlobalId();
-	float weightUpdate = 0;
-
-	for (int i = 0; i < miniBatchSize; i++) {
-	    weightUpdate += posPhase[posPhaseStartIndex + id * posPhaseRowStep + i * posPhaseColumnStep] - negPhase[negPhaseStartIndex + id * negPhaseRowStep + i * negPhaseColumnStep];
+	float gradient = 0;
+
+	if (negativeColumns == miniBatchSize) {
+	    for (int i = 0; i < miniBatchSize; i++) {
+		gradient += posPhase[posPhaseStartIndex + id * posPhaseRowStep + i * posPhaseColumnStep] - negPhase[negPhaseStartIndex + id * negPhaseRowStep + i * negPhaseColumnStep];
+	    }
+	} else {
+	    float negative = 0;
+	    for (int i = 0; i < miniBatchSize; i++) {
+		gradient += posPhase[posPhaseStartIndex + id * posPhaseRowStep + i * posPhaseColumnStep];
+	    }
+
+	    for (int i = 0; i < negativeColumns; i++) {
+		negative += negPhase[negPhaseStartIndex + id * negPhaseRowStep + i * negPhaseColumnStep];
+	    }
+
+	    gradient -= negative * negativeScale;
 	}
 
-	weightUpdate = learningRate * weightUpdate /*/ mbs */ + momentum * biasUpdates[id];
-	biasWeights[weightsStartIndex + id * weightsRowStep] += weightUpdate;
-	biasUpdates[id] = weightUpdate;
+	biasGradients[gradientsStartIndex + id * gradientsRowStep] += gradient;
     }
 
-    public float[] getBiasWeights() {
-        return biasWeights;
-    }
-
-    public float[] getBiasUpdates() {
-        return biasUpdates;
+    public float[] getBiasGradients() {
+        return biasGradients;
     }
 
     public float[] getPosPhase() {
@@ -96,19 +104,11 @@ public class CDBiasUpdatesKernel extends Kernel implements Serializable {
         return negPhase;
     }
 
-    public float getLearningRate() {
-        return learningRate;
-    }
-
-    public void setLearningRate(float learningRate) {
-        this.learningRate = learningRate;
-    }
-
-    public float getMomentum() {
-        return momentum;
-    }
-
     public int getMiniBatchSize() {
         return miniBatchSize;
     }
+
+    public int getNegativeColumns() {
+        return negativeColumns;
+    }
 }
@@ -2,6 +2,7 @@ package com.github.neuralnetworks.training.rbm;
 
 import com.github.neuralnetworks.architecture.types.RBM;
 import com.github.neuralnetworks.calculation.RBMLayerCalculator;
+import com.github.neuralnetworks.tensor.Matrix;
 import com.github.neuralnetworks.training.OneStepTrainer;
 import com.github.neuralnetworks.training.TrainingInputData;
 import com.github.neuralnetworks.training.TrainingInputDataImpl;
@@ -11,6 +12,7 @@ import com.github.neuralnetworks.util.Properties;
 /**
  * Base class for Contrastive Divergence
  * requires RBMLayerCalculator as the layer calculator. This allows for different implementations of the layer calculator, like GPU/CPU for example
+ * If PersistentChains are set (Constants.PERSISTENT_CHAINS) the negative phase comes from their fantasy particles instead of one chain per mini batch column
  */
 public abstract class CDTrainerBase extends OneStepTrainer<RBM> {
 
@@ -35,10 +37,20 @@ public abstract class CDTrainerBase extends OneStepTrainer<RBM> {
     protected void learnInput(int batch) {
 	RBM nn = getNeuralNetwork();
 
-	getLayerCalculator().gibbsSampling(nn, getGibbsSamplingCount(), batch == 0 ? true : !getIsPersistent());
+	PersistentChains chains = getPersistentChains();
+	if (chains != null) {
+	    // only the positive phase
+	    getLayerCalculator().gibbsSampling(nn, 0, false);
+	    if (batch == 0 || !chains.isInitialized()) {
+		chains.initialize(getLayerCalculator().getPositivePhaseVisible());
+	    }
 
-	// update weights
-	updateWeights();
+	    chains.sample(getGibbsSamplingCount());
+	} else {
+	    getLayerCalculator().gibbsSampling(nn, getGibbsSamplingCount(), batch == 0 ? true : !getIsPersistent());
+	}
+
+	computeGradients();
     }
 
     public RBMLayerCalculator getLayerCalculator() {
@@ -57,9 +69,38 @@ public abstract class CDTrainerBase extends OneStepTrainer<RBM> {
 	properties.setParameter(Constants.PERSISTENT_CD, isPersistent);
     }
 
+    public PersistentChains getPersistentChains() {
+	return properties.getParameter(Constants.PERSISTENT_CHAINS);
+    }
+
+    public void setPersistentChains(PersistentChains persistentChains) {
+	properties.setParameter(Constants.PERSISTENT_CHAINS, persistentChains);
+    }
+
+    /**
+     * @return visible values of the negative phase (the chains at inverse temperature 1 are the first getNegativePhaseColumns() columns)
+     */
+    protected Matrix getNegativePhaseVisible() {
+	return getPersistentChains() != null ? getPersistentChains().getVisible() : getLayerCalculator().getNegativePhaseVisible();
+    }
+
+    protected Matrix getNegativePhaseHidden() {
+	return getPersistentChains() != null ? getPersistentChains().getHiddenProbabilities() : getLayerCalculator().getNegativePhaseHidden();
+    }
+
+    /**
+     * @return number of columns of the negative phase, which are used for the gradients
+     */
+    protected int getNegativePhaseColumns() {
+	return getPersistentChains() != null ? getPersistentChains().getParticles() : getNegativePhaseVisible().getColumns();
+    }
+
     public int getGibbsSamplingCount() {
 	return properties.containsKey(Constants.GIBBS_SAMPLING_COUNT) ? (int) properties.get(Constants.GIBBS_SAMPLING_COUNT) : 1;
     }
 
-    protected abstract void updateWeights();
+    /**
+     * Adds the gradients of the current mini batch to the accumulated gradients
+     */
+    protected abstract void computeGradients();
 }
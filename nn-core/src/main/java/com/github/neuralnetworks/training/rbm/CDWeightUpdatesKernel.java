@@ -6,12 +6,21 @@ import com.amd.aparapi.Kernel;
 import com.github.neuralnetworks.tensor.Matrix;
 
 /**
- * Aparapi weight udpates for the connections between the hidden and the visible layers
+ * Aparapi gradients of the connections between the hidden and the visible layers (positive phase statistics - negative phase statistics, summed over the mini batch)
+ * The gradients are added to the gradients matrix, which allows accumulation over several mini batches
+ * The two products (posPhaseHidden * posPhaseVisible^T - negPhaseHidden * negPhaseVisible^T) are calculated as a blocked matrix multiplication: each work item computes a TILE x TILE block of the gradients in registers,
+ * so every loaded value is used TILE times. The range of the kernel is getRange(). The values are summed in the same order as one unit at a time, so the result doesn't depend on the blocking
+ * The negative phase can have a different number of columns than the mini batch (persistent chains). Then the negative statistics are scaled by miniBatchSize / negativeColumns
  */
 public class CDWeightUpdatesKernel extends Kernel implements Serializable {
 
     private static final long serialVersionUID = 1L;
 
+    /**
+     * size of the block of the gradients (hidden x visible units) of one work item
+     */
+    public static final int TILE = 4;
+
     // data parameters
     private final float[] posPhaseVisible;
     private final int posPhaseVisibleStartIndex;
@@ -34,22 +43,26 @@ public class CDWeightUpdatesKernel extends Kernel implements Serializable {
     private final int negPhaseHiddenColumnStep;
 
     private final int miniBatchSize;
+    private final int negativeColumns;
+    private final float negativeScale;
+
+    // gradients parameters
+    private final float[] gradients;
+    private final int gradientsStartIndex;
+    private final int gradientsRowStep;
+    private final int gradientsColumnStep;
+    private final int gradientsColumns;
+    private final int gradientsRows;
+    private final int columnTiles;
+
+    public CDWeightUpdatesKernel(Matrix posPhaseVisible, Matrix posPhaseHidden, Matrix negPhaseVisible, Matrix negPhaseHidden, Matrix gradients) {
+	this(posPhaseVisible, posPhaseHidden, negPhaseVisible, negPhaseHidden, gradients, posPhaseVisible.getColumns());
+    }
 
-    // weights parameters
-    private final float[] weights;
-    private final int weightsStartIndex;
-    private final int weightsRowStep;
-    private final int weightsColumnStep;
-    private final int weightsColumns;
-    private final float[] weightUpdates;
-
-    // learning parameters
-    private float learningRate;
-    private final float momentum;
-    private final float l1weightDecay;
-    private final float l2weightDecay;
-
-    public CDWeightUpdatesKernel(Matrix posPhaseVisible, Matrix posPhaseHidden, Matrix negPhaseVisible, Matrix negPhaseHidden, Matrix weights, float learningRate, float momentum, float l1weightDecay, float l2weightDecay) {
+    /**
+     * @param negativeColumns - number of columns of the negative phase matrices, which are used
+     */
+    public CDWeightUpdatesKernel(Matrix posPhaseVisible, Matrix posPhaseHidden, Matrix negPhaseVisible, Matrix negPhaseHidden, Matrix gradients, int negativeColumns) {
 	super();
 	this.posPhaseVisible = posPhaseVisible.getElements();
 	this.posPhaseVisibleStartIndex = posPhaseVisible.getStartIndex();
@@ -71,41 +84,127 @@ public class CDWeightUpdatesKernel extends Kernel implements Serializable {
 	this.negPhaseHiddenRowStep = negPhaseHidden.getRowElementsDistance();
 	this.negPhaseHiddenColumnStep = negPhaseHidden.getColumnElementsDistance();
 
-	this.weights = weights.getElements();
-	this.weightsStartIndex = weights.getStartIndex();
-	this.weightsRowStep = weights.getRowElementsDistance();
-	this.weightsColumnStep = weights.getColumnElementsDistance();
-	this.weightsColumns = weights.getColumns();
-
-	this.weightUpdates = new float[weights.getSize()];
-	this.learningRate = learningRate;
-	this.momentum = momentum;
-	this.l1weightDecay = l1weightDecay;
-	this.l2weightDecay = l2weightDecay;
+	this.gradients = gradients.getElements();
+	this.gradientsStartIndex = gradients.getStartIndex();
+	this.gradientsRowStep = gradients.getRowElementsDistance();
+	this.gradientsColumnStep = gradients.getColumnElementsDistance();
+	this.gradientsColumns = gradients.getColumns();
+	this.gradientsRows = gradients.getRows();
+	this.columnTiles = (gradientsColumns + TILE - 1) / TILE;
 	this.miniBatchSize = posPhaseVisible.getColumns();
+	this.negativeColumns = negativeColumns;
+	this.negativeScale = (float) miniBatchSize / negativeColumns;
     }
 
     @Override
     public void run() {
 	int id = getGlobalId();
 
-	int weightId = 0, weightUpdateId = 0;
-	float weightUpdate = 0, weight = 0;
+	// the rows and columns of the tile (the ones outside of the matrix are clamped to the last one and are not written)
+	int r0 = (id / columnTiles) * TILE, c0 = (id % columnTiles) * TILE;
+	int r1 = min(r0 + 1, gradientsRows - 1), r2 = min(r0 + 2, gradientsRows - 1), r3 = min(r0 + 3, gradientsRows - 1);
+	int c1 = min(c0 + 1, gradientsColumns - 1), c2 = min(c0 + 2, gradientsColumns - 1), c3 = min(c0 + 3, gradientsColumns - 1);
+	float g00 = 0, g01 = 0, g02 = 0, g03 = 0;
+	float g10 = 0, g11 = 0, g12 = 0, g13 = 0;
+	float g20 = 0, g21 = 0, g22 = 0, g23 = 0;
+	float g30 = 0, g31 = 0, g32 = 0, g33 = 0;
+
+	// if the number of columns differs the missing ones are clamped and multiplied by 0 (the scales are 1 if it doesn't, which keeps the values unchanged)
+	int columns = max(miniBatchSize, negativeColumns);
+	for (int j = 0; j < columns; j++) {
+	    int jp = min(j, miniBatchSize - 1), jn = min(j, negativeColumns - 1);
+	    float ps = j < miniBatchSize ? 1 : 0, ns = j < negativeColumns ? negativeScale : 0;
+	    int ph = posPhaseHiddenStartIndex + jp * posPhaseHiddenColumnStep, nh = negPhaseHiddenStartIndex + jn * negPhaseHiddenColumnStep;
+	    int pv = posPhaseVisibleStartIndex + jp * posPhaseVisibleColumnStep, nv = negPhaseVisibleStartIndex + jn * negPhaseVisibleColumnStep;
+	    float ph0 = ps * posPhaseHidden[ph + r0 * posPhaseHiddenRowStep], nh0 = ns * negPhaseHidden[nh + r0 * negPhaseHiddenRowStep];
+	    float ph1 = ps * posPhaseHidden[ph + r1 * posPhaseHiddenRowStep], nh1 = ns * negPhaseHidden[nh + r1 * negPhaseHiddenRowStep];
+	    float ph2 = ps * posPhaseHidden[ph + r2 * posPhaseHiddenRowStep], nh2 = ns * negPhaseHidden[nh + r2 * negPhaseHiddenRowStep];
+	    float ph3 = ps * posPhaseHidden[ph + r3 * posPhaseHiddenRowStep], nh3 = ns * negPhaseHidden[nh + r3 * negPhaseHiddenRowStep];
+	    float pv0 = posPhaseVisible[pv + c0 * posPhaseVisibleRowStep], nv0 = negPhaseVisible[nv + c0 * negPhaseVisibleRowStep];
+	    float pv1 = posPhaseVisible[pv + c1 * posPhaseVisibleRowStep], nv1 = negPhaseVisible[nv + c1 * negPhaseVisibleRowStep];
+	    float pv2 = posPhaseVisible[pv + c2 * posPhaseVisibleRowStep], nv2 = negPhaseVisible[nv + c2 * negPhaseVisibleRowStep];
+	    float pv3 = posPhaseVisible[pv + c3 * posPhaseVisibleRowStep], nv3 = negPhaseVisible[nv + c3 * negPhaseVisibleRowStep];
+
+	    g00 += ph0 * pv0 - nh0 * nv0;
+	    g01 += ph0 * pv1 - nh0 * nv1;
+	    g02 += ph0 * pv2 - nh0 * nv2;
+	    g03 += ph0 * pv3 - nh0 * nv3;
+	    g10 += ph1 * pv0 - nh1 * nv0;
+	    g11 += ph1 * pv1 - nh1 * nv1;
+	    g12 += ph1 * pv2 - nh1 * nv2;
+	    g13 += ph1 * pv3 - nh1 * nv3;
+	    g20 += ph2 * pv0 - nh2 * nv0;
+	    g21 += ph2 * pv1 - nh2 * nv1;
+	    g22 += ph2 * pv2 - nh2 * nv2;
+	    g23 += ph2 * pv3 - nh2 * nv3;
+	    g30 += ph3 * pv0 - nh3 * nv0;
+	    g31 += ph3 * pv1 - nh3 * nv1;
+	    g32 += ph3 * pv2 - nh3 * nv2;
+	    g33 += ph3 * pv3 - nh3 * nv3;
+	}
 
-	for (int i = 0; i < weightsColumns; i++) {
-	    weightUpdate = 0;
+	if (r0 < gradientsRows) {
+	    int g = gradientsStartIndex + r0 * gradientsRowStep;
+	    gradients[g + c0 * gradientsColumnStep] += g00;
+	    if (c0 + 1 < gradientsColumns) {
+		gradients[g + c1 * gradientsColumnStep] += g01;
+	    }
+	    if (c0 + 2 < gradientsColumns) {
+		gradients[g + c2 * gradientsColumnStep] += g02;
+	    }
+	    if (c0 + 3 < gradientsColumns) {
+		gradients[g + c3 * gradientsColumnStep] += g03;
+	    }
+	}
 
-	    for (int j = 0; j < miniBatchSize; j++) {
-		weightUpdate += posPhaseHidden[posPhaseHiddenStartIndex + id * posPhaseHiddenRowStep + j * posPhaseHiddenColumnStep] * posPhaseVisible[posPhaseVisibleStartIndex + i * posPhaseVisibleRowStep + j * posPhaseVisibleColumnStep] - negPhaseHidden[negPhaseHiddenStartIndex + id * negPhaseHiddenRowStep + j * negPhaseHiddenColumnStep] * negPhaseVisible[negPhaseVisibleStartIndex + i * negPhaseVisibleRowStep + j * negPhaseVisibleColumnStep];
+	if (r0 + 1 < gradientsRows) {
+	    int g = gradientsStartIndex + r1 * gradientsRowStep;
+	    gradients[g + c0 * gradientsColumnStep] += g10;
+	    if (c0 + 1 < gradientsColumns) {
+		gradients[g + c1 * gradientsColumnStep] += g11;
+	    }
+	    if (c0 + 2 < gradientsColumns) {
+		gradients[g + c2 * gradientsColumnStep] += g12;
 	    }
+	    if (c0 + 3 < gradientsColumns) {
+		gradients[g + c3 * gradientsColumnStep] += g13;
+	    }
+	}
 
-	    weightId = weightsStartIndex + id * weightsRowStep + i * weightsColumnStep;
-	    weightUpdateId = id * weightsColumns + i;
-	    weight = weights[weightId];
-	    weightUpdate = learningRate * (weightUpdate /*/ mbs*/ - l1weightDecay * abs(weight) - l2weightDecay * weight * weight / 2) + momentum * weightUpdates[weightUpdateId];
-	    weights[weightId] += weightUpdate;
-	    weightUpdates[weightUpdateId] = weightUpdate;
+	if (r0 + 2 < gradientsRows) {
+	    int g = gradientsStartIndex + r2 * gradientsRowStep;
+	    gradients[g + c0 * gradientsColumnStep] += g20;
+	    if (c0 + 1 < gradientsColumns) {
+		gradients[g + c1 * gradientsColumnStep] += g21;
+	    }
+	    if (c0 + 2 < gradientsColumns) {
+		gradients[g + c2 * gradientsColumnStep] += g22;
+	    }
+	    if (c0 + 3 < gradientsColumns) {
+		gradients[g + c3 * gradientsColumnStep] += g23;
+	    }
 	}
+
+	if (r0 + 3 < gradientsRows) {
+	    int g = gradientsStartIndex + r3 * gradientsRowStep;
+	    gradients[g + c0 * gradientsColumnStep] += g30;
+	    if (c0 + 1 < gradientsColumns) {
+		gradients[g + c1 * gradientsColumnStep] += g31;
+	    }
+	    if (c0 + 2 < gradientsColumns) {
+		gradients[g + c2 * gradientsColumnStep] += g32;
+	    }
+	    if (c0 + 3 < gradientsColumns) {
+		gradients[g + c3 * gradientsColumnStep] += g33;
+	    }
+	}
+    }
+
+    /**
+     * @return the number of work items (one for each tile of the gradients)
+     */
+    public int getRange() {
+	return ((gradientsRows + TILE - 1) / TILE) * columnTiles;
     }
 
     public float[] getPosPhaseHidden() {
@@ -124,35 +223,19 @@ public class CDWeightUpdatesKernel extends Kernel implements Serializable {
         return negPhaseVisible;
     }
 
-    public float[] getWeights() {
-        return weights;
-    }
-
-    public int getWeightColumns() {
-        return weightsColumns;
-    }
-
-    public float getLearningRate() {
-        return learningRate;
+    public float[] getGradients() {
+        return gradients;
     }
 
-    public void setLearningRate(float learningRate) {
-        this.learningRate = learningRate;
-    }
-
-    public float getMomentum() {
-        return momentum;
-    }
-
-    public float getl1WeightDecay() {
-        return l1weightDecay;
-    }
-    
-    public float getl2WeightDecay() {
-	return l1weightDecay;
+    public int getGradientsColumns() {
+        return gradientsColumns;
     }
 
     public int getMiniBatchSize() {
         return miniBatchSize;
     }
+
+    public int getNegativeColumns() {
+        return negativeColumns;
+    }
 }
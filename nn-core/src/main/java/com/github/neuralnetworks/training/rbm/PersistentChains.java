@@ -0,0 +1,342 @@
+package com.github.neuralnetworks.training.rbm;
+
+import java.io.Serializable;
+import java.util.Random;
+
+import com.github.neuralnetworks.architecture.types.RBM;
+import com.github.neuralnetworks.tensor.Matrix;
+import com.github.neuralnetworks.tensor.TensorFactory;
+import com.github.neuralnetworks.training.random.PhiloxKernel;
+import com.github.neuralnetworks.util.Environment;
+
+/**
+ * Persistent fantasy particles for multi-chain persistent contrastive divergence of binary RBMs (sigmoid units with Bernoulli sampling).
+ * The number of particles is independent of the mini batch size. The chains are kept in their own matrices (one column per chain) and all of them are advanced together - one kernel launch for each half of a Gibbs step.
+ * With more than one inverse temperature there are particles chains for each temperature (parallel tempering). The chain at inverse temperature beta samples from exp(-beta * energy),
+ * the chains of all the temperatures are sampled in the same kernel launch and after each Gibbs step the states of the chains with adjacent temperatures are swapped with the Metropolis acceptance probability.
+ * Only the chains at inverse temperature 1 (the first particles columns) are used for the negative phase statistics
+ */
+public class PersistentChains implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final RBM rbm;
+    private final int particles;
+
+    /**
+     * decreasing inverse temperatures - the first one is 1
+     */
+    private final float[] inverseTemperatures;
+    private final Random random;
+
+    /**
+     * states of the chains (particles * number of temperatures columns). The columns of temperature k are [k * particles, (k + 1) * particles)
+     */
+    private final Matrix visible;
+    private final Matrix hiddenInput;
+    private final Matrix hiddenProbabilities;
+    private final Matrix hiddenSamples;
+
+    private GibbsKernel kernel;
+    private boolean initialized;
+
+    /**
+     * swap statistics for each pair of adjacent temperatures
+     */
+    private final long[] swapAttempts;
+    private final long[] swapAccepts;
+
+    /**
+     * @param particles - number of chains for each temperature
+     * @param inverseTemperatures - decreasing positive inverse temperatures starting with 1 (null or { 1 } for no tempering)
+     * @param seed - seed of the random generators
+     */
+    public PersistentChains(RBM rbm, int particles, float[] inverseTemperatures, long seed) {
+	super();
+
+	if (particles < 1) {
+	    throw new IllegalArgumentException("There must be at least one particle");
+	}
+
+	float[] temperatures = inverseTemperatures != null ? inverseTemperatures.clone() : new float[] { 1 };
+	if (temperatures.length == 0 || temperatures[0] != 1) {
+	    throw new IllegalArgumentException("The first inverse temperature must be 1");
+	}
+
+	for (int i = 1; i < temperatures.length; i++) {
+	    if (temperatures[i] <= 0 || temperatures[i] >= temperatures[i - 1]) {
+		throw new IllegalArgumentException("The inverse temperatures must be positive and decreasing");
+	    }
+	}
+
+	this.rbm = rbm;
+	this.particles = particles;
+	this.inverseTemperatures = temperatures;
+	this.random = new Random(seed);
+
+	int columns = particles * temperatures.length;
+	int visibleUnits = rbm.getMainConnections().getWeights().getColumns();
+	int hiddenUnits = rbm.getMainConnections().getWeights().getRows();
+	this.visible = TensorFactory.tensor(visibleUnits, columns);
+	this.hiddenInput = TensorFactory.tensor(hiddenUnits, columns);
+	this.hiddenProbabilities = TensorFactory.tensor(hiddenUnits, columns);
+	this.hiddenSamples = TensorFactory.tensor(hiddenUnits, columns);
+	this.swapAttempts = new long[temperatures.length - 1];
+	this.swapAccepts = new long[temperatures.length - 1];
+    }
+
+    /**
+     * Starts the chains of all the temperatures from the columns of the data (repeated if there are more particles than columns)
+     */
+    public void initialize(Matrix data) {
+	for (int c = 0; c < visible.getColumns(); c++) {
+	    for (int v = 0; v < visible.getRows(); v++) {
+		visible.set(data.get(v, c % data.getColumns()), v, c);
+	    }
+	}
+
+	execute(true);
+	initialized = true;
+    }
+
+    /**
+     * Advances all the chains with steps Gibbs steps (hidden to visible and visible to hidden). With parallel tempering the adjacent temperatures are swapped after each step
+     */
+    public void sample(int steps) {
+	if (!initialized) {
+	    throw new IllegalStateException("The chains are not initialized");
+	}
+
+	for (int i = 0; i < steps; i++) {
+	    execute(false);
+	    execute(true);
+	    swap();
+	}
+    }
+
+    private void execute(boolean toHidden) {
+	if (kernel == null) {
+	    kernel = new GibbsKernel(rbm, visible, hiddenInput, hiddenProbabilities, hiddenSamples, particles, inverseTemperatures, random);
+	}
+
+	kernel.toHidden = toHidden ? 1 : 0;
+	Environment.getInstance().getExecutionStrategy().execute(kernel, (toHidden ? hiddenInput.getRows() : visible.getRows()) * visible.getColumns());
+	kernel.nextOffset();
+    }
+
+    /**
+     * Metropolis swaps of the states of the chains with adjacent temperatures. The acceptance uses the free energy of the visible states, the hidden states of the swapped chains are sampled again
+     */
+    private void swap() {
+	Matrix visibleBias = rbm.getVisibleBiasConnections() != null ? rbm.getVisibleBiasConnections().getWeights() : null;
+	for (int k = 0; k < inverseTemperatures.length - 1; k++) {
+	    float b0 = inverseTemperatures[k], b1 = inverseTemperatures[k + 1];
+	    for (int p = 0; p < particles; p++) {
+		int c0 = k * particles + p, c1 = c0 + particles;
+		double logAcceptance = freeEnergy(b0, c0, visibleBias) + freeEnergy(b1, c1, visibleBias) - freeEnergy(b0, c1, visibleBias) - freeEnergy(b1, c0, visibleBias);
+
+		swapAttempts[k]++;
+		if (logAcceptance >= 0 || random.nextDouble() < Math.exp(logAcceptance)) {
+		    swapAccepts[k]++;
+		    swapColumns(visible, c0, c1);
+		    swapColumns(hiddenInput, c0, c1);
+		    sampleHidden(c0, b0);
+		    sampleHidden(c1, b1);
+		}
+	    }
+	}
+    }
+
+    /**
+     * @return free energy of the visible state of the column at the inverse temperature: -beta * visibleBias * v - sum(log(1 + exp(beta * hiddenInput)))
+     */
+    private double freeEnergy(float beta, int column, Matrix visibleBias) {
+	double result = 0;
+	if (visibleBias != null) {
+	    for (int v = 0; v < visible.getRows(); v++) {
+		result -= beta * visibleBias.get(v, 0) * visible.get(v, column);
+	    }
+	}
+
+	for (int h = 0; h < hiddenInput.getRows(); h++) {
+	    double x = beta * hiddenInput.get(h, column);
+	    result -= x > 0 ? x + Math.log1p(Math.exp(-x)) : Math.log1p(Math.exp(x));
+	}
+
+	return result;
+    }
+
+    private void sampleHidden(int column, float beta) {
+	for (int h = 0; h < hiddenInput.getRows(); h++) {
+	    float p = 1 / (1 + (float) Math.exp(-beta * hiddenInput.get(h, column)));
+	    hiddenProbabilities.set(p, h, column);
+	    hiddenSamples.set(p > random.nextFloat() ? 1 : 0, h, column);
+	}
+    }
+
+    private static void swapColumns(Matrix m, int c0, int c1) {
+	for (int r = 0; r < m.getRows(); r++) {
+	    float v = m.get(r, c0);
+	    m.set(m.get(r, c1), r, c0);
+	    m.set(v, r, c1);
+	}
+    }
+
+    public boolean isInitialized() {
+	return initialized;
+    }
+
+    public int getParticles() {
+	return particles;
+    }
+
+    public float[] getInverseTemperatures() {
+	return inverseTemperatures;
+    }
+
+    /**
+     * @return visible states of the chains. The first particles columns are the chains at inverse temperature 1
+     */
+    public Matrix getVisible() {
+	return visible;
+    }
+
+    /**
+     * @return probabilities of the hidden units given the visible states of the chains
+     */
+    public Matrix getHiddenProbabilities() {
+	return hiddenProbabilities;
+    }
+
+    public Matrix getHiddenSamples() {
+	return hiddenSamples;
+    }
+
+    /**
+     * @return ratio of the accepted swaps between the temperatures k and k + 1
+     */
+    public float getSwapRate(int k) {
+	return swapAttempts[k] > 0 ? (float) swapAccepts[k] / swapAttempts[k] : 0;
+    }
+
+    /**
+     * Samples one layer of all the chains: one work item for each unit of each chain
+     */
+    private static class GibbsKernel extends PhiloxKernel {
+
+	private static final long serialVersionUID = 1L;
+
+	private final float[] weights;
+	private final int weightsStartIndex;
+	private final int weightsRowStep;
+	private final int weightsColumnStep;
+
+	private final float[] visibleBias;
+	private final int visibleBiasStartIndex;
+	private final int visibleBiasRowStep;
+	private final int hasVisibleBias;
+
+	private final float[] hiddenBias;
+	private final int hiddenBiasStartIndex;
+	private final int hiddenBiasRowStep;
+	private final int hasHiddenBias;
+
+	private final float[] visible;
+	private final int visibleRowStep;
+	private final int visibleColumnStep;
+	private final int visibleUnits;
+
+	private final float[] hiddenInput;
+	private final float[] hiddenProbabilities;
+	private final float[] hiddenSamples;
+	private final int hiddenRowStep;
+	private final int hiddenColumnStep;
+	private final int hiddenUnits;
+
+	private final int columns;
+	private final int particles;
+	private final float[] inverseTemperatures;
+
+	/**
+	 * 1 - the hidden layer is sampled from the visible, 0 - the visible from the hidden
+	 */
+	private int toHidden;
+
+	public GibbsKernel(RBM rbm, Matrix visible, Matrix hiddenInput, Matrix hiddenProbabilities, Matrix hiddenSamples, int particles, float[] inverseTemperatures, Random random) {
+	    super(random.nextLong());
+
+	    Matrix w = rbm.getMainConnections().getWeights();
+	    this.weights = w.getElements();
+	    this.weightsStartIndex = w.getStartIndex();
+	    this.weightsRowStep = w.getRowElementsDistance();
+	    this.weightsColumnStep = w.getColumnElementsDistance();
+
+	    Matrix vb = rbm.getVisibleBiasConnections() != null ? rbm.getVisibleBiasConnections().getWeights() : null;
+	    this.visibleBias = vb != null ? vb.getElements() : new float[1];
+	    this.visibleBiasStartIndex = vb != null ? vb.getStartIndex() : 0;
+	    this.visibleBiasRowStep = vb != null ? vb.getRowElementsDistance() : 0;
+	    this.hasVisibleBias = vb != null ? 1 : 0;
+
+	    Matrix hb = rbm.getHiddenBiasConnections() != null ? rbm.getHiddenBiasConnections().getWeights() : null;
+	    this.hiddenBias = hb != null ? hb.getElements() : new float[1];
+	    this.hiddenBiasStartIndex = hb != null ? hb.getStartIndex() : 0;
+	    this.hiddenBiasRowStep = hb != null ? hb.getRowElementsDistance() : 0;
+	    this.hasHiddenBias = hb != null ? 1 : 0;
+
+	    // the hidden matrices are created with the same dimensions, so they have the same layout
+	    this.visible = visible.getElements();
+	    this.visibleRowStep = visible.getRowElementsDistance();
+	    this.visibleColumnStep = visible.getColumnElementsDistance();
+	    this.visibleUnits = visible.getRows();
+
+	    this.hiddenInput = hiddenInput.getElements();
+	    this.hiddenProbabilities = hiddenProbabilities.getElements();
+	    this.hiddenSamples = hiddenSamples.getElements();
+	    this.hiddenRowStep = hiddenInput.getRowElementsDistance();
+	    this.hiddenColumnStep = hiddenInput.getColumnElementsDistance();
+	    this.hiddenUnits = hiddenInput.getRows();
+
+	    this.columns = visible.getColumns();
+	    this.particles = particles;
+	    this.inverseTemperatures = inverseTemperatures;
+	}
+
+	@Override
+	public void run() {
+	    int id = getGlobalId();
+	    int unit = id / columns, column = id % columns;
+	    float beta = inverseTemperatures[column / particles];
+
+	    if (toHidden == 1) {
+		float input = 0;
+		if (hasHiddenBias == 1) {
+		    input = hiddenBias[hiddenBiasStartIndex + unit * hiddenBiasRowStep];
+		}
+
+		int w = weightsStartIndex + unit * weightsRowStep, v = column * visibleColumnStep;
+		for (int i = 0; i < visibleUnits; i++) {
+		    input += weights[w + i * weightsColumnStep] * visible[v + i * visibleRowStep];
+		}
+
+		float p = 1 / (1 + exp(-beta * input));
+		int h = unit * hiddenRowStep + column * hiddenColumnStep;
+		hiddenInput[h] = input;
+		hiddenProbabilities[h] = p;
+		hiddenSamples[h] = p > random01(0) ? 1 : 0;
+	    } else {
+		float input = 0;
+		if (hasVisibleBias == 1) {
+		    input = visibleBias[visibleBiasStartIndex + unit * visibleBiasRowStep];
+		}
+
+		int w = weightsStartIndex + unit * weightsColumnStep, h = column * hiddenColumnStep;
+		for (int i = 0; i < hiddenUnits; i++) {
+		    input += weights[w + i * weightsRowStep] * hiddenSamples[h + i * hiddenRowStep];
+		}
+
+		float p = 1 / (1 + exp(-beta * input));
+		visible[unit * visibleRowStep + column * visibleColumnStep] = p > random01(0) ? 1 : 0;
+	    }
+	}
+    }
+}
@@ -8,8 +8,6 @@ public class Constants {
     public static final String BACKWARD_INPUT_FUNCTION = "backwardInputFunction";
     public static final String ACTIVATION_FUNCTION = "activationFunction";
     public static final String ADD_BIAS = "addBias";
-    public static final String LEARNING_RATE = "learning_rate";
-    public static final String MOMENTUM = "momentum";
     public static final String VISIBLE_COUNT = "visibleCount";
     public static final String HIDDEN_COUNT = "hiddenCount";
     public static final String GIBBS_SAMPLING_COUNT = "gibbsSamplingCount";
@@ -22,6 +20,7 @@ public class Constants {
     public static final String ERROR_CALCULATOR = "errorCalculator";
     public static final String LAYER_CALCULATOR = "layerCalculator";
     public static final String PERSISTENT_CD = "resetRBM";
+    public static final String PERSISTENT_CHAINS = "persistentChains";
     public static final String BACKPROPAGATION = "backpropagation";
     public static final String OUTPUT_ERROR_DERIVATIVE = "outputErrorDerivative";
     public static final String LAYER_TRAINERS = "layerTrainers";
@@ -31,10 +30,20 @@ public class Constants {
     public static final String CORRUPTOR = "corruptionInitializer";
     public static final String INACTIVE_CORRUPTED_VALUE = "inactiveCorruptedValue";
     public static final String ACTIVE_CORRUPTED_VALUE = "activeCorruptedValue";
-    public static final String WEIGHT_UDPATES = "weightUpdates";
+    public static final String GRADIENTS = "gradients";
+    public static final String OPTIMIZER = "optimizer";
+    public static final String GRADIENT_ACCUMULATION_STEPS = "gradientAccumulationSteps";
+    public static final String PREFETCH_DEPTH = "prefetchDepth";
+    public static final String MIXED_PRECISION = "mixedPrecision";
+    public static final String ACTIVATION_CHECKPOINTS = "activationCheckpoints";
+    public static final String FEATURE_CACHE_MEMORY = "featureCacheMemory";
+    public static final String FEATURE_CACHE_DIRECTORY = "featureCacheDirectory";
     public static final String TRAINING_BATCH_SIZE = "batchSize";
     public static final String TEST_BATCH_SIZE = "testBatchSize";
+    public static final String TEST_WORKERS = "testWorkers";
     public static final String EPOCHS = "epochs";
     public static final String CONNECTION_FACTORY = "connectionFactory";
     public static final String DROPOUT_RATE = "dropoutRate";
+    public static final String WORKERS = "workers";
+    public static final String STRIPES = "stripes";
 }
@@ -19,6 +19,11 @@ public class Environment {
      */
     private KernelExecutionStrategy executionStrategy;
 
+    /**
+     * Execution strategy of the current thread only (overrides executionStrategy)
+     */
+    private final ThreadLocal<KernelExecutionStrategy> threadExecutionStrategy = new ThreadLocal<>();
+
     /**
      * Shared memory for calculations
      */
@@ -36,7 +41,31 @@ public class Environment {
     }
 
     public KernelExecutionStrategy getExecutionStrategy() {
-	return executionStrategy;
+	KernelExecutionStrategy result = threadExecutionStrategy.get();
+	return result != null ? result : executionStrategy;
+    }
+
+    public void setExecutionStrategy(KernelExecutionStrategy executionStrategy) {
+	this.executionStrategy = executionStrategy;
+    }
+
+    /**
+     * @return the strategy of the current thread or null if the thread uses the process-wide strategy
+     */
+    public KernelExecutionStrategy getThreadExecutionStrategy() {
+	return threadExecutionStrategy.get();
+    }
+
+    /**
+     * The strategy is used only by the kernels executed by the current thread; the other threads keep the process-wide strategy
+     * @param executionStrategy - null restores the process-wide strategy
+     */
+    public void setThreadExecutionStrategy(KernelExecutionStrategy executionStrategy) {
+	if (executionStrategy != null) {
+	    threadExecutionStrategy.set(executionStrategy);
+	} else {
+	    threadExecutionStrategy.remove();
+	}
     }
 
     public void setExecutionMode(EXECUTION_MODE executionMode) {
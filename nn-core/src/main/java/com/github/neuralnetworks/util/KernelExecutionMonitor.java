@@ -0,0 +1,125 @@
+package com.github.neuralnetworks.util;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import com.amd.aparapi.Kernel;
+import com.amd.aparapi.Kernel.EXECUTION_MODE;
+
+/**
+ * Execution strategy, which delegates to another strategy and records execution statistics for each kernel class.
+ * Kernels, which are executed in a different mode than the requested one (Aparapi fallback), are reported
+ */
+public class KernelExecutionMonitor implements KernelExecutionStrategy {
+
+    private final KernelExecutionStrategy delegate;
+    private final Map<Class<?>, KernelStatistics> statistics;
+
+    public KernelExecutionMonitor(KernelExecutionStrategy delegate) {
+	super();
+	this.delegate = delegate;
+	this.statistics = new LinkedHashMap<>();
+    }
+
+    @Override
+    public void execute(Kernel kernel, int range) {
+	long start = System.nanoTime();
+	delegate.execute(kernel, range);
+	long time = System.nanoTime() - start;
+
+	synchronized (statistics) {
+	    KernelStatistics s = statistics.get(kernel.getClass());
+	    if (s == null) {
+		statistics.put(kernel.getClass(), s = new KernelStatistics(kernel.getClass(), time));
+	    }
+
+	    s.executions++;
+	    s.totalTime += time;
+	    s.requestedMode = delegate.getExecutionMode(range);
+	    s.actualMode = kernel.getExecutionMode();
+	    if (s.actualMode != s.requestedMode) {
+		s.fallbacks++;
+	    }
+	}
+    }
+
+    @Override
+    public EXECUTION_MODE getExecutionMode(int range) {
+	return delegate.getExecutionMode(range);
+    }
+
+    public KernelExecutionStrategy getDelegate() {
+	return delegate;
+    }
+
+    public List<KernelStatistics> getStatistics() {
+	synchronized (statistics) {
+	    return new ArrayList<>(statistics.values());
+	}
+    }
+
+    /**
+     * @return kernels, that were not executed in the requested mode
+     */
+    public List<KernelStatistics> getFallbacks() {
+	return getStatistics().stream().filter(s -> s.fallbacks > 0).collect(Collectors.toList());
+    }
+
+    public static class KernelStatistics {
+
+	private final Class<?> kernelClass;
+	private final long firstExecutionTime;
+	private long totalTime;
+	private int executions;
+	private int fallbacks;
+	private EXECUTION_MODE requestedMode;
+	private EXECUTION_MODE actualMode;
+
+	private KernelStatistics(Class<?> kernelClass, long firstExecutionTime) {
+	    this.kernelClass = kernelClass;
+	    this.firstExecutionTime = firstExecutionTime;
+	}
+
+	public Class<?> getKernelClass() {
+	    return kernelClass;
+	}
+
+	/**
+	 * @return nanoseconds (includes Aparapi bytecode analysis and OpenCL compilation)
+	 */
+	public long getFirstExecutionTime() {
+	    return firstExecutionTime;
+	}
+
+	public long getTotalTime() {
+	    return totalTime;
+	}
+
+	public int getExecutions() {
+	    return executions;
+	}
+
+	/**
+	 * @return number of executions in a different mode than the requested one
+	 */
+	public int getFallbacks() {
+	    return fallbacks;
+	}
+
+	public EXECUTION_MODE getRequestedMode() {
+	    return requestedMode;
+	}
+
+	public EXECUTION_MODE getActualMode() {
+	    return actualMode;
+	}
+
+	@Override
+	public String toString() {
+	    return kernelClass.getSimpleName() + ": executions " + executions + ", first (ms) " + firstExecutionTime / 1000000f + ", total (ms) " + totalTime / 1000000f + ", mode " + requestedMode + (fallbacks > 0 ? " FALLBACK to " + actualMode : "");
+	}
+    }
+}
@@ -11,17 +11,23 @@ public interface KernelExecutionStrategy {
 
     public void execute(Kernel kernel, int range);
 
+    /**
+     * @param range
+     * @return the execution mode, which is requested for this range (the actual mode may be different if Aparapi falls back)
+     */
+    public EXECUTION_MODE getExecutionMode(int range);
+
     public static class DefaultKernelExecution implements KernelExecutionStrategy {
 
 	@Override
 	public void execute(Kernel kernel, int range) {
-	    if (range <= Runtime.getRuntime().availableProcessors() * 600) {
-		kernel.setExecutionMode(EXECUTION_MODE.CPU);
-		kernel.execute(range);
-	    } else {
-		kernel.setExecutionMode(EXECUTION_MODE.GPU);
-		kernel.execute(range);
-	    }
+	    kernel.setExecutionMode(getExecutionMode(range));
+	    kernel.execute(range);
+	}
+
+	@Override
+	public EXECUTION_MODE getExecutionMode(int range) {
+	    return range <= Runtime.getRuntime().availableProcessors() * 600 ? EXECUTION_MODE.CPU : EXECUTION_MODE.GPU;
 	}
     }
 
@@ -32,6 +38,11 @@ public interface KernelExecutionStrategy {
 	    kernel.setExecutionMode(EXECUTION_MODE.JTP);
 	    kernel.execute(range);
 	}
+
+	@Override
+	public EXECUTION_MODE getExecutionMode(int range) {
+	    return EXECUTION_MODE.JTP;
+	}
     }
 
     public static class GPUKernelExecution implements KernelExecutionStrategy {
@@ -41,6 +52,11 @@ public interface KernelExecutionStrategy {
 	    kernel.setExecutionMode(EXECUTION_MODE.GPU);
 	    kernel.execute(range);
 	}
+
+	@Override
+	public EXECUTION_MODE getExecutionMode(int range) {
+	    return EXECUTION_MODE.GPU;
+	}
     }
 
     public static class SeqKernelExecution implements KernelExecutionStrategy {
@@ -50,6 +66,11 @@ public interface KernelExecutionStrategy {
 	    kernel.setExecutionMode(EXECUTION_MODE.SEQ);
 	    kernel.execute(Range.create(range, 1));
 	}
+
+	@Override
+	public EXECUTION_MODE getExecutionMode(int range) {
+	    return EXECUTION_MODE.SEQ;
+	}
     }
 
     public static class CPUKernelExecution implements KernelExecutionStrategy {
@@ -59,5 +80,10 @@ public interface KernelExecutionStrategy {
 	    kernel.setExecutionMode(EXECUTION_MODE.CPU);
 	    kernel.execute(range);
 	}
+
+	@Override
+	public EXECUTION_MODE getExecutionMode(int range) {
+	    return EXECUTION_MODE.CPU;
+	}
     }
 }
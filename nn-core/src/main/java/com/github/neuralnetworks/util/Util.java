@@ -1,15 +1,29 @@
 package com.github.neuralnetworks.util;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.stream.IntStream;
 
 import com.github.neuralnetworks.architecture.Connections;
 import com.github.neuralnetworks.architecture.Conv2DConnection;
 import com.github.neuralnetworks.architecture.FullyConnected;
 import com.github.neuralnetworks.architecture.Layer;
+import com.github.neuralnetworks.architecture.NeuralNetwork;
 import com.github.neuralnetworks.architecture.Subsampling2DConnection;
+import com.github.neuralnetworks.architecture.WeightsConnections;
 
 /**
  * Util class
@@ -117,6 +131,126 @@ public class Util {
 	return connections.stream().filter(c -> isBias(c.getInputLayer())).findAny().isPresent();
     }
 
+    /**
+     * Deep copy of object via serialization. The objects in the shared collection are not copied - the copy references the same instances (identity is used for comparison).
+     * 
+     * @param source
+     * @param shared
+     * @return copy
+     */
+    @SuppressWarnings("unchecked")
+    public static <T extends Serializable> T copy(T source, Collection<?> shared) {
+	List<Object> sharedList = new ArrayList<>(shared);
+	return (T) deserialize(serialize(source, sharedList), sharedList);
+    }
+
+    /**
+     * Java serialization, which writes references for the objects in the shared list instead of the objects themselves
+     * 
+     * @param source
+     * @param shared
+     * @return serialized object
+     */
+    public static byte[] serialize(Object source, List<?> shared) {
+	Map<Object, Integer> sharedIndexes = new IdentityHashMap<>();
+	IntStream.range(0, shared.size()).forEach(i -> sharedIndexes.put(shared.get(i), i));
+
+	try {
+	    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+	    try (ObjectOutputStream oos = new SharedObjectOutputStream(bos, sharedIndexes)) {
+		oos.writeObject(source);
+	    }
+
+	    return bos.toByteArray();
+	} catch (IOException e) {
+	    throw new IllegalArgumentException("Cannot serialize " + source, e);
+	}
+    }
+
+    /**
+     * Reverse of serialize. The shared references are resolved using the shared list
+     * 
+     * @param data
+     * @param shared
+     * @return deserialized object
+     */
+    public static Object deserialize(byte[] data, List<?> shared) {
+	try (ObjectInputStream ois = new SharedObjectInputStream(new ByteArrayInputStream(data), shared)) {
+	    return ois.readObject();
+	} catch (IOException | ClassNotFoundException e) {
+	    throw new IllegalArgumentException("Cannot deserialize object", e);
+	}
+    }
+
+    /**
+     * @param nn
+     * @return the objects, that define the network and should not be copied (layers, connections, weights)
+     */
+    public static Collection<Object> networkObjects(NeuralNetwork nn) {
+	List<Object> result = new ArrayList<>();
+	result.add(nn);
+	result.addAll(nn.getLayers());
+	for (Connections c : nn.getConnections()) {
+	    result.add(c);
+	    if (c instanceof WeightsConnections) {
+		result.add(((WeightsConnections) c).getWeights());
+		result.add(((WeightsConnections) c).getWeights().getElements());
+	    }
+	}
+
+	return result;
+    }
+
+    /**
+     * Replaces shared objects with references during serialization
+     */
+    private static class SharedObjectOutputStream extends ObjectOutputStream {
+
+	private Map<Object, Integer> sharedIndexes;
+
+	public SharedObjectOutputStream(OutputStream out, Map<Object, Integer> sharedIndexes) throws IOException {
+	    super(out);
+	    this.sharedIndexes = sharedIndexes;
+	    enableReplaceObject(true);
+	}
+
+	@Override
+	protected Object replaceObject(Object obj) throws IOException {
+	    Integer index = sharedIndexes.get(obj);
+	    return index != null ? new SharedReference(index) : obj;
+	}
+    }
+
+    /**
+     * Resolves the references created by SharedObjectOutputStream
+     */
+    private static class SharedObjectInputStream extends ObjectInputStream {
+
+	private List<?> shared;
+
+	public SharedObjectInputStream(InputStream in, List<?> shared) throws IOException {
+	    super(in);
+	    this.shared = shared;
+	    enableResolveObject(true);
+	}
+
+	@Override
+	protected Object resolveObject(Object obj) throws IOException {
+	    return obj instanceof SharedReference ? shared.get(((SharedReference) obj).index) : obj;
+	}
+    }
+
+    private static class SharedReference implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final int index;
+
+	public SharedReference(int index) {
+	    this.index = index;
+	}
+    }
+
     public static void printMatrix(float[] array, int rows, int columns) {
 	StringBuilder sb = new StringBuilder();
 	NumberFormat formatter = new DecimalFormat("#0.00");
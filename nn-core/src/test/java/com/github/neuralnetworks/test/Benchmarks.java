@@ -0,0 +1,355 @@
+package com.github.neuralnetworks.test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.IntStream;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.amd.aparapi.Kernel.EXECUTION_MODE;
+import com.github.neuralnetworks.architecture.BinaryModelLoader;
+import com.github.neuralnetworks.architecture.BinaryModelWriter;
+import com.github.neuralnetworks.architecture.NeuralNetworkImpl;
+import com.github.neuralnetworks.architecture.WeightsConnections;
+import com.github.neuralnetworks.architecture.types.NNFactory;
+import com.github.neuralnetworks.architecture.types.RBM;
+import com.github.neuralnetworks.inference.Predictor;
+import com.github.neuralnetworks.input.SimpleInputProvider;
+import com.github.neuralnetworks.tensor.Matrix;
+import com.github.neuralnetworks.tensor.TensorFactory;
+import com.github.neuralnetworks.training.TrainerFactory;
+import com.github.neuralnetworks.training.TrainingInputDataImpl;
+import com.github.neuralnetworks.training.TrainingInputProvider;
+import com.github.neuralnetworks.training.random.MersenneTwisterRandomInitializer;
+import com.github.neuralnetworks.training.random.NNRandomInitializer;
+import com.github.neuralnetworks.training.backpropagation.BackPropagationTrainer;
+import com.github.neuralnetworks.training.backpropagation.DataParallelBackPropagationTrainer;
+import com.github.neuralnetworks.training.backpropagation.HogwildBackPropagationTrainer;
+import com.github.neuralnetworks.training.parameterserver.ParameterServer;
+import com.github.neuralnetworks.training.rbm.AparapiCDTrainer;
+import com.github.neuralnetworks.training.rbm.CDWeightUpdatesKernel;
+import com.github.neuralnetworks.training.rbm.PersistentChains;
+import com.github.neuralnetworks.util.Environment;
+import com.github.neuralnetworks.util.Util;
+
+/**
+ * Performance benchmarks, which print their results. They are not part of the unit tests and run only if the benchmarks system property is set (-Dbenchmarks=true)
+ */
+public class Benchmarks {
+
+    @Before
+    public void enabled() {
+	Assume.assumeTrue(Boolean.getBoolean("benchmarks"));
+    }
+
+    /**
+     * Requests per second of a predictor, which is shared by 1, 2, 4... threads
+     */
+    @Test
+    public void testConcurrentPredictions() throws Exception {
+	Environment.getInstance().setExecutionMode(EXECUTION_MODE.SEQ);
+
+	float[][] samples = InferenceTest.samples(64, 6);
+	Predictor predictor = new Predictor(InferenceTest.network(), 4);
+
+	int maxThreads = Math.max(2, Math.min(8, Runtime.getRuntime().availableProcessors()));
+	for (int threads = 1; threads <= maxThreads; threads *= 2) {
+	    ExecutorService executor = Executors.newFixedThreadPool(threads);
+	    int requests = 200;
+	    long start = System.nanoTime();
+	    try {
+		List<Future<float[][]>> futures = new ArrayList<>();
+		for (int r = 0; r < requests; r++) {
+		    futures.add(executor.submit(() -> predictor.predict(samples)));
+		}
+
+		for (Future<float[][]> f : futures) {
+		    f.get();
+		}
+	    } finally {
+		executor.shutdown();
+	    }
+
+	    double seconds = (System.nanoTime() - start) / 1000000000d;
+	    System.out.println("Inference threads: " + threads + "; requests/s: " + (int) (requests / seconds) + "; contexts: " + predictor.getPoolSize());
+	}
+    }
+
+    /**
+     * Load time of a model with ObjectInputStream and in the binary format
+     */
+    @Test
+    public void testBinaryModelLoad() throws Exception {
+	NeuralNetworkImpl nn = NNFactory.convNN(new int[][] { { 64, 64, 3 }, { 5, 5, 64, 1 }, { 2, 2 }, { 5, 5, 128, 1 }, { 2, 2 }, { 256 }, { 10 } }, true);
+	nn.setLayerCalculator(NNFactory.lcSigmoid(nn, null));
+	NNFactory.lcMaxPooling(nn);
+
+	File binary = File.createTempFile("model", ".bin");
+	binary.deleteOnExit();
+	File serialized = File.createTempFile("model", ".ser");
+	serialized.deleteOnExit();
+
+	BinaryModelWriter.write(nn, binary);
+	try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(serialized))) {
+	    oos.writeObject(nn);
+	}
+
+	long serializedTime = Long.MAX_VALUE, binaryTime = Long.MAX_VALUE;
+	for (int i = 0; i < 3; i++) {
+	    long start = System.nanoTime();
+	    try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(serialized))) {
+		ois.readObject();
+	    }
+	    serializedTime = Math.min(serializedTime, System.nanoTime() - start);
+
+	    start = System.nanoTime();
+	    BinaryModelLoader.load(binary);
+	    binaryTime = Math.min(binaryTime, System.nanoTime() - start);
+	}
+
+	System.out.println("Model load (ms) - ObjectInputStream: " + serializedTime / 1000000 + " (" + serialized.length() / 1024 + " KB); binary: " + binaryTime / 1000000 + " (" + binary.length() / 1024 + " KB)");
+    }
+
+    /**
+     * Time of an epoch of data parallel training with 1, 2, 3... workers
+     */
+    @Test
+    public void testDataParallelScaling() {
+	Environment.getInstance().setExecutionMode(EXECUTION_MODE.SEQ);
+	Environment.getInstance().setUseDataSharedMemory(false);
+	Environment.getInstance().setUseWeightsSharedMemory(false);
+
+	int batchSize = 128;
+	float[][] input = ParallelTrainingTest.samples(batchSize * 4, 256, 1);
+	float[][] target = ParallelTrainingTest.samples(batchSize * 4, 10, 2);
+	NeuralNetworkImpl nn = ParallelTrainingTest.network(new int[] { 256, 256, 10 });
+
+	int maxWorkers = Math.max(2, Math.min(8, Runtime.getRuntime().availableProcessors()));
+	// warm up
+	TrainerFactory.dataParallelBackPropagation(Util.copy(nn, Collections.emptyList()), new SimpleInputProvider(input, target), null, null, null, 0.01f, 0f, 0f, 0f, batchSize, 1, 1, 1).train();
+
+	long serial = 0;
+	for (int workers = 1; workers <= maxWorkers; workers++) {
+	    DataParallelBackPropagationTrainer<?> dpt = TrainerFactory.dataParallelBackPropagation(Util.copy(nn, Collections.emptyList()), new SimpleInputProvider(input, target), null, null, null, 0.01f, 0f, 0f, 0f, batchSize, 1, 1, workers);
+
+	    long start = System.nanoTime();
+	    dpt.train();
+	    long time = System.nanoTime() - start;
+	    serial = workers == 1 ? time : serial;
+
+	    System.out.println("Data parallel training with " + workers + " workers: " + time / 1000000 + "ms, speedup " + String.format("%.2f", (double) serial / time));
+	}
+    }
+
+    /**
+     * Error and wall clock time per epoch of serial, hogwild and striped hogwild training
+     */
+    @Test
+    public void testHogwildConvergence() {
+	Environment.getInstance().setExecutionMode(EXECUTION_MODE.SEQ);
+	Environment.getInstance().setUseDataSharedMemory(false);
+	Environment.getInstance().setUseWeightsSharedMemory(false);
+
+	float[][] input = ParallelTrainingTest.samples(200, 6, 1);
+	float[][] target = ParallelTrainingTest.argmax(input, 4);
+	NeuralNetworkImpl nn = ParallelTrainingTest.network(new int[] { 6, 16, 4 });
+
+	NeuralNetworkImpl serial = Util.copy(nn, Collections.emptyList());
+	BackPropagationTrainer<?> bpt = TrainerFactory.backPropagation(serial, new SimpleInputProvider(input, target), null, null, null, 0.1f, 0.5f, 0f, 0f, 0f, 1, 1, 1);
+
+	NeuralNetworkImpl hogwild = Util.copy(nn, Collections.emptyList());
+	HogwildBackPropagationTrainer<?> hbt = TrainerFactory.hogwildBackPropagation(hogwild, new SimpleInputProvider(input, target), null, null, null, 0.1f, 0.5f, 0f, 0f, 0f, 1, 1, 1, 2);
+
+	NeuralNetworkImpl striped = Util.copy(nn, Collections.emptyList());
+	HogwildBackPropagationTrainer<?> sbt = TrainerFactory.hogwildBackPropagation(striped, new SimpleInputProvider(input, target), null, null, null, 0.1f, 0.5f, 0f, 0f, 0f, 1, 1, 1, 2);
+	striped.getConnections().stream().filter(c -> c instanceof WeightsConnections).forEach(c -> sbt.setStripes(c, 4));
+
+	long serialTime = 0, hogwildTime = 0, stripedTime = 0;
+	for (int epoch = 1; epoch <= 10; epoch++) {
+	    serialTime += time(bpt::train);
+	    hogwildTime += time(hbt::train);
+	    stripedTime += time(sbt::train);
+
+	    System.out.println("Epoch " + epoch + " error (time ms) - serial: " + ParallelTrainingTest.error(serial, input, target) + " (" + serialTime / 1000000 + "); hogwild: " + ParallelTrainingTest.error(hogwild, input, target) + " (" + hogwildTime / 1000000 + "); striped: " + ParallelTrainingTest.error(striped, input, target) + " (" + stripedTime / 1000000 + ")");
+	}
+    }
+
+    /**
+     * Parameter server training with two worker processes compared with the serial training
+     */
+    @Test
+    public void testParameterServer() throws Exception {
+	Environment.getInstance().setExecutionMode(EXECUTION_MODE.SEQ);
+	Environment.getInstance().setUseDataSharedMemory(false);
+	Environment.getInstance().setUseWeightsSharedMemory(false);
+
+	float[][] input = ParallelTrainingTest.samples(200, 6, 1);
+	float[][] target = ParallelTrainingTest.argmax(input, 4);
+	NeuralNetworkImpl nn = ParallelTrainingTest.network(new int[] { 6, 16, 4 });
+	float initial = ParallelTrainingTest.error(nn, input, target);
+
+	NeuralNetworkImpl serial = Util.copy(nn, Collections.emptyList());
+	long serialTime = time(() -> TrainerFactory.backPropagation(serial, new SimpleInputProvider(input, target), null, null, null, 0.1f, 0.5f, 0f, 0f, 0f, 1, 1, 10).train());
+
+	int workers = 2;
+	try (ParameterServer server = new ParameterServer(nn, 0, 5)) {
+	    long start = System.nanoTime();
+	    String output = ParallelTrainingTest.runWorkers(server, workers, "-Dbenchmarks=true");
+	    long time = System.nanoTime() - start;
+
+	    System.out.print(output.replaceAll("(?m)^(?!Worker).*(\\R|$)", ""));
+	    System.out.println("Parameter server: " + server.getReport());
+	    System.out.println("Error - initial: " + initial + "; serial: " + ParallelTrainingTest.error(serial, input, target) + " (" + serialTime / 1000000 + "ms); parameter server " + workers + " workers: " + ParallelTrainingTest.error(nn, input, target) + " (" + time / 1000000 + "ms including JVM startup)");
+	}
+    }
+
+    /**
+     * Samples per second of the parallel and of the sequential population of the mini batches
+     */
+    @Test
+    public void testRandomAccessInputProvider() {
+	float[][] input = new float[1000][24];
+	float[][] target = new float[1000][5];
+	Random r = new Random(123);
+	for (int i = 0; i < input.length; i++) {
+	    for (int j = 0; j < input[i].length; j++) {
+		input[i][j] = r.nextFloat();
+	    }
+
+	    target[i][i % 5] = 1;
+	}
+
+	SimpleInputProvider provider = new SimpleInputProvider(input, target);
+	TrainingInputDataImpl data = new TrainingInputDataImpl(TensorFactory.tensor(24, 128), TensorFactory.tensor(5, 128));
+	int batches = 200;
+
+	provider.reset();
+	long parallel = time(() -> IntStream.range(0, batches).forEach(i -> provider.populateNext(data)));
+
+	provider.reset();
+	long sequential = time(() -> IntStream.range(0, batches).forEach(i -> TrainingInputProvider.populateSequentially(provider, data)));
+
+	float samples = batches * 128 * 1e9f;
+	System.out.println("SimpleInputProvider samples/s - parallel: " + samples / parallel + "; sequential: " + samples / sequential);
+    }
+
+    /**
+     * GFLOP/s of the blocked CD weight gradients kernel and of the unit by unit calculation
+     */
+    @Test
+    public void testCDWeightUpdatesKernel() {
+	Environment.getInstance().setExecutionMode(EXECUTION_MODE.SEQ);
+
+	int hidden = 131, visible = 785, batch = 37, runs = 20;
+	Random r = new Random(123);
+	Matrix posVisible = TensorFactory.tensor(visible, batch), posHidden = TensorFactory.tensor(hidden, batch), negVisible = TensorFactory.tensor(visible, batch), negHidden = TensorFactory.tensor(hidden, batch);
+	for (Matrix m : new Matrix[] { posVisible, posHidden, negVisible, negHidden }) {
+	    IntStream.range(0, m.getSize()).forEach(i -> m.getElements()[i] = r.nextFloat());
+	}
+
+	CDWeightUpdatesKernel kernel = new CDWeightUpdatesKernel(posVisible, posHidden, negVisible, negHidden, TensorFactory.tensor(hidden, visible));
+	Environment.getInstance().getExecutionStrategy().execute(kernel, kernel.getRange());
+
+	long blocked = time(() -> IntStream.range(0, runs).forEach(i -> Environment.getInstance().getExecutionStrategy().execute(kernel, kernel.getRange())));
+
+	float[] gradients = new float[hidden * visible];
+	long unitByUnit = time(() -> IntStream.range(0, runs).forEach(i -> RBMTest.cdWeightGradients(posVisible, posHidden, negVisible, negHidden, gradients)));
+
+	float gflop = 4f * hidden * visible * batch * runs / 1e9f;
+	System.out.println("CD weight gradients GFLOP/s - blocked: " + gflop / (blocked / 1e9f) + "; unit by unit: " + gflop / (unitByUnit / 1e9f));
+    }
+
+    /**
+     * Samples/s of the persistent CD with one chain for each mini batch column and with 40 particles at 3 temperatures
+     */
+    @Test
+    public void testMultiChainPersistentContrastiveDivergence() {
+	Environment.getInstance().setExecutionMode(EXECUTION_MODE.SEQ);
+	Environment.getInstance().setUseWeightsSharedMemory(true);
+
+	float[][] input = new float[][] { { 1, 1, 1, 0, 0, 0 }, { 1, 0, 1, 0, 0, 0 }, { 1, 1, 0, 0, 0, 0 }, { 0, 1, 1, 0, 0, 0 }, { 0, 1, 1, 1, 0, 0 }, { 0, 0, 0, 1, 1, 1 }, { 0, 0, 1, 1, 1, 0 }, { 0, 0, 0, 1, 0, 1 }, { 0, 0, 0, 0, 1, 1 }, { 0, 0, 0, 1, 1, 0 } };
+
+	long[] time = new long[2];
+	for (int i = 0; i < 2; i++) {
+	    RBM rbm = NNFactory.rbm(6, 2, true);
+	    AparapiCDTrainer t = TrainerFactory.cdSigmoidTrainer(rbm, new SimpleInputProvider(input, null), null, null, new NNRandomInitializer(new MersenneTwisterRandomInitializer(-0.01f, 0.01f)), 0.02f, 0.5f, 0f, 0f, 1, 2, 100, true);
+	    if (i == 1) {
+		t.setPersistentChains(new PersistentChains(rbm, 40, new float[] { 1, 0.8f, 0.6f }, 123));
+	    }
+
+	    time[i] = time(t::train);
+	}
+
+	System.out.println("Persistent CD samples/s - one chain per column: " + 1000 * 1e9f / time[0] + "; 40 particles x 3 temperatures: " + 1000 * 1e9f / time[1]);
+    }
+
+    /**
+     * Training time of the whole network and of the top layer with frozen bottom layers
+     */
+    @Test
+    public void testFrozenConnections() {
+	Environment.getInstance().setExecutionMode(EXECUTION_MODE.SEQ);
+	Environment.getInstance().setUseWeightsSharedMemory(false);
+
+	int[] layers = new int[] { 256, 512, 512, 512, 10 };
+	Random r = new Random(123);
+	float[][] input = new float[640][layers[0]], target = new float[640][layers[layers.length - 1]];
+	IntStream.range(0, input.length).forEach(i -> {
+	    IntStream.range(0, input[i].length).forEach(j -> input[i][j] = r.nextFloat());
+	    target[i][r.nextInt(target[i].length)] = 1;
+	});
+
+	long[] times = new long[2];
+	for (int i = 0; i < times.length; i++) {
+	    NeuralNetworkImpl nn = FFNNTest.frozenConnectionsNetwork(layers);
+	    BackPropagationTrainer<?> bt = TrainerFactory.backPropagation(nn, new SimpleInputProvider(input, target), null, null, null, 0.01f, 0f, 0f, 0f, 0f, 64, 1, 1);
+	    if (i == 1) {
+		nn.getConnections().stream().filter(c -> c.getOutputLayer() != nn.getOutputLayer()).forEach(c -> bt.setFrozen(c, true));
+	    }
+
+	    // warm up
+	    bt.train();
+
+	    times[i] = time(bt::train);
+	}
+
+	System.out.println("Full training: " + times[0] / 1000000 + "ms, top layer fine-tuning: " + times[1] / 1000000 + "ms (" + (float) times[0] / times[1] + "x)");
+    }
+
+    /**
+     * Sequential and parallel time of the convolutional backpropagation
+     */
+    @Test
+    public void testConv2DBackpropagation() {
+	Environment.getInstance().setUseDataSharedMemory(true);
+
+	int[] cfg = new int[] { 32, 32, 16, 5, 5, 32, 1, 8 };
+	long[] times = new long[2];
+	EXECUTION_MODE[] modes = new EXECUTION_MODE[] { EXECUTION_MODE.SEQ, EXECUTION_MODE.JTP };
+	for (int i = 0; i < modes.length; i++) {
+	    Environment.getInstance().setExecutionMode(modes[i]);
+	    CNNTest.conv2DBackpropagation(cfg);
+	    times[i] = time(() -> CNNTest.conv2DBackpropagation(cfg));
+	}
+
+	System.out.println("Conv2D backpropagation SEQ: " + times[0] / 1000000 + "ms, JTP: " + times[1] / 1000000 + "ms (" + (float) times[0] / times[1] + "x on " + Runtime.getRuntime().availableProcessors() + " cores)");
+    }
+
+    private static long time(Runnable r) {
+	long start = System.nanoTime();
+	r.run();
+	return System.nanoTime() - start;
+    }
+}
@@ -5,8 +5,10 @@ import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Random;
 import java.util.Set;
 
 import org.junit.Test;
@@ -19,6 +21,7 @@ import com.github.neuralnetworks.architecture.FullyConnected;
 import com.github.neuralnetworks.architecture.Layer;
 import com.github.neuralnetworks.architecture.NeuralNetworkImpl;
 import com.github.neuralnetworks.architecture.Subsampling2DConnection;
+import com.github.neuralnetworks.architecture.WeightsConnections;
 import com.github.neuralnetworks.architecture.types.NNFactory;
 import com.github.neuralnetworks.calculation.ConnectionCalculator;
 import com.github.neuralnetworks.calculation.LayerCalculatorImpl;
@@ -39,14 +42,24 @@ import com.github.neuralnetworks.tensor.Tensor;
 import com.github.neuralnetworks.tensor.TensorFactory;
 import com.github.neuralnetworks.tensor.Tensor.TensorIterator;
 import com.github.neuralnetworks.training.TrainerFactory;
+import com.github.neuralnetworks.training.backpropagation.ActivationCheckpoints;
 import com.github.neuralnetworks.training.backpropagation.BackPropagationConv2D;
 import com.github.neuralnetworks.training.backpropagation.BackPropagationConv2DSigmoid;
+import com.github.neuralnetworks.training.backpropagation.BackPropagationConv2DSigmoid.AparapiBackpropConv2DSigmoid;
 import com.github.neuralnetworks.training.backpropagation.BackPropagationLayerCalculatorImpl;
 import com.github.neuralnetworks.training.backpropagation.BackPropagationSigmoid;
 import com.github.neuralnetworks.training.backpropagation.BackPropagationTrainer;
 import com.github.neuralnetworks.training.backpropagation.BackpropagationAveragePooling2D;
 import com.github.neuralnetworks.training.backpropagation.BackpropagationMaxPooling2D;
+import com.github.neuralnetworks.training.random.MersenneTwisterRandomInitializer;
+import com.github.neuralnetworks.training.random.NNRandomInitializer;
 import com.github.neuralnetworks.util.Environment;
+import com.github.neuralnetworks.util.KernelExecutionStrategy;
+import com.github.neuralnetworks.util.KernelExecutionStrategy.CPUKernelExecution;
+import com.github.neuralnetworks.util.KernelExecutionStrategy.DefaultKernelExecution;
+import com.github.neuralnetworks.util.KernelExecutionStrategy.JTPKernelExecution;
+import com.github.neuralnetworks.util.KernelExecutionStrategy.SeqKernelExecution;
+import com.github.neuralnetworks.util.Util;
 
 /**
  * Tests for convolutional networks
@@ -513,6 +526,97 @@ public class CNNTest {
 	assertEquals(true, bpo.get(1, 2, 2, 1) == o.get(1, 1, 1, 1) / c.getSubsamplingRegionLength());
     }
 
+    /**
+     * The parallel convolutional backpropagation gives exactly the same results as a sequential scatter (in all the execution strategies)
+     */
+    @Test
+    public void testConv2DBackpropagationDeterminism() {
+	Environment.getInstance().setUseDataSharedMemory(true);
+	int[][] configurations = new int[][] { { 6, 6, 3, 3, 3, 4, 1, 3 }, { 7, 7, 2, 3, 3, 2, 2, 2 }, { 8, 8, 1, 2, 2, 3, 2, 1 } };
+	KernelExecutionStrategy previous = Environment.getInstance().getExecutionStrategy();
+	try {
+	    for (int[] cfg : configurations) {
+		float[][] expected = conv2DBackpropagationScatter(cfg);
+		for (KernelExecutionStrategy strategy : new KernelExecutionStrategy[] { new SeqKernelExecution(), new JTPKernelExecution(), new CPUKernelExecution(), new DefaultKernelExecution() }) {
+		    Environment.getInstance().setExecutionStrategy(strategy);
+		    float[][] result = conv2DBackpropagation(cfg);
+		    for (int i = 0; i < expected.length; i++) {
+			assertTrue(strategy.getClass().getSimpleName() + " " + Arrays.toString(cfg) + " " + i, Arrays.equals(expected[i], result[i]));
+		    }
+		}
+	    }
+	} finally {
+	    Environment.getInstance().setExecutionStrategy(previous);
+	}
+    }
+
+    /**
+     * @param cfg - input rows, input columns, input filters, kernel rows, kernel columns, output filters, stride, mini batch size
+     * @return input errors, gradients and output errors
+     */
+    static float[][] conv2DBackpropagation(int[] cfg) {
+	Conv2DConnection c = new Conv2DConnection(new Layer(), new Layer(), cfg[1], cfg[0], cfg[2], cfg[3], cfg[4], cfg[5], cfg[6]);
+	ValuesProvider vp = TensorFactory.tensorProvider(c, cfg[7], true);
+	ValuesProvider activations = TensorFactory.tensorProvider(c, cfg[7], true);
+	Tensor gradients = TensorFactory.tensor(c.getWeights().getDimensions());
+	conv2DBackpropagationValues(c, vp, activations, gradients);
+
+	AparapiBackpropConv2DSigmoid bp = new AparapiBackpropConv2DSigmoid(c, vp, activations, gradients, c.getInputLayer());
+	bp.calculate(Arrays.asList(c), vp, c.getInputLayer());
+
+	return new float[][] { values(vp.get(c.getInputLayer())), values(gradients), values(vp.get(c.getOutputLayer())) };
+    }
+
+    /**
+     * sequential scatter reference (each output position adds its contributions to the input errors and the gradients)
+     */
+    private static float[][] conv2DBackpropagationScatter(int[] cfg) {
+	Conv2DConnection c = new Conv2DConnection(new Layer(), new Layer(), cfg[1], cfg[0], cfg[2], cfg[3], cfg[4], cfg[5], cfg[6]);
+	ValuesProvider vp = TensorFactory.tensorProvider(c, cfg[7], true);
+	ValuesProvider activations = TensorFactory.tensorProvider(c, cfg[7], true);
+	Tensor gradients = TensorFactory.tensor(c.getWeights().getDimensions());
+	conv2DBackpropagationValues(c, vp, activations, gradients);
+
+	Tensor input = vp.get(c.getInputLayer()), output = vp.get(c.getOutputLayer()), a = activations.get(c.getInputLayer()), w = c.getWeights();
+	int s = c.getStride();
+	for (int f = 0; f < c.getOutputFilters(); f++) {
+	    for (int r = 0; r < output.getDimensions()[1]; r++) {
+		for (int col = 0; col < output.getDimensions()[2]; col++) {
+		    for (int i = 0; i < cfg[7]; i++) {
+			float d = output.get(f, r, col, i) * (1 - output.get(f, r, col, i));
+			output.set(d, f, r, col, i);
+			for (int ch = 0; ch < c.getInputFilters(); ch++) {
+			    for (int kr = 0; kr < c.getKernelRows(); kr++) {
+				for (int kc = 0; kc < c.getKernelColumns(); kc++) {
+				    gradients.set(gradients.get(f, ch, kr, kc) + d * a.get(ch, r * s + kr, col * s + kc, i), f, ch, kr, kc);
+				    input.set(input.get(ch, r * s + kr, col * s + kc, i) + d * w.get(f, ch, kr, kc), ch, r * s + kr, col * s + kc, i);
+				}
+			    }
+			}
+		    }
+		}
+	    }
+	}
+
+	return new float[][] { values(input), values(gradients), values(output) };
+    }
+
+    private static void conv2DBackpropagationValues(Conv2DConnection c, ValuesProvider vp, ValuesProvider activations, Tensor gradients) {
+	Random r = new Random(123);
+	Tensor output = vp.get(c.getOutputLayer()), a = activations.get(c.getInputLayer()), w = c.getWeights();
+	output.forEach(i -> output.getElements()[i] = r.nextFloat());
+	a.forEach(i -> a.getElements()[i] = r.nextFloat());
+	w.forEach(i -> w.getElements()[i] = r.nextFloat() - 0.5f);
+	gradients.forEach(i -> gradients.getElements()[i] = r.nextFloat() - 0.5f);
+    }
+
+    private static float[] values(Tensor t) {
+	float[] result = new float[t.getSize()];
+	int[] i = new int[1];
+	t.forEach(j -> result[i[0]++] = t.getElements()[j]);
+	return result;
+    }
+
     @Test
     public void testCNNBackpropagation() {
 	//Environment.getInstance().setExecutionMode(EXECUTION_MODE.SEQ);
@@ -613,6 +717,100 @@ public class CNNTest {
 	assertEquals(-2.87839, b.getWeights().getElements()[b.getWeights().getStartIndex()], 0.00001);
     }
 
+    /**
+     * Backpropagation through a deep convolutional network with activation checkpoints gives the same weights as with all the activations stored
+     */
+    @Test
+    public void testActivationCheckpoints() {
+	Environment.getInstance().setExecutionMode(EXECUTION_MODE.SEQ);
+	Environment.getInstance().setUseDataSharedMemory(false);
+	Environment.getInstance().setUseWeightsSharedMemory(false);
+
+	NeuralNetworkImpl nn = NNFactory.convNN(new int[][] { { 10, 10, 1 }, { 3, 3, 2, 1 }, { 3, 3, 2, 1 }, { 2, 2 }, { 2, 2, 3, 1 }, { 4 }, { 2 } }, true);
+	nn.setLayerCalculator(NNFactory.lcSigmoid(nn, null));
+	new NNRandomInitializer(new MersenneTwisterRandomInitializer(-0.5f, 0.5f)).initialize(nn);
+	NeuralNetworkImpl checkpointed = Util.copy(nn, Collections.emptyList());
+
+	float[][] input = new float[4][100];
+	float[][] target = new float[4][2];
+	for (int i = 0; i < input.length; i++) {
+	    for (int j = 0; j < input[i].length; j++) {
+		input[i][j] = ((i + 1) * j % 7) / 7f;
+	    }
+
+	    target[i][i % 2] = 1;
+	}
+
+	TrainerFactory.backPropagation(nn, new SimpleInputProvider(input, target), null, null, null, 0.5f, 0.5f, 0f, 0f, 0f, 2, 2, 2).train();
+
+	BackPropagationTrainer<?> t = TrainerFactory.backPropagation(checkpointed, new SimpleInputProvider(input, target), null, null, null, 0.5f, 0.5f, 0f, 0f, 0f, 2, 2, 2);
+	ActivationCheckpoints ac = new ActivationCheckpoints(checkpointed, 2);
+	t.setActivationCheckpoints(ac);
+	t.train();
+
+	for (int i = 0; i < nn.getConnections().size(); i++) {
+	    if (nn.getConnections().get(i) instanceof WeightsConnections) {
+		Tensor w1 = ((WeightsConnections) nn.getConnections().get(i)).getWeights();
+		Tensor w2 = ((WeightsConnections) checkpointed.getConnections().get(i)).getWeights();
+		TensorIterator it1 = w1.iterator(), it2 = w2.iterator();
+		while (it1.hasNext()) {
+		    assertEquals("c" + i + nn.getConnections().get(i).getClass().getSimpleName(), w1.getElements()[it1.next()], w2.getElements()[it2.next()], 0.00001f);
+		}
+	    }
+	}
+
+	assertTrue(ac.getSegmentCount() > 1);
+	assertTrue(ac.getStoredSize() < ac.getFullSize());
+	assertTrue(ac.getRecomputedLayers() > 0);
+    }
+
+    /**
+     * A frozen convolutional layer between two trainable ones propagates the errors, but doesn't calculate the gradients of its weights
+     */
+    @Test
+    public void testFrozenConvolution() {
+	Environment.getInstance().setExecutionMode(EXECUTION_MODE.SEQ);
+	Environment.getInstance().setUseDataSharedMemory(false);
+	Environment.getInstance().setUseWeightsSharedMemory(false);
+
+	NeuralNetworkImpl nn = NNFactory.convNN(new int[][] { { 10, 10, 1 }, { 3, 3, 2, 1 }, { 3, 3, 2, 1 }, { 2, 2 }, { 2, 2, 3, 1 }, { 4 }, { 2 } }, true);
+	nn.setLayerCalculator(NNFactory.lcSigmoid(nn, null));
+	NNFactory.lcMaxPooling(nn);
+	new NNRandomInitializer(new MersenneTwisterRandomInitializer(-0.5f, 0.5f)).initialize(nn);
+
+	float[][] input = new float[4][100];
+	float[][] target = new float[4][2];
+	for (int i = 0; i < input.length; i++) {
+	    for (int j = 0; j < input[i].length; j++) {
+		input[i][j] = ((i + 1) * j % 7) / 7f;
+	    }
+
+	    target[i][i % 2] = 1;
+	}
+
+	BackPropagationTrainer<?> t = TrainerFactory.backPropagation(nn, new SimpleInputProvider(input, target), null, null, null, 0.5f, 0.5f, 0f, 0f, 0f, 2, 2, 2);
+
+	// the second convolution and its bias are frozen
+	Conv2DConnection first = (Conv2DConnection) nn.getInputLayer().getConnections().get(0);
+	Layer frozenLayer = first.getOutputLayer().getConnections().stream().filter(c -> c.getInputLayer() == first.getOutputLayer()).findFirst().get().getOutputLayer();
+	List<Connections> frozen = new ArrayList<>();
+	nn.getConnections().stream().filter(c -> c.getOutputLayer() == frozenLayer).forEach(frozen::add);
+	assertEquals(2, frozen.size());
+	frozen.forEach(c -> t.setFrozen(c, true));
+
+	float[] firstWeights = first.getWeights().getElements().clone();
+	float[][] frozenWeights = frozen.stream().map(c -> ((WeightsConnections) c).getWeights().getElements().clone()).toArray(float[][]::new);
+	t.train();
+
+	assertTrue(!Arrays.equals(firstWeights, first.getWeights().getElements()));
+	for (int i = 0; i < frozen.size(); i++) {
+	    assertTrue(Arrays.equals(frozenWeights[i], ((WeightsConnections) frozen.get(i)).getWeights().getElements()));
+
+	    Tensor g = t.getGradients().get(frozen.get(i));
+	    g.forEach(j -> assertEquals(0, g.getElements()[j], 0));
+	}
+    }
+
     @Test
     public void testCNNStride() {
 	//Environment.getInstance().setExecutionMode(EXECUTION_MODE.SEQ);
@@ -2,13 +2,18 @@ package com.github.neuralnetworks.test;
 
 import static org.junit.Assert.assertEquals;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
+import java.util.stream.IntStream;
 
 import org.junit.Test;
 
+import com.amd.aparapi.Kernel.EXECUTION_MODE;
+
 import com.github.neuralnetworks.architecture.FullyConnected;
 import com.github.neuralnetworks.architecture.Layer;
 import com.github.neuralnetworks.architecture.NeuralNetwork;
@@ -25,10 +30,14 @@ import com.github.neuralnetworks.tensor.Matrix;
 import com.github.neuralnetworks.tensor.Tensor;
 import com.github.neuralnetworks.tensor.TensorFactory;
 import com.github.neuralnetworks.training.DNNLayerTrainer;
+import com.github.neuralnetworks.training.FeatureCache;
 import com.github.neuralnetworks.training.OneStepTrainer;
 import com.github.neuralnetworks.training.TrainerFactory;
 import com.github.neuralnetworks.training.rbm.AparapiCDTrainer;
+import com.github.neuralnetworks.training.random.MersenneTwisterRandomInitializer;
+import com.github.neuralnetworks.training.random.NNRandomInitializer;
 import com.github.neuralnetworks.util.Environment;
+import com.github.neuralnetworks.util.Util;
 
 public class DNNTest {
 
@@ -315,4 +324,74 @@ public class DNNTest {
 	assertEquals(-0.4 - 0.08680013, cgb2.get(0, 0), 0.00001);
 	assertEquals(0.2 - 0.02693379, cgb2.get(1, 0), 0.00001);
     }
+
+    /**
+     * The pre-training with cached features (in memory and spilled to disk) gives the same weights as the pre-training, which calculates the features for each batch
+     */
+    @Test
+    public void testFeatureCache() {
+	Environment.getInstance().setExecutionMode(EXECUTION_MODE.SEQ);
+	Environment.getInstance().setUseWeightsSharedMemory(false);
+	Environment.getInstance().setUseDataSharedMemory(false);
+
+	DBN dbn = NNFactory.dbn(new int[] { 6, 5, 4, 3 }, true);
+	dbn.setLayerCalculator(NNFactory.lcSigmoid(dbn, null));
+	new NNRandomInitializer(new MersenneTwisterRandomInitializer(-0.5f, 0.5f)).initialize(dbn);
+	DBN memory = Util.copy(dbn, Collections.emptyList()), spilled = Util.copy(dbn, Collections.emptyList());
+
+	// 10 samples in batches of 3 - the batches wrap around the samples
+	float[][] input = new float[10][6];
+	for (int i = 0; i < input.length; i++) {
+	    for (int j = 0; j < input[i].length; j++) {
+		input[i][j] = (i + j) % 3 == 0 ? 1 : 0;
+	    }
+	}
+
+	featureCacheTrainer(dbn, input).train();
+
+	DNNLayerTrainer t = featureCacheTrainer(memory, input);
+	t.setFeatureCache(1 << 20, null);
+	t.train();
+
+	t = featureCacheTrainer(spilled, input);
+	t.setFeatureCache(0, null);
+	t.train();
+
+	for (int i = 0; i < dbn.getConnections().size(); i++) {
+	    Tensor w = ((FullyConnected) dbn.getConnections().get(i)).getWeights();
+	    for (DBN copy : new DBN[] { memory, spilled }) {
+		Tensor cw = ((FullyConnected) copy.getConnections().get(i)).getWeights();
+		Iterator<Integer> it = w.iterator(), cit = cw.iterator();
+		while (it.hasNext()) {
+		    assertEquals(w.getElements()[it.next()], cw.getElements()[cit.next()], 0);
+		}
+	    }
+	}
+
+	// chunks in memory and in the file
+	Tensor batch = TensorFactory.tensor(2, 3, 7), result = TensorFactory.tensor(2, 3, 7);
+	IntStream.range(0, batch.getSize()).forEach(i -> batch.getElements()[i] = i);
+	try (FeatureCache cache = new FeatureCache(new int[] { 2, 3 }, 10, 4, 4 * 6 * 4, null)) {
+	    assertEquals(4 * 6 * 4, cache.getMemorySize());
+	    assertEquals(2 * 4 * 6 * 4, cache.getSpilledSize());
+	    cache.put(0, batch, 0, 7);
+	    cache.put(7, batch, 4, 3);
+	    cache.get(2, result, 0, 7);
+	    cache.get(9, result, 0, 1);
+	}
+
+	assertEquals(batch.get(1, 2, 6), result.get(1, 2, 4), 0);
+	assertEquals(batch.get(0, 1, 5), result.get(0, 1, 3), 0);
+	assertEquals(batch.get(1, 1, 6), result.get(1, 1, 0), 0);
+	assertEquals(batch.get(1, 0, 5), result.get(1, 0, 6), 0);
+    }
+
+    private static DNNLayerTrainer featureCacheTrainer(DBN dbn, float[][] input) {
+	Map<NeuralNetwork, OneStepTrainer<?>> layerTrainers = new HashMap<>();
+	for (RBM rbm : dbn.getNeuralNetworks()) {
+	    layerTrainers.put(rbm, TrainerFactory.cdSigmoidTrainer(rbm, null, null, null, null, 0.5f, 0.5f, 0f, 0f, 1, 3, 4, false));
+	}
+
+	return TrainerFactory.dnnLayerTrainer(dbn, layerTrainers, new SimpleInputProvider(input, null), null, null);
+    }
 }
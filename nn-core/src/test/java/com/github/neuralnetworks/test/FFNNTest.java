@@ -1,13 +1,20 @@
 package com.github.neuralnetworks.test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Random;
 import java.util.Set;
+import java.util.stream.IntStream;
 
 import org.junit.Test;
 
@@ -19,19 +26,44 @@ import com.github.neuralnetworks.architecture.Layer;
 import com.github.neuralnetworks.architecture.NeuralNetworkImpl;
 import com.github.neuralnetworks.architecture.types.NNFactory;
 import com.github.neuralnetworks.calculation.BreadthFirstOrderStrategy;
+import com.github.neuralnetworks.calculation.LayerCalculatorImpl;
 import com.github.neuralnetworks.calculation.LayerOrderStrategy.ConnectionCandidate;
 import com.github.neuralnetworks.calculation.TargetLayerOrderStrategy;
 import com.github.neuralnetworks.calculation.memory.ValuesProvider;
+import com.github.neuralnetworks.calculation.neuronfunctions.AparapiMaxout;
+import com.github.neuralnetworks.calculation.neuronfunctions.AparapiNoise;
+import com.github.neuralnetworks.calculation.neuronfunctions.AparapiSigmoid;
 import com.github.neuralnetworks.calculation.neuronfunctions.AparapiWeightedSumConnectionCalculator;
 import com.github.neuralnetworks.calculation.neuronfunctions.ConnectionCalculatorFullyConnected;
+import com.github.neuralnetworks.calculation.neuronfunctions.InvertedDropout;
 import com.github.neuralnetworks.calculation.neuronfunctions.MaxoutWinners;
+import com.github.neuralnetworks.inference.Predictor;
+import com.github.neuralnetworks.input.MultipleNeuronsOutputError;
 import com.github.neuralnetworks.input.SimpleInputProvider;
 import com.github.neuralnetworks.tensor.Matrix;
+import com.github.neuralnetworks.tensor.Precision;
 import com.github.neuralnetworks.tensor.Tensor;
 import com.github.neuralnetworks.tensor.TensorFactory;
 import com.github.neuralnetworks.training.TrainerFactory;
+import com.github.neuralnetworks.training.TrainingCheckpoint;
+import com.github.neuralnetworks.training.TrainingInputData;
+import com.github.neuralnetworks.training.backpropagation.ActivationCheckpoints;
+import com.github.neuralnetworks.training.backpropagation.BackPropagationLayerCalculatorImpl;
 import com.github.neuralnetworks.training.backpropagation.BackPropagationTrainer;
+import com.github.neuralnetworks.training.backpropagation.MixedPrecision;
+import com.github.neuralnetworks.training.events.CheckpointListener;
+import com.github.neuralnetworks.training.events.MiniBatchFinishedEvent;
+import com.github.neuralnetworks.training.optimizers.AdagradOptimizer;
+import com.github.neuralnetworks.training.optimizers.AdamOptimizer;
+import com.github.neuralnetworks.training.optimizers.MomentumOptimizer;
+import com.github.neuralnetworks.training.optimizers.NesterovOptimizer;
+import com.github.neuralnetworks.training.optimizers.Optimizer;
+import com.github.neuralnetworks.training.optimizers.RMSPropOptimizer;
+import com.github.neuralnetworks.training.optimizers.WeightArena;
+import com.github.neuralnetworks.training.random.MersenneTwisterRandomInitializer;
+import com.github.neuralnetworks.training.random.NNRandomInitializer;
 import com.github.neuralnetworks.util.Environment;
+import com.github.neuralnetworks.util.Util;
 
 /**
  * General feedforward neural networks tests
@@ -403,8 +435,9 @@ public class FFNNTest {
 	assertEquals(0.1, cg1.get(1, 1), 0.001);
 	assertEquals(0.194, cg1.get(1, 2), 0.001);
 
-	assertEquals(-0.261 * 0.99, cg2.get(0, 0), 0.001);
-	assertEquals(-0.138 * 0.99, cg2.get(0, 1), 0.001);
+	// inverted dropout - the weights are not rescaled after the training
+	assertEquals(-0.261, cg2.get(0, 0), 0.001);
+	assertEquals(-0.138, cg2.get(0, 1), 0.001);
 
 	assertEquals(-0.408, cgb1.get(0, 0), 0.001);
 	assertEquals(0.194, cgb1.get(1, 0), 0.001);
@@ -412,6 +445,200 @@ public class FFNNTest {
 	assertEquals(0.218, cgb2.get(0, 0), 0.001);
     }
 
+    /**
+     * Inverted dropout - the kept values are scaled during the training, the mask zeroes the errors of the dropped units in the backpropagation and the weights aren't rescaled after the training
+     */
+    @Test
+    public void testInvertedDropout() {
+	Environment.getInstance().setExecutionMode(EXECUTION_MODE.SEQ);
+	Environment.getInstance().setUseWeightsSharedMemory(false);
+
+	Tensor t = TensorFactory.tensor(10000);
+	t.forEach(i -> t.getElements()[i] = 1);
+	InvertedDropout d = new InvertedDropout(0.25f, 42);
+	d.value(t);
+	assertEquals(313, d.getMask().length);
+	int kept = 0;
+	for (int i = 0; i < t.getSize(); i++) {
+	    assertEquals(d.isKept(i) ? 1 / 0.75f : 0, t.getElements()[i], 0);
+	    kept += d.isKept(i) ? 1 : 0;
+	}
+	assertEquals(0.75f, kept / 10000f, 0.02f);
+
+	// the soft relu derivative of a dropped unit isn't 0, so only the mask stops the gradients
+	NeuralNetworkImpl mlp = NNFactory.mlpSoftRelu(new int[] { 4, 16, 16, 1 }, true, new AparapiSigmoid());
+	Random r = new Random(123);
+	mlp.getConnections().stream().map(c -> ((FullyConnected) c).getWeights()).forEach(w -> w.forEach(i -> w.getElements()[i] = r.nextFloat() - 0.5f));
+
+	List<Connections> c = mlp.getConnections();
+	Layer hidden = c.get(2).getOutputLayer();
+	float[] weights = ((FullyConnected) c.get(2)).getWeights().getElements().clone();
+	float[] bias = ((FullyConnected) c.get(3)).getWeights().getElements().clone();
+
+	BackPropagationTrainer<?> bpt = TrainerFactory.backPropagation(mlp, new SimpleInputProvider(new float[][] { { 1, 0, 1, 0.5f } }, new float[][] { { 1 } }), new SimpleInputProvider(new float[][] { { 1, 0, 1, 0.5f } }, new float[][] { { 1 } }), null, null, 0.1f, 0f, 0f, 0f, 0.5f, 1, 1, 1);
+	ConnectionCalculatorFullyConnected cc = (ConnectionCalculatorFullyConnected) ((LayerCalculatorImpl) mlp.getLayerCalculator()).getConnectionCalculator(hidden);
+
+	boolean[] keptUnits = new boolean[16];
+	bpt.addEventListener(e -> {
+	    if (e instanceof MiniBatchFinishedEvent) {
+		IntStream.range(0, 16).forEach(i -> keptUnits[i] = ((InvertedDropout) cc.getDropoutFunction()).isKept(i));
+	    }
+	});
+	bpt.train();
+
+	Matrix w = ((FullyConnected) c.get(2)).getWeights();
+	Matrix b = ((FullyConnected) c.get(3)).getWeights();
+	int changed = 0;
+	for (int i = 0; i < 16; i++) {
+	    for (int j = 0; j < 16; j++) {
+		if (!keptUnits[i]) {
+		    assertEquals(weights[w.getStartIndex() + i * w.getRowElementsDistance() + j * w.getColumnElementsDistance()], w.get(i, j), 0);
+		} else if (weights[w.getStartIndex() + i * w.getRowElementsDistance() + j * w.getColumnElementsDistance()] != w.get(i, j)) {
+		    changed++;
+		}
+	    }
+
+	    if (!keptUnits[i]) {
+		assertEquals(bias[b.getStartIndex() + i * b.getRowElementsDistance()], b.get(i, 0), 0);
+	    }
+	}
+
+	assertTrue(changed > 0);
+
+	// no dropout for inference
+	assertEquals(0, cc.getDropoutRate(), 0);
+	assertTrue(cc.getDropoutFunction() == null);
+    }
+
+    /**
+     * the trainer applies dropout to the hidden layer and never to the output layer
+     */
+    @Test
+    public void testDropoutPlacement() {
+	Environment.getInstance().setExecutionMode(EXECUTION_MODE.SEQ);
+	Environment.getInstance().setUseWeightsSharedMemory(false);
+
+	NeuralNetworkImpl mlp = NNFactory.mlpSigmoid(new int[] { 4, 32, 2 }, true);
+	Random r = new Random(123);
+	mlp.getConnections().stream().map(c -> ((FullyConnected) c).getWeights()).forEach(w -> w.forEach(i -> w.getElements()[i] = r.nextFloat() - 0.5f));
+
+	List<Connections> c = mlp.getConnections();
+	Layer hidden = c.get(0).getOutputLayer();
+	float[] weights = ((FullyConnected) c.get(0)).getWeights().getElements().clone();
+	float[] bias = ((FullyConnected) c.get(1)).getWeights().getElements().clone();
+
+	float[][] input = new float[][] { { 1, 0, 1, 0.5f } }, target = new float[][] { { 1, 0 } };
+	BackPropagationTrainer<?> bpt = TrainerFactory.backPropagation(mlp, new SimpleInputProvider(input, target), new SimpleInputProvider(input, target), null, null, 0.5f, 0f, 0f, 0f, 0.5f, 1, 1, 1);
+	LayerCalculatorImpl lc = (LayerCalculatorImpl) mlp.getLayerCalculator();
+	ConnectionCalculatorFullyConnected hiddenCC = (ConnectionCalculatorFullyConnected) lc.getConnectionCalculator(hidden);
+	ConnectionCalculatorFullyConnected outputCC = (ConnectionCalculatorFullyConnected) lc.getConnectionCalculator(mlp.getOutputLayer());
+	assertEquals(0.5f, hiddenCC.getDropoutRate(), 0);
+	assertEquals(0, outputCC.getDropoutRate(), 0);
+
+	boolean[] keptUnits = new boolean[32];
+	bpt.addEventListener(e -> {
+	    if (e instanceof MiniBatchFinishedEvent) {
+		// the predictions are not masked or scaled
+		assertTrue(outputCC.getDropoutFunction() == null);
+		IntStream.range(0, 32).forEach(i -> keptUnits[i] = ((InvertedDropout) hiddenCC.getDropoutFunction()).isKept(i));
+	    }
+	});
+	bpt.train();
+
+	// the dropped hidden units receive no gradients
+	Matrix w = ((FullyConnected) c.get(0)).getWeights();
+	Matrix b = ((FullyConnected) c.get(1)).getWeights();
+	int dropped = 0, changed = 0;
+	for (int i = 0; i < 32; i++) {
+	    if (!keptUnits[i]) {
+		dropped++;
+		assertEquals(bias[b.getStartIndex() + i * b.getRowElementsDistance()], b.get(i, 0), 0);
+	    }
+
+	    for (int j = 0; j < 4; j++) {
+		float before = weights[w.getStartIndex() + i * w.getRowElementsDistance() + j * w.getColumnElementsDistance()];
+		if (!keptUnits[i]) {
+		    assertEquals(before, w.get(i, j), 0);
+		} else if (before != w.get(i, j)) {
+		    changed++;
+		}
+	    }
+	}
+
+	assertTrue(dropped > 0);
+	assertTrue(changed > 0);
+	assertEquals(0, hiddenCC.getDropoutRate(), 0);
+    }
+
+    /**
+     * fine-tuning of the top layer with frozen bottom layers
+     */
+    @Test
+    public void testFrozenConnections() {
+	Environment.getInstance().setExecutionMode(EXECUTION_MODE.SEQ);
+	Environment.getInstance().setUseWeightsSharedMemory(false);
+
+	int[] layers = new int[] { 32, 64, 64, 64, 8 };
+	Random r = new Random(123);
+	float[][] input = new float[16][layers[0]], target = new float[16][layers[layers.length - 1]];
+	IntStream.range(0, 16).forEach(i -> {
+	    IntStream.range(0, input[i].length).forEach(j -> input[i][j] = r.nextFloat());
+	    target[i][r.nextInt(target[i].length)] = 1;
+	});
+
+	NeuralNetworkImpl frozen = frozenConnectionsNetwork(layers), full = frozenConnectionsNetwork(layers);
+	BackPropagationTrainer<?> ft = TrainerFactory.backPropagation(frozen, new SimpleInputProvider(input, target), null, null, null, 0.1f, 0.9f, 0f, 0.01f, 0f, 16, 1, 1);
+	BackPropagationTrainer<?> t = TrainerFactory.backPropagation(full, new SimpleInputProvider(input, target), null, null, null, 0.1f, 0.9f, 0f, 0.01f, 0f, 16, 1, 1);
+
+	// only the connections to the output layer are trained
+	List<Connections> fc = frozen.getConnections(), c = full.getConnections();
+	fc.stream().filter(con -> con.getOutputLayer() != frozen.getOutputLayer()).forEach(con -> ft.setFrozen(con, true));
+	assertTrue(ft.isFrozen(fc.get(0)));
+	assertFalse(ft.isFrozen(fc.get(fc.size() - 1)));
+
+	Set<Layer> calculated = new HashSet<>();
+	BackPropagationLayerCalculatorImpl bplc = (BackPropagationLayerCalculatorImpl) ft.getBPLayerCalculator();
+	bplc.addEventListener(e -> calculated.add(e.getLayer()));
+
+	float[][] weights = fc.stream().map(con -> ((FullyConnected) con).getWeights().getElements().clone()).toArray(float[][]::new);
+	ft.train();
+	t.train();
+
+	for (int i = 0; i < fc.size(); i++) {
+	    float[] fw = ((FullyConnected) fc.get(i)).getWeights().getElements(), w = ((FullyConnected) c.get(i)).getWeights().getElements();
+	    if (ft.isFrozen(fc.get(i))) {
+		assertTrue(Arrays.equals(weights[i], fw));
+		assertFalse(Arrays.equals(weights[i], w));
+	    } else {
+		// the gradients of the top layer don't depend on the layers below
+		assertFalse(Arrays.equals(weights[i], fw));
+		assertTrue(Arrays.equals(w, fw));
+	    }
+	}
+
+	// no errors are propagated below the output layer
+	assertEquals(new HashSet<>(Arrays.asList(frozen.getOutputLayer())), bplc.getErrorLayers());
+	assertEquals(new HashSet<>(Arrays.asList(fc.get(fc.size() - 2).getInputLayer(), fc.get(fc.size() - 1).getInputLayer())), calculated);
+
+	// the input and the bias layers never have errors
+	Set<Layer> errorLayers = ((BackPropagationLayerCalculatorImpl) t.getBPLayerCalculator()).getErrorLayers();
+	assertEquals(4, errorLayers.size());
+	assertFalse(errorLayers.contains(full.getInputLayer()));
+	assertTrue(errorLayers.stream().noneMatch(Util::isBias));
+
+	// unfreezing trains the whole network again
+	fc.forEach(con -> ft.setFrozen(con, false));
+	ft.train();
+	assertFalse(Arrays.equals(weights[0], ((FullyConnected) fc.get(0)).getWeights().getElements()));
+    }
+
+    static NeuralNetworkImpl frozenConnectionsNetwork(int[] layers) {
+	NeuralNetworkImpl result = NNFactory.mlpSigmoid(layers, true);
+	Random r = new Random(456);
+	result.getConnections().stream().map(c -> ((FullyConnected) c).getWeights()).forEach(w -> w.forEach(i -> w.getElements()[i] = (r.nextFloat() - 0.5f) * 0.2f));
+	return result;
+    }
+
     /**
      * maxout ff
      */
@@ -451,8 +678,9 @@ public class FFNNTest {
 	assertEquals(3.6f, out.get(0, 1), 0f);
 	assertEquals(3.7f, out.get(1, 1), 0f);
 
-	int[] winners = MaxoutWinners.getInstance().getWinners();
-	int startIndex = MaxoutWinners.getInstance().getStartPositions(Arrays.asList(new Connections[] {c.get(0)}))[0];
+	MaxoutWinners mw = ((AparapiMaxout) ((LayerCalculatorImpl) nn.getLayerCalculator()).getConnectionCalculator(nn.getOutputLayer())).getMaxoutWinners();
+	int[] winners = mw.getWinners();
+	int startIndex = mw.getStartPositions(Arrays.asList(new Connections[] {c.get(0)}))[0];
 	assertEquals(1, winners[startIndex], 0);
 	assertEquals(1, winners[startIndex + 1], 0);
     }
@@ -665,4 +893,404 @@ public class FFNNTest {
 	assertTrue(ccc.get(0).connection == l.getConnections().get(0));
 	assertTrue(ccc.get(1).connection == l.getConnections().get(1));
     }
+
+    @Test
+    public void testWeightArena() {
+	Environment.getInstance().setExecutionMode(EXECUTION_MODE.SEQ);
+
+	// the weights share one array - the gradients do the same and the adjacent connections are merged
+	Environment.getInstance().setUseWeightsSharedMemory(true);
+	NeuralNetworkImpl shared = NNFactory.mlpSigmoid(new int[] { 3, 4, 2 }, true);
+	WeightArena arena = new MomentumOptimizer(0.1f, 0f, 0f, 0f).getArena(shared, TrainerFactory.gradients(shared));
+	assertEquals(3 * 4 + 4 + 4 * 2 + 2, arena.getSize());
+	assertTrue(arena.getSegments().size() < shared.getConnections().size());
+
+	Environment.getInstance().setUseWeightsSharedMemory(false);
+	NeuralNetworkImpl separate = NNFactory.mlpSigmoid(new int[] { 3, 4, 2 }, true);
+	arena = new MomentumOptimizer(0.1f, 0f, 0f, 0f).getArena(separate, TrainerFactory.gradients(separate));
+	assertEquals(3 * 4 + 4 + 4 * 2 + 2, arena.getSize());
+	assertEquals(separate.getConnections().size(), arena.getSegments().size());
+    }
+
+    @Test
+    public void testOptimizers() {
+	Environment.getInstance().setExecutionMode(EXECUTION_MODE.SEQ);
+	Environment.getInstance().setUseDataSharedMemory(false);
+	Environment.getInstance().setUseWeightsSharedMemory(false);
+
+	// xor
+	float[][] input = new float[][] { { 0, 0 }, { 0, 1 }, { 1, 0 }, { 1, 1 } };
+	float[][] target = new float[][] { { 0 }, { 1 }, { 1 }, { 0 } };
+
+	NeuralNetworkImpl initial = NNFactory.mlpSigmoid(new int[] { 2, 4, 1 }, true);
+	Random r = new Random(123);
+	initial.getConnections().stream().map(c -> ((FullyConnected) c).getWeights()).forEach(w -> w.forEach(i -> w.getElements()[i] = r.nextFloat() - 0.5f));
+
+	Optimizer[] optimizers = new Optimizer[] { new MomentumOptimizer(0.5f, 0f, 0f, 0f), new MomentumOptimizer(0.5f, 0.9f, 0f, 0f), new NesterovOptimizer(0.5f, 0.9f, 0f, 0f), new AdagradOptimizer(0.5f, 0f, 0f), new RMSPropOptimizer(0.05f, 0f, 0f), new AdamOptimizer(0.05f, 0f, 0f) };
+	int[] epochs = new int[optimizers.length];
+	for (int i = 0; i < optimizers.length; i++) {
+	    NeuralNetworkImpl mlp = Util.copy(initial, Collections.emptyList());
+	    BackPropagationTrainer<?> bpt = TrainerFactory.backPropagation(mlp, new SimpleInputProvider(input, target), null, null, null, 0f, 0f, 0f, 0f, 0f, 4, 4, 1);
+	    bpt.setOptimizer(optimizers[i]);
+
+	    while (epochs[i] < 5000 && error(mlp, input, target) > 0.01f) {
+		bpt.train();
+		epochs[i]++;
+	    }
+	}
+
+	// the plain SGD is the slowest
+	for (int i = 1; i < optimizers.length; i++) {
+	    assertTrue(epochs[i] < 5000);
+	    assertTrue(epochs[i] < epochs[0]);
+	}
+    }
+
+    @Test
+    public void testGradientAccumulation() {
+	Environment.getInstance().setExecutionMode(EXECUTION_MODE.SEQ);
+	Environment.getInstance().setUseDataSharedMemory(false);
+	Environment.getInstance().setUseWeightsSharedMemory(false);
+
+	float[][] input = new float[][] { { 0, 0 }, { 0, 1 }, { 1, 0 }, { 1, 1 } };
+	float[][] target = new float[][] { { 0 }, { 1 }, { 1 }, { 0 } };
+
+	NeuralNetworkImpl initial = NNFactory.mlpSigmoid(new int[] { 2, 4, 1 }, true);
+	new NNRandomInitializer(new MersenneTwisterRandomInitializer(-0.5f, 0.5f)).initialize(initial);
+
+	// one mini batch of 4 examples
+	NeuralNetworkImpl whole = Util.copy(initial, Collections.emptyList());
+	BackPropagationTrainer<?> bpt = TrainerFactory.backPropagation(whole, new SimpleInputProvider(input, target), null, null, null, 0.5f, 0.9f, 0f, 0f, 0f, 4, 4, 3);
+	bpt.train();
+
+	// two accumulated mini batches of 2 examples
+	NeuralNetworkImpl accumulated = Util.copy(initial, Collections.emptyList());
+	bpt = TrainerFactory.backPropagation(accumulated, new SimpleInputProvider(input, target), null, null, null, 0.5f, 0.9f, 0f, 0f, 0f, 2, 4, 3);
+	bpt.setGradientAccumulationSteps(2);
+	bpt.train();
+
+	assertSameWeights(whole, accumulated);
+    }
+
+    @Test
+    public void testInputPrefetching() {
+	Environment.getInstance().setExecutionMode(EXECUTION_MODE.SEQ);
+	Environment.getInstance().setUseDataSharedMemory(false);
+	Environment.getInstance().setUseWeightsSharedMemory(false);
+
+	float[][] input = new float[][] { { 0, 0 }, { 0, 1 }, { 1, 0 }, { 1, 1 } };
+	float[][] target = new float[][] { { 0 }, { 1 }, { 1 }, { 0 } };
+
+	NeuralNetworkImpl initial = NNFactory.mlpSigmoid(new int[] { 2, 4, 1 }, true);
+	new NNRandomInitializer(new MersenneTwisterRandomInitializer(-0.5f, 0.5f)).initialize(initial);
+
+	NeuralNetworkImpl synchronous = Util.copy(initial, Collections.emptyList());
+	TrainerFactory.backPropagation(synchronous, new SimpleInputProvider(input, target), null, null, null, 0.5f, 0.9f, 0f, 0f, 0f, 2, 4, 20).train();
+
+	// the batches are the same and come in the same order
+	NeuralNetworkImpl prefetched = Util.copy(initial, Collections.emptyList());
+	BackPropagationTrainer<?> bpt = TrainerFactory.backPropagation(prefetched, new SimpleInputProvider(input, target), null, null, null, 0.5f, 0.9f, 0f, 0f, 0f, 2, 4, 20);
+	bpt.setPrefetchDepth(2);
+	bpt.train();
+
+	assertSameWeights(synchronous, prefetched);
+	assertTrue(bpt.getInputTime() > 0);
+	assertTrue(bpt.getComputeTime() > 0);
+    }
+
+    @Test
+    public void testMixedPrecision() {
+	Environment.getInstance().setExecutionMode(EXECUTION_MODE.SEQ);
+	Environment.getInstance().setUseDataSharedMemory(false);
+	Environment.getInstance().setUseWeightsSharedMemory(false);
+
+	float[][] input = new float[][] { { 0, 0 }, { 0, 1 }, { 1, 0 }, { 1, 1 } };
+	float[][] target = new float[][] { { 0 }, { 1 }, { 1 }, { 0 } };
+
+	NeuralNetworkImpl initial = NNFactory.mlpSigmoid(new int[] { 2, 4, 1 }, true);
+	new NNRandomInitializer(new MersenneTwisterRandomInitializer(-0.5f, 0.5f)).initialize(initial);
+
+	// the last one starts with a loss scale, which overflows
+	MixedPrecision[] modes = new MixedPrecision[] { null, new MixedPrecision(Precision.BFLOAT16), new MixedPrecision(Precision.FLOAT16), new MixedPrecision(Precision.FLOAT16, 1e30f, 50) };
+	int[] epochs = new int[modes.length];
+	for (int i = 0; i < modes.length; i++) {
+	    NeuralNetworkImpl mlp = Util.copy(initial, Collections.emptyList());
+	    BackPropagationTrainer<?> bpt = TrainerFactory.backPropagation(mlp, new SimpleInputProvider(input, target), null, null, null, 0.5f, 0.9f, 0f, 0f, 0f, 4, 4, 1);
+	    bpt.setMixedPrecision(modes[i]);
+
+	    while (epochs[i] < 5000 && error(mlp, input, target) > 0.01f) {
+		bpt.train();
+		epochs[i]++;
+	    }
+	}
+
+	// convergence parity with float32
+	for (int i = 1; i < modes.length; i++) {
+	    assertFalse(modes[i].isStarted());
+	    assertTrue(epochs[i] < 2 * epochs[0]);
+	}
+
+	assertEquals(0, modes[2].getSkippedSteps());
+	assertTrue(modes[3].getSkippedSteps() > 0);
+	assertTrue(modes[3].getLossScale() < 1e30f);
+    }
+
+    /**
+     * Training with activation checkpoints gives the same weights as with all the activations stored
+     */
+    @Test
+    public void testActivationCheckpoints() {
+	Environment.getInstance().setExecutionMode(EXECUTION_MODE.SEQ);
+	Environment.getInstance().setUseDataSharedMemory(false);
+	Environment.getInstance().setUseWeightsSharedMemory(false);
+
+	float[][] input = new float[][] { { 0, 0 }, { 0, 1 }, { 1, 0 }, { 1, 1 } };
+	float[][] target = new float[][] { { 0 }, { 1 }, { 1 }, { 0 } };
+
+	NeuralNetworkImpl mlp = NNFactory.mlpSigmoid(new int[] { 2, 8, 8, 8, 8, 8, 8, 8, 8, 1 }, true);
+	new NNRandomInitializer(new MersenneTwisterRandomInitializer(-0.5f, 0.5f)).initialize(mlp);
+	NeuralNetworkImpl checkpointed = Util.copy(mlp, Collections.emptyList());
+
+	BackPropagationTrainer<?> bpt = TrainerFactory.backPropagation(mlp, new SimpleInputProvider(input, target), null, null, null, 0.5f, 0.9f, 0f, 0f, 0f, 4, 4, 3);
+	bpt.train();
+
+	BackPropagationTrainer<?> cbpt = TrainerFactory.backPropagation(checkpointed, new SimpleInputProvider(input, target), null, null, null, 0.5f, 0.9f, 0f, 0f, 0f, 4, 4, 3);
+	ActivationCheckpoints ac = new ActivationCheckpoints(checkpointed, 4);
+	cbpt.setActivationCheckpoints(ac);
+	cbpt.train();
+
+	assertSameWeights(mlp, checkpointed);
+
+	// 9 calculated layers - checkpoints every 3 layers
+	assertEquals(3, ac.getSegmentCount());
+	assertTrue(ac.getStoredSize() < ac.getFullSize());
+	assertTrue(ac.getRecomputedLayers() > 0);
+	assertTrue(ac.getRecomputedLayers() < ac.getForwardLayers());
+
+	// manual checkpoints
+	ActivationCheckpoints manual = new ActivationCheckpoints(checkpointed, 4, Arrays.asList(checkpointed.getLayers().stream().filter(l -> !Util.isBias(l)).toArray(Layer[]::new)));
+	assertEquals(0, manual.getSegmentCount());
+	assertEquals(manual.getFullSize(), manual.getStoredSize());
+    }
+
+    /**
+     * Parallel testing in shards with automatic batch size gives the same output error as the serial testing with batch size 1 (and calls the batch hooks of the input provider)
+     */
+    @Test
+    public void testParallelTesting() {
+	Environment.getInstance().setExecutionMode(EXECUTION_MODE.SEQ);
+	Environment.getInstance().setUseDataSharedMemory(false);
+	Environment.getInstance().setUseWeightsSharedMemory(false);
+
+	Random r = new Random(123);
+	float[][] input = new float[999][4];
+	float[][] target = new float[999][3];
+	for (int i = 0; i < input.length; i++) {
+	    for (int j = 0; j < input[i].length; j++) {
+		input[i][j] = r.nextFloat();
+	    }
+
+	    target[i][r.nextInt(3)] = 1;
+	}
+
+	NeuralNetworkImpl mlp = NNFactory.mlpSigmoid(new int[] { 4, 16, 3 }, true);
+	new NNRandomInitializer(new MersenneTwisterRandomInitializer(-1f, 1f)).initialize(mlp);
+
+	// the batch hooks are counted (they are called one at a time)
+	int[] hooks = new int[2];
+	SimpleInputProvider testInput = new SimpleInputProvider(input, target) {
+	    private static final long serialVersionUID = 1L;
+
+	    @Override
+	    public void beforeBatch(TrainingInputData ti) {
+		hooks[0]++;
+	    }
+
+	    @Override
+	    public void afterBatch(TrainingInputData ti) {
+		hooks[1]++;
+	    }
+	};
+
+	MultipleNeuronsOutputError serial = new MultipleNeuronsOutputError();
+	BackPropagationTrainer<?> bpt = TrainerFactory.backPropagation(mlp, null, testInput, serial, null, 0f, 0f, 0f, 0f, 0f, 1, 1, 1);
+	bpt.setTestWorkers(1);
+	bpt.test();
+
+	MultipleNeuronsOutputError parallel = new MultipleNeuronsOutputError();
+	bpt.setOutputError(parallel);
+	bpt.setTestWorkers(4);
+	bpt.setTestBatchSize(0);
+	int[] batches = new int[1];
+	Set<Thread> threads = Collections.synchronizedSet(new HashSet<>());
+	bpt.addEventListener(e -> {
+	    if (e instanceof MiniBatchFinishedEvent) {
+		batches[0]++;
+		threads.add(Thread.currentThread());
+	    }
+	});
+
+	// the second test reuses the cached contexts
+	for (int i = 0; i < 2; i++) {
+	    batches[0] = 0;
+	    hooks[0] = hooks[1] = 0;
+	    bpt.test();
+
+	    assertEquals(999, parallel.getTotalInputSize());
+	    assertEquals(serial.getTotalErrorSamples(), parallel.getTotalErrorSamples());
+	    assertEquals(serial.getTotalNetworkError(), parallel.getTotalNetworkError(), 0);
+	    assertEquals(4, batches[0]);
+	    assertEquals(4, hooks[0]);
+	    assertEquals(4, hooks[1]);
+	}
+
+	// explicit batch size with a smaller last batch in each shard
+	bpt.setTestBatchSize(100);
+	batches[0] = 0;
+	bpt.test();
+	assertEquals(serial.getTotalErrorSamples(), parallel.getTotalErrorSamples());
+	assertEquals(12, batches[0]);
+
+	// the input modifiers are not shared by the testing threads - the testing is serial
+	testInput.addInputModifier(t -> {});
+	threads.clear();
+	bpt.test();
+	assertEquals(serial.getTotalErrorSamples(), parallel.getTotalErrorSamples());
+	assertEquals(Collections.singleton(Thread.currentThread()), threads);
+    }
+
+    /**
+     * The training is interrupted and resumed from the last checkpoint - the result is the same as without the interruption
+     */
+    @Test
+    public void testCheckpointResume() throws IOException {
+	Environment.getInstance().setExecutionMode(EXECUTION_MODE.SEQ);
+	Environment.getInstance().setUseDataSharedMemory(false);
+	Environment.getInstance().setUseWeightsSharedMemory(false);
+
+	float[][] input = new float[][] { { 0, 0 }, { 0, 1 }, { 1, 0 }, { 1, 1 } };
+	float[][] target = new float[][] { { 0 }, { 1 }, { 1 }, { 0 } };
+
+	NeuralNetworkImpl initial = NNFactory.mlpSigmoid(new int[] { 2, 4, 1 }, true);
+	new NNRandomInitializer(new MersenneTwisterRandomInitializer(-0.5f, 0.5f)).initialize(initial);
+
+	NeuralNetworkImpl mlp = Util.copy(initial, Collections.emptyList());
+	BackPropagationTrainer<?> bpt = TrainerFactory.backPropagation(mlp, new SimpleInputProvider(input, target), null, null, null, 0.5f, 0.9f, 0f, 0f, 0f, 1, 1, 4);
+	bpt.setOptimizer(new AdamOptimizer(0.05f, 0, 0));
+	bpt.train();
+
+	File dir = Files.createTempDirectory("checkpoints").toFile();
+	try {
+	    // interrupted after 7 mini batches
+	    NeuralNetworkImpl interrupted = Util.copy(initial, Collections.emptyList());
+	    BackPropagationTrainer<?> t1 = TrainerFactory.backPropagation(interrupted, new SimpleInputProvider(input, target), null, null, null, 0.5f, 0.9f, 0f, 0f, 0f, 1, 1, 4);
+	    t1.setOptimizer(new AdamOptimizer(0.05f, 0, 0));
+	    CheckpointListener cl = new CheckpointListener(dir, 1, 2);
+	    cl.setIncremental(3, 2);
+	    t1.addEventListener(cl);
+	    t1.addEventListener(e -> {
+		if (e instanceof MiniBatchFinishedEvent && ((MiniBatchFinishedEvent) e).getBatchCount() == 6) {
+		    t1.stopTraining();
+		}
+	    });
+	    t1.train();
+
+	    assertEquals(7, cl.getWritten() + cl.getPostponed());
+	    assertTrue(CheckpointListener.checkpoints(dir).length <= 3);
+
+	    // the last checkpoint is after the 7th mini batch, unless the previous one was still being written
+	    TrainingCheckpoint c = CheckpointListener.latest(dir);
+	    assertTrue(c.getBatch() > 0 && c.getBatch() <= 7);
+	    assertEquals(c.getBatch(), c.getPosition());
+	    assertEquals(c.getBatch(), c.getOptimizerStep());
+
+	    // resumed in a new network and trainer
+	    NeuralNetworkImpl resumed = Util.copy(initial, Collections.emptyList());
+	    BackPropagationTrainer<?> t2 = TrainerFactory.backPropagation(resumed, new SimpleInputProvider(input, target), null, null, null, 0.5f, 0.9f, 0f, 0f, 0f, 1, 1, 4);
+	    t2.setOptimizer(new AdamOptimizer(0.05f, 0, 0));
+	    t2.addEventListener(cl);
+	    t2.train(c);
+	    assertSameWeights(mlp, resumed);
+
+	    // the resumed run has it's own checkpoints, which don't depend on the ones of the first run
+	    assertTrue(cl.getWritten() > 0);
+	    File[] files = CheckpointListener.checkpoints(dir);
+	    assertTrue(files[files.length - 1].getName().startsWith("checkpoint-000001-"));
+	    Arrays.stream(files).filter(f -> f.getName().startsWith("checkpoint-000000-")).forEach(File::delete);
+	    TrainingCheckpoint last = CheckpointListener.latest(dir);
+	    assertTrue(last.getBatch() > c.getBatch());
+	} finally {
+	    Arrays.stream(dir.listFiles()).forEach(File::delete);
+	    dir.delete();
+	}
+    }
+
+    /**
+     * The dropout kernels and the noise of the input are restored from the checkpoint (with and without prefetching), so the resumed training is the same as the original one
+     */
+    @Test
+    public void testCheckpointRandomState() {
+	Environment.getInstance().setExecutionMode(EXECUTION_MODE.SEQ);
+	Environment.getInstance().setUseDataSharedMemory(false);
+	Environment.getInstance().setUseWeightsSharedMemory(false);
+
+	float[][] input = new float[][] { { 0, 0 }, { 0, 1 }, { 1, 0 }, { 1, 1 } };
+	float[][] target = new float[][] { { 0 }, { 1 }, { 1 }, { 0 } };
+
+	NeuralNetworkImpl initial = NNFactory.mlpSigmoid(new int[] { 2, 8, 1 }, true);
+	new NNRandomInitializer(new MersenneTwisterRandomInitializer(-0.5f, 0.5f)).initialize(initial);
+
+	for (int depth : new int[] { 0, 2 }) {
+	    NeuralNetworkImpl mlp = Util.copy(initial, Collections.emptyList());
+	    SimpleInputProvider ip = new SimpleInputProvider(input, target);
+	    ip.addInputModifier(new AparapiNoise(TensorFactory.tensor(2, 2), 0.3f, 0, 1));
+	    BackPropagationTrainer<?> t1 = TrainerFactory.backPropagation(mlp, ip, null, null, null, 0.5f, 0.9f, 0f, 0f, 0.5f, 2, 1, 3);
+	    t1.setPrefetchDepth(depth);
+	    TrainingCheckpoint[] c = new TrainingCheckpoint[1];
+	    t1.addEventListener(e -> {
+		if (e instanceof MiniBatchFinishedEvent && ((MiniBatchFinishedEvent) e).getBatchCount() == 2) {
+		    c[0] = t1.checkpoint();
+		}
+	    });
+	    t1.train();
+
+	    assertEquals(2, c[0].getRandomKernels().length);
+	    assertTrue(c[0].getInputState() != null);
+
+	    // the new noise and dropout kernels have different seeds
+	    NeuralNetworkImpl resumed = Util.copy(initial, Collections.emptyList());
+	    SimpleInputProvider rip = new SimpleInputProvider(input, target);
+	    rip.addInputModifier(new AparapiNoise(TensorFactory.tensor(2, 2), 0.3f, 0, 2));
+	    BackPropagationTrainer<?> t2 = TrainerFactory.backPropagation(resumed, rip, null, null, null, 0.5f, 0.9f, 0f, 0f, 0.5f, 2, 1, 3);
+	    t2.train(c[0]);
+
+	    assertSameWeights(mlp, resumed);
+	}
+    }
+
+    private static void assertSameWeights(NeuralNetworkImpl nn1, NeuralNetworkImpl nn2) {
+	for (int i = 0; i < nn1.getConnections().size(); i++) {
+	    Tensor w1 = ((FullyConnected) nn1.getConnections().get(i)).getWeights();
+	    Tensor w2 = ((FullyConnected) nn2.getConnections().get(i)).getWeights();
+	    Tensor.TensorIterator it1 = w1.iterator(), it2 = w2.iterator();
+	    while (it1.hasNext()) {
+		assertEquals(w1.getElements()[it1.next()], w2.getElements()[it2.next()], 0.00001f);
+	    }
+	}
+    }
+
+    /**
+     * @return mean squared error of the network
+     */
+    private static float error(NeuralNetworkImpl nn, float[][] input, float[][] target) {
+	float[][] output = new Predictor(nn, input.length).predict(input);
+	float error = 0;
+	for (int i = 0; i < output.length; i++) {
+	    for (int j = 0; j < output[i].length; j++) {
+		error += (output[i][j] - target[i][j]) * (output[i][j] - target[i][j]);
+	    }
+	}
+
+	return error / output.length;
+    }
 }
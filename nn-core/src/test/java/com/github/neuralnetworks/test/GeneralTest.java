@@ -1,32 +1,48 @@
 package com.github.neuralnetworks.test;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.awt.geom.AffineTransform;
 import java.io.File;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.stream.IntStream;
 
 import org.junit.Test;
 
 import com.amd.aparapi.Kernel.EXECUTION_MODE;
+import com.github.neuralnetworks.architecture.BinaryModelLoader;
+import com.github.neuralnetworks.architecture.BinaryModelWriter;
 import com.github.neuralnetworks.architecture.ConnectionFactory;
+import com.github.neuralnetworks.architecture.Connections;
 import com.github.neuralnetworks.architecture.Conv2DConnection;
 import com.github.neuralnetworks.architecture.FullyConnected;
 import com.github.neuralnetworks.architecture.Layer;
 import com.github.neuralnetworks.architecture.NeuralNetworkImpl;
+import com.github.neuralnetworks.architecture.Subsampling2DConnection;
+import com.github.neuralnetworks.architecture.WeightsConnections;
 import com.github.neuralnetworks.architecture.types.NNFactory;
 import com.github.neuralnetworks.calculation.memory.ValuesProvider;
+import com.github.neuralnetworks.calculation.neuronfunctions.AparapiNoise;
 import com.github.neuralnetworks.calculation.neuronfunctions.SoftmaxFunction;
+import com.github.neuralnetworks.inference.Predictor;
+import com.github.neuralnetworks.input.ConfusionMatrixOutputError;
 import com.github.neuralnetworks.input.FileImageInputProvider;
+import com.github.neuralnetworks.input.MultipleNeuronsOutputError;
 import com.github.neuralnetworks.input.ScalingInputFunction;
 import com.github.neuralnetworks.input.SimpleInputProvider;
 import com.github.neuralnetworks.tensor.Matrix;
+import com.github.neuralnetworks.tensor.Precision;
 import com.github.neuralnetworks.tensor.Tensor;
 import com.github.neuralnetworks.tensor.TensorFactory;
+import com.github.neuralnetworks.training.TrainingInputDataImpl;
+import com.github.neuralnetworks.training.TrainingInputProvider;
 import com.github.neuralnetworks.training.random.MersenneTwisterRandomInitializer;
 import com.github.neuralnetworks.training.random.NNRandomInitializer;
+import com.github.neuralnetworks.training.random.PhiloxKernel;
 import com.github.neuralnetworks.util.Environment;
 import com.github.neuralnetworks.util.Util;
 
@@ -455,4 +471,226 @@ public class GeneralTest {
 	assertEquals(28 / 255f, image2[4], 0f);
 	assertEquals(237 / 255f, image2[5], 0f);
     }
+
+    @Test
+    public void testBinaryModel() throws Exception {
+	Environment.getInstance().setExecutionMode(EXECUTION_MODE.SEQ);
+
+	boolean sharedMemory = Environment.getInstance().getUseWeightsSharedMemory();
+	try {
+	    for (boolean shared : new boolean[] { true, false }) {
+		Environment.getInstance().setUseWeightsSharedMemory(shared);
+
+		NeuralNetworkImpl nn = NNFactory.convNN(new int[][] { { 8, 8, 2 }, { 3, 3, 3, 1 }, { 2, 2 }, { 5 }, { 2 } }, true);
+		nn.setLayerCalculator(NNFactory.lcSigmoid(nn, null));
+		NNFactory.lcMaxPooling(nn);
+		new NNRandomInitializer(new MersenneTwisterRandomInitializer(-0.5f, 0.5f)).initialize(nn);
+
+		File file = File.createTempFile("model", ".bin");
+		file.deleteOnExit();
+		BinaryModelWriter.write(nn, file);
+		NeuralNetworkImpl loaded = BinaryModelLoader.load(file);
+
+		assertEquals(nn.getLayers().size(), loaded.getLayers().size());
+		assertEquals(nn.getConnections().size(), loaded.getConnections().size());
+		for (int i = 0; i < nn.getConnections().size(); i++) {
+		    Connections c1 = nn.getConnections().get(i);
+		    Connections c2 = loaded.getConnections().get(i);
+		    assertEquals(c1.getClass(), c2.getClass());
+		    assertEquals(c1.getInputUnitCount(), c2.getInputUnitCount());
+		    assertEquals(c1.getOutputUnitCount(), c2.getOutputUnitCount());
+		    if (c1 instanceof Subsampling2DConnection) {
+			assertEquals(((Subsampling2DConnection) c1).getSubsamplingRegionRows(), ((Subsampling2DConnection) c2).getSubsamplingRegionRows());
+		    }
+
+		    if (c1 instanceof WeightsConnections) {
+			Tensor w1 = ((WeightsConnections) c1).getWeights();
+			Tensor w2 = ((WeightsConnections) c2).getWeights();
+			assertTrue(java.util.Arrays.equals(w1.getDimensions(), w2.getDimensions()));
+			Iterator<Integer> it1 = w1.iterator();
+			Iterator<Integer> it2 = w2.iterator();
+			while (it1.hasNext()) {
+			    assertEquals(w1.getElements()[it1.next()], w2.getElements()[it2.next()], 0);
+			}
+		    }
+		}
+
+		// the layer calculator is restored with the network
+		float[] sample = new float[128];
+		IntStream.range(0, sample.length).forEach(i -> sample[i] = (i % 7) / 7f);
+		float[] expected = new Predictor(nn, 1).predict(sample);
+		float[] actual = new Predictor(loaded, 1).predict(sample);
+		for (int i = 0; i < expected.length; i++) {
+		    assertEquals(expected[i], actual[i], 0);
+		}
+
+		// weights only
+		NeuralNetworkImpl target = NNFactory.convNN(new int[][] { { 8, 8, 2 }, { 3, 3, 3, 1 }, { 2, 2 }, { 5 }, { 2 } }, true);
+		target.setLayerCalculator(NNFactory.lcSigmoid(target, null));
+		NNFactory.lcMaxPooling(target);
+		BinaryModelLoader.loadWeights(file, target);
+		actual = new Predictor(target, 1).predict(sample);
+		for (int i = 0; i < expected.length; i++) {
+		    assertEquals(expected[i], actual[i], 0);
+		}
+	    }
+	} finally {
+	    Environment.getInstance().setUseWeightsSharedMemory(sharedMemory);
+	}
+    }
+
+    @Test
+    public void testRandomAccessInputProvider() {
+	// 3 dimensional samples
+	float[][] input = new float[37][24];
+	float[][] target = new float[37][5];
+	for (int i = 0; i < input.length; i++) {
+	    for (int j = 0; j < input[i].length; j++) {
+		input[i][j] = i * 100 + j;
+	    }
+
+	    target[i][i % 5] = 1;
+	}
+
+	// the parallel population is the same as the sequential (and the batches wrap around the samples)
+	TrainingInputDataImpl parallel = new TrainingInputDataImpl(TensorFactory.tensor(2, 3, 4, 16), TensorFactory.tensor(5, 16));
+	TrainingInputDataImpl sequential = new TrainingInputDataImpl(TensorFactory.tensor(2, 3, 4, 16), TensorFactory.tensor(5, 16));
+	SimpleInputProvider p1 = new SimpleInputProvider(input, target), p2 = new SimpleInputProvider(input, target);
+	for (int b = 0; b < 4; b++) {
+	    p1.populateNext(parallel);
+	    TrainingInputProvider.populateSequentially(p2, sequential);
+	    assertArrayEquals(sequential.getInput().getElements(), parallel.getInput().getElements(), 0);
+	    assertArrayEquals(sequential.getTarget().getElements(), parallel.getTarget().getElements(), 0);
+	}
+
+	// sample 3 of the last batch is sample (3 * 16 + 3) % 37
+	assertEquals(14 * 100 + 1 * 12 + 2 * 4 + 3, parallel.getInput().get(1, 2, 3, 3), 0);
+	assertEquals(1, parallel.getTarget().get(14 % 5, 3), 0);
+    }
+
+    @Test
+    public void testPrecision() {
+	// bfloat16 has 7 bits mantissa - ties round to even
+	assertEquals(1f, Precision.BFLOAT16.round(1 + 1f / 256), 0);
+	assertEquals(1 + 1f / 64, Precision.BFLOAT16.round(1 + 3f / 256), 0);
+	assertEquals(3e38f, Precision.BFLOAT16.round(3e38f), 1e36f);
+
+	// float16 range and subnormals
+	assertEquals(65504f, Precision.FLOAT16.round(65504f), 0);
+	assertTrue(Float.isInfinite(Precision.FLOAT16.round(65520f)));
+	assertEquals(65504f, Precision.FLOAT16.round(65519f), 0);
+	assertEquals(0.0999755859375f, Precision.FLOAT16.round(0.1f), 0);
+	assertEquals((float) Math.pow(2, -24), Precision.FLOAT16.round((float) Math.pow(2, -24)), 0);
+	assertEquals(0f, Precision.FLOAT16.round(1e-8f), 0);
+	assertEquals(-2f, Precision.FLOAT16.round(-2f), 0);
+
+	// all the finite half values survive the round trip
+	for (int i = 0; i < 0x10000; i++) {
+	    short h = (short) i;
+	    float f = Precision.halfToFloat(h);
+	    if (!Float.isNaN(f)) {
+		assertEquals(h, Precision.floatToHalf(f));
+	    }
+	}
+
+	Tensor t = TensorFactory.tensor(2, 2);
+	t.getElements()[1] = 1e5f;
+	assertTrue(Precision.isFinite(t));
+	Precision.FLOAT16.round(t);
+	assertFalse(Precision.isFinite(t));
+    }
+
+    @Test
+    public void testConfusionMatrixOutputError() {
+	// 5 samples (columns) of 3 classes - (target, output): (0, 1), (0, 1), (1, 0), (2, 2) and one with equal outputs
+	int[] targets = { 0, 0, 1, 2, 1 }, outputs = { 1, 1, 0, 2, -1 };
+	float[] elements = new float[3 + 15];
+	Tensor target = TensorFactory.tensor(3, 5);
+	for (int i = 0; i < 5; i++) {
+	    for (int j = 0; j < 3; j++) {
+		elements[3 + j * 5 + i] = outputs[i] == -1 ? 0.5f : outputs[i] == j ? 0.9f : 0.1f;
+	    }
+
+	    target.set(1, targets[i], i);
+	}
+
+	// the output is a view with an offset in the elements
+	Tensor output = TensorFactory.tensor(elements, 3, 3, 5);
+
+	ConfusionMatrixOutputError direct = new ConfusionMatrixOutputError();
+	direct.addItem(output, target);
+	assertEquals(5, direct.getTotalInputSize());
+	assertEquals(4, direct.getTotalErrorSamples());
+	assertEquals(2, direct.getCount(0, 1));
+	assertEquals(1, direct.getNullCount());
+
+	// label mapping: target 0 -> output 1, target 1 -> output 0, target 2 -> output 2
+	MultipleNeuronsOutputError mapped = new MultipleNeuronsOutputError();
+	mapped.addItem(output, target);
+	assertEquals(1, mapped.getTotalErrorSamples());
+	assertEquals(0.2f, mapped.getTotalNetworkError(), 0);
+
+	// merged parts give the same result
+	Tensor copy = TensorFactory.tensor(3, 5);
+	TensorFactory.copy(output, copy);
+	MultipleNeuronsOutputError part1 = new MultipleNeuronsOutputError(), part2 = new MultipleNeuronsOutputError();
+	part1.addItem(TensorFactory.tensor(copy, new int[][] { { 0, 0 }, { 2, 1 } }), TensorFactory.tensor(target, new int[][] { { 0, 0 }, { 2, 1 } }));
+	part2.addItem(TensorFactory.tensor(copy, new int[][] { { 0, 2 }, { 2, 4 } }), TensorFactory.tensor(target, new int[][] { { 0, 2 }, { 2, 4 } }));
+	part1.merge(part2);
+	assertEquals(5, part1.getTotalInputSize());
+	assertEquals(1, part1.getTotalErrorSamples());
+
+	// constant memory
+	mapped.reset();
+	for (int i = 0; i < 100000; i++) {
+	    mapped.addItem(output, target);
+	}
+
+	assertEquals(500000, mapped.getTotalInputSize());
+	assertEquals(100000, mapped.getTotalErrorSamples());
+    }
+
+    /**
+     * Philox known answer tests and reproducibility of the counter based noise (independent of the execution mode and number of threads)
+     */
+    @Test
+    public void testPhiloxKernel() {
+	// known answers of Philox4x32-10 (Random123)
+	int[][] kat = new int[][] { { 0, 0, 0, 0, 0, 0, 0x6627e8d5, 0xe169c58d, 0xbc57ac4c, 0x9b00dbd8 }, { -1, -1, -1, -1, -1, -1, 0x408f276d, 0x41c83b0e, 0xa20bc7c6, 0x6d5451fd }, { 0x243f6a88, 0x85a308d3, 0x13198a2e, 0x03707344, 0xa4093822, 0x299f31d0, 0xd16cfe09, 0x94fdcceb, 0x5001e420, 0x24126ea1 } };
+	for (int[] k : kat) {
+	    for (int lane = 0; lane < 4; lane++) {
+		assertEquals(k[6 + lane], PhiloxKernel.philox(k[0], k[1], k[2], k[3], k[4], k[5], lane));
+	    }
+	}
+
+	float[][] results = new float[3][];
+	EXECUTION_MODE[] modes = new EXECUTION_MODE[] { EXECUTION_MODE.SEQ, EXECUTION_MODE.JTP, EXECUTION_MODE.SEQ };
+	for (int i = 0; i < modes.length; i++) {
+	    Environment.getInstance().setExecutionMode(modes[i]);
+	    Tensor t = TensorFactory.tensor(100000);
+	    t.forEach(j -> t.getElements()[j] = 1);
+
+	    AparapiNoise noise = new AparapiNoise(t, 0.3f, 0, 42);
+	    if (i == 2) {
+		// skip ahead to the second execution
+		noise.setOffset(1);
+	    } else {
+		noise.value(t);
+	    }
+
+	    noise.value(t);
+	    results[i] = t.getElements();
+	}
+
+	assertArrayEquals(results[0], results[1], 0);
+	assertFalse(Arrays.equals(results[0], results[2]));
+
+	// two executions with 0.3 corruption - 1 - 0.7 * 0.7 = 0.51 of the values are corrupted
+	float corrupted = (float) IntStream.range(0, results[0].length).filter(i -> results[0][i] == 0).count() / results[0].length;
+	assertEquals(0.51f, corrupted, 0.01f);
+
+	// the second execution alone corrupts 0.3 of the values
+	float second = (float) IntStream.range(0, results[2].length).filter(i -> results[2][i] == 0).count() / results[2].length;
+	assertEquals(0.3f, second, 0.01f);
+    }
 }
@@ -0,0 +1,332 @@
+package com.github.neuralnetworks.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import com.amd.aparapi.Kernel;
+import com.amd.aparapi.Kernel.EXECUTION_MODE;
+import com.amd.aparapi.Range;
+import com.github.neuralnetworks.architecture.NeuralNetworkImpl;
+import com.github.neuralnetworks.architecture.types.NNFactory;
+import com.github.neuralnetworks.inference.BatchScoringPipeline;
+import com.github.neuralnetworks.inference.BinaryScoringOutput;
+import com.github.neuralnetworks.inference.CSVScoringOutput;
+import com.github.neuralnetworks.inference.InferenceContext;
+import com.github.neuralnetworks.inference.PredictionHttpServer;
+import com.github.neuralnetworks.inference.PredictionService;
+import com.github.neuralnetworks.inference.Predictor;
+import com.github.neuralnetworks.inference.ScoringOutput;
+import com.github.neuralnetworks.inference.ScoringReport;
+import com.github.neuralnetworks.inference.WarmUp;
+import com.github.neuralnetworks.inference.WarmUpReport;
+import com.github.neuralnetworks.input.SimpleInputProvider;
+import com.github.neuralnetworks.training.random.MersenneTwisterRandomInitializer;
+import com.github.neuralnetworks.training.random.NNRandomInitializer;
+import com.github.neuralnetworks.util.Environment;
+import com.github.neuralnetworks.util.KernelExecutionStrategy;
+
+/**
+ * Inference (prediction) tests
+ */
+public class InferenceTest {
+
+    @Test
+    public void testPredictorMatchesNetwork() {
+	Environment.getInstance().setExecutionMode(EXECUTION_MODE.SEQ);
+
+	NeuralNetworkImpl nn = network();
+	float[][] samples = samples(7, 6);
+
+	// batch size 3 => two full batches and one partial
+	float[][] batched = new Predictor(nn, 3).predict(samples);
+	Predictor single = new Predictor(nn, 1);
+	for (int i = 0; i < samples.length; i++) {
+	    assertEquals(4, batched[i].length);
+	    assertArrayEquals(single.predict(samples[i]), batched[i], 0.00001f);
+	}
+
+	assertEquals(1, single.getPoolSize());
+    }
+
+    @Test
+    public void testConcurrentPredictions() throws Exception {
+	Environment.getInstance().setExecutionMode(EXECUTION_MODE.SEQ);
+
+	NeuralNetworkImpl nn = network();
+	float[][] samples = samples(64, 6);
+	Predictor predictor = new Predictor(nn, 4);
+	float[][] expected = predictor.predict(samples);
+
+	int maxThreads = Math.max(2, Math.min(8, Runtime.getRuntime().availableProcessors()));
+	for (int threads = 1; threads <= maxThreads; threads *= 2) {
+	    ExecutorService executor = Executors.newFixedThreadPool(threads);
+	    int requests = 200;
+	    try {
+		List<Future<Boolean>> futures = new ArrayList<>();
+		for (int r = 0; r < requests; r++) {
+		    final int s = r % samples.length;
+		    futures.add(executor.submit(() -> {
+			InferenceContext ctx = predictor.acquire();
+			try {
+			    float[][] out = new float[samples.length][];
+			    for (int i = s; i < samples.length; i += ctx.getBatchSize()) {
+				ctx.predict(samples, i, Math.min(ctx.getBatchSize(), samples.length - i), out);
+			    }
+
+			    for (int i = s; i < samples.length; i++) {
+				assertArrayEquals(expected[i], out[i], 0.00001f);
+			    }
+			} finally {
+			    predictor.release(ctx);
+			}
+
+			return true;
+		    }));
+		}
+
+		for (Future<Boolean> f : futures) {
+		    f.get();
+		}
+	    } finally {
+		executor.shutdown();
+	    }
+	}
+    }
+
+    @Test
+    public void testPredictionService() throws Exception {
+	Environment.getInstance().setExecutionMode(EXECUTION_MODE.SEQ);
+
+	NeuralNetworkImpl nn = network();
+	float[][] samples = samples(100, 6);
+	Predictor predictor = new Predictor(nn, 8);
+	float[][] expected = predictor.predict(samples);
+
+	try (PredictionService service = new PredictionService(predictor, 2000, 2)) {
+	    List<CompletableFuture<float[]>> futures = new ArrayList<>();
+	    for (float[] s : samples) {
+		futures.add(service.submit(s));
+	    }
+
+	    for (int i = 0; i < samples.length; i++) {
+		assertArrayEquals(expected[i], futures.get(i).get(), 0.00001f);
+	    }
+
+	    assertEquals(samples.length, service.getMetrics().getRequests());
+	    assertTrue(service.getMetrics().getBatches() < samples.length);
+	    assertTrue(service.getMetrics().getBatchFillRatio() > 0);
+	    assertTrue(service.getMetrics().getLatencyP99() >= service.getMetrics().getLatencyP50());
+
+	    // invalid input fails only the corresponding request
+	    CompletableFuture<float[]> invalid = service.submit(new float[3]);
+	    CompletableFuture<float[]> valid = service.submit(samples[0]);
+	    assertTrue(invalid.isCompletedExceptionally());
+	    assertArrayEquals(expected[0], valid.get(), 0.00001f);
+	}
+    }
+
+    @Test
+    public void testPredictionServiceClose() throws Exception {
+	Environment.getInstance().setExecutionMode(EXECUTION_MODE.SEQ);
+
+	NeuralNetworkImpl nn = network();
+	float[][] samples = samples(2, 6);
+	PredictionService service = new PredictionService(new Predictor(nn, 8), 10000000, 1);
+
+	// the worker waits for the batch to fill while the service is closed
+	CompletableFuture<float[]> pending = service.submit(samples[0]);
+	Thread.sleep(100);
+	service.close();
+	assertTrue(pending.isCompletedExceptionally());
+
+	CompletableFuture<float[]> closed = service.submit(samples[1]);
+	assertTrue(closed.isCompletedExceptionally());
+    }
+
+    @Test
+    public void testPredictionHttpServer() throws Exception {
+	Environment.getInstance().setExecutionMode(EXECUTION_MODE.SEQ);
+
+	NeuralNetworkImpl nn = network();
+	float[][] samples = samples(1, 6);
+	Predictor predictor = new Predictor(nn, 4);
+	float[] expected = predictor.predict(samples[0]);
+
+	try (PredictionService service = new PredictionService(predictor, 1000, 1); PredictionHttpServer server = new PredictionHttpServer(service, 0, 2)) {
+	    StringBuilder sb = new StringBuilder();
+	    for (float f : samples[0]) {
+		sb.append(sb.length() > 0 ? "," : "").append(f);
+	    }
+
+	    HttpURLConnection c = (HttpURLConnection) new URL("http://localhost:" + server.getPort() + "/predict").openConnection();
+	    c.setRequestMethod("POST");
+	    c.setDoOutput(true);
+	    try (OutputStream out = c.getOutputStream()) {
+		out.write(sb.toString().getBytes(StandardCharsets.UTF_8));
+	    }
+
+	    assertEquals(200, c.getResponseCode());
+	    String[] values = read(c.getInputStream()).split(",");
+	    assertEquals(expected.length, values.length);
+	    for (int i = 0; i < expected.length; i++) {
+		assertEquals(expected[i], Float.parseFloat(values[i]), 0.00001f);
+	    }
+
+	    c = (HttpURLConnection) new URL("http://localhost:" + server.getPort() + "/metrics").openConnection();
+	    assertEquals(200, c.getResponseCode());
+	    assertTrue(read(c.getInputStream()).contains("requests: 1"));
+	}
+    }
+
+    @Test
+    public void testWarmUp() {
+	Environment.getInstance().setExecutionMode(EXECUTION_MODE.SEQ);
+	KernelExecutionStrategy strategy = Environment.getInstance().getExecutionStrategy();
+
+	NeuralNetworkImpl nn = network();
+	WarmUpReport report = WarmUp.warmUp(nn, 1, 8);
+
+	assertTrue(Environment.getInstance().getExecutionStrategy() == strategy);
+	assertEquals(2, report.getFirstPassTimes().length);
+	assertTrue(report.getTimeToFirstPrediction() > 0);
+	assertTrue(report.getKernels().size() > 0);
+	assertTrue(report.getKernels().stream().allMatch(k -> k.getExecutions() > 0 && k.getRequestedMode() == EXECUTION_MODE.SEQ));
+	assertEquals(0, report.getFallbacks().size());
+
+	// pooled contexts
+	Predictor predictor = new Predictor(nn, 4);
+	report = WarmUp.warmUp(predictor, 2);
+	assertEquals(2, predictor.getPoolSize());
+	assertEquals(0, report.getFallbacks().size());
+
+	// the kernels are executed in a different mode than the requested one
+	List<KernelExecutionStrategy> otherThread = new ArrayList<>();
+	KernelExecutionStrategy fallback = new KernelExecutionStrategy() {
+	    @Override
+	    public void execute(Kernel kernel, int range) {
+		kernel.setExecutionMode(EXECUTION_MODE.SEQ);
+		kernel.execute(Range.create(range, 1));
+
+		// the other threads don't see the monitor
+		otherThread.add(CompletableFuture.supplyAsync(() -> Environment.getInstance().getExecutionStrategy()).join());
+	    }
+
+	    @Override
+	    public EXECUTION_MODE getExecutionMode(int range) {
+		return EXECUTION_MODE.GPU;
+	    }
+	};
+	Environment.getInstance().setExecutionStrategy(fallback);
+
+	try {
+	    report = WarmUp.warmUp(nn, new int[] { 2 }, 0);
+	    assertTrue(report.getFallbacks().size() > 0);
+	    assertTrue(report.toString().contains("GPU -> SEQ"));
+	    assertTrue(otherThread.size() > 0 && otherThread.stream().allMatch(s -> s == fallback));
+	    assertTrue(Environment.getInstance().getExecutionStrategy() == fallback);
+	} finally {
+	    Environment.getInstance().setExecutionMode(EXECUTION_MODE.SEQ);
+	}
+    }
+
+    @Test
+    public void testBatchScoringPipeline() throws Exception {
+	Environment.getInstance().setExecutionMode(EXECUTION_MODE.SEQ);
+
+	NeuralNetworkImpl nn = network();
+	float[][] samples = samples(103, 6);
+	Predictor predictor = new Predictor(nn, 8);
+	float[][] expected = predictor.predict(samples);
+
+	// raw, two compute threads
+	StringWriter csv = new StringWriter();
+	ScoringReport report = new BatchScoringPipeline(predictor, 2, 2).score(new SimpleInputProvider(samples), new CSVScoringOutput(csv, ScoringOutput.Mode.RAW, 0));
+	assertEquals(samples.length, report.getRecords());
+	String[] lines = csv.toString().split("\n");
+	assertEquals(samples.length, lines.length);
+	for (int i = 0; i < lines.length; i++) {
+	    String[] values = lines[i].split(",");
+	    for (int j = 0; j < values.length; j++) {
+		assertEquals(expected[i][j], Float.parseFloat(values[j]), 0.00001f);
+	    }
+	}
+
+	// argmax, binary
+	ByteArrayOutputStream bin = new ByteArrayOutputStream();
+	new BatchScoringPipeline(predictor, 1, 1).score(new SimpleInputProvider(samples), new BinaryScoringOutput(bin, ScoringOutput.Mode.ARGMAX, 0));
+	DataInputStream in = new DataInputStream(new ByteArrayInputStream(bin.toByteArray()));
+	for (float[] e : expected) {
+	    int max = 0;
+	    for (int j = 1; j < e.length; j++) {
+		max = e[j] > e[max] ? j : max;
+	    }
+
+	    assertEquals(max, in.readInt());
+	}
+	assertEquals(0, in.available());
+
+	// top 2
+	csv = new StringWriter();
+	new BatchScoringPipeline(predictor, 2, 3).score(new SimpleInputProvider(samples), new CSVScoringOutput(csv, ScoringOutput.Mode.TOP_K, 2));
+	lines = csv.toString().split("\n");
+	for (int i = 0; i < lines.length; i++) {
+	    String[] values = lines[i].split(",");
+	    assertEquals(4, values.length);
+	    float v1 = Float.parseFloat(values[1]), v2 = Float.parseFloat(values[3]);
+	    assertEquals(expected[i][Integer.parseInt(values[0])], v1, 0.00001f);
+	    assertEquals(expected[i][Integer.parseInt(values[2])], v2, 0.00001f);
+	    assertTrue(v1 >= v2);
+	    for (float f : expected[i]) {
+		assertTrue(f <= v1 + 0.00001f);
+	    }
+	}
+    }
+
+    private static String read(InputStream in) throws Exception {
+	ByteArrayOutputStream out = new ByteArrayOutputStream();
+	byte[] buffer = new byte[1024];
+	for (int n; (n = in.read(buffer)) != -1;) {
+	    out.write(buffer, 0, n);
+	}
+
+	return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    static NeuralNetworkImpl network() {
+	NeuralNetworkImpl nn = NNFactory.mlpSigmoid(new int[] { 6, 10, 4 }, true);
+	new NNRandomInitializer(new MersenneTwisterRandomInitializer(-0.5f, 0.5f)).initialize(nn);
+	return nn;
+    }
+
+    static float[][] samples(int count, int size) {
+	Random r = new Random(123);
+	float[][] result = new float[count][size];
+	for (float[] s : result) {
+	    for (int i = 0; i < size; i++) {
+		s[i] = r.nextFloat();
+	    }
+	}
+
+	return result;
+    }
+}
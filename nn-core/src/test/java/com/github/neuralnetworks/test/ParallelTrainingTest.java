@@ -0,0 +1,276 @@
+package com.github.neuralnetworks.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.amd.aparapi.Kernel.EXECUTION_MODE;
+import com.github.neuralnetworks.architecture.Connections;
+import com.github.neuralnetworks.architecture.NeuralNetworkImpl;
+import com.github.neuralnetworks.architecture.WeightsConnections;
+import com.github.neuralnetworks.architecture.types.NNFactory;
+import com.github.neuralnetworks.inference.Predictor;
+import com.github.neuralnetworks.input.SimpleInputProvider;
+import com.github.neuralnetworks.tensor.Precision;
+import com.github.neuralnetworks.tensor.Tensor;
+import com.github.neuralnetworks.training.TrainerFactory;
+import com.github.neuralnetworks.training.backpropagation.ActivationCheckpoints;
+import com.github.neuralnetworks.training.backpropagation.BackPropagationTrainer;
+import com.github.neuralnetworks.training.backpropagation.DataParallelBackPropagationTrainer;
+import com.github.neuralnetworks.training.backpropagation.HogwildBackPropagationTrainer;
+import com.github.neuralnetworks.training.backpropagation.MixedPrecision;
+import com.github.neuralnetworks.training.parameterserver.ParameterServer;
+import com.github.neuralnetworks.training.parameterserver.ParameterServerClient;
+import com.github.neuralnetworks.training.parameterserver.ParameterServerReport;
+import com.github.neuralnetworks.training.random.MersenneTwisterRandomInitializer;
+import com.github.neuralnetworks.training.random.NNRandomInitializer;
+import com.github.neuralnetworks.util.Environment;
+import com.github.neuralnetworks.util.Util;
+
+/**
+ * Parallel training tests
+ */
+public class ParallelTrainingTest {
+
+    @Test
+    public void testDataParallelMatchesSerial() {
+	Environment.getInstance().setExecutionMode(EXECUTION_MODE.SEQ);
+	Environment.getInstance().setUseDataSharedMemory(false);
+	Environment.getInstance().setUseWeightsSharedMemory(false);
+
+	float[][] input = samples(28, 6, 1);
+	float[][] target = samples(28, 4, 2);
+
+	// batch size 7 is not divisible by the number of workers
+	for (int workers = 1; workers <= 3; workers++) {
+	    NeuralNetworkImpl serial = network(new int[] { 6, 10, 4 });
+	    NeuralNetworkImpl parallel = Util.copy(serial, Collections.emptyList());
+
+	    BackPropagationTrainer<?> bpt = TrainerFactory.backPropagation(serial, new SimpleInputProvider(input, target), null, null, null, 0.1f, 0.5f, 0.0001f, 0.0001f, 0f, 7, 1, 2);
+	    bpt.train();
+
+	    DataParallelBackPropagationTrainer<?> dpt = TrainerFactory.dataParallelBackPropagation(parallel, new SimpleInputProvider(input, target), null, null, null, 0.1f, 0.5f, 0.0001f, 0.0001f, 7, 1, 2, workers);
+	    assertEquals(workers, dpt.getWorkers());
+	    dpt.train();
+
+	    assertArrayEquals(weights(serial), weights(parallel), 0.00001f);
+	}
+
+	// the settings, which the workers can't apply, are rejected
+	NeuralNetworkImpl nn = network(new int[] { 6, 10, 4 });
+	DataParallelBackPropagationTrainer<?> dpt = TrainerFactory.dataParallelBackPropagation(nn, new SimpleInputProvider(input, target), null, null, null, 0.1f, 0.5f, 0.0001f, 0.0001f, 7, 1, 2, 2);
+	List<Runnable> unsupported = Arrays.asList(() -> dpt.setMixedPrecision(new MixedPrecision(Precision.BFLOAT16)), () -> dpt.setActivationCheckpoints(new ActivationCheckpoints(nn, 7)));
+	for (Runnable r : unsupported) {
+	    try {
+		r.run();
+		fail("IllegalArgumentException expected");
+	    } catch (IllegalArgumentException e) {
+	    }
+	}
+    }
+
+    @Test
+    public void testHogwildConvergence() {
+	Environment.getInstance().setExecutionMode(EXECUTION_MODE.SEQ);
+	Environment.getInstance().setUseDataSharedMemory(false);
+	Environment.getInstance().setUseWeightsSharedMemory(false);
+
+	float[][] input = samples(200, 6, 1);
+	float[][] target = argmax(input, 4);
+	NeuralNetworkImpl nn = network(new int[] { 6, 16, 4 });
+	float initial = error(nn, input, target);
+
+	NeuralNetworkImpl serial = Util.copy(nn, Collections.emptyList());
+	BackPropagationTrainer<?> bpt = TrainerFactory.backPropagation(serial, new SimpleInputProvider(input, target), null, null, null, 0.1f, 0.5f, 0f, 0f, 0f, 1, 1, 1);
+
+	NeuralNetworkImpl hogwild = Util.copy(nn, Collections.emptyList());
+	HogwildBackPropagationTrainer<?> hbt = TrainerFactory.hogwildBackPropagation(hogwild, new SimpleInputProvider(input, target), null, null, null, 0.1f, 0.5f, 0f, 0f, 0f, 1, 1, 1, 2);
+
+	NeuralNetworkImpl striped = Util.copy(nn, Collections.emptyList());
+	HogwildBackPropagationTrainer<?> sbt = TrainerFactory.hogwildBackPropagation(striped, new SimpleInputProvider(input, target), null, null, null, 0.1f, 0.5f, 0f, 0f, 0f, 1, 1, 1, 2);
+	striped.getConnections().stream().filter(c -> c instanceof WeightsConnections).forEach(c -> sbt.setStripes(c, 4));
+
+	for (int epoch = 1; epoch <= 10; epoch++) {
+	    bpt.train();
+	    hbt.train();
+	    sbt.train();
+	}
+
+	float serialError = error(serial, input, target);
+	assertTrue(serialError < initial);
+	assertTrue(error(hogwild, input, target) < initial && error(hogwild, input, target) < serialError * 1.5f);
+	assertTrue(error(striped, input, target) < initial && error(striped, input, target) < serialError * 1.5f);
+    }
+
+    @Test
+    public void testParameterServer() throws Exception {
+	Environment.getInstance().setExecutionMode(EXECUTION_MODE.SEQ);
+	Environment.getInstance().setUseDataSharedMemory(false);
+	Environment.getInstance().setUseWeightsSharedMemory(false);
+
+	float[][] input = samples(200, 6, 1);
+	float[][] target = argmax(input, 4);
+	NeuralNetworkImpl nn = network(new int[] { 6, 16, 4 });
+	float initial = error(nn, input, target);
+
+	// one server and two worker processes, each of them trains on half of the data
+	int workers = 2;
+	try (ParameterServer server = new ParameterServer(nn, 0, 5)) {
+	    runWorkers(server, workers);
+
+	    ParameterServerReport report = server.getReport();
+	    assertEquals(2 * 100 * 10 / 10, report.getPushes());
+	    assertTrue(report.getMaxStaleness() <= (2 * server.getMaxStaleness() + 1) * (workers - 1) && report.getBytesReceived() > 0);
+	    assertTrue(error(nn, input, target) < initial);
+	}
+    }
+
+    /**
+     * Starts the worker processes of the parameter server and waits for them to finish
+     * @param jvmOptions - additional options of the worker processes
+     * @return the output of the workers
+     */
+    static String runWorkers(ParameterServer server, int workers, String... jvmOptions) throws Exception {
+	List<Process> processes = new ArrayList<>();
+	for (int i = 0; i < workers; i++) {
+	    List<String> command = new ArrayList<>();
+	    command.add(System.getProperty("java.home") + "/bin/java");
+	    command.addAll(Arrays.asList(jvmOptions));
+	    command.addAll(Arrays.asList("-cp", System.getProperty("java.class.path"), ParameterServerWorker.class.getName(), String.valueOf(server.getPort()), String.valueOf(i), String.valueOf(workers)));
+	    ProcessBuilder pb = new ProcessBuilder(command);
+	    pb.redirectErrorStream(true);
+	    processes.add(pb.start());
+	}
+
+	StringBuilder result = new StringBuilder();
+	for (Process p : processes) {
+	    String output = read(p.getInputStream());
+	    assertEquals(output, 0, p.waitFor());
+	    result.append(output);
+	}
+
+	return result.toString();
+    }
+
+    /**
+     * Parameter server worker process: port, worker index, number of workers
+     */
+    public static class ParameterServerWorker {
+
+	public static void main(String[] args) throws Exception {
+	    Environment.getInstance().setExecutionMode(EXECUTION_MODE.SEQ);
+	    Environment.getInstance().setUseDataSharedMemory(false);
+	    Environment.getInstance().setUseWeightsSharedMemory(false);
+
+	    int port = Integer.parseInt(args[0]), index = Integer.parseInt(args[1]), workers = Integer.parseInt(args[2]);
+	    float[][] input = samples(200, 6, 1);
+	    float[][] target = argmax(input, 4);
+	    int from = input.length * index / workers, to = input.length * (index + 1) / workers;
+
+	    NeuralNetworkImpl nn = NNFactory.mlpSigmoid(new int[] { 6, 16, 4 }, true);
+	    BackPropagationTrainer<?> bpt = TrainerFactory.backPropagation(nn, new SimpleInputProvider(Arrays.copyOfRange(input, from, to), Arrays.copyOfRange(target, from, to)), null, null, null, 0.1f, 0.5f, 0f, 0f, 0f, 1, 1, 10);
+
+	    try (ParameterServerClient client = new ParameterServerClient(port, nn, 10, true)) {
+		bpt.addEventListener(client);
+		long start = System.nanoTime();
+		bpt.train();
+		long time = System.nanoTime() - start;
+
+		// see Benchmarks
+		if (Boolean.getBoolean("benchmarks")) {
+		    System.out.println("Worker " + client.getWorkerId() + ": samples/s: " + (to - from) * 10 * 1000000000L / time + "; pushes: " + client.getPushes() + "; communication (ms): " + client.getWaitTime() / 1000000 + "; time (ms): " + time / 1000000);
+		}
+	    }
+	}
+    }
+
+    private static String read(InputStream in) throws IOException {
+	ByteArrayOutputStream out = new ByteArrayOutputStream();
+	byte[] buffer = new byte[1024];
+	for (int n; (n = in.read(buffer)) != -1;) {
+	    out.write(buffer, 0, n);
+	}
+
+	return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return mean squared error of the network
+     */
+    static float error(NeuralNetworkImpl nn, float[][] input, float[][] target) {
+	float[][] output = new Predictor(nn, 10).predict(input);
+	float error = 0;
+	for (int i = 0; i < output.length; i++) {
+	    for (int j = 0; j < output[i].length; j++) {
+		error += (output[i][j] - target[i][j]) * (output[i][j] - target[i][j]);
+	    }
+	}
+
+	return error / output.length;
+    }
+
+    /**
+     * @return one hot encoding of the largest of the first n values of each sample
+     */
+    static float[][] argmax(float[][] samples, int n) {
+	float[][] result = new float[samples.length][n];
+	for (int i = 0; i < samples.length; i++) {
+	    int max = 0;
+	    for (int j = 1; j < n; j++) {
+		max = samples[i][j] > samples[i][max] ? j : max;
+	    }
+
+	    result[i][max] = 1;
+	}
+
+	return result;
+    }
+
+    static NeuralNetworkImpl network(int[] layers) {
+	NeuralNetworkImpl nn = NNFactory.mlpSigmoid(layers, true);
+	new NNRandomInitializer(new MersenneTwisterRandomInitializer(-0.5f, 0.5f)).initialize(nn);
+	return nn;
+    }
+
+    private static float[] weights(NeuralNetworkImpl nn) {
+	List<Float> values = new ArrayList<>();
+	for (Connections c : nn.getConnections()) {
+	    if (c instanceof WeightsConnections) {
+		Tensor t = ((WeightsConnections) c).getWeights();
+		t.forEach(i -> values.add(t.getElements()[i]));
+	    }
+	}
+
+	float[] result = new float[values.size()];
+	for (int i = 0; i < result.length; i++) {
+	    result[i] = values.get(i);
+	}
+
+	return result;
+    }
+
+    static float[][] samples(int count, int size, long seed) {
+	Random r = new Random(seed);
+	float[][] result = new float[count][size];
+	for (float[] s : result) {
+	    for (int i = 0; i < size; i++) {
+		s[i] = r.nextFloat();
+	    }
+	}
+
+	return result;
+    }
+}
@@ -1,9 +1,14 @@
 package com.github.neuralnetworks.test;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
+import java.util.Arrays;
 import java.util.HashSet;
+import java.util.Random;
 import java.util.Set;
+import java.util.stream.IntStream;
 
 import org.junit.Test;
 
@@ -22,6 +27,8 @@ import com.github.neuralnetworks.training.events.LogTrainingListener;
 import com.github.neuralnetworks.training.random.MersenneTwisterRandomInitializer;
 import com.github.neuralnetworks.training.random.NNRandomInitializer;
 import com.github.neuralnetworks.training.rbm.AparapiCDTrainer;
+import com.github.neuralnetworks.training.rbm.CDWeightUpdatesKernel;
+import com.github.neuralnetworks.training.rbm.PersistentChains;
 import com.github.neuralnetworks.util.Environment;
 
 public class RBMTest {
@@ -108,6 +115,97 @@ public class RBMTest {
 	assertEquals(0, t.getOutputError().getTotalNetworkError(), 0);
     }
 
+    /**
+     * Multi-chain persistent contrastive divergence with parallel tempering. The number of particles doesn't depend on the mini batch size
+     */
+    @Test
+    public void testMultiChainPersistentContrastiveDivergence() {
+	Environment.getInstance().setExecutionMode(EXECUTION_MODE.SEQ);
+	Environment.getInstance().setUseWeightsSharedMemory(true);
+
+	float[][] input = new float[][] { { 1, 1, 1, 0, 0, 0 }, { 1, 0, 1, 0, 0, 0 }, { 1, 1, 0, 0, 0, 0 }, { 0, 1, 1, 0, 0, 0 }, { 0, 1, 1, 1, 0, 0 }, { 0, 0, 0, 1, 1, 1 }, { 0, 0, 1, 1, 1, 0 }, { 0, 0, 0, 1, 0, 1 }, { 0, 0, 0, 0, 1, 1 }, { 0, 0, 0, 1, 1, 0 } };
+	float[][] target = new float[][] { { 1, 0 }, { 1, 0 }, { 1, 0 }, { 1, 0 }, { 1, 0 }, { 0, 1 }, { 0, 1 }, { 0, 1 }, { 0, 1 }, { 0, 1 } };
+
+	RBM rbm = NNFactory.rbm(6, 2, true);
+	MultipleNeuronsOutputError error = new MultipleNeuronsOutputError();
+	AparapiCDTrainer t = TrainerFactory.cdSigmoidTrainer(rbm, new SimpleInputProvider(input, null), new SimpleInputProvider(input, target), error, new NNRandomInitializer(new MersenneTwisterRandomInitializer(-0.01f, 0.01f)), 0.02f, 0.5f, 0f, 0f, 1, 2, 100, true);
+
+	// 40 particles at 3 temperatures
+	PersistentChains chains = new PersistentChains(rbm, 40, new float[] { 1, 0.8f, 0.6f }, 123);
+	t.setPersistentChains(chains);
+
+	t.train();
+	t.test();
+
+	assertEquals(0, t.getOutputError().getTotalNetworkError(), 0);
+	assertEquals(40 * 3, chains.getVisible().getColumns());
+	assertTrue(chains.getSwapRate(0) > 0 && chains.getSwapRate(1) > 0);
+    }
+
+    /**
+     * The tempered chains sample from the distribution of a small RBM (compared with the exact distribution of the visible states)
+     */
+    @Test
+    public void testPersistentChainsDistribution() {
+	Environment.getInstance().setExecutionMode(EXECUTION_MODE.SEQ);
+	Environment.getInstance().setUseWeightsSharedMemory(false);
+
+	RBM rbm = NNFactory.rbm(3, 2, true);
+	float[][] w = new float[][] { { 2, -1, 1.5f }, { -2, 1, 0.5f } };
+	float[] vb = new float[] { -0.5f, 0.2f, -1 }, hb = new float[] { 0.3f, -0.4f };
+	for (int h = 0; h < 2; h++) {
+	    rbm.getHiddenBiasConnections().getWeights().set(hb[h], h, 0);
+	    for (int v = 0; v < 3; v++) {
+		rbm.getMainConnections().getWeights().set(w[h][v], h, v);
+	    }
+	}
+	IntStream.range(0, 3).forEach(v -> rbm.getVisibleBiasConnections().getWeights().set(vb[v], v, 0));
+
+	// exact probabilities of the visible states: exp(vb * v) * prod(1 + exp(hb + w * v))
+	double[] expected = new double[8];
+	for (int s = 0; s < 8; s++) {
+	    double p = 1;
+	    for (int v = 0; v < 3; v++) {
+		p *= Math.exp(vb[v] * ((s >> v) & 1));
+	    }
+
+	    for (int h = 0; h < 2; h++) {
+		double x = hb[h];
+		for (int v = 0; v < 3; v++) {
+		    x += w[h][v] * ((s >> v) & 1);
+		}
+
+		p *= 1 + Math.exp(x);
+	    }
+
+	    expected[s] = p;
+	}
+
+	double sum = Arrays.stream(expected).sum();
+	IntStream.range(0, 8).forEach(s -> expected[s] /= sum);
+
+	int particles = 500;
+	PersistentChains chains = new PersistentChains(rbm, particles, new float[] { 1, 0.6f, 0.3f }, 7);
+	chains.initialize(TensorFactory.tensor(3, 1));
+	chains.sample(20);
+
+	double[] actual = new double[8];
+	int steps = 200;
+	for (int i = 0; i < steps; i++) {
+	    chains.sample(1);
+	    Matrix v = chains.getVisible();
+	    for (int p = 0; p < particles; p++) {
+		actual[(int) v.get(0, p) | (int) v.get(1, p) << 1 | (int) v.get(2, p) << 2] += 1d / (particles * steps);
+	    }
+	}
+
+	for (int s = 0; s < 8; s++) {
+	    assertEquals(expected[s], actual[s], 0.01);
+	}
+
+	assertTrue(chains.getSwapRate(0) > 0 && chains.getSwapRate(0) < 1);
+    }
+
     @Test
     public void testRBMLayerCalculator1() {
 	Environment.getInstance().setUseWeightsSharedMemory(true);
@@ -270,6 +368,57 @@ public class RBMTest {
 	assertEquals(0.2 + 0.25742438, cg1.get(1, 2), 0.00001);
     }
 
+    /**
+     * The weight decay of contrastive divergence is scaled by the learning rate and doesn't apply to the biases
+     */
+    @Test
+    public void testContrastiveDivergenceWeightDecay() {
+	Environment.getInstance().setExecutionMode(EXECUTION_MODE.SEQ);
+	Environment.getInstance().setUseWeightsSharedMemory(true);
+
+	RBM plain = weightDecayRBM(), decayed = weightDecayRBM();
+	float[] initial = weightDecayRBM().getMainConnections().getWeights().getElements().clone();
+
+	TrainerFactory.cdSigmoidTrainer(plain, new SimpleInputProvider(new float[][] { { 1, 0, 1 } }, null), null, null, null, 0.5f, 0f, 0f, 0f, 1, 1, 1, false).train();
+	TrainerFactory.cdSigmoidTrainer(decayed, new SimpleInputProvider(new float[][] { { 1, 0, 1 } }, null), null, null, null, 0.5f, 0f, 0.1f, 0.2f, 1, 1, 1, false).train();
+
+	Matrix w = decayed.getMainConnections().getWeights();
+	for (int i = 0; i < w.getRows(); i++) {
+	    for (int j = 0; j < w.getColumns(); j++) {
+		float weight = initial[w.getStartIndex() + i * w.getRowElementsDistance() + j * w.getColumnElementsDistance()];
+		assertEquals(plain.getMainConnections().getWeights().get(i, j) + 0.5f * (-0.1f * Math.abs(weight) - 0.2f * weight * weight / 2), w.get(i, j), 0.00001);
+	    }
+	}
+
+	// 0.5 * (-0.1 * 0.2 - 0.2 * 0.2 * 0.2 / 2)
+	assertEquals(-0.012, w.get(0, 0) - plain.getMainConnections().getWeights().get(0, 0), 0.00001);
+
+	for (int i = 0; i < 3; i++) {
+	    assertEquals(plain.getVisibleBiasConnections().getWeights().get(i, 0), decayed.getVisibleBiasConnections().getWeights().get(i, 0), 0);
+	}
+
+	for (int i = 0; i < 2; i++) {
+	    assertEquals(plain.getHiddenBiasConnections().getWeights().get(i, 0), decayed.getHiddenBiasConnections().getWeights().get(i, 0), 0);
+	}
+    }
+
+    private static RBM weightDecayRBM() {
+	RBM rbm = NNFactory.rbm(3, 2, true);
+	Matrix w = rbm.getMainConnections().getWeights();
+	w.set(0.2f, 0, 0);
+	w.set(0.4f, 0, 1);
+	w.set(-0.5f, 0, 2);
+	w.set(-0.3f, 1, 0);
+	w.set(0.1f, 1, 1);
+	w.set(0.2f, 1, 2);
+
+	Matrix hb = rbm.getHiddenBiasConnections().getWeights();
+	hb.set(-0.4f, 0, 0);
+	hb.set(0.2f, 1, 0);
+
+	return rbm;
+    }
+
     @Test
     public void testTwoStepContrastiveDivergence() {
 	//Environment.getInstance().setExecutionMode(EXECUTION_MODE.SEQ);
@@ -312,4 +461,75 @@ public class RBMTest {
 	assertEquals(0.0669599,  cg1.get(1, 1), 0.00001);
 	assertEquals(0.0833487, cg1.get(1, 2), 0.00001);
     }
+
+    @Test
+    public void testAccumulatedContrastiveDivergence() {
+	Environment.getInstance().setExecutionMode(EXECUTION_MODE.SEQ);
+	Environment.getInstance().setUseWeightsSharedMemory(false);
+	Environment.getInstance().setUseDataSharedMemory(false);
+	float[][] input = new float[][] { { 1, 0, 1 }, { 1, 1, 0 }, { 0, 1, 1 }, { 0, 0, 1 } };
+
+	// one mini batch of 4 examples
+	RBM whole = NNFactory.rbm(3, 2, true);
+	new NNRandomInitializer(new MersenneTwisterRandomInitializer(-0.5f, 0.5f)).initialize(whole);
+	RBM accumulated = NNFactory.rbm(3, 2, true);
+	copy(whole.getMainConnections().getWeights(), accumulated.getMainConnections().getWeights());
+	copy(whole.getVisibleBiasConnections().getWeights(), accumulated.getVisibleBiasConnections().getWeights());
+	copy(whole.getHiddenBiasConnections().getWeights(), accumulated.getHiddenBiasConnections().getWeights());
+
+	TrainerFactory.cdSigmoidTrainer(whole, new SimpleInputProvider(input, null), null, null, null, 0.5f, 0.5f, 0f, 0f, 1, 4, 2, false).train();
+
+	// two accumulated mini batches of 2 examples
+	AparapiCDTrainer t = TrainerFactory.cdSigmoidTrainer(accumulated, new SimpleInputProvider(input, null), null, null, null, 0.5f, 0.5f, 0f, 0f, 1, 2, 2, false);
+	t.setGradientAccumulationSteps(2);
+	t.train();
+
+	assertArrayEquals(whole.getMainConnections().getWeights().getElements(), accumulated.getMainConnections().getWeights().getElements(), 0.00001f);
+	assertArrayEquals(whole.getVisibleBiasConnections().getWeights().getElements(), accumulated.getVisibleBiasConnections().getWeights().getElements(), 0.00001f);
+	assertArrayEquals(whole.getHiddenBiasConnections().getWeights().getElements(), accumulated.getHiddenBiasConnections().getWeights().getElements(), 0.00001f);
+    }
+
+    private static void copy(Matrix src, Matrix dest) {
+	System.arraycopy(src.getElements(), 0, dest.getElements(), 0, src.getElements().length);
+    }
+
+    /**
+     * The blocked gradients kernel gives the same result as the unit by unit calculation (for sizes, which are not multiples of the tile size, and a visible matrix, which is a view)
+     */
+    @Test
+    public void testCDWeightUpdatesKernel() {
+	Environment.getInstance().setExecutionMode(EXECUTION_MODE.SEQ);
+
+	int hidden = 131, visible = 785, batch = 37;
+	Random r = new Random(123);
+	Matrix allVisible = TensorFactory.tensor(visible + 3, batch);
+	Matrix posVisible = new Matrix(allVisible, new int[][] { { 3, 0 }, { visible + 2, batch - 1 } });
+	Matrix posHidden = TensorFactory.tensor(hidden, batch), negVisible = TensorFactory.tensor(visible, batch), negHidden = TensorFactory.tensor(hidden, batch);
+	for (Matrix m : new Matrix[] { allVisible, posHidden, negVisible, negHidden }) {
+	    IntStream.range(0, m.getSize()).forEach(i -> m.getElements()[i] = r.nextFloat());
+	}
+
+	Matrix gradients = TensorFactory.tensor(hidden, visible);
+	gradients.getElements()[5] = 1;
+	CDWeightUpdatesKernel kernel = new CDWeightUpdatesKernel(posVisible, posHidden, negVisible, negHidden, gradients);
+	Environment.getInstance().getExecutionStrategy().execute(kernel, kernel.getRange());
+
+	float[] expected = new float[hidden * visible];
+	expected[5] = 1;
+	cdWeightGradients(posVisible, posHidden, negVisible, negHidden, expected);
+	assertArrayEquals(expected, gradients.getElements(), 0);
+    }
+
+    static void cdWeightGradients(Matrix posVisible, Matrix posHidden, Matrix negVisible, Matrix negHidden, float[] gradients) {
+	for (int h = 0; h < posHidden.getRows(); h++) {
+	    for (int v = 0; v < posVisible.getRows(); v++) {
+		float g = 0;
+		for (int j = 0; j < posVisible.getColumns(); j++) {
+		    g += posHidden.get(h, j) * posVisible.get(v, j) - negHidden.get(h, j) * negVisible.get(v, j);
+		}
+
+		gradients[h * posVisible.getRows() + v] += g;
+	    }
+	}
+    }
 }
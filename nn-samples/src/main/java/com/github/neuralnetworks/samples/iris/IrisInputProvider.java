@@ -1,14 +1,18 @@
 package com.github.neuralnetworks.samples.iris;
 
+import java.io.Serializable;
+import java.util.Collections;
 import java.util.Random;
 
 import com.github.neuralnetworks.input.InputConverter;
+import com.github.neuralnetworks.training.RandomAccessInputProvider;
 import com.github.neuralnetworks.training.TrainingInputProviderImpl;
+import com.github.neuralnetworks.util.Util;
 
 /**
  * Iris dataset (http://archive.ics.uci.edu/ml/datasets/Iris) with random order
  */
-public class IrisInputProvider extends TrainingInputProviderImpl {
+public class IrisInputProvider extends TrainingInputProviderImpl implements RandomAccessInputProvider {
 
     private static final long serialVersionUID = 1L;
 
@@ -28,6 +32,21 @@ public class IrisInputProvider extends TrainingInputProviderImpl {
 	currentIndex = random != null ? random.nextInt(150) : currentInput % 150;
     }
 
+    @Override
+    public Serializable getState() {
+	return new Serializable[] { getPositionState(), currentIndex, random != null ? Util.copy(random, Collections.emptyList()) : null };
+    }
+
+    @Override
+    public void setState(Serializable state) {
+	Serializable[] s = (Serializable[]) state;
+	setPositionState((long[]) s[0]);
+	currentIndex = (Integer) s[1];
+	if (random != null) {
+	    random = Util.copy((Random) s[2], Collections.emptyList());
+	}
+    }
+
     @Override
     public float[] getNextInput() {
 	return irisData[currentIndex];
@@ -46,6 +65,21 @@ public class IrisInputProvider extends TrainingInputProviderImpl {
 	return target;
     }
 
+    @Override
+    public int getSampleIndex() {
+	return currentIndex;
+    }
+
+    @Override
+    public void getInput(int index, float[] input) {
+	System.arraycopy(irisData[index], 0, input, 0, irisData[index].length);
+    }
+
+    @Override
+    public void getTarget(int index, float[] target) {
+	getTargetConverter().convert(index / 50, target);
+    }
+
     @Override
     public int getInputSize() {
 	return irisData.length;
@@ -1,19 +1,24 @@
 package com.github.neuralnetworks.samples.mnist;
 
 import java.io.IOException;
+import java.io.Serializable;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Random;
 
+import com.github.neuralnetworks.training.RandomAccessInputProvider;
 import com.github.neuralnetworks.training.TrainingInputProviderImpl;
 import com.github.neuralnetworks.util.Util;
 
 /**
  * MNIST data set with random order
  * Requires location of the MNIST images files (not included in the library)
+ * The samples of a batch are read in parallel with positional reads (see RandomAccessInputProvider)
  */
-public class MnistInputProvider extends TrainingInputProviderImpl {
+public class MnistInputProvider extends TrainingInputProviderImpl implements RandomAccessInputProvider {
 
     private static final long serialVersionUID = 1L;
 
@@ -25,6 +30,12 @@ public class MnistInputProvider extends TrainingInputProviderImpl {
     private List<Integer> elementsOrder;
     private int currentEl;
     private Random random;
+
+    /**
+     * copy of the random generator at the start of the current order and the number of samples drawn since then (the state for the checkpoints)
+     */
+    private Random orderRandom;
+    private int drawn;
     private byte[] current;
     private float[] currentInput;
     private float[] currentTarget;
@@ -79,6 +90,43 @@ public class MnistInputProvider extends TrainingInputProviderImpl {
 	return currentTarget;
     }
 
+    @Override
+    public int getSampleIndex() {
+	return currentEl;
+    }
+
+    @Override
+    public void getInput(int index, float[] input) {
+	byte[] pixels = read(images, 16 + cols * rows * (long) index, cols * rows);
+	for (int j = 0; j < pixels.length; j++) {
+	    input[j] = pixels[j] & 0xFF;
+	}
+    }
+
+    @Override
+    public void getTarget(int index, float[] target) {
+	Util.fillArray(target, 0);
+	target[read(labels, 8 + (long) index, 1)[0] & 0xFF] = 1;
+    }
+
+    /**
+     * positional read, which doesn't change the file pointer (safe to call from multiple threads)
+     */
+    private static byte[] read(RandomAccessFile file, long position, int length) {
+	ByteBuffer buffer = ByteBuffer.allocate(length);
+	try {
+	    while (buffer.hasRemaining()) {
+		if (file.getChannel().read(buffer, position + buffer.position()) < 0) {
+		    throw new IOException("Unexpected end of file");
+		}
+	    }
+	} catch (IOException e) {
+	    throw new IllegalStateException(e);
+	}
+
+	return buffer.array();
+    }
+
     @Override
     public void beforeSample() {
 	if (elementsOrder.size() == 0) {
@@ -86,6 +134,7 @@ public class MnistInputProvider extends TrainingInputProviderImpl {
 	}
 
 	currentEl = elementsOrder.remove(random.nextInt(elementsOrder.size()));
+	drawn++;
     }
 
     @Override
@@ -99,6 +148,28 @@ public class MnistInputProvider extends TrainingInputProviderImpl {
 	for (int i = 0; i < inputSize; i++) {
 	    elementsOrder.add(i);
 	}
+
+	orderRandom = Util.copy(random, Collections.emptyList());
+	drawn = 0;
+    }
+
+    /**
+     * The order is restored by drawing the samples of the current order again (without reading them)
+     */
+    @Override
+    public Serializable getState() {
+	return new Serializable[] { getPositionState(), Util.copy(orderRandom, Collections.emptyList()), drawn };
+    }
+
+    @Override
+    public void setState(Serializable state) {
+	Serializable[] s = (Serializable[]) state;
+	setPositionState((long[]) s[0]);
+	random = Util.copy((Random) s[1], Collections.emptyList());
+	resetOrder();
+	for (int i = (Integer) s[2]; i > 0; i--) {
+	    beforeSample();
+	}
     }
 
     public byte[] getCurrent() {
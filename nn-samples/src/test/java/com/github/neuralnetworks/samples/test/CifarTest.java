@@ -52,4 +52,27 @@ public class CifarTest {
 	bpt.train();
 	bpt.test();
     }
+
+    /**
+     * Convergence of the mixed precision training compared to float32
+     */
+    @Test
+    public void testMixedPrecisionSigmoidBP() {
+	Environment.getInstance().setUseDataSharedMemory(false);
+	Environment.getInstance().setUseWeightsSharedMemory(false);
+	Environment.getInstance().setExecutionMode(EXECUTION_MODE.CPU);
+
+	NeuralNetworkImpl initial = NNFactory.mlpSigmoid(new int[] { 3072, 10 }, true);
+	new NNRandomInitializer(new RandomInitializerImpl(new Random(123), -0.01f, 0.01f)).initialize(initial);
+
+	CIFAR10TrainingInputProvider trainInputProvider = new CIFAR10TrainingInputProvider("cifar-10-batches-bin"); // specify your own path
+	trainInputProvider.getProperties().setGroupByChannel(true);
+	trainInputProvider.getProperties().setScaleColors(true);
+
+	CIFAR10TestingInputProvider testInputProvider = new CIFAR10TestingInputProvider("cifar-10-batches-bin"); // specify your own path
+	testInputProvider.getProperties().setGroupByChannel(true);
+	testInputProvider.getProperties().setScaleColors(true);
+
+	MnistTest.assertMixedPrecisionConverges(initial, trainInputProvider, testInputProvider);
+    }
 }
@@ -1,6 +1,7 @@
 package com.github.neuralnetworks.samples.test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import java.io.File;
 import java.util.HashMap;
@@ -75,6 +76,46 @@ public class IrisTest {
 	assertEquals(0, bpt.getOutputError().getTotalNetworkError(), 0.1);
     }
 
+    @Test
+    public void testMLPSigmoidBPAsynchronousEarlyStopping() {
+	// execution mode
+	Environment.getInstance().setExecutionMode(EXECUTION_MODE.SEQ);
+	Environment.getInstance().setUseWeightsSharedMemory(false);
+
+	// create the network
+	NeuralNetworkImpl mlp = NNFactory.mlpSigmoid(new int[] { 4, 2, 3 }, true);
+
+	// training and testing data providers
+	IrisInputProvider trainInputProvider = new IrisInputProvider(new IrisTargetMultiNeuronOutputConverter(), false);
+	trainInputProvider.addInputModifier(new ScalingInputFunction(trainInputProvider));
+	IrisInputProvider testInputProvider = new IrisInputProvider(new IrisTargetMultiNeuronOutputConverter(), false);
+	testInputProvider.addInputModifier(new ScalingInputFunction(testInputProvider));
+	OutputError outputError = new MultipleNeuronsOutputError();
+
+	// trainer
+	BackPropagationTrainer<?> bpt = TrainerFactory.backPropagation(mlp, trainInputProvider, testInputProvider, outputError, new NNRandomInitializer(new MersenneTwisterRandomInitializer(-0.01f, 0.01f), 0.5f), 0.02f, 0.7f, 0f, 0f, 0f, 150, 1, 2000);
+
+	// log data
+	bpt.addEventListener(new LogTrainingListener(Thread.currentThread().getStackTrace()[1].getMethodName()));
+
+	// early stopping on a snapshot of the weights in a background thread
+	EarlyStoppingListener esl = new EarlyStoppingListener(testInputProvider, 100, 0.015f);
+	esl.setAsynchronous(true);
+	esl.setMaxStaleness(50);
+	bpt.addEventListener(esl);
+
+	// train
+	bpt.train();
+
+	assertTrue(esl.getValidations() > 0);
+	assertEquals(150, esl.getLastValidatedSamples());
+
+	// test
+	bpt.test();
+
+	assertEquals(0, bpt.getOutputError().getTotalNetworkError(), 0.1);
+    }
+
     @Test
     public void testMLPSigmoidBPCSVReader() {
 	// execution mode
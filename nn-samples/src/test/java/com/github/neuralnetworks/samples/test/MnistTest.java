@@ -2,6 +2,8 @@ package com.github.neuralnetworks.samples.test;
 
 import static org.junit.Assert.assertEquals;
 
+import java.util.Collections;
+
 import org.junit.Ignore;
 import org.junit.Test;
 
@@ -11,12 +13,17 @@ import com.github.neuralnetworks.architecture.types.NNFactory;
 import com.github.neuralnetworks.input.MultipleNeuronsOutputError;
 import com.github.neuralnetworks.input.ScalingInputFunction;
 import com.github.neuralnetworks.samples.mnist.MnistInputProvider;
+import com.github.neuralnetworks.tensor.Precision;
 import com.github.neuralnetworks.training.TrainerFactory;
+import com.github.neuralnetworks.training.TrainingInputProvider;
 import com.github.neuralnetworks.training.backpropagation.BackPropagationTrainer;
+import com.github.neuralnetworks.training.backpropagation.HogwildBackPropagationTrainer;
+import com.github.neuralnetworks.training.backpropagation.MixedPrecision;
 import com.github.neuralnetworks.training.events.LogTrainingListener;
 import com.github.neuralnetworks.training.random.MersenneTwisterRandomInitializer;
 import com.github.neuralnetworks.training.random.NNRandomInitializer;
 import com.github.neuralnetworks.util.Environment;
+import com.github.neuralnetworks.util.Util;
 
 /**
  * MNIST test
@@ -46,6 +53,80 @@ public class MnistTest {
 	assertEquals(0, bpt.getOutputError().getTotalNetworkError(), 0.1);
     }
 
+    /**
+     * Convergence of the asynchronous (Hogwild) trainer compared to the serial one
+     */
+    @Test
+    public void testHogwildSigmoidBP() {
+	Environment.getInstance().setUseDataSharedMemory(false);
+	Environment.getInstance().setUseWeightsSharedMemory(false);
+	Environment.getInstance().setExecutionMode(EXECUTION_MODE.CPU);
+
+	NeuralNetworkImpl serial = NNFactory.mlpSigmoid(new int[] { 784, 10 }, true);
+	new NNRandomInitializer(new MersenneTwisterRandomInitializer(-0.01f, 0.01f)).initialize(serial);
+	NeuralNetworkImpl hogwild = Util.copy(serial, Collections.emptyList());
+
+	MnistInputProvider trainInputProvider = new MnistInputProvider("train-images.idx3-ubyte", "train-labels.idx1-ubyte");
+	trainInputProvider.addInputModifier(new ScalingInputFunction(255));
+	MnistInputProvider testInputProvider = new MnistInputProvider("t10k-images.idx3-ubyte", "t10k-labels.idx1-ubyte");
+	testInputProvider.addInputModifier(new ScalingInputFunction(255));
+
+	BackPropagationTrainer<?> bpt = TrainerFactory.backPropagation(serial, trainInputProvider, testInputProvider, new MultipleNeuronsOutputError(), null, 0.02f, 0.5f, 0f, 0f, 0f, 1, 1000, 1);
+	HogwildBackPropagationTrainer<?> hbt = TrainerFactory.hogwildBackPropagation(hogwild, trainInputProvider, testInputProvider, new MultipleNeuronsOutputError(), null, 0.02f, 0.5f, 0f, 0f, 0f, 1, 1000, 1, Runtime.getRuntime().availableProcessors());
+
+	for (int epoch = 1; epoch <= 3; epoch++) {
+	    bpt.train();
+	    hbt.train();
+	}
+
+	bpt.test();
+	hbt.test();
+
+	assertEquals(bpt.getOutputError().getTotalNetworkError(), hbt.getOutputError().getTotalNetworkError(), 0.05);
+    }
+
+    /**
+     * Convergence of the mixed precision training compared to float32
+     */
+    @Test
+    public void testMixedPrecisionSigmoidBP() {
+	Environment.getInstance().setUseDataSharedMemory(false);
+	Environment.getInstance().setUseWeightsSharedMemory(false);
+	Environment.getInstance().setExecutionMode(EXECUTION_MODE.CPU);
+
+	NeuralNetworkImpl initial = NNFactory.mlpSigmoid(new int[] { 784, 10 }, true);
+	new NNRandomInitializer(new MersenneTwisterRandomInitializer(-0.01f, 0.01f)).initialize(initial);
+
+	MnistInputProvider trainInputProvider = new MnistInputProvider("train-images.idx3-ubyte", "train-labels.idx1-ubyte");
+	trainInputProvider.addInputModifier(new ScalingInputFunction(255));
+	MnistInputProvider testInputProvider = new MnistInputProvider("t10k-images.idx3-ubyte", "t10k-labels.idx1-ubyte");
+	testInputProvider.addInputModifier(new ScalingInputFunction(255));
+
+	assertMixedPrecisionConverges(initial, trainInputProvider, testInputProvider);
+    }
+
+    /**
+     * Trains copies of the initial network with float32, bfloat16 and float16 and compares the errors
+     */
+    static void assertMixedPrecisionConverges(NeuralNetworkImpl initial, TrainingInputProvider trainInputProvider, TrainingInputProvider testInputProvider) {
+	Precision[] precisions = new Precision[] { Precision.FLOAT32, Precision.BFLOAT16, Precision.FLOAT16 };
+	float[] errors = new float[precisions.length];
+	for (int i = 0; i < precisions.length; i++) {
+	    NeuralNetworkImpl mlp = Util.copy(initial, Collections.emptyList());
+	    BackPropagationTrainer<?> bpt = TrainerFactory.backPropagation(mlp, trainInputProvider, testInputProvider, new MultipleNeuronsOutputError(), null, 0.02f, 0.5f, 0f, 0f, 0f, 1, 1000, 1);
+	    if (precisions[i] != Precision.FLOAT32) {
+		bpt.setMixedPrecision(new MixedPrecision(precisions[i]));
+	    }
+
+	    bpt.train();
+	    bpt.test();
+	    errors[i] = bpt.getOutputError().getTotalNetworkError();
+	}
+
+	assertEquals(errors[0], errors[1], 0.02);
+	assertEquals(errors[0], errors[2], 0.02);
+    }
+
     @Ignore
     @Test
     public void testSigmoidHiddenBP() {